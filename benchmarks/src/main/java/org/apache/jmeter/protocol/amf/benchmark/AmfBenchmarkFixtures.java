@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.protocol.amf.sampler.AmfMessageHelper;
+import org.apache.jmeter.protocol.amf.sampler.AmfSampler;
+import org.apache.jmeter.protocol.amf.server.AmfStandInProfile;
+import org.apache.jmeter.testelement.property.TestElementProperty;
+import org.apache.jmeter.util.JMeterUtils;
+
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.MessageBody;
+import flex.messaging.messages.AcknowledgeMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.messages.RemotingMessage;
+
+/**
+ * Builds the messages and sampler parameters shared by the benchmarks.  Payloads are
+ * those of the AmfStandInServer, so that benchmark results can be compared with
+ * throughput measured against the stand-in server.
+ *
+ */
+final class AmfBenchmarkFixtures {
+
+	static final String DESTINATION = "benchmarkService"; // $NON-NLS-1$
+
+	static final String OPERATION = "echo"; // $NON-NLS-1$
+
+	static final String FLEX_CLIENT_ID = "5A3D6E2B-7C1F-4B8E-9D2A-1E6F3C8B4A7D"; // $NON-NLS-1$
+
+	private AmfBenchmarkFixtures() {
+	}
+
+	/**
+	 * @return the payload of an AmfStandInServer with the given profile options.
+	 */
+	static Object createPayload(int payloadSize, int rows) {
+		AmfStandInProfile profile = new AmfStandInProfile();
+		profile.setPayloadSize(payloadSize);
+		profile.setRows(rows);
+		return profile.createPayload();
+	}
+
+	/**
+	 * @return a RemotingMessage passing the payload as its only parameter.
+	 */
+	static RemotingMessage createRemotingMessage(Object payload) {
+		RemotingMessage message = new RemotingMessage();
+		message.setDestination(DESTINATION);
+		message.setOperation(OPERATION);
+		message.setMessageId("B1E5C0D2-3F4A-4C6B-8E9D-0A1B2C3D4E5F"); // $NON-NLS-1$
+		message.setHeader(Message.FLEX_CLIENT_ID_HEADER, FLEX_CLIENT_ID);
+		message.setParameters(Collections.<Object>singletonList(payload));
+		return message;
+	}
+
+	/**
+	 * @return a serialized response, as sent by the AmfStandInServer, acknowledging a
+	 * request with the payload as its body.
+	 */
+	static byte[] createResponse(Object payload) throws IOException {
+		AcknowledgeMessage ack = new AcknowledgeMessage();
+		ack.setMessageId("C2F6D1E3-4A5B-4D7C-9F0E-1B2C3D4E5F6A"); // $NON-NLS-1$
+		ack.setCorrelationId("B1E5C0D2-3F4A-4C6B-8E9D-0A1B2C3D4E5F"); // $NON-NLS-1$
+		ack.setDestination(DESTINATION);
+		ack.setHeader(Message.FLEX_CLIENT_ID_HEADER, FLEX_CLIENT_ID);
+		ack.setBody(payload);
+		ActionMessage response = new ActionMessage(MessageIOConstants.AMF3);
+		response.addBody(new MessageBody("/1" + MessageIOConstants.RESULT_METHOD, "null", ack)); // $NON-NLS-1$ $NON-NLS-2$
+		return AmfMessageHelper.encodeActionMessage(response);
+	}
+
+	/**
+	 * @return the sampler parameters of an AmfRemotingMessage with the given number of
+	 * AMF_Parameter_nnn call parameters.
+	 */
+	static Arguments createRemotingArguments(int parameterCount) {
+		Arguments arguments = new Arguments();
+		arguments.addArgument("DSId", FLEX_CLIENT_ID); // $NON-NLS-1$
+		arguments.addArgument("Channel Definition Id", "my-amf"); // $NON-NLS-1$ $NON-NLS-2$
+		arguments.addArgument("Source", ""); // $NON-NLS-1$ $NON-NLS-2$
+		arguments.addArgument("Destination", DESTINATION); // $NON-NLS-1$
+		arguments.addArgument("Operation Name", OPERATION); // $NON-NLS-1$
+		for (int i = 0; i < parameterCount; i++) {
+			arguments.addArgument("AMF_Parameter_" + i, "value " + i); // $NON-NLS-1$ $NON-NLS-2$
+		}
+		return arguments;
+	}
+
+	/**
+	 * @return the sampler parameters of an AmfCommandMessage sending a client ping.
+	 */
+	static Arguments createCommandArguments() {
+		Arguments arguments = new Arguments();
+		arguments.addArgument("DSId", FLEX_CLIENT_ID); // $NON-NLS-1$
+		arguments.addArgument("DSMessagingVersion", "1"); // $NON-NLS-1$ $NON-NLS-2$
+		arguments.addArgument("Operation", "5"); // $NON-NLS-1$ $NON-NLS-2$
+		return arguments;
+	}
+
+	/**
+	 * Replace or add sampler parameters.
+	 */
+	static void setArguments(Arguments arguments, Map<String, String> values) {
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			arguments.removeArgument(entry.getKey());
+			arguments.addArgument(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * @return an AMF Request sampler, configured as by the AMF Request GUI, posting to
+	 * the given endpoint with keep alive.
+	 */
+	static AmfSampler createSampler(URL url, String name, String classname, Arguments arguments) {
+		AmfSampler sampler = new AmfSampler();
+		sampler.setName(name);
+		sampler.setProtocol(url.getProtocol());
+		sampler.setDomain(url.getHost());
+		sampler.setPort(url.getPort() < 0 ? url.getDefaultPort() : url.getPort());
+		sampler.setPath(url.getFile());
+		sampler.setMethod("POST"); // $NON-NLS-1$
+		sampler.setUseKeepAlive(true);
+		sampler.setFollowRedirects(false);
+		sampler.setAutoRedirects(false);
+		sampler.setClassname(classname);
+		sampler.setProperty(new TestElementProperty(AmfSampler.ARGUMENTS, arguments));
+		return sampler;
+	}
+
+	/**
+	 * Load the properties of the JMeter installation named by the jmeter.home system
+	 * property, as required to run samplers outside of JMeter.
+	 *
+	 * @return false, having reported the problem, if jmeter.home is not set.
+	 */
+	static boolean initJMeter() {
+		String jmeterHome = System.getProperty("jmeter.home"); // $NON-NLS-1$
+		if (jmeterHome == null) {
+			System.err.println("The jmeter.home system property must name a JMeter installation");
+			return false;
+		}
+		JMeterUtils.setJMeterHome(jmeterHome);
+		JMeterUtils.loadJMeterProperties(new File(jmeterHome, "bin/jmeter.properties").getPath()); // $NON-NLS-1$
+		JMeterUtils.initLocale();
+		return true;
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jmeter.protocol.amf.sampler.AmfCommandMessage;
+import org.apache.jmeter.protocol.amf.sampler.AmfRemotingMessage;
+import org.apache.jmeter.protocol.amf.sampler.AmfSamplerConfig;
+import org.apache.jmeter.protocol.amf.sampler.AmfSamplerContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import flex.messaging.messages.AbstractMessage;
+
+/**
+ * Creating the message of each sample with createAbstractMessage(), for a
+ * RemotingMessage with a varying number of call parameters and for a CommandMessage.
+ * A context is created from the compiled parameters for each operation, as the
+ * sampler does for each sample.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AmfCreateMessageBenchmark {
+
+	/**
+	 * Exposes the protected createAbstractMessage() of AmfRemotingMessage.
+	 */
+	static class RemotingMessageFixture extends AmfRemotingMessage {
+		AbstractMessage create(AmfSamplerContext context) {
+			return createAbstractMessage(context);
+		}
+	}
+
+	/**
+	 * Exposes the protected createAbstractMessage() of AmfCommandMessage.
+	 */
+	static class CommandMessageFixture extends AmfCommandMessage {
+		AbstractMessage create(AmfSamplerContext context) {
+			return createAbstractMessage(context);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class RemotingState {
+
+		@Param({ "0", "4", "32" })
+		public int parameterCount;
+
+		AmfSamplerConfig config;
+
+		RemotingMessageFixture message;
+
+		@Setup
+		public void setup() {
+			config = AmfSamplerConfig.compile(AmfBenchmarkFixtures.createRemotingArguments(parameterCount), null);
+			message = new RemotingMessageFixture();
+			message.setupTest(config.createContext());
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class CommandState {
+
+		AmfSamplerConfig config;
+
+		CommandMessageFixture message;
+
+		@Setup
+		public void setup() {
+			config = AmfSamplerConfig.compile(AmfBenchmarkFixtures.createCommandArguments(), null);
+			message = new CommandMessageFixture();
+			message.setupTest(config.createContext());
+		}
+	}
+
+	@Benchmark
+	public AbstractMessage createRemotingMessage(RemotingState state) {
+		return state.message.create(state.config.createContext());
+	}
+
+	@Benchmark
+	public AbstractMessage createCommandMessage(CommandState state) {
+		return state.message.create(state.config.createContext());
+	}
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.jmeter.protocol.amf.sampler.AmfByteBuffer;
+import org.apache.jmeter.protocol.amf.sampler.AmfMessageHelper;
+import org.apache.jmeter.protocol.amf.sampler.AmfTeeInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import flex.messaging.io.MessageIOConstants;
+
+/**
+ * Handling an HTTP response body, as AmfSampler does, with and without gzip content
+ * encoding: either reading the body into a buffer and deserializing it with
+ * getDataObjectFromMessage(), or deserializing it directly from the response stream,
+ * as with the Stream Responses parameter, keeping no copy of the body.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AmfGzipResponseBenchmark {
+
+	@Param({ "4096", "65536" })
+	public int payloadSize;
+
+	@Param({ "0", "50" })
+	public int rows;
+
+	@Param({ "identity", "gzip" })
+	public String contentEncoding;
+
+	private AmfMessageHelper helper;
+
+	private byte[] body;
+
+	private final byte[] readBuffer = new byte[4096];
+
+	@Setup
+	public void setup() throws IOException {
+		helper = new AmfMessageHelper();
+		helper.setObjectEncoding(MessageIOConstants.AMF3);
+		byte[] response = AmfBenchmarkFixtures.createResponse(AmfBenchmarkFixtures.createPayload(payloadSize, rows));
+		if ("gzip".equals(contentEncoding)) { // $NON-NLS-1$
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			GZIPOutputStream gzip = new GZIPOutputStream(out);
+			gzip.write(response);
+			gzip.close();
+			body = out.toByteArray();
+		} else {
+			body = response;
+		}
+	}
+
+	@Benchmark
+	public Object buffered() throws Exception {
+		InputStream in = openResponseStream();
+		AmfByteBuffer buffer = new AmfByteBuffer(body.length);
+		int length;
+		while ((length = in.read(readBuffer)) >= 0) {
+			buffer.write(readBuffer, 0, length);
+		}
+		in.close();
+		helper.open();
+		try {
+			return helper.getDataObjectFromMessage(buffer.toByteArray());
+		} finally {
+			helper.close();
+		}
+	}
+
+	@Benchmark
+	public Object streaming() throws Exception {
+		AmfTeeInputStream in = new AmfTeeInputStream(openResponseStream(), 0, body.length);
+		helper.open();
+		try {
+			Object data = helper.getDataObjectFromStream(in);
+			in.drain();
+			return data;
+		} finally {
+			helper.close();
+			in.close();
+		}
+	}
+
+	private InputStream openResponseStream() throws IOException {
+		InputStream in = new ByteArrayInputStream(body);
+		return "gzip".equals(contentEncoding) ? new GZIPInputStream(in) : in; // $NON-NLS-1$
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jmeter.protocol.amf.sampler.AmfMessageHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.messages.RemotingMessage;
+
+/**
+ * Serializing a request with AmfMessageHelper.serializeMessage() and deserializing a
+ * response with getDataObjectFromMessage(), across payload sizes, as a String or as an
+ * ArrayCollection of rows, with and without serialization buffer reuse.  Each operation
+ * opens and closes the helper, as the sampler does for each sample.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AmfSerializationBenchmark {
+
+	@Param({ "256", "4096", "65536" })
+	public int payloadSize;
+
+	@Param({ "0", "50" })
+	public int rows;
+
+	@Param({ "false", "true" })
+	public boolean reuseBuffers;
+
+	private AmfMessageHelper helper;
+
+	private RemotingMessage request;
+
+	private byte[] response;
+
+	@Setup
+	public void setup() throws Exception {
+		helper = new AmfMessageHelper();
+		helper.setObjectEncoding(MessageIOConstants.AMF3);
+		helper.setReuseBuffers(reuseBuffers);
+		Object payload = AmfBenchmarkFixtures.createPayload(payloadSize, rows);
+		request = AmfBenchmarkFixtures.createRemotingMessage(payload);
+		response = AmfBenchmarkFixtures.createResponse(payload);
+	}
+
+	@Benchmark
+	public byte[] serializeMessage() {
+		helper.open();
+		try {
+			return helper.serializeMessage(request);
+		} finally {
+			helper.close();
+		}
+	}
+
+	@Benchmark
+	public Object getDataObjectFromMessage() throws Exception {
+		helper.open();
+		try {
+			return helper.getDataObjectFromMessage(response);
+		} finally {
+			helper.close();
+		}
+	}
+
+}
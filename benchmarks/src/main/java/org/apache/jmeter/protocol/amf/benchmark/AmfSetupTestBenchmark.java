@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.protocol.amf.sampler.AmfRemotingMessage;
+import org.apache.jmeter.protocol.amf.sampler.AmfSamplerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing the sampler parameters of an AmfRemotingMessage with setupTest(), from an
+ * already compiled configuration, and including compiling the configuration from the
+ * sampler Arguments, as is done on the first sample of each thread.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AmfSetupTestBenchmark {
+
+	@Param({ "4", "32", "128" })
+	public int parameterCount;
+
+	private Arguments arguments;
+
+	private AmfSamplerConfig config;
+
+	@Setup
+	public void setup() {
+		arguments = AmfBenchmarkFixtures.createRemotingArguments(parameterCount);
+		config = AmfSamplerConfig.compile(arguments, null);
+	}
+
+	@Benchmark
+	public AmfRemotingMessage setupTest() {
+		AmfRemotingMessage message = new AmfRemotingMessage();
+		message.setupTest(config.createContext());
+		return message;
+	}
+
+	@Benchmark
+	public AmfRemotingMessage compileAndSetupTest() {
+		AmfRemotingMessage message = new AmfRemotingMessage();
+		message.setupTest(AmfSamplerConfig.compile(arguments, null).createContext());
+		return message;
+	}
+
+}
@@ -0,0 +1,599 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.protocol.amf.sampler.AmfCommandMessage;
+import org.apache.jmeter.protocol.amf.sampler.AmfRemotingMessage;
+import org.apache.jmeter.protocol.amf.sampler.AmfSampler;
+import org.apache.jmeter.protocol.amf.server.AmfStandInProfile;
+import org.apache.jmeter.protocol.amf.server.AmfStandInServer;
+import org.apache.jmeter.testelement.property.PropertyIterator;
+import org.apache.jmeter.threads.JMeterContext;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+
+/**
+ * A soak test of long running AMF Request samplers, failing if memory retained by the
+ * samplers keeps growing.
+ * <p>
+ * Samplers are run on many threads, each with its own sampler and JMeter context as in a
+ * JMeter thread group, against an in-process AmfStandInServer or another endpoint, until
+ * the target number of samples or the duration is reached.  At each interval the heap in
+ * use is measured, after a full collection, and each thread reports probes of the state
+ * it holds between samples: the number of sampler arguments and properties, and the
+ * number of JMeter variables.
+ * <p>
+ * After the warm up period the test fails if:
+ * <ul>
+ * <li>the retained heap grows steadily, the slope of a linear fit of heap in use against
+ * samples being more than maxRetainedBytesPerSample with an R<sup>2</sup> of at least
+ * minFit, i.e. each sample leaves behind some memory on its thread, or</li>
+ * <li>any probe of any thread grows, e.g. the sampler Arguments growing on each sample.</li>
+ * </ul>
+ * If histogram=true, class histograms taken at the end of the warm up and of the test are
+ * compared and the classes with the most growth reported, to identify what is retained.
+ * <p>
+ * The timeline and verdict are written as JSON, and the process exits with status 1 if
+ * the test fails.  Options are given as name=value:
+ * <ul>
+ * <li>threads=16, samples=2000000, duration=0 - seconds, 0 to run until samples are taken</li>
+ * <li>warmup=60, interval=10 - seconds</li>
+ * <li>gc=true - collect before each heap measurement, otherwise the heap after the last collection is used</li>
+ * <li>maxRetainedBytesPerSample=1.0, minFit=0.8, histogram=false</li>
+ * <li>message=remoting, parameters=4, payload=256, rows=0, errors=0, latency=0, url=, out=, arg.name=value
+ * - as for AmfThroughputHarness</li>
+ * </ul>
+ *
+ */
+public class AmfSoakTest {
+
+	private static final String ARGUMENT_OPTION_PREFIX = "arg."; // $NON-NLS-1$
+
+	private static final String[] PROBES = { "samplerArguments", "samplerProperties", "variables" }; // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+
+	private static final int PROBE_EVERY = 1000;
+
+	private static final int HISTOGRAM_CLASSES = 10;
+
+	//--------------------------------------------------------------------------
+	// Private Variables
+	//--------------------------------------------------------------------------
+
+	private int threads = 16;
+	private long targetSamples = 2000000;
+	private long durationSeconds = 0;
+	private int warmupSeconds = 60;
+	private int intervalSeconds = 10;
+	private boolean gc = true;
+	private double maxRetainedBytesPerSample = 1.0;
+	private double minFit = 0.8;
+	private boolean histogram = false;
+	private String message = "remoting"; // $NON-NLS-1$
+	private int parameters = 4;
+	private String externalUrl = null;
+	private String out = null;
+	private AmfStandInProfile profile = new AmfStandInProfile();
+	private final Map<String, String> samplerArguments = new LinkedHashMap<String, String>();
+
+	private volatile boolean stopping = false;
+
+	//--------------------------------------------------------------------------
+	//
+	// Options
+	//
+	//--------------------------------------------------------------------------
+
+	void parse(String[] args) {
+		List<String> profileOptions = new ArrayList<String>();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Invalid option '" + arg + "', expected name=value");
+			}
+			String name = arg.substring(0, equals).trim();
+			String value = arg.substring(equals + 1).trim();
+			if (name.startsWith(ARGUMENT_OPTION_PREFIX)) {
+				samplerArguments.put(name.substring(ARGUMENT_OPTION_PREFIX.length()), value);
+			} else if ("threads".equals(name)) { // $NON-NLS-1$
+				threads = Integer.parseInt(value);
+			} else if ("samples".equals(name)) { // $NON-NLS-1$
+				targetSamples = Long.parseLong(value);
+			} else if ("duration".equals(name)) { // $NON-NLS-1$
+				durationSeconds = Long.parseLong(value);
+			} else if ("warmup".equals(name)) { // $NON-NLS-1$
+				warmupSeconds = Integer.parseInt(value);
+			} else if ("interval".equals(name)) { // $NON-NLS-1$
+				intervalSeconds = Integer.parseInt(value);
+			} else if ("gc".equals(name)) { // $NON-NLS-1$
+				gc = Boolean.valueOf(value).booleanValue();
+			} else if ("maxRetainedBytesPerSample".equals(name)) { // $NON-NLS-1$
+				maxRetainedBytesPerSample = Double.parseDouble(value);
+			} else if ("minFit".equals(name)) { // $NON-NLS-1$
+				minFit = Double.parseDouble(value);
+			} else if ("histogram".equals(name)) { // $NON-NLS-1$
+				histogram = Boolean.valueOf(value).booleanValue();
+			} else if ("message".equals(name)) { // $NON-NLS-1$
+				if (!"remoting".equals(value) && !"command".equals(value)) { // $NON-NLS-1$ $NON-NLS-2$
+					throw new IllegalArgumentException("Invalid message '" + value + "', expected remoting or command");
+				}
+				message = value;
+			} else if ("parameters".equals(name)) { // $NON-NLS-1$
+				parameters = Integer.parseInt(value);
+			} else if ("latency".equals(name)) { // $NON-NLS-1$
+				profileOptions.add("latency=fixed:" + value); // $NON-NLS-1$
+			} else if ("url".equals(name)) { // $NON-NLS-1$
+				externalUrl = value;
+			} else if ("out".equals(name)) { // $NON-NLS-1$
+				out = value;
+			} else {
+				profileOptions.add(arg);
+			}
+		}
+		if (threads <= 0 || intervalSeconds <= 0 || warmupSeconds < 0) {
+			throw new IllegalArgumentException("threads and interval must be positive, warmup not negative");
+		}
+		if (targetSamples <= 0 && durationSeconds <= 0) {
+			throw new IllegalArgumentException("One of samples or duration must be positive");
+		}
+		profile = AmfStandInProfile.parse(profileOptions.toArray(new String[profileOptions.size()]));
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Run
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * @return true if the test passed.
+	 */
+	boolean run() throws Exception {
+		AmfStandInServer server = null;
+		URL url;
+		if (externalUrl != null) {
+			url = new URL(externalUrl);
+		} else {
+			server = new AmfStandInServer(0, profile);
+			server.start();
+			url = new URL(server.getUrl());
+		}
+
+		List<Point> timeline = new ArrayList<Point>();
+		Worker[] workers = new Worker[threads];
+		Map<String, long[]> warmupHistogram = null;
+		Map<String, long[]> endHistogram = null;
+		int warmupPoints = -1;
+		long[][] warmupProbes = null;
+		long start = System.nanoTime();
+		try {
+			for (int i = 0; i < threads; i++) {
+				workers[i] = new Worker(i, createSampler(url, i));
+				workers[i].start();
+			}
+
+			long nextPoint = start;
+			while (!stopping) {
+				nextPoint += TimeUnit.SECONDS.toNanos(intervalSeconds);
+				long sleep = nextPoint - System.nanoTime();
+				if (sleep > 0) {
+					TimeUnit.NANOSECONDS.sleep(sleep);
+				}
+				long samples = 0;
+				long errors = 0;
+				for (Worker worker : workers) {
+					samples += worker.samples;
+					errors += worker.errors;
+					if (worker.failure != null) {
+						throw new IllegalStateException("Sampling thread failed", worker.failure);
+					}
+				}
+				Point point = new Point((System.nanoTime() - start) / 1e9, samples, errors, heapUsed(), probes(workers));
+				timeline.add(point);
+				System.err.println(point.summary());
+
+				if (warmupPoints < 0 && point.seconds >= warmupSeconds) {
+					warmupPoints = timeline.size() - 1;
+					warmupProbes = point.probes;
+					if (histogram) {
+						warmupHistogram = classHistogram();
+					}
+				}
+				if ((targetSamples > 0 && samples >= targetSamples)
+						|| (durationSeconds > 0 && point.seconds >= durationSeconds)) {
+					stopping = true;
+				}
+			}
+			if (histogram && warmupHistogram != null) {
+				endHistogram = classHistogram();
+			}
+		} finally {
+			stopping = true;
+			for (Worker worker : workers) {
+				if (worker != null) {
+					worker.join();
+				}
+			}
+			if (server != null) {
+				server.stop(0);
+			}
+		}
+
+		Verdict verdict = analyse(timeline, warmupPoints, warmupProbes);
+		List<String[]> growth = histogramGrowth(warmupHistogram, endHistogram);
+
+		PrintWriter json = new PrintWriter(out == null ? new OutputStreamWriter(System.out, "UTF-8") // $NON-NLS-1$
+			: new OutputStreamWriter(new FileOutputStream(new File(out)), "UTF-8")); // $NON-NLS-1$
+		writeJson(json, url, timeline, verdict, growth);
+		json.flush();
+		if (out != null) {
+			json.close();
+		}
+		System.err.println((verdict.passed ? "PASSED: " : "FAILED: ") + verdict.reason); // $NON-NLS-1$ $NON-NLS-2$
+		return verdict.passed;
+	}
+
+	private AmfSampler createSampler(URL url, int thread) {
+		Arguments arguments = "command".equals(message) // $NON-NLS-1$
+			? AmfBenchmarkFixtures.createCommandArguments()
+			: AmfBenchmarkFixtures.createRemotingArguments(parameters);
+		AmfBenchmarkFixtures.setArguments(arguments, samplerArguments);
+		return AmfBenchmarkFixtures.createSampler(url, "AMF Request " + (thread + 1), // $NON-NLS-1$
+				"command".equals(message) ? AmfCommandMessage.class.getName() : AmfRemotingMessage.class.getName(), // $NON-NLS-1$
+				arguments);
+	}
+
+	private long heapUsed() {
+		if (gc) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static long[][] probes(Worker[] workers) {
+		long[][] probes = new long[workers.length][];
+		for (int i = 0; i < workers.length; i++) {
+			probes[i] = workers[i].probes;
+		}
+		return probes;
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Analysis
+	//
+	//--------------------------------------------------------------------------
+
+	private static class Verdict {
+		boolean passed = true;
+		String reason = "no growth"; // $NON-NLS-1$
+		double retainedBytesPerSample = Double.NaN;
+		double fit = Double.NaN;
+		List<String> probeGrowth = new ArrayList<String>();
+	}
+
+	private Verdict analyse(List<Point> timeline, int warmupPoints, long[][] warmupProbes) {
+		Verdict verdict = new Verdict();
+		if (warmupPoints < 0 || timeline.size() - warmupPoints < 4) {
+			verdict.passed = false;
+			verdict.reason = "too few measurements after warm up, increase samples or duration"; // $NON-NLS-1$
+			return verdict;
+		}
+
+		// Least squares fit of heap in use against samples taken
+		List<Point> measured = timeline.subList(warmupPoints, timeline.size());
+		int n = measured.size();
+		double sumX = 0, sumY = 0;
+		for (Point point : measured) {
+			sumX += point.samples;
+			sumY += point.heapUsed;
+		}
+		double meanX = sumX / n;
+		double meanY = sumY / n;
+		double sxx = 0, sxy = 0, syy = 0;
+		for (Point point : measured) {
+			double dx = point.samples - meanX;
+			double dy = point.heapUsed - meanY;
+			sxx += dx * dx;
+			sxy += dx * dy;
+			syy += dy * dy;
+		}
+		verdict.retainedBytesPerSample = sxx == 0 ? 0 : sxy / sxx;
+		verdict.fit = sxx == 0 || syy == 0 ? 0 : (sxy * sxy) / (sxx * syy);
+
+		long[][] endProbes = timeline.get(timeline.size() - 1).probes;
+		for (int t = 0; t < endProbes.length; t++) {
+			for (int p = 0; p < PROBES.length; p++) {
+				if (endProbes[t][p] > warmupProbes[t][p]) {
+					verdict.probeGrowth.add("thread " + (t + 1) + " " + PROBES[p] + " " // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+							+ warmupProbes[t][p] + " -> " + endProbes[t][p]); // $NON-NLS-1$
+				}
+			}
+		}
+
+		if (verdict.retainedBytesPerSample > maxRetainedBytesPerSample && verdict.fit >= minFit) {
+			verdict.passed = false;
+			verdict.reason = String.format(Locale.ROOT, "heap grows by %.2f bytes per sample (R2 %.2f), more than %.2f", // $NON-NLS-1$
+					Double.valueOf(verdict.retainedBytesPerSample), Double.valueOf(verdict.fit),
+					Double.valueOf(maxRetainedBytesPerSample));
+		} else if (!verdict.probeGrowth.isEmpty()) {
+			verdict.passed = false;
+			verdict.reason = verdict.probeGrowth.size() + " thread probes grew, first " + verdict.probeGrowth.get(0); // $NON-NLS-1$
+		} else {
+			verdict.reason = String.format(Locale.ROOT, "heap grows by %.2f bytes per sample (R2 %.2f), probes stable", // $NON-NLS-1$
+					Double.valueOf(verdict.retainedBytesPerSample), Double.valueOf(verdict.fit));
+		}
+		return verdict;
+	}
+
+	/**
+	 * @return a class histogram of live objects, by class name: instances, bytes.
+	 * Empty if the JVM does not provide the gcClassHistogram diagnostic command.
+	 */
+	private static Map<String, long[]> classHistogram() {
+		Map<String, long[]> histogram = new HashMap<String, long[]>();
+		String text;
+		try {
+			text = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+					new ObjectName("com.sun.management:type=DiagnosticCommand"), // $NON-NLS-1$
+					"gcClassHistogram", new Object[] { new String[0] }, // $NON-NLS-1$
+					new String[] { String[].class.getName() });
+		} catch (Exception ex) {
+			System.err.println("Class histogram not available: " + ex);
+			return histogram;
+		}
+		// num:  #instances  #bytes  class name
+		for (String line : text.split("\n")) { // $NON-NLS-1$
+			String[] fields = line.trim().split("\\s+"); // $NON-NLS-1$
+			if (fields.length >= 4 && fields[0].endsWith(":")) { // $NON-NLS-1$
+				try {
+					histogram.put(fields[3], new long[] { Long.parseLong(fields[1]), Long.parseLong(fields[2]) });
+				} catch (NumberFormatException ex) {
+					// Not a histogram row
+				}
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return the classes with the most growth in bytes: class name, instance growth, byte growth.
+	 */
+	private static List<String[]> histogramGrowth(Map<String, long[]> before, Map<String, long[]> after) {
+		List<String[]> growth = new ArrayList<String[]>();
+		if (before == null || after == null) {
+			return growth;
+		}
+		final Map<String, long[]> deltas = new HashMap<String, long[]>();
+		for (Map.Entry<String, long[]> entry : after.entrySet()) {
+			long[] previous = before.get(entry.getKey());
+			long instances = entry.getValue()[0] - (previous == null ? 0 : previous[0]);
+			long bytes = entry.getValue()[1] - (previous == null ? 0 : previous[1]);
+			if (bytes > 0) {
+				deltas.put(entry.getKey(), new long[] { instances, bytes });
+			}
+		}
+		List<String> names = new ArrayList<String>(deltas.keySet());
+		Collections.sort(names, new Comparator<String>() {
+			public int compare(String a, String b) {
+				long difference = deltas.get(b)[1] - deltas.get(a)[1];
+				return difference > 0 ? 1 : difference < 0 ? -1 : 0;
+			}
+		});
+		for (String name : names.subList(0, Math.min(HISTOGRAM_CLASSES, names.size()))) {
+			long[] delta = deltas.get(name);
+			growth.add(new String[] { name, Long.toString(delta[0]), Long.toString(delta[1]) });
+		}
+		return growth;
+	}
+
+	private void writeJson(PrintWriter json, URL url, List<Point> timeline, Verdict verdict, List<String[]> growth) {
+		json.println("{"); // $NON-NLS-1$
+		json.println("  \"test\": " + quote(getClass().getSimpleName()) + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"endpoint\": " + quote(url.toString()) + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"threads\": " + threads + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"message\": " + quote(message) + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"maxHeapBytes\": " + Runtime.getRuntime().maxMemory() + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"passed\": " + verdict.passed + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"reason\": " + quote(verdict.reason) + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"retainedBytesPerSample\": " + number(verdict.retainedBytesPerSample) + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"fit\": " + number(verdict.fit) + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.print("  \"probeGrowth\": ["); // $NON-NLS-1$
+		for (int i = 0; i < verdict.probeGrowth.size(); i++) {
+			json.print((i > 0 ? ", " : "") + quote(verdict.probeGrowth.get(i))); // $NON-NLS-1$ $NON-NLS-2$
+		}
+		json.println("],"); // $NON-NLS-1$
+		json.print("  \"histogramGrowth\": ["); // $NON-NLS-1$
+		for (int i = 0; i < growth.size(); i++) {
+			String[] row = growth.get(i);
+			json.print((i > 0 ? ", " : "") + "{\"class\": " + quote(row[0]) + ", \"instances\": " + row[1] // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$ $NON-NLS-4$
+					+ ", \"bytes\": " + row[2] + "}"); // $NON-NLS-1$ $NON-NLS-2$
+		}
+		json.println("],"); // $NON-NLS-1$
+		json.println("  \"timeline\": ["); // $NON-NLS-1$
+		for (int i = 0; i < timeline.size(); i++) {
+			Point point = timeline.get(i);
+			json.println("    {\"seconds\": " + number(point.seconds) + ", \"samples\": " + point.samples // $NON-NLS-1$ $NON-NLS-2$
+					+ ", \"errors\": " + point.errors + ", \"heapUsedBytes\": " + point.heapUsed // $NON-NLS-1$ $NON-NLS-2$
+					+ ", \"maxProbes\": " + maxProbes(point.probes) + "}" // $NON-NLS-1$ $NON-NLS-2$
+					+ (i < timeline.size() - 1 ? "," : "")); // $NON-NLS-1$ $NON-NLS-2$
+		}
+		json.println("  ]"); // $NON-NLS-1$
+		json.println("}"); // $NON-NLS-1$
+	}
+
+	private static String maxProbes(long[][] probes) {
+		StringBuilder sb = new StringBuilder("{"); // $NON-NLS-1$
+		for (int p = 0; p < PROBES.length; p++) {
+			long max = 0;
+			for (long[] thread : probes) {
+				max = Math.max(max, thread[p]);
+			}
+			sb.append(p > 0 ? ", " : "").append(quote(PROBES[p])).append(": ").append(max); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+		}
+		return sb.append('}').toString();
+	}
+
+	private static String number(double value) {
+		return Double.isNaN(value) ? "null" : String.format(Locale.ROOT, "%.3f", Double.valueOf(value)); // $NON-NLS-1$ $NON-NLS-2$
+	}
+
+	private static String quote(String value) {
+		StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < ' ') {
+				sb.append(String.format("\\u%04x", Integer.valueOf(c))); // $NON-NLS-1$
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * A measurement of the heap and thread probes.
+	 */
+	private static class Point {
+		final double seconds;
+		final long samples;
+		final long errors;
+		final long heapUsed;
+		final long[][] probes;
+
+		Point(double seconds, long samples, long errors, long heapUsed, long[][] probes) {
+			this.seconds = seconds;
+			this.samples = samples;
+			this.errors = errors;
+			this.heapUsed = heapUsed;
+			this.probes = probes;
+		}
+
+		String summary() {
+			return String.format(Locale.ROOT, "%8.0fs %,12d samples %,8d errors %,14d heap bytes, max probes %s", // $NON-NLS-1$
+					Double.valueOf(seconds), Long.valueOf(samples), Long.valueOf(errors), Long.valueOf(heapUsed),
+					maxProbes(probes));
+		}
+	}
+
+	/**
+	 * A sampling thread, with its own sampler and JMeter context.
+	 */
+	private class Worker extends Thread {
+		private final int thread;
+		private final AmfSampler sampler;
+
+		volatile long samples = 0;
+		volatile long errors = 0;
+		/**
+		 * Replaced, never modified, so that the monitor sees a consistent set.
+		 */
+		volatile long[] probes = new long[PROBES.length];
+		volatile Throwable failure = null;
+
+		Worker(int thread, AmfSampler sampler) {
+			super("AMF Soak " + (thread + 1)); // $NON-NLS-1$
+			this.thread = thread;
+			this.sampler = sampler;
+		}
+
+		@Override
+		public void run() {
+			JMeterContext context = JMeterContextService.getContext();
+			JMeterVariables variables = new JMeterVariables();
+			context.setVariables(variables);
+			context.setThreadNum(thread);
+			context.setCurrentSampler(sampler);
+			try {
+				long count = 0;
+				long failed = 0;
+				while (!stopping) {
+					if (!sampler.sample(null).isSuccessful()) {
+						failed++;
+					}
+					count++;
+					if (count % PROBE_EVERY == 0) {
+						samples = count;
+						errors = failed;
+						probes = probe(variables);
+					}
+				}
+				samples = count;
+				errors = failed;
+				probes = probe(variables);
+			} catch (Throwable ex) {
+				failure = ex;
+				stopping = true;
+			} finally {
+				sampler.threadFinished();
+			}
+		}
+
+		private long[] probe(JMeterVariables variables) {
+			long[] values = new long[PROBES.length];
+			values[0] = ((Arguments) sampler.getProperty(AmfSampler.ARGUMENTS).getObjectValue()).getArgumentCount();
+			for (PropertyIterator iter = sampler.propertyIterator(); iter.hasNext(); iter.next()) {
+				values[1]++;
+			}
+			for (Iterator<?> iter = variables.getIterator(); iter.hasNext(); iter.next()) {
+				values[2]++;
+			}
+			return values;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (!AmfBenchmarkFixtures.initJMeter()) {
+			System.exit(2);
+		}
+		AmfSoakTest test = new AmfSoakTest();
+		try {
+			test.parse(args);
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.err.println("Usage: java " + AmfSoakTest.class.getName() + " [name=value...]");
+			System.err.println("  threads=16 samples=2000000 duration=0 warmup=60 interval=10 gc=true");
+			System.err.println("  maxRetainedBytesPerSample=1.0 minFit=0.8 histogram=false");
+			System.err.println("  message=remoting|command parameters=4 payload=256 rows=0 errors=0 latency=ms");
+			System.err.println("  url=external-endpoint out=soak.json arg.name=value");
+			System.exit(2);
+		}
+		System.exit(test.run() ? 0 : 1);
+	}
+
+}
@@ -0,0 +1,518 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.protocol.amf.sampler.AmfCommandMessage;
+import org.apache.jmeter.protocol.amf.sampler.AmfRemotingMessage;
+import org.apache.jmeter.protocol.amf.sampler.AmfSampler;
+import org.apache.jmeter.protocol.amf.server.AmfStandInProfile;
+import org.apache.jmeter.protocol.amf.server.AmfStandInServer;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.threads.JMeterContext;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+
+/**
+ * Runs AmfSampler.sample() in a loop on 1..N threads against a loopback AMF endpoint,
+ * by default an in-process AmfStandInServer, to find how many threads one JVM can drive
+ * before the cost of the sampler itself distorts the measurements.
+ * <p>
+ * Each step runs a number of threads, each with its own sampler, for a warm up period
+ * and then a measurement period, and reports:
+ * <ul>
+ * <li>samplesPerSecond - samples completed per second, by all threads.</li>
+ * <li>sampleMicros - percentiles of the wall clock time of each call to sample(), over
+ * the whole measurement period.</li>
+ * <li>overheadMicros - percentiles of the sample time less the fixed latency of the
+ * stand-in server, i.e. the time spent by the client, the loopback connection and the
+ * stand-in server itself.</li>
+ * <li>allocatedBytesPerSample - bytes allocated by the sampling threads per sample,
+ * where supported by the JVM.</li>
+ * <li>gcMillis, gcCount - collection time and count of all collectors during measurement,
+ * which includes collecting the garbage of an in-process stand-in server.</li>
+ * </ul>
+ * The results are written as JSON.  Options are given as name=value:
+ * <ul>
+ * <li>threads=1,2,4,8 - thread counts of each step</li>
+ * <li>warmup=5 - warm up seconds of each step</li>
+ * <li>duration=10 - measurement seconds of each step</li>
+ * <li>message=remoting - remoting or command</li>
+ * <li>parameters=4 - call parameters of each RemotingMessage</li>
+ * <li>payload=256, rows=0, errors=0 - response profile of the stand-in server</li>
+ * <li>latency=0 - fixed latency, in milliseconds, of the stand-in server</li>
+ * <li>url= - an external endpoint to use in place of the stand-in server, overheadMicros
+ * then includes the time spent by that server</li>
+ * <li>out= - file to write the results to, default standard output</li>
+ * <li>arg.name=value - additional Send Parameters With Request, e.g.
+ * "arg.Reuse Serialization Buffers=true"</li>
+ * </ul>
+ * The jmeter.home system property must name a JMeter installation, whose properties are loaded.
+ *
+ */
+public class AmfThroughputHarness {
+
+	private static final String ARGUMENT_OPTION_PREFIX = "arg."; // $NON-NLS-1$
+
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	/**
+	 * The precision of the recorded sample times.
+	 */
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	/**
+	 * The largest sample time the histograms are sized for up front, they grow to record
+	 * longer ones.
+	 */
+	private static final long HIGHEST_SAMPLE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	//--------------------------------------------------------------------------
+	// Private Variables
+	//--------------------------------------------------------------------------
+
+	private int[] threadCounts = { 1, 2, 4, 8 };
+	private int warmupSeconds = 5;
+	private int durationSeconds = 10;
+	private String message = "remoting"; // $NON-NLS-1$
+	private int parameters = 4;
+	private double latencyMillis = 0;
+	private String externalUrl = null;
+	private String out = null;
+	private AmfStandInProfile profile = new AmfStandInProfile();
+	private final Map<String, String> samplerArguments = new LinkedHashMap<String, String>();
+
+	//--------------------------------------------------------------------------
+	//
+	// Options
+	//
+	//--------------------------------------------------------------------------
+
+	void parse(String[] args) {
+		List<String> profileOptions = new ArrayList<String>();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Invalid option '" + arg + "', expected name=value");
+			}
+			String name = arg.substring(0, equals).trim();
+			String value = arg.substring(equals + 1).trim();
+			if (name.startsWith(ARGUMENT_OPTION_PREFIX)) {
+				samplerArguments.put(name.substring(ARGUMENT_OPTION_PREFIX.length()), value);
+			} else if ("threads".equals(name)) { // $NON-NLS-1$
+				String[] counts = value.split(","); // $NON-NLS-1$
+				threadCounts = new int[counts.length];
+				for (int i = 0; i < counts.length; i++) {
+					threadCounts[i] = positive(name, counts[i]);
+				}
+			} else if ("warmup".equals(name)) { // $NON-NLS-1$
+				warmupSeconds = Integer.parseInt(value);
+			} else if ("duration".equals(name)) { // $NON-NLS-1$
+				durationSeconds = positive(name, value);
+			} else if ("message".equals(name)) { // $NON-NLS-1$
+				if (!"remoting".equals(value) && !"command".equals(value)) { // $NON-NLS-1$ $NON-NLS-2$
+					throw new IllegalArgumentException("Invalid message '" + value + "', expected remoting or command");
+				}
+				message = value;
+			} else if ("parameters".equals(name)) { // $NON-NLS-1$
+				parameters = Integer.parseInt(value);
+			} else if ("latency".equals(name)) { // $NON-NLS-1$
+				latencyMillis = Double.parseDouble(value);
+				profileOptions.add("latency=fixed:" + value); // $NON-NLS-1$
+			} else if ("url".equals(name)) { // $NON-NLS-1$
+				externalUrl = value;
+			} else if ("out".equals(name)) { // $NON-NLS-1$
+				out = value;
+			} else {
+				profileOptions.add(arg);
+			}
+		}
+		profile = AmfStandInProfile.parse(profileOptions.toArray(new String[profileOptions.size()]));
+	}
+
+	private static int positive(String name, String value) {
+		int n = Integer.parseInt(value.trim());
+		if (n <= 0) {
+			throw new IllegalArgumentException(name + " must be positive: " + value);
+		}
+		return n;
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Run
+	//
+	//--------------------------------------------------------------------------
+
+	void run() throws Exception {
+		AmfStandInServer server = null;
+		URL url;
+		if (externalUrl != null) {
+			url = new URL(externalUrl);
+		} else {
+			server = new AmfStandInServer(0, profile);
+			server.start();
+			url = new URL(server.getUrl());
+		}
+
+		List<Step> steps = new ArrayList<Step>();
+		try {
+			for (int threads : threadCounts) {
+				Step step = runStep(url, threads);
+				steps.add(step);
+				System.err.println(step.summary());
+			}
+		} finally {
+			if (server != null) {
+				server.stop(0);
+			}
+		}
+
+		Writer writer = out == null ? new OutputStreamWriter(System.out, "UTF-8") // $NON-NLS-1$
+			: new OutputStreamWriter(new FileOutputStream(new File(out)), "UTF-8"); // $NON-NLS-1$
+		PrintWriter json = new PrintWriter(writer);
+		writeJson(json, url, steps);
+		json.flush();
+		if (out != null) {
+			json.close();
+			System.err.println("Results written to " + out);
+		}
+	}
+
+	private Step runStep(URL url, int threads) throws InterruptedException {
+		final Step step = new Step(threads);
+		final Worker[] workers = new Worker[threads];
+		final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+		CyclicBarrier start = new CyclicBarrier(threads, new Runnable() {
+			public void run() {
+				step.warmupStart = System.nanoTime();
+			}
+		});
+		CyclicBarrier measure = new CyclicBarrier(threads, new Runnable() {
+			public void run() {
+				step.gcMillis = -collectionTime(collectors);
+				step.gcCount = -collectionCount(collectors);
+				step.measureStart = System.nanoTime();
+			}
+		});
+
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(i, createSampler(url, i), step, start, measure);
+			workers[i].start();
+		}
+		for (Worker worker : workers) {
+			worker.join();
+		}
+		long measureEnd = System.nanoTime();
+		step.gcMillis += collectionTime(collectors);
+		step.gcCount += collectionCount(collectors);
+		step.elapsedNanos = measureEnd - step.measureStart;
+
+		Histogram sampleNanos = createHistogram();
+		for (Worker worker : workers) {
+			if (worker.failure != null) {
+				throw new IllegalStateException("Sampling thread failed", worker.failure);
+			}
+			step.samples += worker.samples;
+			step.errors += worker.errors;
+			sampleNanos.add(worker.sampleNanos);
+			if (step.allocatedBytes >= 0) {
+				step.allocatedBytes = worker.allocatedBytes < 0 ? -1 : step.allocatedBytes + worker.allocatedBytes;
+			}
+		}
+		step.sampleNanos = sampleNanos;
+		return step;
+	}
+
+	private static Histogram createHistogram() {
+		Histogram histogram = new Histogram(HIGHEST_SAMPLE_NANOS, SIGNIFICANT_DIGITS);
+		histogram.setAutoResize(true);
+		return histogram;
+	}
+
+	private AmfSampler createSampler(URL url, int thread) {
+		Arguments arguments = "command".equals(message) // $NON-NLS-1$
+			? AmfBenchmarkFixtures.createCommandArguments()
+			: AmfBenchmarkFixtures.createRemotingArguments(parameters);
+		AmfBenchmarkFixtures.setArguments(arguments, samplerArguments);
+		return AmfBenchmarkFixtures.createSampler(url, "AMF Request " + (thread + 1), // $NON-NLS-1$
+				"command".equals(message) ? AmfCommandMessage.class.getName() : AmfRemotingMessage.class.getName(), // $NON-NLS-1$
+				arguments);
+	}
+
+	private static long collectionTime(List<GarbageCollectorMXBean> collectors) {
+		long time = 0;
+		for (GarbageCollectorMXBean collector : collectors) {
+			time += Math.max(0, collector.getCollectionTime());
+		}
+		return time;
+	}
+
+	private static long collectionCount(List<GarbageCollectorMXBean> collectors) {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : collectors) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+
+	/**
+	 * @return the bytes allocated by the current thread, or -1 if not supported.
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+			if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+				return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Results
+	//
+	//--------------------------------------------------------------------------
+
+	private void writeJson(PrintWriter json, URL url, List<Step> steps) {
+		json.println("{"); // $NON-NLS-1$
+		json.println("  \"harness\": " + quote(getClass().getSimpleName()) + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"timestamp\": " + quote(String.format("%tFT%<tT%<tz", new Date())) + ","); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+		json.println("  \"java\": " + quote(System.getProperty("java.version") + " " // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+				+ System.getProperty("java.vm.name")) + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"processors\": " + Runtime.getRuntime().availableProcessors() + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"maxHeapBytes\": " + Runtime.getRuntime().maxMemory() + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"endpoint\": " + quote(url.toString()) + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"standInProfile\": " + (externalUrl == null ? quote(profile.toString()) : "null") + ","); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+		json.println("  \"message\": " + quote(message) + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"parameters\": " + parameters + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.print("  \"samplerArguments\": {"); // $NON-NLS-1$
+		String separator = ""; // $NON-NLS-1$
+		for (Map.Entry<String, String> entry : samplerArguments.entrySet()) {
+			json.print(separator + quote(entry.getKey()) + ": " + quote(entry.getValue())); // $NON-NLS-1$
+			separator = ", "; // $NON-NLS-1$
+		}
+		json.println("},"); // $NON-NLS-1$
+		json.println("  \"warmupSeconds\": " + warmupSeconds + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"durationSeconds\": " + durationSeconds + ","); // $NON-NLS-1$ $NON-NLS-2$
+		json.println("  \"results\": ["); // $NON-NLS-1$
+		for (int i = 0; i < steps.size(); i++) {
+			Step step = steps.get(i);
+			json.println("    {"); // $NON-NLS-1$
+			json.println("      \"threads\": " + step.threads + ","); // $NON-NLS-1$ $NON-NLS-2$
+			json.println("      \"samples\": " + step.samples + ","); // $NON-NLS-1$ $NON-NLS-2$
+			json.println("      \"errors\": " + step.errors + ","); // $NON-NLS-1$ $NON-NLS-2$
+			json.println("      \"elapsedSeconds\": " + format(step.elapsedNanos / 1e9) + ","); // $NON-NLS-1$ $NON-NLS-2$
+			json.println("      \"samplesPerSecond\": " + format(step.samplesPerSecond()) + ","); // $NON-NLS-1$ $NON-NLS-2$
+			json.println("      \"sampleMicros\": " + percentiles(step.sampleNanos, 0) + ","); // $NON-NLS-1$ $NON-NLS-2$
+			json.println("      \"overheadMicros\": " + percentiles(step.sampleNanos, latencyNanos()) + ","); // $NON-NLS-1$ $NON-NLS-2$
+			json.println("      \"allocatedBytesPerSample\": " // $NON-NLS-1$
+					+ (step.allocatedBytes < 0 || step.samples == 0 ? "null" : format((double) step.allocatedBytes / step.samples)) + ","); // $NON-NLS-1$ $NON-NLS-2$
+			json.println("      \"gcMillis\": " + step.gcMillis + ","); // $NON-NLS-1$ $NON-NLS-2$
+			json.println("      \"gcCount\": " + step.gcCount); // $NON-NLS-1$
+			json.println("    }" + (i < steps.size() - 1 ? "," : "")); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+		}
+		json.println("  ]"); // $NON-NLS-1$
+		json.println("}"); // $NON-NLS-1$
+	}
+
+	private long latencyNanos() {
+		return externalUrl == null ? (long) (latencyMillis * NANOS_PER_MILLI) : 0;
+	}
+
+	private static String percentiles(Histogram histogram, long offsetNanos) {
+		if (histogram.getTotalCount() == 0) {
+			return "null"; // $NON-NLS-1$
+		}
+		return "{\"p50\": " + micros(histogram.getValueAtPercentile(50), offsetNanos) // $NON-NLS-1$
+			+ ", \"p90\": " + micros(histogram.getValueAtPercentile(90), offsetNanos) // $NON-NLS-1$
+			+ ", \"p99\": " + micros(histogram.getValueAtPercentile(99), offsetNanos) // $NON-NLS-1$
+			+ ", \"max\": " + micros(histogram.getMaxValue(), offsetNanos) + "}"; // $NON-NLS-1$ $NON-NLS-2$
+	}
+
+	private static String micros(long nanos, long offsetNanos) {
+		return format(Math.max(0, nanos - offsetNanos) / 1000d);
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.1f", value); // $NON-NLS-1$
+	}
+
+	private static String quote(String value) {
+		StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < ' ') {
+				sb.append(String.format("\\u%04x", Integer.valueOf(c))); // $NON-NLS-1$
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * The results of one step.
+	 */
+	private static class Step {
+		final int threads;
+		volatile long warmupStart;
+		volatile long measureStart;
+		long elapsedNanos;
+		long samples;
+		long errors;
+		long allocatedBytes;
+		long gcMillis;
+		long gcCount;
+		Histogram sampleNanos;
+
+		Step(int threads) {
+			this.threads = threads;
+		}
+
+		double samplesPerSecond() {
+			return elapsedNanos == 0 ? 0 : samples * 1e9 / elapsedNanos;
+		}
+
+		String summary() {
+			return threads + " threads: " + format(samplesPerSecond()) + " samples/s, " + samples + " samples, "
+				+ errors + " errors, p50 " + (sampleNanos.getTotalCount() == 0 ? "-" : micros(sampleNanos.getValueAtPercentile(50), 0))
+				+ "us, p99 " + (sampleNanos.getTotalCount() == 0 ? "-" : micros(sampleNanos.getValueAtPercentile(99), 0)) + "us, "
+				+ (allocatedBytes < 0 || samples == 0 ? "-" : format((double) allocatedBytes / samples))
+				+ " bytes/sample, GC " + gcMillis + "ms";
+		}
+	}
+
+	/**
+	 * A sampling thread, with its own sampler and JMeter context.
+	 */
+	private class Worker extends Thread {
+		private final int thread;
+		private final AmfSampler sampler;
+		private final Step step;
+		private final CyclicBarrier start;
+		private final CyclicBarrier measure;
+
+		/**
+		 * Sized up front, so that recording only allocates for unusually long samples.
+		 */
+		final Histogram sampleNanos = createHistogram();
+		long samples = 0;
+		long errors = 0;
+		long allocatedBytes = -1;
+		Throwable failure = null;
+
+		Worker(int thread, AmfSampler sampler, Step step, CyclicBarrier start, CyclicBarrier measure) {
+			super("AMF Sampler " + step.threads + "-" + (thread + 1)); // $NON-NLS-1$ $NON-NLS-2$
+			this.thread = thread;
+			this.sampler = sampler;
+			this.step = step;
+			this.start = start;
+			this.measure = measure;
+		}
+
+		@Override
+		public void run() {
+			JMeterContext context = JMeterContextService.getContext();
+			context.setVariables(new JMeterVariables());
+			context.setThreadNum(thread);
+			context.setCurrentSampler(sampler);
+			try {
+				start.await();
+				long warmupEnd = step.warmupStart + TimeUnit.SECONDS.toNanos(warmupSeconds);
+				while (System.nanoTime() < warmupEnd) {
+					sampler.sample(null);
+				}
+
+				measure.await();
+				long measureEnd = step.measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+				long allocatedStart = allocatedBytes();
+				long now = System.nanoTime();
+				while (now < measureEnd) {
+					SampleResult result = sampler.sample(null);
+					long end = System.nanoTime();
+					samples++;
+					if (result == null || !result.isSuccessful()) {
+						errors++;
+					}
+					sampleNanos.recordValue(end - now);
+					now = end;
+				}
+				long allocatedEnd = allocatedBytes();
+				if (allocatedStart >= 0 && allocatedEnd >= 0) {
+					allocatedBytes = allocatedEnd - allocatedStart;
+				}
+			} catch (InterruptedException ex) {
+				failure = ex;
+			} catch (BrokenBarrierException ex) {
+				failure = ex;
+			} catch (RuntimeException ex) {
+				failure = ex;
+				start.reset();
+				measure.reset();
+			} finally {
+				sampler.threadFinished();
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (!AmfBenchmarkFixtures.initJMeter()) {
+			System.exit(2);
+		}
+
+		AmfThroughputHarness harness = new AmfThroughputHarness();
+		try {
+			harness.parse(args);
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.err.println("Usage: java " + AmfThroughputHarness.class.getName() + " [name=value...]");
+			System.err.println("  threads=1,2,4,8 warmup=5 duration=10 message=remoting|command parameters=4");
+			System.err.println("  payload=256 rows=0 latency=ms errors=0 url=external-endpoint out=results.json");
+			System.err.println("  arg.name=value");
+			System.exit(2);
+		}
+		harness.run();
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.proxy;
+
+/**
+ * A single recorded AMF request/response exchange.
+ *
+ */
+public class AmfConversationRecord {
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final long startTime;
+
+	private final int elapsed;
+
+	private final int status;
+
+	private final String url;
+
+	private final String messageType;
+
+	private final String destination;
+
+	private final String operation;
+
+	private final byte[] request;
+
+	private final byte[] response;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+	/**
+	 * @param startTime the time the request was received, in milliseconds since the epoch.
+	 * @param elapsed the time taken to receive the response from the server, in milliseconds.
+	 * @param status the HTTP status of the response.
+	 * @param url the URL the request was forwarded to.
+	 * @param messageType the class name of the first message in the request.
+	 * @param destination the destination of the first message in the request.
+	 * @param operation the operation of the first message in the request.
+	 * @param request the serialized AMF request.
+	 * @param response the (decompressed) AMF response.
+	 */
+	public AmfConversationRecord(long startTime, int elapsed, int status, String url, String messageType,
+			String destination, String operation, byte[] request, byte[] response) {
+		this.startTime = startTime;
+		this.elapsed = elapsed;
+		this.status = status;
+		this.url = nullToEmpty(url);
+		this.messageType = nullToEmpty(messageType);
+		this.destination = nullToEmpty(destination);
+		this.operation = nullToEmpty(operation);
+		this.request = request == null ? new byte[0] : request;
+		this.response = response == null ? new byte[0] : response;
+	}
+
+	private static String nullToEmpty(String value) {
+		return value == null ? "" : value; // $NON-NLS-1$
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public int getElapsed() {
+		return elapsed;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getMessageType() {
+		return messageType;
+	}
+
+	public String getDestination() {
+		return destination;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public byte[] getRequest() {
+		return request;
+	}
+
+	public byte[] getResponse() {
+		return response;
+	}
+
+	@Override
+	public String toString() {
+		return messageType + " " + destination + "." + operation + " [" + request.length + "/" // $NON-NLS-1$
+			+ response.length + " bytes, " + elapsed + " ms]"; // $NON-NLS-1$
+	}
+
+}
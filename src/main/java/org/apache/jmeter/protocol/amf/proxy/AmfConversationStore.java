@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * An indexed, append-only store of recorded AMF exchanges.
+ * <p>
+ * A store consists of a data file, name.amfs, to which records are appended and an
+ * index file, name.amfi, holding the position of each record so that records can be
+ * read in any order.  The index entry of a record is only written once the record
+ * itself has been written, so a record torn by a crash is discarded, by truncating the
+ * data file, when the store is next opened.
+ * <p>
+ * Data file: magic "AMFS", unsigned short version, then for each record:
+ * <pre>
+ *   startTime    long
+ *   elapsed      int
+ *   status       int
+ *   url, messageType, destination, operation    modified UTF-8 strings, empty if null
+ *   request      int length, bytes
+ *   response     int length, bytes
+ * </pre>
+ * Index file: magic "AMFI", unsigned short version, then for each record a long offset
+ * and an int length within the data file.
+ *
+ */
+public class AmfConversationStore {
+
+    //--------------------------------------------------------------------------
+    // Public Static Variables
+    //--------------------------------------------------------------------------
+
+	public static final String DATA_EXTENSION = ".amfs"; // $NON-NLS-1$
+
+	public static final String INDEX_EXTENSION = ".amfi"; // $NON-NLS-1$
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+	private static final int DATA_MAGIC = 0x414D4653; // "AMFS"
+
+	private static final int INDEX_MAGIC = 0x414D4649; // "AMFI"
+
+	private static final int VERSION = 1;
+
+	private static final int HEADER_LENGTH = 6;
+
+	private static final int INDEX_ENTRY_LENGTH = 12;
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final RandomAccessFile data;
+
+	private final RandomAccessFile index;
+
+	private int count;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+	private AmfConversationStore(RandomAccessFile data, RandomAccessFile index) throws IOException {
+		this.data = data;
+		this.index = index;
+
+		if (data.length() == 0) {
+			writeHeader(data, DATA_MAGIC);
+			writeHeader(index, INDEX_MAGIC);
+			count = 0;
+			return;
+		}
+		checkHeader(data, DATA_MAGIC);
+		checkHeader(index, INDEX_MAGIC);
+
+		// Discard any partial index entry, and any data after the last indexed record
+		count = (int) ((index.length() - HEADER_LENGTH) / INDEX_ENTRY_LENGTH);
+		index.setLength(HEADER_LENGTH + (long) count * INDEX_ENTRY_LENGTH);
+		long end = HEADER_LENGTH;
+		if (count > 0) {
+			index.seek(HEADER_LENGTH + (long) (count - 1) * INDEX_ENTRY_LENGTH);
+			end = index.readLong() + index.readInt();
+		}
+		if (end > data.length()) {
+			throw new IOException("Conversation store index refers past the end of the data file");
+		}
+		data.setLength(end);
+	}
+
+	/**
+	 * Open a store for reading and appending, creating it if it does not exist.
+	 *
+	 * @param base the path of the store, without extension.
+	 * @return the store.
+	 */
+	public static AmfConversationStore open(File base) throws IOException {
+		File dataFile = new File(base.getPath() + DATA_EXTENSION);
+		File indexFile = new File(base.getPath() + INDEX_EXTENSION);
+		if (dataFile.exists() != indexFile.exists()) {
+			throw new IOException("Conversation store is missing its " + (dataFile.exists() ? "index" : "data")
+					+ " file: " + base);
+		}
+		RandomAccessFile data = new RandomAccessFile(dataFile, "rw"); // $NON-NLS-1$
+		RandomAccessFile index = null;
+		try {
+			index = new RandomAccessFile(indexFile, "rw"); // $NON-NLS-1$
+			return new AmfConversationStore(data, index);
+		} catch (IOException ex) {
+			data.close();
+			if (index != null) {
+				index.close();
+			}
+			throw ex;
+		}
+	}
+
+	private static void writeHeader(RandomAccessFile file, int magic) throws IOException {
+		file.setLength(0);
+		file.writeInt(magic);
+		file.writeShort(VERSION);
+	}
+
+	private static void checkHeader(RandomAccessFile file, int magic) throws IOException {
+		file.seek(0);
+		if (file.length() < HEADER_LENGTH || file.readInt() != magic) {
+			throw new IOException("Not a conversation store file");
+		}
+		int version = file.readUnsignedShort();
+		if (version != VERSION) {
+			throw new IOException("Unsupported conversation store version " + version);
+		}
+	}
+
+	/**
+	 * Append a record to the store.
+	 *
+	 * @param record the record.
+	 * @return the index of the record.
+	 */
+	public synchronized int append(AmfConversationRecord record) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(record.getRequest().length
+				+ record.getResponse().length + 256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeLong(record.getStartTime());
+		out.writeInt(record.getElapsed());
+		out.writeInt(record.getStatus());
+		writeString(out, record.getUrl());
+		writeString(out, record.getMessageType());
+		writeString(out, record.getDestination());
+		writeString(out, record.getOperation());
+		out.writeInt(record.getRequest().length);
+		out.write(record.getRequest());
+		out.writeInt(record.getResponse().length);
+		out.write(record.getResponse());
+		out.flush();
+
+		long offset = data.length();
+		data.seek(offset);
+		data.write(bytes.toByteArray());
+
+		index.seek(HEADER_LENGTH + (long) count * INDEX_ENTRY_LENGTH);
+		index.writeLong(offset);
+		index.writeInt(bytes.size());
+		return count++;
+	}
+
+	/**
+	 * @return the number of records in the store.
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * Read a record.
+	 *
+	 * @param i the index of the record.
+	 * @return the record.
+	 */
+	public synchronized AmfConversationRecord read(int i) throws IOException {
+		if (i < 0 || i >= count) {
+			throw new IndexOutOfBoundsException("Record " + i + " of " + count);
+		}
+		index.seek(HEADER_LENGTH + (long) i * INDEX_ENTRY_LENGTH);
+		long offset = index.readLong();
+		index.readInt();
+
+		data.seek(offset);
+		long startTime = data.readLong();
+		int elapsed = data.readInt();
+		int status = data.readInt();
+		String url = readString(data);
+		String messageType = readString(data);
+		String destination = readString(data);
+		String operation = readString(data);
+		byte[] request = new byte[data.readInt()];
+		data.readFully(request);
+		byte[] response = new byte[data.readInt()];
+		data.readFully(response);
+		return new AmfConversationRecord(startTime, elapsed, status, url, messageType, destination, operation,
+				request, response);
+	}
+
+	/**
+	 * Write a string, writing null, e.g. the operation of a command message, as an empty string.
+	 */
+	private static void writeString(DataOutput out, String s) throws IOException {
+		out.writeUTF(s == null ? "" : s); // $NON-NLS-1$
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		String s = in.readUTF();
+		return s.length() == 0 ? null : s;
+	}
+
+	/**
+	 * Close the store files.
+	 */
+	public synchronized void close() throws IOException {
+		try {
+			data.close();
+		} finally {
+			index.close();
+		}
+	}
+
+}
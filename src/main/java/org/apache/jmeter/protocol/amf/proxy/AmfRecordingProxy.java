@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.proxy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.jmeter.protocol.amf.sampler.AmfMessageHelper;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.messages.RemotingMessage;
+
+/**
+ * A reverse proxy that records the AMF traffic between a Flex client and a server.
+ * <p>
+ * The Flex application is pointed at the proxy in place of the server, e.g. by loading
+ * it through the proxy or by changing the channel endpoint URL, and every request is
+ * forwarded to the same path on the target server.  Requests with the AMF content type
+ * are appended, with their response and timing, to an AmfConversationStore, from which
+ * AmfTestPlanGenerator can generate AMF Request samplers and a request corpus.
+ * <p>
+ * Usage: java org.apache.jmeter.protocol.amf.proxy.AmfRecordingProxy port target-url store-path
+ * <br>
+ * e.g. java ... AmfRecordingProxy 8088 http://flexserver:8400 recordings/login
+ *
+ */
+public class AmfRecordingProxy {
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final String AMF_CONTENT_TYPE = "application/x-amf"; // $NON-NLS-1$
+
+    /**
+     * Headers that apply to a single connection, in lower case, which are not forwarded.
+     */
+    private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<String>(Arrays.asList(new String[] {
+    	"connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "proxy-connection", // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$ $NON-NLS-4$ $NON-NLS-5$
+    	"te", "trailer", "trailers", "transfer-encoding", "upgrade", "host", "content-length" // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$ $NON-NLS-4$ $NON-NLS-5$ $NON-NLS-6$ $NON-NLS-7$
+    }));
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+    private final int port;
+
+    private final URL target;
+
+    private final AmfConversationStore store;
+
+    private HttpServer server = null;
+
+    private ExecutorService executor = null;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * @param port the local port to listen on, 0 for any free port.
+     * @param target the URL of the server, only the protocol, host and port are used.
+     * @param store the store the AMF exchanges are appended to.
+     */
+    public AmfRecordingProxy(int port, URL target, AmfConversationStore store) {
+    	this.port = port;
+    	this.target = target;
+    	this.store = store;
+    }
+
+    /**
+     * Start accepting connections.
+     */
+    public synchronized void start() throws IOException {
+    	server = HttpServer.create(new InetSocketAddress(port), 0);
+    	server.createContext("/", new HttpHandler() { // $NON-NLS-1$
+    		public void handle(HttpExchange exchange) throws IOException {
+    			try {
+    				forward(exchange);
+    			} finally {
+    				exchange.close();
+    			}
+    		}
+    	});
+    	executor = Executors.newCachedThreadPool();
+    	server.setExecutor(executor);
+    	server.start();
+    	log.info("AMF recording proxy listening on port " + getPort() + ", forwarding to " + target);
+    }
+
+    /**
+     * Stop accepting connections, waiting at most the given number of seconds for
+     * exchanges in progress to complete.
+     */
+    public synchronized void stop(int delay) {
+    	if (server != null) {
+    		server.stop(delay);
+    		executor.shutdown();
+    		server = null;
+    		executor = null;
+    	}
+    }
+
+    /**
+     * @return the port the proxy is listening on.
+     */
+    public synchronized int getPort() {
+    	return server != null ? server.getAddress().getPort() : port;
+    }
+
+    private void forward(HttpExchange exchange) throws IOException {
+    	long startTime = System.currentTimeMillis();
+    	byte[] request = readFully(exchange.getRequestBody());
+    	URL url = new URL(target, exchange.getRequestURI().toString());
+
+    	HttpURLConnection connection;
+    	int status;
+    	byte[] response;
+    	long forwardStart = System.nanoTime();
+    	try {
+    		connection = (HttpURLConnection) url.openConnection();
+    		connection.setInstanceFollowRedirects(false);
+    		connection.setUseCaches(false);
+    		connection.setRequestMethod(exchange.getRequestMethod());
+    		copyRequestHeaders(exchange.getRequestHeaders(), connection);
+    		if (request.length > 0) {
+    			connection.setDoOutput(true);
+    			connection.setFixedLengthStreamingMode(request.length);
+    			OutputStream out = connection.getOutputStream();
+    			out.write(request);
+    			out.close();
+    		}
+    		status = connection.getResponseCode();
+    		InputStream in = status >= HttpURLConnection.HTTP_BAD_REQUEST
+    			? connection.getErrorStream() : connection.getInputStream();
+    		response = in == null ? new byte[0] : readFully(in);
+    	} catch (IOException ex) {
+    		log.warn("Unable to forward request to " + url + ": " + ex);
+    		exchange.sendResponseHeaders(HttpURLConnection.HTTP_BAD_GATEWAY, -1);
+    		return;
+    	}
+    	int elapsed = (int) ((System.nanoTime() - forwardStart) / 1000000L);
+
+    	copyResponseHeaders(connection, exchange.getResponseHeaders());
+    	exchange.sendResponseHeaders(status, response.length == 0 ? -1 : response.length);
+    	if (response.length > 0) {
+    		OutputStream out = exchange.getResponseBody();
+    		out.write(response);
+    		out.close();
+    	}
+
+    	String contentType = exchange.getRequestHeaders().getFirst("Content-Type"); // $NON-NLS-1$
+    	if (contentType != null && contentType.toLowerCase().startsWith(AMF_CONTENT_TYPE)) {
+    		record(startTime, elapsed, status, url, request,
+    				decode(response, connection.getContentEncoding()));
+    	}
+    }
+
+    private void record(long startTime, int elapsed, int status, URL url, byte[] request, byte[] response) {
+    	String messageType = "";
+    	String destination = "";
+    	String operation = "";
+    	try {
+    		Message message = getFirstMessage(AmfMessageHelper.decodeActionMessage(request));
+    		if (message != null) {
+    			messageType = message.getClass().getName();
+    			destination = message.getDestination();
+    			if (message instanceof RemotingMessage) {
+    				operation = ((RemotingMessage) message).getOperation();
+    			} else if (message instanceof CommandMessage) {
+    				operation = String.valueOf(((CommandMessage) message).getOperation());
+    			}
+    		}
+    	} catch (IOException ex) {
+    		log.warn("Unable to decode AMF request to " + url + ": " + ex);
+    	}
+
+    	AmfConversationRecord record = new AmfConversationRecord(startTime, elapsed, status, url.toString(),
+    			messageType, destination, operation, request, response);
+    	try {
+    		int index = store.append(record);
+    		if (log.isDebugEnabled()) {
+    			log.debug("Recorded " + index + ": " + record);
+    		}
+    	} catch (IOException ex) {
+    		log.error("Unable to record AMF exchange " + record, ex);
+    	}
+    }
+
+    /**
+     * @return the first message of the first body of the request, or null if there is none.
+     */
+    static Message getFirstMessage(ActionMessage actionMessage) {
+    	if (actionMessage.getBodyCount() == 0) {
+    		return null;
+    	}
+    	Object data = actionMessage.getBody(0).getData();
+    	if (data instanceof Object[] && ((Object[]) data).length > 0) {
+    		data = ((Object[]) data)[0];
+    	}
+    	return data instanceof Message ? (Message) data : null;
+    }
+
+    private static void copyRequestHeaders(Headers headers, HttpURLConnection connection) {
+    	for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+    		if (HOP_BY_HOP_HEADERS.contains(entry.getKey().toLowerCase())) {
+    			continue;
+    		}
+    		for (String value : entry.getValue()) {
+    			connection.addRequestProperty(entry.getKey(), value);
+    		}
+    	}
+    }
+
+    private static void copyResponseHeaders(HttpURLConnection connection, Headers headers) {
+    	for (Map.Entry<String, List<String>> entry : connection.getHeaderFields().entrySet()) {
+    		// The status line is held with a null key
+    		if (entry.getKey() == null || HOP_BY_HOP_HEADERS.contains(entry.getKey().toLowerCase())) {
+    			continue;
+    		}
+    		for (String value : entry.getValue()) {
+    			headers.add(entry.getKey(), value);
+    		}
+    	}
+    }
+
+    /**
+     * @return the response decompressed according to its content encoding, or as
+     * received if it can not be decompressed.
+     */
+    private static byte[] decode(byte[] response, String contentEncoding) {
+    	if (contentEncoding == null || response.length == 0) {
+    		return response;
+    	}
+    	try {
+    		if (contentEncoding.toLowerCase().indexOf("gzip") >= 0) { // $NON-NLS-1$
+    			return readFully(new GZIPInputStream(new ByteArrayInputStream(response)));
+    		} else if (contentEncoding.toLowerCase().indexOf("deflate") >= 0) { // $NON-NLS-1$
+    			return readFully(new InflaterInputStream(new ByteArrayInputStream(response)));
+    		}
+    	} catch (IOException ex) {
+    		log.warn("Unable to decompress " + contentEncoding + " response: " + ex);
+    	}
+    	return response;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+    	try {
+    		ByteArrayOutputStream out = new ByteArrayOutputStream();
+    		byte[] buffer = new byte[8192];
+    		int length;
+    		while ((length = in.read(buffer)) >= 0) {
+    			out.write(buffer, 0, length);
+    		}
+    		return out.toByteArray();
+    	} finally {
+    		in.close();
+    	}
+    }
+
+	public static void main(final String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("Usage: java " + AmfRecordingProxy.class.getName() + " port target-url store-path");
+			System.exit(2);
+		}
+		final AmfConversationStore store = AmfConversationStore.open(new File(args[2]));
+		final AmfRecordingProxy proxy = new AmfRecordingProxy(Integer.parseInt(args[0]), new URL(args[1]), store);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				proxy.stop(1);
+				try {
+					System.out.println("Recorded " + store.size() + " AMF exchanges to " + args[2]);
+					store.close();
+				} catch (IOException ex) {
+					System.err.println("Unable to close store: " + ex);
+				}
+			}
+		});
+		proxy.start();
+		System.out.println("Recording AMF exchanges with " + args[1] + " on port " + proxy.getPort()
+				+ ", press Ctrl-C to stop.");
+	}
+
+}
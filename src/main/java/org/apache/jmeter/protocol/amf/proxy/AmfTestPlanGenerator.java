@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.proxy;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+
+import org.apache.jmeter.protocol.amf.sampler.AmfCommandMessage;
+import org.apache.jmeter.protocol.amf.sampler.AmfCorpusWriter;
+import org.apache.jmeter.protocol.amf.sampler.AmfMessageHelper;
+import org.apache.jmeter.protocol.amf.sampler.AmfParameterTemplate;
+import org.apache.jmeter.protocol.amf.sampler.AmfRemotingMessage;
+import org.apache.jmeter.protocol.amf.sampler.AmfSampler;
+import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.messages.RemotingMessage;
+
+/**
+ * Generates a JMeter test plan, and optionally a request corpus, from the AMF
+ * exchanges recorded in an AmfConversationStore.
+ * <p>
+ * Each recorded RemotingMessage becomes an AMF Request sampler using AmfRemotingMessage,
+ * with the call parameters written as AMF_IntParameter_nnn, AMF_LongParameter_nnn and
+ * AMF_Parameter_nnn parameters, or AMF_ObjectParameter_nnn templates for other types.
+ * Each CommandMessage becomes a sampler using AmfCommandMessage.  The samplers are placed,
+ * in the order recorded, in a single thread group with an HTTP Cookie Manager, and pass
+ * the DSId received from the server to each subsequent request through ${DSId}.
+ * <p>
+ * Usage: java org.apache.jmeter.protocol.amf.proxy.AmfTestPlanGenerator store-path test-plan.jmx [corpus-file]
+ *
+ */
+public class AmfTestPlanGenerator {
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final String ENCODING = "UTF-8"; // $NON-NLS-1$
+
+    private static final String SAMPLER_GUI_CLASS = "org.apache.jmeter.protocol.amf.control.gui.AmfSamplerGui"; // $NON-NLS-1$
+
+    /**
+     * The object encoding as held by the AMF Request GUI.
+     */
+    private static final String OBJECT_ENCODING = " " + MessageIOConstants.AMF3; // $NON-NLS-1$
+
+    private static final String FLEX_CLIENT_ID_VALUE = "${DSId}"; // $NON-NLS-1$
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+    private final AmfConversationStore store;
+
+    private int unsupportedParameters = 0;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    public AmfTestPlanGenerator(AmfConversationStore store) {
+    	this.store = store;
+    }
+
+    /**
+     * Write a test plan containing a sampler for each recorded AMF exchange.
+     *
+     * @param out the writer to write the test plan to.
+     * @return the number of samplers written.
+     */
+    public int generate(Writer out) throws IOException {
+    	out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"); // $NON-NLS-1$
+    	out.write("<jmeterTestPlan version=\"1.2\" properties=\"2.1\">\n  <hashTree>\n"); // $NON-NLS-1$
+    	out.write("    <TestPlan guiclass=\"TestPlanGui\" testclass=\"TestPlan\" testname=\"Recorded AMF Test Plan\" enabled=\"true\">\n" // $NON-NLS-1$
+    			+ "      <stringProp name=\"TestPlan.comments\">Generated from " + escape(String.valueOf(store.size())) // $NON-NLS-1$
+    			+ " recorded AMF exchanges</stringProp>\n" // $NON-NLS-1$
+    			+ "      <boolProp name=\"TestPlan.functional_mode\">false</boolProp>\n" // $NON-NLS-1$
+    			+ "      <boolProp name=\"TestPlan.serialize_threadgroups\">false</boolProp>\n" // $NON-NLS-1$
+    			+ "      <elementProp name=\"TestPlan.user_defined_variables\" elementType=\"Arguments\" guiclass=\"ArgumentsPanel\" testclass=\"Arguments\" testname=\"User Defined Variables\" enabled=\"true\">\n" // $NON-NLS-1$
+    			+ "        <collectionProp name=\"Arguments.arguments\"/>\n" // $NON-NLS-1$
+    			+ "      </elementProp>\n" // $NON-NLS-1$
+    			+ "      <stringProp name=\"TestPlan.user_define_classpath\"></stringProp>\n" // $NON-NLS-1$
+    			+ "    </TestPlan>\n    <hashTree>\n"); // $NON-NLS-1$
+    	out.write("      <ThreadGroup guiclass=\"ThreadGroupGui\" testclass=\"ThreadGroup\" testname=\"Recorded AMF Users\" enabled=\"true\">\n" // $NON-NLS-1$
+    			+ "        <stringProp name=\"ThreadGroup.on_sample_error\">continue</stringProp>\n" // $NON-NLS-1$
+    			+ "        <elementProp name=\"ThreadGroup.main_controller\" elementType=\"LoopController\" guiclass=\"LoopControlPanel\" testclass=\"LoopController\" testname=\"Loop Controller\" enabled=\"true\">\n" // $NON-NLS-1$
+    			+ "          <boolProp name=\"LoopController.continue_forever\">false</boolProp>\n" // $NON-NLS-1$
+    			+ "          <stringProp name=\"LoopController.loops\">1</stringProp>\n" // $NON-NLS-1$
+    			+ "        </elementProp>\n" // $NON-NLS-1$
+    			+ "        <stringProp name=\"ThreadGroup.num_threads\">1</stringProp>\n" // $NON-NLS-1$
+    			+ "        <stringProp name=\"ThreadGroup.ramp_time\">1</stringProp>\n" // $NON-NLS-1$
+    			+ "        <boolProp name=\"ThreadGroup.scheduler\">false</boolProp>\n" // $NON-NLS-1$
+    			+ "        <stringProp name=\"ThreadGroup.duration\"></stringProp>\n" // $NON-NLS-1$
+    			+ "        <stringProp name=\"ThreadGroup.delay\"></stringProp>\n" // $NON-NLS-1$
+    			+ "      </ThreadGroup>\n      <hashTree>\n"); // $NON-NLS-1$
+    	out.write("        <CookieManager guiclass=\"CookiePanel\" testclass=\"CookieManager\" testname=\"HTTP Cookie Manager\" enabled=\"true\">\n" // $NON-NLS-1$
+    			+ "          <collectionProp name=\"CookieManager.cookies\"/>\n" // $NON-NLS-1$
+    			+ "          <boolProp name=\"CookieManager.clearEachIteration\">true</boolProp>\n" // $NON-NLS-1$
+    			+ "        </CookieManager>\n        <hashTree/>\n"); // $NON-NLS-1$
+
+    	int samplers = 0;
+    	for (int i = 0; i < store.size(); i++) {
+    		AmfConversationRecord record = store.read(i);
+    		try {
+    			if (writeSampler(out, i, record)) {
+    				samplers++;
+    			}
+    		} catch (IOException ex) {
+    			log.warn("Skipped recorded exchange " + i + ", unable to decode request: " + ex);
+    		}
+    	}
+
+    	out.write("      </hashTree>\n    </hashTree>\n  </hashTree>\n</jmeterTestPlan>\n"); // $NON-NLS-1$
+    	out.flush();
+    	return samplers;
+    }
+
+    /**
+     * Write the serialized request of each recorded AMF exchange to a corpus file.
+     *
+     * @param corpusFile the corpus file to write.
+     * @return the number of requests written.
+     */
+    public int exportCorpus(File corpusFile) throws IOException {
+    	AmfCorpusWriter writer = new AmfCorpusWriter(corpusFile);
+    	for (int i = 0; i < store.size(); i++) {
+    		try {
+    			writer.add(store.read(i).getRequest());
+    		} catch (IOException ex) {
+    			log.warn("Skipped recorded exchange " + i + ", unable to decode request: " + ex);
+    		}
+    	}
+    	int count = writer.size();
+    	writer.close();
+    	return count;
+    }
+
+    /**
+     * @return the number of call parameters that could not be written as sampler parameters.
+     */
+    public int getUnsupportedParameters() {
+    	return unsupportedParameters;
+    }
+
+    private boolean writeSampler(Writer out, int index, AmfConversationRecord record) throws IOException {
+    	Message message = AmfRecordingProxy.getFirstMessage(AmfMessageHelper.decodeActionMessage(record.getRequest()));
+    	String classname;
+    	String name;
+    	StringBuilder args = new StringBuilder();
+    	if (message instanceof RemotingMessage) {
+    		RemotingMessage remoting = (RemotingMessage) message;
+    		classname = AmfRemotingMessage.class.getName();
+    		name = remoting.getDestination() + "." + remoting.getOperation(); // $NON-NLS-1$
+    		appendArgument(args, "DSId", FLEX_CLIENT_ID_VALUE); // $NON-NLS-1$
+    		appendArgument(args, "Channel Definition Id", headerString(remoting, Message.ENDPOINT_HEADER)); // $NON-NLS-1$
+    		appendArgument(args, "Source", remoting.getSource()); // $NON-NLS-1$
+    		appendArgument(args, "Destination", remoting.getDestination()); // $NON-NLS-1$
+    		appendArgument(args, "Operation Name", remoting.getOperation()); // $NON-NLS-1$
+    		List<?> parameters = remoting.getParameters();
+    		for (int i = 0; parameters != null && i < parameters.size(); i++) {
+    			appendParameter(args, index, i, parameters.get(i));
+    		}
+    	} else if (message instanceof CommandMessage) {
+    		CommandMessage command = (CommandMessage) message;
+    		classname = AmfCommandMessage.class.getName();
+    		name = "Command " + command.getOperation(); // $NON-NLS-1$
+    		Object version = command.getHeader(CommandMessage.MESSAGING_VERSION);
+    		appendArgument(args, "DSId", FLEX_CLIENT_ID_VALUE); // $NON-NLS-1$
+    		appendArgument(args, "DSMessagingVersion", version == null ? "1" : version.toString()); // $NON-NLS-1$ $NON-NLS-2$
+    		appendArgument(args, "Operation", String.valueOf(command.getOperation())); // $NON-NLS-1$
+    	} else {
+    		log.warn("Skipped recorded exchange " + index + ", unsupported message "
+    				+ (message == null ? "null" : message.getClass().getName()));
+    		return false;
+    	}
+
+    	URL url;
+    	try {
+    		url = new URL(record.getUrl());
+    	} catch (MalformedURLException ex) {
+    		log.warn("Skipped recorded exchange " + index + ", invalid URL " + record.getUrl());
+    		return false;
+    	}
+
+    	out.write("        <" + AmfSampler.class.getName() + " guiclass=\"" + SAMPLER_GUI_CLASS // $NON-NLS-1$ $NON-NLS-2$
+    			+ "\" testclass=\"" + AmfSampler.class.getName() + "\" testname=\"" + escape(index + " " + name) // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+    			+ "\" enabled=\"true\">\n"); // $NON-NLS-1$
+    	out.write("          <elementProp name=\"" + HTTPSamplerBase.ARGUMENTS + "\" elementType=\"Arguments\" guiclass=\"HTTPArgumentsPanel\" testclass=\"Arguments\" enabled=\"true\">\n" // $NON-NLS-1$ $NON-NLS-2$
+    			+ "            <collectionProp name=\"Arguments.arguments\"/>\n" // $NON-NLS-1$
+    			+ "          </elementProp>\n"); // $NON-NLS-1$
+    	writeProperty(out, HTTPSamplerBase.DOMAIN, url.getHost());
+    	writeProperty(out, HTTPSamplerBase.PORT, url.getPort() < 0 ? "" : String.valueOf(url.getPort())); // $NON-NLS-1$
+    	writeProperty(out, HTTPSamplerBase.PROTOCOL, url.getProtocol());
+    	writeProperty(out, HTTPSamplerBase.CONTENT_ENCODING, ""); // $NON-NLS-1$
+    	writeProperty(out, HTTPSamplerBase.PATH, url.getFile());
+    	writeProperty(out, HTTPSamplerBase.METHOD, "POST"); // $NON-NLS-1$
+    	writeBooleanProperty(out, HTTPSamplerBase.USE_KEEPALIVE, true);
+    	writeBooleanProperty(out, HTTPSamplerBase.FOLLOW_REDIRECTS, false);
+    	writeBooleanProperty(out, HTTPSamplerBase.AUTO_REDIRECTS, false);
+    	writeBooleanProperty(out, HTTPSamplerBase.DO_MULTIPART_POST, false);
+    	writeProperty(out, AmfSampler.OBJECT_ENCODING_VERSION, OBJECT_ENCODING);
+    	out.write("          <elementProp name=\"" + AmfSampler.ARGUMENTS + "\" elementType=\"Arguments\" guiclass=\"ArgumentsPanel\" testclass=\"Arguments\" enabled=\"true\">\n" // $NON-NLS-1$ $NON-NLS-2$
+    			+ "            <collectionProp name=\"Arguments.arguments\">\n"); // $NON-NLS-1$
+    	out.write(args.toString());
+    	out.write("            </collectionProp>\n          </elementProp>\n"); // $NON-NLS-1$
+    	writeProperty(out, AmfSampler.CLASSNAME, classname);
+    	out.write("        </" + AmfSampler.class.getName() + ">\n        <hashTree/>\n"); // $NON-NLS-1$ $NON-NLS-2$
+    	return true;
+    }
+
+    private void appendParameter(StringBuilder args, int index, int i, Object value) {
+    	if (value instanceof Integer) {
+    		appendArgument(args, "AMF_IntParameter_" + i, value.toString()); // $NON-NLS-1$
+    	} else if (value instanceof Long) {
+    		appendArgument(args, "AMF_LongParameter_" + i, value.toString()); // $NON-NLS-1$
+    	} else if (value instanceof String) {
+    		appendArgument(args, "AMF_Parameter_" + i, (String) value); // $NON-NLS-1$
+    	} else {
+    		try {
+    			appendArgument(args, "AMF_ObjectParameter_" + i, AmfParameterTemplate.toTemplate(value)); // $NON-NLS-1$
+    		} catch (IllegalArgumentException ex) {
+    			unsupportedParameters++;
+    			log.warn("Recorded exchange " + index + ", parameter " + i + " can not be written as a template: "
+    					+ ex.getMessage());
+    			appendArgument(args, "AMF_ObjectParameter_" + i, "null"); // $NON-NLS-1$ $NON-NLS-2$
+    		}
+    	}
+    }
+
+    private static String headerString(Message message, String header) {
+    	Object value = message.getHeader(header);
+    	return value == null ? "" : value.toString(); // $NON-NLS-1$
+    }
+
+    private static void appendArgument(StringBuilder args, String name, String value) {
+    	String escapedName = escape(name);
+    	args.append("              <elementProp name=\"").append(escapedName).append("\" elementType=\"Argument\">\n") // $NON-NLS-1$ $NON-NLS-2$
+    		.append("                <stringProp name=\"Argument.name\">").append(escapedName).append("</stringProp>\n") // $NON-NLS-1$ $NON-NLS-2$
+    		.append("                <stringProp name=\"Argument.value\">").append(escape(value)).append("</stringProp>\n") // $NON-NLS-1$ $NON-NLS-2$
+    		.append("                <stringProp name=\"Argument.metadata\">=</stringProp>\n") // $NON-NLS-1$
+    		.append("              </elementProp>\n"); // $NON-NLS-1$
+    }
+
+    private static void writeProperty(Writer out, String name, String value) throws IOException {
+    	out.write("          <stringProp name=\"" + escape(name) + "\">" + escape(value) + "</stringProp>\n"); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+    }
+
+    private static void writeBooleanProperty(Writer out, String name, boolean value) throws IOException {
+    	out.write("          <boolProp name=\"" + escape(name) + "\">" + value + "</boolProp>\n"); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+    }
+
+    private static String escape(String value) {
+    	if (value == null) {
+    		return ""; // $NON-NLS-1$
+    	}
+    	StringBuilder sb = new StringBuilder(value.length());
+    	for (int i = 0; i < value.length(); i++) {
+    		char c = value.charAt(i);
+    		switch (c) {
+    		case '<': sb.append("&lt;"); break; // $NON-NLS-1$
+    		case '>': sb.append("&gt;"); break; // $NON-NLS-1$
+    		case '&': sb.append("&amp;"); break; // $NON-NLS-1$
+    		case '"': sb.append("&quot;"); break; // $NON-NLS-1$
+    		case '\'': sb.append("&apos;"); break; // $NON-NLS-1$
+    		default:
+    			if (c < ' ' && c != '\t' && c != '\n' && c != '\r') {
+    				// Not allowed in XML 1.0
+    				sb.append('?');
+    			} else {
+    				sb.append(c);
+    			}
+    		}
+    	}
+    	return sb.toString();
+    }
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("Usage: java " + AmfTestPlanGenerator.class.getName()
+					+ " store-path test-plan.jmx [corpus-file]");
+			System.exit(2);
+		}
+		AmfConversationStore store = AmfConversationStore.open(new File(args[0]));
+		try {
+			AmfTestPlanGenerator generator = new AmfTestPlanGenerator(store);
+			Writer out = new OutputStreamWriter(new FileOutputStream(args[1]), ENCODING);
+			try {
+				int samplers = generator.generate(out);
+				System.out.println("Wrote " + samplers + " samplers for " + store.size() + " recorded exchanges to "
+						+ args[1]);
+				if (generator.getUnsupportedParameters() > 0) {
+					System.out.println(generator.getUnsupportedParameters()
+							+ " call parameters could not be written and are sent as null, see the log for details.");
+				}
+			} finally {
+				out.close();
+			}
+			if (args.length == 3) {
+				System.out.println("Wrote " + generator.exportCorpus(new File(args[2])) + " requests to " + args[2]);
+			}
+		} finally {
+			store.close();
+		}
+	}
+
+}
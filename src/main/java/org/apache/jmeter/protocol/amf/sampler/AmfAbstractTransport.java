@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jmeter.protocol.http.control.AuthManager;
+import org.apache.jmeter.protocol.http.control.CookieManager;
+import org.apache.jmeter.protocol.http.control.Header;
+import org.apache.jmeter.protocol.http.control.HeaderManager;
+
+/**
+ * A base for transports that build their own HTTP requests, applying the default request
+ * headers of AmfSampler and the headers of the sampler's header, cookie and authorization
+ * managers, and saving the cookies received in the cookie manager.  Transports based on
+ * this class do not use the proxy, cache or redirect settings of the sampler.
+ * <p>
+ * A transport given a cookie jar, as by AmfSessionThreads, sends and saves cookies with
+ * the jar in place of the cookie manager.
+ *
+ */
+public abstract class AmfAbstractTransport implements AmfTransport {
+
+	protected static final String CONTENT_TYPE = "application/x-amf"; // $NON-NLS-1$
+
+	protected static final String HEADER_AUTHORIZATION = "Authorization"; // $NON-NLS-1$
+	protected static final String HEADER_CONNECTION = "Connection"; // $NON-NLS-1$
+	protected static final String HEADER_CONTENT_LENGTH = "Content-Length"; // $NON-NLS-1$
+	protected static final String HEADER_CONTENT_TYPE = "Content-Type"; // $NON-NLS-1$
+	protected static final String HEADER_COOKIE = "Cookie"; // $NON-NLS-1$
+	protected static final String HEADER_SET_COOKIE = "Set-Cookie"; // $NON-NLS-1$
+	protected static final String CONNECTION_CLOSE = "close"; // $NON-NLS-1$
+	protected static final String CONNECTION_KEEP_ALIVE = "keep-alive"; // $NON-NLS-1$
+
+	protected AmfSampler sampler = null;
+
+	protected AmfCookieJar cookieJar = null;
+
+	public void setup(AmfSampler sampler) {
+		this.sampler = sampler;
+	}
+
+	/**
+	 * Use the given cookie jar in place of the cookie manager of the sampler.
+	 */
+	public void setCookieJar(AmfCookieJar cookieJar) {
+		this.cookieJar = cookieJar;
+	}
+
+	/**
+	 * Create the headers to send with a request to the given URL, other than Host and
+	 * Content-Length: the headers of createStaticRequestHeaders() and the cookie and
+	 * authorization headers for the URL.
+	 *
+	 * @return the request headers, as name and value pairs.
+	 */
+	protected List<String[]> createRequestHeaders(URL url) {
+		List<String[]> headers = createStaticRequestHeaders();
+		String cookies = getCookieHeader(url);
+		if (cookies != null) {
+			setHeader(headers, HEADER_COOKIE, cookies);
+		}
+		AuthManager authManager = sampler.getAuthManager();
+		if (authManager != null) {
+			String authorization = authManager.getAuthHeaderForURL(url);
+			if (authorization != null) {
+				setHeader(headers, HEADER_AUTHORIZATION, authorization);
+			}
+		}
+		return headers;
+	}
+
+	/**
+	 * Create the request headers that do not depend on the URL: the content type, the
+	 * default request headers of AmfSampler, the headers of the header manager, which
+	 * replace defaults of the same name, and Connection: close if the sampler does not
+	 * use keep alive.
+	 *
+	 * @return the request headers, as name and value pairs.
+	 */
+	protected List<String[]> createStaticRequestHeaders() {
+		return createStaticRequestHeaders(sampler);
+	}
+
+	/**
+	 * @return the request headers of createStaticRequestHeaders() for the given sampler.
+	 */
+	static List<String[]> createStaticRequestHeaders(AmfSampler sampler) {
+		List<String[]> headers = new ArrayList<String[]>();
+		headers.add(new String[] { HEADER_CONTENT_TYPE, CONTENT_TYPE });
+		for (String[] header : AmfSampler.DEFAULT_REQUEST_HEADERS) {
+			setHeader(headers, header[0], header[1]);
+		}
+		HeaderManager headerManager = sampler.getHeaderManager();
+		if (headerManager != null) {
+			int count = headerManager.getHeaders().size();
+			for (int i = 0; i < count; i++) {
+				Header header = headerManager.getHeader(i);
+				setHeader(headers, header.getName(), header.getValue());
+			}
+		}
+		if (!sampler.getUseKeepAlive()) {
+			setHeader(headers, HEADER_CONNECTION, CONNECTION_CLOSE);
+		}
+		return headers;
+	}
+
+	/**
+	 * @return the value of the Cookie header to send to the given URL, from the cookie
+	 * jar or cookie manager, or null if there are no cookies to send.
+	 */
+	protected String getCookieHeader(URL url) {
+		if (cookieJar != null) {
+			return cookieJar.getCookieHeader();
+		}
+		CookieManager cookieManager = sampler.getCookieManager();
+		return cookieManager == null ? null : cookieManager.getCookieHeaderForURL(url);
+	}
+
+	/**
+	 * @return true if received cookies are kept, in a cookie jar or cookie manager.
+	 */
+	protected boolean isSavingCookies() {
+		return cookieJar != null || sampler.getCookieManager() != null;
+	}
+
+	/**
+	 * Save the value of a Set-Cookie header received from the given URL in the cookie
+	 * jar or cookie manager, if there is one.
+	 */
+	protected void saveCookie(URL url, String setCookie) {
+		if (setCookie == null) {
+			return;
+		}
+		if (cookieJar != null) {
+			cookieJar.save(setCookie);
+			return;
+		}
+		CookieManager cookieManager = sampler.getCookieManager();
+		if (cookieManager != null) {
+			cookieManager.addCookieFromHeader(setCookie, url);
+		}
+	}
+
+	/**
+	 * @return the headers formatted as for the request and response headers of a sample
+	 * result, one "name: value" line per header.
+	 */
+	protected static String formatHeaders(List<String[]> headers) {
+		StringBuilder sb = new StringBuilder();
+		for (String[] header : headers) {
+			sb.append(header[0]).append(": ").append(header[1]).append('\n'); // $NON-NLS-1$
+		}
+		return sb.toString();
+	}
+
+	protected static void setHeader(List<String[]> headers, String name, String value) {
+		for (String[] header : headers) {
+			if (header[0].equalsIgnoreCase(name)) {
+				header[1] = value;
+				return;
+			}
+		}
+		headers.add(new String[] { name, value });
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * A ByteArrayInputStream that can be pointed at a new byte array, allowing a single
+ * instance, and any streams or deserializers wrapping it, to be reused across samples.
+ *
+ */
+public class AmfByteArrayInputStream extends ByteArrayInputStream {
+
+	private static final byte[] EMPTY = new byte[0];
+
+	public AmfByteArrayInputStream() {
+		super(EMPTY);
+	}
+
+	/**
+	 * Point this stream at the given byte array.
+	 *
+	 * @param data the bytes to be read.
+	 */
+	public void setBuffer(byte[] data) {
+		setBuffer(data, 0, data.length);
+	}
+
+	/**
+	 * Point this stream at a region of the given byte array.
+	 *
+	 * @param data the bytes to be read.
+	 * @param offset the offset of the first byte to be read.
+	 * @param length the number of bytes to be read.
+	 */
+	public void setBuffer(byte[] data, int offset, int length) {
+		this.buf = data;
+		this.pos = offset;
+		this.mark = offset;
+		this.count = Math.min(offset + length, data.length);
+	}
+
+	/**
+	 * Release the reference to the current byte array.
+	 */
+	public void release() {
+		setBuffer(EMPTY);
+	}
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * A growable output buffer intended to be reused across samples.  The capacity of
+ * the buffer follows the size of recently written payloads, so that a single
+ * unusually large payload does not pin a large array for the lifetime of the thread.
+ *
+ */
+public class AmfByteBuffer extends ByteArrayOutputStream {
+
+    //--------------------------------------------------------------------------
+    // Public Static Variables
+    //--------------------------------------------------------------------------
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+    private final int minimumCapacity;
+
+    /**
+     * A decaying maximum of the payload sizes written to this buffer.
+     */
+    private int recentSize = 0;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    public AmfByteBuffer() {
+    	this(DEFAULT_CAPACITY);
+    }
+
+    public AmfByteBuffer(int minimumCapacity) {
+    	super(minimumCapacity);
+    	this.minimumCapacity = minimumCapacity;
+    }
+
+    /**
+     * @return the internal array backing this buffer.  Only the first size() bytes are valid.
+     */
+    public byte[] getBuffer() {
+    	return buf;
+    }
+
+    /**
+     * @return the current capacity of this buffer.
+     */
+    public int capacity() {
+    	return buf.length;
+    }
+
+    /**
+     * Ensure the buffer can hold at least the given number of additional bytes without growing.
+     *
+     * @param length the number of bytes about to be written.
+     */
+    public void ensureCapacity(int length) {
+    	int required = count + length;
+    	if (required > buf.length) {
+    		byte[] newBuf = new byte[Math.max(buf.length << 1, required)];
+    		System.arraycopy(buf, 0, newBuf, 0, count);
+    		buf = newBuf;
+    	}
+    }
+
+    /**
+     * Discard any bytes written beyond the given size.
+     *
+     * @param size the number of bytes to keep.
+     */
+    public void truncate(int size) {
+    	if (size >= 0 && size < count) {
+    		count = size;
+    	}
+    }
+
+    /**
+     * Append a single byte.  Unlike write(int), this method is not synchronized.
+     *
+     * @param b the byte to append.
+     */
+    public void append(int b) {
+    	if (count == buf.length) {
+    		ensureCapacity(1);
+    	}
+    	buf[count++] = (byte) b;
+    }
+
+    /**
+     * Append a region of a byte array.  Unlike write(byte[], int, int), this method is
+     * not synchronized.
+     */
+    public void append(byte[] b, int offset, int length) {
+    	ensureCapacity(length);
+    	System.arraycopy(b, offset, buf, count, length);
+    	count += length;
+    }
+
+    /**
+     * Append a 16 bit big-endian value.
+     */
+    public void appendShort(int v) {
+    	ensureCapacity(2);
+    	buf[count++] = (byte) (v >>> 8);
+    	buf[count++] = (byte) v;
+    }
+
+    /**
+     * Append a 32 bit big-endian value.
+     */
+    public void appendInt(int v) {
+    	ensureCapacity(4);
+    	buf[count++] = (byte) (v >>> 24);
+    	buf[count++] = (byte) (v >>> 16);
+    	buf[count++] = (byte) (v >>> 8);
+    	buf[count++] = (byte) v;
+    }
+
+    /**
+     * Append a 64 bit IEEE 754 double in big-endian order.
+     */
+    public void appendDouble(double d) {
+    	long v = Double.doubleToLongBits(d);
+    	appendInt((int) (v >>> 32));
+    	appendInt((int) v);
+    }
+
+    /**
+     * Reset the buffer in preparation for the next payload, shrinking the internal array
+     * if it has become much larger than the payloads recently written to it.
+     */
+    public void recycle() {
+    	recentSize = Math.max(count, recentSize - (recentSize >> 3));
+    	if (buf.length > minimumCapacity && buf.length > (recentSize << 2)) {
+    		buf = new byte[Math.max(minimumCapacity, recentSize << 1)];
+    	}
+    	count = 0;
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import flex.messaging.io.PropertyProxy;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.Amf0Input;
+import flex.messaging.io.amf.Amf3Input;
+import flex.messaging.io.amf.AmfMessageDeserializer;
+import flex.messaging.io.amf.AmfTrace;
+
+/**
+ * An AmfMessageDeserializer that resolves the class names of typed objects through
+ * the AmfClassAliasCache rather than the ClassAliasRegistry and class loader.
+ *
+ */
+public class AmfCachingMessageDeserializer extends AmfMessageDeserializer {
+
+	@Override
+	public void initialize(SerializationContext context, InputStream in, AmfTrace trace) {
+		super.initialize(context, in, trace);
+		amfIn = new CachingAmf0Input(context);
+		amfIn.setInputStream(in);
+		amfIn.setDebugTrace(trace);
+	}
+
+    //--------------------------------------------------------------------------
+    //
+    // Inner Classes
+    //
+    //--------------------------------------------------------------------------
+
+	/**
+	 * An Amf0Input that resolves class names through the AmfClassAliasCache, and
+	 * switches to a CachingAmf3Input for AMF3 data.
+	 */
+	static class CachingAmf0Input extends Amf0Input {
+
+		CachingAmf0Input(SerializationContext context) {
+			super(context);
+		}
+
+		@Override
+		protected Object readAMF3Data() throws ClassNotFoundException, IOException {
+			if (avmPlusInput == null) {
+				avmPlusInput = new CachingAmf3Input(context);
+				avmPlusInput.setDebugTrace(trace);
+				avmPlusInput.setInputStream(in);
+			}
+			return super.readAMF3Data();
+		}
+
+		@Override
+		protected Object createObjectInstance(String className, PropertyProxy[] proxy) {
+			Object object = AmfClassAliasCache.getCache().createInstance(className, context, proxy);
+			return object != null ? object : super.createObjectInstance(className, proxy);
+		}
+	}
+
+	/**
+	 * An Amf3Input that resolves class names through the AmfClassAliasCache.
+	 */
+	static class CachingAmf3Input extends Amf3Input {
+
+		CachingAmf3Input(SerializationContext context) {
+			super(context);
+		}
+
+		@Override
+		protected Object createObjectInstance(String className, PropertyProxy[] proxy) {
+			Object object = AmfClassAliasCache.getCache().createInstance(className, context, proxy);
+			return object != null ? object : super.createObjectInstance(className, proxy);
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import flex.messaging.io.ClassAliasRegistry;
+import flex.messaging.io.PropertyProxy;
+import flex.messaging.io.PropertyProxyRegistry;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.ASObject;
+import flex.messaging.util.ClassUtil;
+
+/**
+ * Caches the resolution of the class names found in AMF responses to Java classes,
+ * including the class names that could not be resolved.
+ * <p>
+ * When BlazeDS deserializes a typed object, it looks the class name up in the
+ * ClassAliasRegistry and then attempts to load the class, and when the class can not
+ * be found it attempts to load it a second time while creating the ASObject used in
+ * its place.  With a cache, each class name is resolved once per JVM and every later
+ * occurrence, whether resolved or not, costs a single map lookup.
+ * <p>
+ * Classes registered with the ClassAliasRegistry, or made available to the class
+ * loader, after a class name has been cached are not seen until clear() is called.
+ *
+ */
+public class AmfClassAliasCache {
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final AmfClassAliasCache cache = new AmfClassAliasCache();
+
+    /**
+     * Marks a class name that could not be resolved.
+     */
+    private static final Class<?> UNRESOLVED = Void.class;
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+    private final Map<String, Class<?>> classes = new ConcurrentHashMap<String, Class<?>>();
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    private AmfClassAliasCache() {
+    }
+
+    /**
+     * @return the cache shared by all threads.
+     */
+    public static AmfClassAliasCache getCache() {
+    	return cache;
+    }
+
+    /**
+     * Resolve a class name received in an AMF message to a class, applying any alias
+     * registered with the ClassAliasRegistry.
+     *
+     * @param className the class name, or alias, received.
+     * @return the class, or null if the class could not be found.
+     */
+    public Class<?> resolve(String className) {
+    	Class<?> resolved = classes.get(className);
+    	if (resolved == null) {
+    		resolved = load(className);
+    		classes.put(className, resolved);
+    	}
+    	return resolved == UNRESOLVED ? null : resolved;
+    }
+
+    /**
+     * Create the object instance for a typed object being deserialized, in the same way
+     * as BlazeDS, but resolving the class name through this cache.
+     *
+     * @param className the class name received.
+     * @param context the serialization context of the deserializer.
+     * @param proxy set to the PropertyProxy of the class of the returned instance, or
+     * left null for the caller to determine.
+     *
+     * @return the new instance, or null if the instance should be created by BlazeDS.
+     */
+    public Object createInstance(String className, SerializationContext context, PropertyProxy[] proxy) {
+    	if (className == null || className.length() == 0 || className.startsWith(">")) {
+    		return null;
+    	}
+    	if (!context.instantiateTypes && !className.startsWith("flex.")) {
+    		// BlazeDS returns a typed ASObject without attempting to load the class
+    		return null;
+    	}
+    	Class<?> resolved = resolve(className);
+    	if (resolved == null) {
+    		if (!context.createASObjectForMissingType) {
+    			// Leave BlazeDS to report the missing class
+    			return null;
+    		}
+    		ASObject object = new ASObject();
+    		object.setType(className);
+    		return object;
+    	}
+    	proxy[0] = PropertyProxyRegistry.getRegistry().getProxyAndRegister(resolved);
+    	return ClassUtil.createDefaultInstance(resolved, null);
+    }
+
+    /**
+     * @return the number of class names cached.
+     */
+    public int size() {
+    	return classes.size();
+    }
+
+    /**
+     * Discard all cached class names.
+     */
+    public void clear() {
+    	classes.clear();
+    }
+
+    private Class<?> load(String className) {
+    	String aliasedClass = ClassAliasRegistry.getRegistry().getClassName(className);
+    	String name = aliasedClass != null ? aliasedClass : className;
+    	ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    	if (loader == null) {
+    		loader = AmfClassAliasCache.class.getClassLoader();
+    	}
+    	try {
+    		return Class.forName(name, true, loader);
+    	} catch (ClassNotFoundException ex) {
+    		if (log.isDebugEnabled()) {
+    			log.debug("Class not found for AMF type [" + className + "], using ASObject.");
+    		}
+    	} catch (LinkageError ex) {
+    		log.warn("Unable to load class for AMF type [" + className + "], using ASObject.", ex);
+    	}
+    	return UNRESOLVED;
+    }
+
+}
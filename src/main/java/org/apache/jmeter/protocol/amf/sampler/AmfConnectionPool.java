@@ -0,0 +1,465 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * Manages the connections of the socket transport for the running test, following the
+ * AmfConnectionStrategy of each sampler:
+ * <ul>
+ * <li>user - each transport keeps its connection between requests, and only asks the
+ * pool whether it has been idle too long or reached its maximum age;</li>
+ * <li>shared - connections are borrowed for each request from a pool per host, port
+ * and scheme, shared by all threads.  When all the connections to a host are in use,
+ * a request waits up to the connect timeout of its sampler for one to be returned;</li>
+ * <li>request - a new connection is opened for every request.</li>
+ * </ul>
+ * Connections that have been idle longer than amf.connection.idle milliseconds, or were
+ * opened more than amf.connection.maxage milliseconds ago, are closed rather than reused,
+ * as are those of the virtual sessions of the AmfNioEngine.
+ * Neither is limited by default.  The shared pool keeps up to amf.connection.pool.size
+ * connections to each host, 20 by default.  Idle connections are only evicted when a
+ * connection to the same host is next requested, so no thread is needed to evict them.
+ * <p>
+ * The requests served by a reused connection (hits), the connections opened (misses)
+ * and the time taken to open them are counted for all transports, including the virtual
+ * sessions of the AmfNioEngine, and a summary is logged when the test ends.  A lock rather
+ * than a monitor guards the pool, so that session threads waiting for a connection do
+ * not pin the carrier threads of virtual threads.
+ *
+ */
+public class AmfConnectionPool {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    //--------------------------------------------------------------------------
+    // Public Static Variables
+    //--------------------------------------------------------------------------
+
+	public static final String POOL_SIZE_PROPERTY = "amf.connection.pool.size"; //$NON-NLS-1$
+
+	public static final String IDLE_TIMEOUT_PROPERTY = "amf.connection.idle"; //$NON-NLS-1$
+
+	public static final String MAX_AGE_PROPERTY = "amf.connection.maxage"; //$NON-NLS-1$
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+	private static final int DEFAULT_POOL_SIZE = 20;
+
+	private static int testListeners = 0;
+
+	private static AmfConnectionPool instance = null;
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong connectNanos = new AtomicLong();
+	private static final AtomicLong maxConnectNanos = new AtomicLong();
+	private static final AtomicLong staleConnections = new AtomicLong();
+	private static final AtomicLong idleEvictions = new AtomicLong();
+	private static final AtomicLong ageEvictions = new AtomicLong();
+	private static final AtomicLong waits = new AtomicLong();
+	private static final AtomicLong waitNanos = new AtomicLong();
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final int poolSize;
+	private final long idleTimeoutNanos;
+	private final long maxAgeNanos;
+
+	private final Lock lock = new ReentrantLock();
+
+	/**
+	 * The routes of the shared pool, by route(), only accessed while holding the lock.
+	 */
+	private final Map<String, Route> routes = new HashMap<String, Route>();
+
+	private boolean closed = false;
+
+	//--------------------------------------------------------------------------
+	//
+	// Constructor
+	//
+	//--------------------------------------------------------------------------
+
+	AmfConnectionPool(int poolSize, long idleTimeoutMillis, long maxAgeMillis) {
+		this.poolSize = Math.max(1, poolSize);
+		this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, idleTimeoutMillis));
+		this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxAgeMillis));
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Test lifecycle
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Called by each AmfSampler as the test starts.
+	 */
+	public static synchronized void testStarted() {
+		testListeners++;
+	}
+
+	/**
+	 * Called by each AmfSampler as the test ends.  The last call closes the idle
+	 * connections of the shared pool and logs the connection statistics of the test.
+	 */
+	public static synchronized void testEnded() {
+		if (testListeners == 0 || --testListeners > 0) {
+			return;
+		}
+		AmfConnectionPool pool = instance;
+		instance = null;
+		if (pool != null) {
+			pool.close();
+		}
+		if (hits.get() + misses.get() > 0) {
+			log.info(summarize());
+		}
+		resetStatistics();
+	}
+
+	/**
+	 * @return the pool of the running test, creating it if required.
+	 */
+	public static synchronized AmfConnectionPool getInstance() {
+		if (instance == null) {
+			instance = new AmfConnectionPool(JMeterUtils.getPropDefault(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE),
+					JMeterUtils.getPropDefault(IDLE_TIMEOUT_PROPERTY, 0L),
+					JMeterUtils.getPropDefault(MAX_AGE_PROPERTY, 0L));
+		}
+		return instance;
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Connections
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * @return the key of the connections to a host, port and scheme.
+	 */
+	static String route(String host, int port, boolean secure) {
+		return (secure ? "https://" : "http://") + host.toLowerCase() + ":" + port; // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+	}
+
+	/**
+	 * Check whether a connection has been idle longer than the idle timeout, or reached
+	 * the maximum age, counting the eviction if it has.  The caller closes evicted
+	 * connections.
+	 *
+	 * @return true if the connection must not be reused.
+	 */
+	public boolean evict(AmfSocketConnection connection, long now) {
+		return evict(connection.getAgeNanos(now), connection.getIdleNanos(now));
+	}
+
+	/**
+	 * Check whether a connection of the given age and idle time must be closed rather
+	 * than reused, counting the eviction if it must, as for evict(AmfSocketConnection, long).
+	 * Used by the connections of the AmfNioEngine, which are not held by the pool.
+	 *
+	 * @return true if the connection must not be reused.
+	 */
+	public boolean evict(long ageNanos, long idleNanos) {
+		if (maxAgeNanos > 0 && ageNanos >= maxAgeNanos) {
+			ageEvictions.incrementAndGet();
+			return true;
+		}
+		if (idleTimeoutNanos > 0 && idleNanos >= idleTimeoutNanos) {
+			idleEvictions.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Borrow a connection to a host from the shared pool.  If no idle connection can be
+	 * reused, a place in the pool is kept for a new connection, which the caller opens,
+	 * then returns with giveBack() or discard(), or releases with cancel() if it could
+	 * not be opened.
+	 *
+	 * @param host the host to connect to.
+	 * @param port the port to connect to.
+	 * @param secure true for an SSL connection.
+	 * @param reuse false if idle connections must not be reused, e.g. after one was found
+	 * to have been closed by the server.
+	 * @param timeout the time to wait for a place in the pool, in milliseconds, 0 for no limit.
+	 * @return an idle connection, or null if the caller must open a new one.
+	 * @throws SocketTimeoutException if no place became free in time.
+	 */
+	public AmfSocketConnection borrow(String host, int port, boolean secure, boolean reuse, int timeout) throws IOException {
+		String key = route(host, port, secure);
+		List<AmfSocketConnection> evicted = new ArrayList<AmfSocketConnection>(0);
+		long waitStart = 0;
+		lock.lock();
+		try {
+			Route route = routes.get(key);
+			if (route == null) {
+				route = new Route(lock.newCondition());
+				routes.put(key, route);
+			}
+			long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+			while (true) {
+				long now = System.nanoTime();
+				// The least recently used connections are the first to time out
+				while (!route.idle.isEmpty() && evict(route.idle.getFirst(), now)) {
+					evicted.add(route.idle.removeFirst());
+					route.open--;
+				}
+				if (reuse) {
+					// The idle list is ordered by last use, not by age, so check the connection reused
+					while (!route.idle.isEmpty()) {
+						AmfSocketConnection connection = route.idle.removeLast();
+						if (!evict(connection, now)) {
+							return connection;
+						}
+						evicted.add(connection);
+						route.open--;
+					}
+				} else if (!route.idle.isEmpty() && route.open >= poolSize) {
+					// Make room for the new connection
+					evicted.add(route.idle.removeFirst());
+					route.open--;
+				}
+				if (route.open < poolSize) {
+					route.open++;
+					return null;
+				}
+				if (waitStart == 0) {
+					waitStart = now;
+					waits.incrementAndGet();
+				}
+				if (deadline == 0) {
+					route.available.await();
+				} else if (deadline - now <= 0) {
+					throw new SocketTimeoutException("Timed out waiting for a pooled connection to " + key);
+				} else {
+					route.available.awaitNanos(deadline - now);
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for a pooled connection to " + key);
+		} finally {
+			lock.unlock();
+			if (waitStart != 0) {
+				waitNanos.addAndGet(System.nanoTime() - waitStart);
+			}
+			for (AmfSocketConnection connection : evicted) {
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * Return a borrowed connection to the shared pool, to be reused.
+	 */
+	public void giveBack(AmfSocketConnection connection) {
+		connection.touch(System.nanoTime());
+		lock.lock();
+		try {
+			Route route = routes.get(connection.getRoute());
+			if (!closed && route != null) {
+				route.idle.addLast(connection);
+				route.available.signal();
+				return;
+			}
+		} finally {
+			lock.unlock();
+		}
+		connection.close();
+	}
+
+	/**
+	 * Close a borrowed connection, freeing its place in the shared pool.
+	 */
+	public void discard(AmfSocketConnection connection) {
+		release(connection.getRoute());
+		connection.close();
+	}
+
+	/**
+	 * Free the place kept by borrow() for a connection that could not be opened.
+	 */
+	public void cancel(String host, int port, boolean secure) {
+		release(route(host, port, secure));
+	}
+
+	private void release(String key) {
+		lock.lock();
+		try {
+			Route route = routes.get(key);
+			if (route != null && route.open > 0) {
+				route.open--;
+				route.available.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Close the idle connections of the shared pool.  Borrowed connections are closed
+	 * as they are returned.
+	 */
+	void close() {
+		List<AmfSocketConnection> idle = new ArrayList<AmfSocketConnection>();
+		lock.lock();
+		try {
+			closed = true;
+			for (Route route : routes.values()) {
+				idle.addAll(route.idle);
+				route.idle.clear();
+				// Wake any waiting threads, which time out or open a connection of their own
+				route.open = 0;
+				route.available.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+		for (AmfSocketConnection connection : idle) {
+			connection.close();
+		}
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Statistics
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Count a request served by a connection that was already open.
+	 */
+	public static void recordHit() {
+		hits.incrementAndGet();
+	}
+
+	/**
+	 * Count a connection opened for a request.
+	 *
+	 * @param nanos the time taken to open the connection.
+	 */
+	public static void recordMiss(long nanos) {
+		misses.incrementAndGet();
+		connectNanos.addAndGet(nanos);
+		long max = maxConnectNanos.get();
+		while (nanos > max && !maxConnectNanos.compareAndSet(max, nanos)) {
+			max = maxConnectNanos.get();
+		}
+	}
+
+	/**
+	 * Count a reused connection found to have been closed by the server.
+	 */
+	public static void recordStale() {
+		staleConnections.incrementAndGet();
+	}
+
+	/**
+	 * @return a one line summary of the connection statistics of the test.
+	 */
+	static String summarize() {
+		long hitCount = hits.get();
+		long missCount = misses.get();
+		long total = hitCount + missCount;
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("AMF connections: ").append(total).append(" requests, ") // $NON-NLS-1$
+			.append(hitCount).append(" on reused connections (") // $NON-NLS-1$
+			.append(String.format("%.1f", total == 0 ? 0.0 : hitCount * 100.0 / total)).append("%), ") // $NON-NLS-1$ $NON-NLS-2$
+			.append(missCount).append(" connections opened, connect mean ") // $NON-NLS-1$
+			.append(millis(missCount == 0 ? 0 : connectNanos.get() / missCount)).append(" ms max ") // $NON-NLS-1$
+			.append(millis(maxConnectNanos.get())).append(" ms, ") // $NON-NLS-1$
+			.append(staleConnections.get()).append(" closed by the server, ") // $NON-NLS-1$
+			.append(idleEvictions.get()).append(" evicted idle, ") // $NON-NLS-1$
+			.append(ageEvictions.get()).append(" evicted at max age, ") // $NON-NLS-1$
+			.append(waits.get()).append(" waits for the shared pool"); // $NON-NLS-1$
+		if (waits.get() > 0) {
+			sb.append(" (mean ").append(millis(waitNanos.get() / waits.get())).append(" ms)"); // $NON-NLS-1$ $NON-NLS-2$
+		}
+		return sb.toString();
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.3f", nanos / 1000000.0); // $NON-NLS-1$
+	}
+
+	private static void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+		connectNanos.set(0);
+		maxConnectNanos.set(0);
+		staleConnections.set(0);
+		idleEvictions.set(0);
+		ageEvictions.set(0);
+		waits.set(0);
+		waitNanos.set(0);
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Route
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * The shared connections to a host, port and scheme.
+	 */
+	private static class Route {
+
+		/**
+		 * The idle connections, least recently used first.
+		 */
+		final LinkedList<AmfSocketConnection> idle = new LinkedList<AmfSocketConnection>();
+
+		/**
+		 * The number of connections open or being opened, idle or borrowed.
+		 */
+		int open = 0;
+
+		final Condition available;
+
+		Route(Condition available) {
+			this.available = available;
+		}
+
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+/**
+ * How the socket transport reuses connections, as selected by the "Connection Strategy"
+ * parameter of AmfSampler.  See AmfConnectionPool.
+ *
+ */
+public enum AmfConnectionStrategy {
+
+	/**
+	 * One persistent connection per thread or virtual session, as a browser keeps.
+	 */
+	USER("user"), // $NON-NLS-1$
+
+	/**
+	 * A connection borrowed for each request from a pool per host shared by all threads,
+	 * bounded by the amf.connection.pool.size JMeter property.
+	 */
+	SHARED("shared"), // $NON-NLS-1$
+
+	/**
+	 * A new connection for every request, closed once the response has been read.
+	 */
+	REQUEST("request"); // $NON-NLS-1$
+
+	private final String alias;
+
+	private AmfConnectionStrategy(String alias) {
+		this.alias = alias;
+	}
+
+	/**
+	 * @return the name of the strategy, as given to the Connection Strategy parameter.
+	 */
+	public String getAlias() {
+		return alias;
+	}
+
+	/**
+	 * @return the strategy with the given name, ignoring case, or null if there is none.
+	 */
+	public static AmfConnectionStrategy forAlias(String alias) {
+		for (AmfConnectionStrategy strategy : values()) {
+			if (strategy.alias.equalsIgnoreCase(alias)) {
+				return strategy;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The cookies received by a virtual session, kept in place of the HTTP Cookie Manager so
+ * that each session presents its own cookies, e.g. its own JSESSIONID.  Cookies are kept
+ * by name only, ignoring their domain, path and expiry, since a session only talks to the
+ * server of its sampler.
+ * <p>
+ * A cookie jar is only used by one thread at a time.
+ *
+ */
+public class AmfCookieJar {
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final Map<String, String> cookies = new LinkedHashMap<String, String>();
+
+	/**
+	 * @return the value of the Cookie header to send, or null if there are no cookies.
+	 */
+	public String getCookieHeader() {
+		if (cookies.isEmpty()) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder(64);
+		Iterator<Map.Entry<String, String>> iter = cookies.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<String, String> cookie = iter.next();
+			sb.append(cookie.getKey()).append('=').append(cookie.getValue());
+			if (iter.hasNext()) {
+				sb.append("; "); // $NON-NLS-1$
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Keep the value of a Set-Cookie header, ignoring its attributes.  A cookie with
+	 * an empty value is removed.
+	 */
+	public void save(String setCookie) {
+		int end = setCookie.indexOf(';');
+		String pair = end < 0 ? setCookie : setCookie.substring(0, end);
+		int equals = pair.indexOf('=');
+		if (equals <= 0) {
+			return;
+		}
+		String name = pair.substring(0, equals).trim();
+		String value = pair.substring(equals + 1).trim();
+		if (value.length() == 0) {
+			cookies.remove(name);
+		} else {
+			cookies.put(name, value);
+		}
+	}
+
+}
@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * A read-only corpus of pre-serialized AMF requests, written by AmfCorpusWriter and
+ * memory mapped so that the requests are shared by all threads without being loaded
+ * into the heap.
+ * <p>
+ * Corpus file layout, all values big-endian:
+ * <pre>
+ *   magic       4 bytes, "AMFC"
+ *   version     unsigned short, 1
+ *   count       int, the number of requests
+ *   index       count entries of:
+ *                 offset              int, of the request from the start of the file
+ *                 length              int, of the request
+ *                 messageIdOffset     int, of the message id bytes within the request, or -1
+ *                 messageIdLength     unsigned short
+ *                 flexClientIdOffset  int, of the DSId header bytes within the request, or -1
+ *                 flexClientIdLength  unsigned short
+ *   requests    the serialized AMF requests
+ * </pre>
+ * The message id and DSId of the first message of each request are located when the
+ * corpus is written, so that a request can be sent by copying it from the mapping and
+ * patching those values in place.  Corpus files are limited to 2GB.
+ *
+ */
+public class AmfCorpus {
+
+	/**
+	 * How a cursor selects the next request.
+	 */
+	public enum Selection {
+		/**
+		 * Each request in turn, starting from a position based on the thread number.
+		 */
+		ROUND_ROBIN,
+		/**
+		 * Requests chosen at random.
+		 */
+		RANDOM
+	}
+
+    //--------------------------------------------------------------------------
+    // Public Static Variables
+    //--------------------------------------------------------------------------
+
+	public static final int MAGIC = 0x414D4643; // "AMFC"
+
+	public static final int VERSION = 1;
+
+	public static final int HEADER_LENGTH = 10;
+
+	public static final int INDEX_ENTRY_LENGTH = 20;
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    /**
+     * Open corpora by canonical path, so that each file is mapped once per JVM.
+     */
+    private static final Map<String, AmfCorpus> corpora = new ConcurrentHashMap<String, AmfCorpus>();
+
+    /**
+     * Held while mapping a corpus file.  A lock rather than a monitor, so that session
+     * threads opening a corpus do not pin the carrier threads of virtual threads.
+     */
+    private static final Lock openLock = new ReentrantLock();
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+    private final String path;
+
+    private final MappedByteBuffer data;
+
+    private final int count;
+
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] messageIdOffsets;
+    private final int[] messageIdLengths;
+    private final int[] flexClientIdOffsets;
+    private final int[] flexClientIdLengths;
+
+    private final int maxLength;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    private AmfCorpus(String path, MappedByteBuffer data) throws IOException {
+    	this.path = path;
+    	this.data = data;
+
+    	if (data.limit() < HEADER_LENGTH || data.getInt(0) != MAGIC) {
+    		throw new IOException("Not an AMF corpus file: " + path);
+    	}
+    	int version = data.getShort(4) & 0xFFFF;
+    	if (version != VERSION) {
+    		throw new IOException("Unsupported AMF corpus version " + version + ": " + path);
+    	}
+    	count = data.getInt(6);
+    	if (count <= 0 || (long) HEADER_LENGTH + (long) count * INDEX_ENTRY_LENGTH > data.limit()) {
+    		throw new IOException("Invalid AMF corpus index: " + path);
+    	}
+
+    	offsets = new int[count];
+    	lengths = new int[count];
+    	messageIdOffsets = new int[count];
+    	messageIdLengths = new int[count];
+    	flexClientIdOffsets = new int[count];
+    	flexClientIdLengths = new int[count];
+
+    	int max = 0;
+    	int position = HEADER_LENGTH;
+    	for (int i = 0; i < count; i++, position += INDEX_ENTRY_LENGTH) {
+    		offsets[i] = data.getInt(position);
+    		lengths[i] = data.getInt(position + 4);
+    		messageIdOffsets[i] = data.getInt(position + 8);
+    		messageIdLengths[i] = data.getShort(position + 12) & 0xFFFF;
+    		flexClientIdOffsets[i] = data.getInt(position + 14);
+    		flexClientIdLengths[i] = data.getShort(position + 18) & 0xFFFF;
+    		if (offsets[i] < 0 || lengths[i] < 0 || (long) offsets[i] + lengths[i] > data.limit()
+    				|| messageIdOffsets[i] + messageIdLengths[i] > lengths[i]
+    				|| flexClientIdOffsets[i] + flexClientIdLengths[i] > lengths[i]) {
+    			throw new IOException("Invalid AMF corpus index entry " + i + ": " + path);
+    		}
+    		max = Math.max(max, lengths[i]);
+    	}
+    	maxLength = max;
+    }
+
+    /**
+     * Open a corpus file, returning the corpus already opened for the file if there is one.
+     *
+     * @param file the corpus file.
+     * @return the corpus.
+     * @throws IOException if the file can not be read or is not a valid corpus.
+     */
+    public static AmfCorpus open(File file) throws IOException {
+    	String path = file.getCanonicalPath();
+    	AmfCorpus corpus = corpora.get(path);
+    	if (corpus == null) {
+    		openLock.lock();
+    		try {
+    			corpus = corpora.get(path);
+    			if (corpus == null) {
+    				corpus = new AmfCorpus(path, map(file));
+    				corpora.put(path, corpus);
+    				log.info("Opened AMF corpus " + path + " [" + corpus.count + " requests]");
+    			}
+    		} finally {
+    			openLock.unlock();
+    		}
+    	}
+    	return corpus;
+    }
+
+    /**
+     * Forget all opened corpora, so that files are mapped again when next opened.  The
+     * mappings are released once no longer referenced.
+     */
+    public static void closeAll() {
+    	corpora.clear();
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+    	RandomAccessFile raf = new RandomAccessFile(file, "r"); // $NON-NLS-1$
+    	try {
+    		FileChannel channel = raf.getChannel();
+    		if (channel.size() > Integer.MAX_VALUE) {
+    			throw new IOException("AMF corpus files are limited to 2GB: " + file);
+    		}
+    		// The mapping remains valid once the channel is closed
+    		return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    	} finally {
+    		raf.close();
+    	}
+    }
+
+    /**
+     * @return the path of the corpus file.
+     */
+    public String getPath() {
+    	return path;
+    }
+
+    /**
+     * @return the number of requests in the corpus.
+     */
+    public int size() {
+    	return count;
+    }
+
+    /**
+     * @return the length of the longest request in the corpus.
+     */
+    public int getMaxLength() {
+    	return maxLength;
+    }
+
+    /**
+     * Create a cursor over the requests in this corpus.  A cursor is used by a single
+     * thread.
+     *
+     * @param selection how the cursor selects the next request.
+     * @param threadNumber the number of the thread using the cursor.
+     * @return a new cursor.
+     */
+    public Cursor newCursor(Selection selection, int threadNumber) {
+    	return new Cursor(selection, threadNumber);
+    }
+
+    /**
+     * A single thread's view of a corpus, holding its own position within the shared
+     * mapping and its own request selection state.
+     */
+    public final class Cursor {
+
+    	private final ByteBuffer view;
+
+    	private final Selection selection;
+
+    	private final Random random;
+
+    	private int next;
+
+    	private int current = -1;
+
+    	private Cursor(Selection selection, int threadNumber) {
+    		this.view = data.duplicate();
+    		this.selection = selection;
+    		this.random = selection == Selection.RANDOM
+    			? new Random(System.nanoTime() ^ ((long) threadNumber << 32)) : null;
+    		this.next = Math.abs(threadNumber % count);
+    	}
+
+    	/**
+    	 * Select the next request.
+    	 *
+    	 * @return the index of the selected request.
+    	 */
+    	public int advance() {
+    		if (random != null) {
+    			current = random.nextInt(count);
+    		} else {
+    			current = next;
+    			next = next + 1 == count ? 0 : next + 1;
+    		}
+    		return current;
+    	}
+
+    	/**
+    	 * @return the index of the selected request, or -1 before the first call to advance().
+    	 */
+    	public int getIndex() {
+    		return current;
+    	}
+
+    	/**
+    	 * Copy the selected request into a new array, patching the message id and, if its
+    	 * encoded length matches the recorded value, the DSId.
+    	 *
+    	 * @param messageId the encoded message id, patched if it has the recorded length.
+    	 * @param flexClientId the encoded DSId, or null to leave the recorded value.
+    	 * @return the request bytes.
+    	 */
+    	public byte[] copyRequest(byte[] messageId, byte[] flexClientId) {
+    		int length = lengths[current];
+    		byte[] request = new byte[length];
+    		view.position(offsets[current]);
+    		view.get(request, 0, length);
+    		if (messageIdOffsets[current] >= 0 && messageId != null && messageId.length == messageIdLengths[current]) {
+    			System.arraycopy(messageId, 0, request, messageIdOffsets[current], messageId.length);
+    		}
+    		if (flexClientIdOffsets[current] >= 0 && flexClientId != null
+    				&& flexClientId.length == flexClientIdLengths[current]) {
+    			System.arraycopy(flexClientId, 0, request, flexClientIdOffsets[current], flexClientId.length);
+    		}
+    		return request;
+    	}
+
+    	/**
+    	 * @return true if the DSId of the selected request can be replaced with a value of the given encoded length.
+    	 */
+    	public boolean acceptsFlexClientId(int encodedLength) {
+    		return flexClientIdOffsets[current] >= 0 && flexClientIdLengths[current] == encodedLength;
+    	}
+
+    	/**
+    	 * @return the corpus this cursor reads from.
+    	 */
+    	public AmfCorpus getCorpus() {
+    		return AmfCorpus.this;
+    	}
+    }
+
+}
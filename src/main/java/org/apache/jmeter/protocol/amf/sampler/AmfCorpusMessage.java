@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import flex.messaging.messages.AbstractMessage;
+
+/**
+ * This class extends AmfMessage, sending requests read from a corpus of pre-serialized
+ * AMF requests (see AmfCorpus and AmfCorpusWriter) rather than building a message for
+ * each request.  For each sample the next request is selected by this thread's cursor,
+ * copied from the memory mapped corpus and the message id and DSId are patched in
+ * place before it is sent.  Responses are processed as for any other AmfMessage.
+ * <p>
+ * The DSId is only patched if the encoded length of the DSId parameter matches the
+ * length of the DSId recorded with the request, otherwise the recorded value is sent.
+ * 
+ */
+public class AmfCorpusMessage extends AmfMessage {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    protected static final String CORPUS_FILE_PARAMETER_NAME = "Corpus File";
+    protected static final String CORPUS_FILE_PARAMETER_DEFAULT = "";
+
+    protected static final String CORPUS_SELECTION_PARAMETER_NAME = "Corpus Selection";
+    protected static final String CORPUS_SELECTION_PARAMETER_DEFAULT = "round-robin";
+
+    /**
+     * This thread's cursor over the corpus, null if the corpus could not be opened.
+     */
+    protected AmfCorpus.Cursor cursor = null;
+
+    /**
+     * The last DSId patched into a request, and its encoded value.
+     */
+    private String encodedFlexClientId = null;
+    private byte[] flexClientIdBytes = null;
+
+	/**
+     * Setup AMF Test.
+     *
+     * @param context
+     *            the context to run with. This provides access to
+     *            initialization parameters.
+     */
+    public void setupTest(AmfSamplerContext context) {
+    	super.setupTest(context);
+
+    	String fileName = context.getParameter(CORPUS_FILE_PARAMETER_NAME, CORPUS_FILE_PARAMETER_DEFAULT).trim();
+    	String selectionName = context.getParameter(CORPUS_SELECTION_PARAMETER_NAME,
+    			CORPUS_SELECTION_PARAMETER_DEFAULT).trim();
+    	AmfCorpus.Selection selection = AmfCorpus.Selection.ROUND_ROBIN;
+    	if ("random".equalsIgnoreCase(selectionName)) {
+    		selection = AmfCorpus.Selection.RANDOM;
+    	} else if (!CORPUS_SELECTION_PARAMETER_DEFAULT.equalsIgnoreCase(selectionName)) {
+    		getLogger().warn(whoAmI() + "\tUnknown " + CORPUS_SELECTION_PARAMETER_NAME + " [" + selectionName
+    				+ "], using " + CORPUS_SELECTION_PARAMETER_DEFAULT + ".");
+    	}
+
+    	try {
+    		AmfCorpus corpus = AmfCorpus.open(new File(fileName));
+    		cursor = corpus.newCursor(selection, JMeterContextService.getContext().getThreadNum());
+    	} catch (IOException ex) {
+    		getLogger().error(whoAmI() + "\tUnable to open AMF corpus [" + fileName + "], no requests will be sent.", ex);
+    		cursor = null;
+    	}
+
+    	// Each request is sent as recorded
+    	if (batchSize > 1) {
+    		getLogger().warn(whoAmI() + "\t" + BATCH_SIZE_PARAMETER_NAME + " is ignored for corpus requests.");
+    		batchSize = 1;
+    	}
+    	useRequestTemplate = false;
+    }
+
+    /**
+     * Create a request by copying the next request from the corpus.
+     *
+     * @return the serialized request, or null if the corpus could not be opened.
+     */
+	public byte[] createRequest(AmfSamplerContext context) {
+		if (cursor == null) {
+			return null;
+		}
+		cursor.advance();
+
+		if (flexClientId != null && !flexClientId.equals(encodedFlexClientId)) {
+			encodedFlexClientId = flexClientId;
+			flexClientIdBytes = AmfRequestTemplate.encode(flexClientId);
+		}
+		byte[] request = cursor.copyRequest(AmfRequestTemplate.encode(createMessageId()),
+				flexClientId == null ? null : flexClientIdBytes);
+
+        if (getLogger().isDebugEnabled()) {
+        	getLogger().debug(whoAmI() + "\tAMF Request [corpus entry " + cursor.getIndex() + ", "
+        			+ AmfMessageRenderer.describe(request) + "]");
+        }
+		return request;
+	}
+
+	/**
+	 * Not used, requests are read from the corpus.
+	 */
+	protected AbstractMessage createAbstractMessage(AmfSamplerContext context) {
+		return null;
+	}
+
+    /**
+     * Provide a list of parameters which this test supports.
+     *
+     * @return a specification of the parameters used by this test which should
+     *         be listed in the GUI, or null if no parameters should be listed.
+     */
+    public Arguments getDefaultParameters() {
+        Arguments params = new Arguments();
+        params.addArgument(FLEX_CLIENT_ID_PARAMETER_NAME, FLEX_CLIENT_ID_PARAMETER_DEFAULT);
+        params.addArgument(CORPUS_FILE_PARAMETER_NAME, CORPUS_FILE_PARAMETER_DEFAULT);
+        params.addArgument(CORPUS_SELECTION_PARAMETER_NAME, CORPUS_SELECTION_PARAMETER_DEFAULT);
+        return params;
+    }
+
+    /**
+     * Get a Logger instance which can be used by subclasses to log information.
+     * This is the same Logger which is used by the base JavaSampler classes
+     * (jmeter.protocol.java).
+     *
+     * @return a Logger instance which can be used for logging
+     */
+    protected Logger getLogger() {
+        return log;
+    }
+
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.MessageBody;
+import flex.messaging.messages.Message;
+
+/**
+ * Writes a corpus of pre-serialized AMF requests to be read by AmfCorpus.
+ * <p>
+ * Each request added is deserialized once to find the message id and DSId header of
+ * its first message, and the position of those values within the request is recorded
+ * in the corpus index.  A value is only recorded if it occurs exactly once within the
+ * request, otherwise the request is replayed with the value it was recorded with.
+ * <p>
+ * Requests are written to a temporary file as they are added, and the corpus file is
+ * written by close().
+ * <p>
+ * Usage: java org.apache.jmeter.protocol.amf.sampler.AmfCorpusWriter corpus-file request-file-or-directory...
+ * <br>
+ * Each request file holds one serialized request, such as the body of an HTTP POST
+ * to a BlazeDS AMF channel.  The files within a directory are added in name order.
+ *
+ */
+public class AmfCorpusWriter {
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final File file;
+
+	private final File dataFile;
+
+	private final DataOutputStream dataOut;
+
+	private int count = 0;
+
+	private long dataLength = 0;
+
+	private int[] lengths = new int[64];
+	private int[] messageIdOffsets = new int[64];
+	private int[] messageIdLengths = new int[64];
+	private int[] flexClientIdOffsets = new int[64];
+	private int[] flexClientIdLengths = new int[64];
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+	/**
+	 * @param file the corpus file to write.
+	 */
+	public AmfCorpusWriter(File file) throws IOException {
+		this.file = file;
+		File dir = file.getAbsoluteFile().getParentFile();
+		this.dataFile = File.createTempFile("amfcorpus", ".tmp", dir); // $NON-NLS-1$ $NON-NLS-2$
+		this.dataOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile)));
+	}
+
+	/**
+	 * Add a serialized request to the corpus.
+	 *
+	 * @param request the serialized AMF request.
+	 * @return the index of the request within the corpus.
+	 * @throws IOException if the request can not be deserialized or written.
+	 */
+	public int add(byte[] request) throws IOException {
+		Message message = getFirstMessage(AmfMessageHelper.decodeActionMessage(request));
+
+		int messageIdOffset = -1;
+		int messageIdLength = 0;
+		int flexClientIdOffset = -1;
+		int flexClientIdLength = 0;
+		if (message != null) {
+			if (message.getMessageId() != null) {
+				byte[] messageId = AmfRequestTemplate.encode(message.getMessageId());
+				messageIdOffset = AmfRequestTemplate.indexOfUnique(request, messageId);
+				messageIdLength = messageIdOffset < 0 ? 0 : messageId.length;
+			}
+			Object header = message.getHeader(Message.FLEX_CLIENT_ID_HEADER);
+			if (header instanceof String && ((String) header).length() > 0) {
+				byte[] flexClientId = AmfRequestTemplate.encode((String) header);
+				flexClientIdOffset = AmfRequestTemplate.indexOfUnique(request, flexClientId);
+				flexClientIdLength = flexClientIdOffset < 0 ? 0 : flexClientId.length;
+			}
+		}
+		if (messageIdLength > 0xFFFF || flexClientIdLength > 0xFFFF) {
+			throw new IOException("Message id or DSId too long");
+		}
+		if (dataLength + request.length + AmfCorpus.HEADER_LENGTH
+				+ (long) (count + 1) * AmfCorpus.INDEX_ENTRY_LENGTH > Integer.MAX_VALUE) {
+			throw new IOException("AMF corpus files are limited to 2GB");
+		}
+
+		if (count == lengths.length) {
+			int capacity = count * 2;
+			lengths = Arrays.copyOf(lengths, capacity);
+			messageIdOffsets = Arrays.copyOf(messageIdOffsets, capacity);
+			messageIdLengths = Arrays.copyOf(messageIdLengths, capacity);
+			flexClientIdOffsets = Arrays.copyOf(flexClientIdOffsets, capacity);
+			flexClientIdLengths = Arrays.copyOf(flexClientIdLengths, capacity);
+		}
+		lengths[count] = request.length;
+		messageIdOffsets[count] = messageIdOffset;
+		messageIdLengths[count] = messageIdLength;
+		flexClientIdOffsets[count] = flexClientIdOffset;
+		flexClientIdLengths[count] = flexClientIdLength;
+
+		dataOut.write(request);
+		dataLength += request.length;
+		return count++;
+	}
+
+	/**
+	 * @return the number of requests added.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Write the corpus file and delete the temporary request data.
+	 */
+	public void close() throws IOException {
+		dataOut.close();
+		try {
+			if (count == 0) {
+				throw new IOException("No requests added to AMF corpus");
+			}
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				out.writeInt(AmfCorpus.MAGIC);
+				out.writeShort(AmfCorpus.VERSION);
+				out.writeInt(count);
+				int offset = AmfCorpus.HEADER_LENGTH + count * AmfCorpus.INDEX_ENTRY_LENGTH;
+				for (int i = 0; i < count; i++) {
+					out.writeInt(offset);
+					out.writeInt(lengths[i]);
+					out.writeInt(messageIdOffsets[i]);
+					out.writeShort(messageIdLengths[i]);
+					out.writeInt(flexClientIdOffsets[i]);
+					out.writeShort(flexClientIdLengths[i]);
+					offset += lengths[i];
+				}
+				copy(dataFile, out);
+			} finally {
+				out.close();
+			}
+		} finally {
+			dataFile.delete();
+		}
+	}
+
+	private static Message getFirstMessage(ActionMessage actionMessage) {
+		if (actionMessage.getBodyCount() == 0) {
+			return null;
+		}
+		MessageBody body = actionMessage.getBody(0);
+		Object data = body.getData();
+		if (data instanceof Object[] && ((Object[]) data).length > 0) {
+			data = ((Object[]) data)[0];
+		}
+		return data instanceof Message ? (Message) data : null;
+	}
+
+	private static void copy(File from, OutputStream out) throws IOException {
+		InputStream in = new FileInputStream(from);
+		try {
+			byte[] buffer = new byte[8192];
+			int length;
+			while ((length = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, length);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		byte[] bytes = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+		try {
+			int offset = 0;
+			while (offset < bytes.length) {
+				int length = in.read(bytes, offset, bytes.length - offset);
+				if (length < 0) {
+					throw new IOException("Unexpected end of file: " + file);
+				}
+				offset += length;
+			}
+		} finally {
+			in.close();
+		}
+		return bytes;
+	}
+
+	private void addFile(File requestFile) throws IOException {
+		if (requestFile.isDirectory()) {
+			File[] files = requestFile.listFiles();
+			Arrays.sort(files);
+			for (int i = 0; i < files.length; i++) {
+				if (files[i].isFile()) {
+					addFile(files[i]);
+				}
+			}
+		} else {
+			try {
+				add(readFile(requestFile));
+			} catch (IOException ex) {
+				System.err.println("Skipped " + requestFile + ": " + ex.getMessage());
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: java " + AmfCorpusWriter.class.getName()
+					+ " corpus-file request-file-or-directory...");
+			System.exit(2);
+		}
+		AmfCorpusWriter writer = new AmfCorpusWriter(new File(args[0]));
+		for (int i = 1; i < args.length; i++) {
+			writer.addFile(new File(args[i]));
+		}
+		int count = writer.size();
+		writer.close();
+		System.out.println("Wrote " + count + " requests to " + args[0]);
+	}
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates UUID formatted message ids made of a random 64 bit prefix, chosen once
+ * per generator instance, followed by a counter.  Ids are unique for the lifetime
+ * of the generator, and generating an id involves no random number generation.
+ * Since each AMF request has its own generator, the counter is normally only
+ * incremented by a single thread.
+ *
+ */
+public class AmfCounterMessageIdGenerator implements AmfMessageIdGenerator {
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+	private static final SecureRandom prefixGenerator = new SecureRandom();
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final long prefix;
+
+	private final AtomicLong counter = new AtomicLong();
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+	public AmfCounterMessageIdGenerator() {
+		synchronized (prefixGenerator) {
+			prefix = prefixGenerator.nextLong();
+		}
+	}
+
+	public String nextMessageId() {
+		return AmfMessageIdGeneratorFactory.toRandomUUIDString(prefix, counter.incrementAndGet());
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.IOException;
+
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.ActionContext;
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.AmfMessageSerializer;
+
+/**
+ * Compares the output of AmfNativeEncoder with the output of the BlazeDS
+ * AmfMessageSerializer for the same ActionMessage.
+ * <p>
+ * AmfMessageHelper uses this class to check the first message it encodes natively,
+ * disabling native encoding if the two differ.
+ *
+ */
+public class AmfEncoderVerifier {
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    private AmfEncoderVerifier() {
+    }
+
+    /**
+     * Serialize a message using the BlazeDS AmfMessageSerializer and fresh contexts.
+     *
+     * @param message the message to serialize.
+     * @return the serialized message.
+     * @throws IOException if the message can not be serialized.
+     */
+    public static byte[] serializeReference(ActionMessage message) throws IOException {
+    	SerializationContext serializationContext = new SerializationContext();
+    	ActionContext actionContext = new ActionContext();
+    	actionContext.setRequestMessage(message);
+
+    	AmfByteBuffer outBuffer = new AmfByteBuffer();
+    	AmfMessageSerializer serializer = new AmfMessageSerializer();
+    	serializer.initialize(serializationContext, outBuffer, null/*debugTrace*/);
+    	serializer.writeMessage(message);
+    	return outBuffer.toByteArray();
+    }
+
+    /**
+     * Check the output of the given encoder for a message against the output of
+     * AmfMessageSerializer.
+     *
+     * @param encoder the encoder to check.
+     * @param message the message to encode.
+     *
+     * @return true if the encoder produced the same bytes as AmfMessageSerializer.
+     * @throws AmfNativeEncoder.UnsupportedTypeException if the message can not be written
+     * by the encoder.
+     * @throws IOException if AmfMessageSerializer is unable to write the message.
+     */
+    public static boolean verify(AmfNativeEncoder encoder, ActionMessage message) throws IOException {
+    	// Encode natively first, so that an unsupported message costs no reference serialization
+    	AmfByteBuffer buffer = new AmfByteBuffer();
+    	encoder.writeMessage(buffer, message);
+    	byte[] expected = serializeReference(message);
+    	if (buffer.size() != expected.length) {
+    		return false;
+    	}
+    	byte[] actual = buffer.getBuffer();
+    	for (int i = 0; i < expected.length; i++) {
+    		if (actual[i] != expected[i]) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+
+}
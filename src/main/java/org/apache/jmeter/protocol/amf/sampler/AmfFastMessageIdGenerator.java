@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.security.SecureRandom;
+import java.util.Random;
+
+/**
+ * Generates random (version 4) UUID message ids from a non-cryptographic random
+ * number generator held per thread, so that threads never contend for a shared
+ * generator.  Each thread's generator is seeded once from a SecureRandom.
+ *
+ */
+public class AmfFastMessageIdGenerator implements AmfMessageIdGenerator {
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+	private static final SecureRandom seedGenerator = new SecureRandom();
+
+	private static final ThreadLocal<Random> randoms = new ThreadLocal<Random>() {
+		@Override
+		protected Random initialValue() {
+			long seed;
+			synchronized (seedGenerator) {
+				seed = seedGenerator.nextLong();
+			}
+			return new Random(seed);
+		}
+	};
+
+	public String nextMessageId() {
+		Random random = randoms.get();
+		return AmfMessageIdGeneratorFactory.toRandomUUIDString(random.nextLong(), random.nextLong());
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.jmeter.protocol.http.control.CacheManager;
+
+/**
+ * The default AmfTransport, sending requests with the Apache Commons HttpClient 3.1
+ * connections of HTTPSampler2.  The HTTP Request settings of the sampler, proxies, and
+ * the cookie, header, authorization and cache managers all apply as for HTTPSampler2.
+ *
+ */
+public class AmfHttpClientTransport implements AmfTransport {
+
+	private static final String CONTENT_TYPE = "application/x-amf"; // $NON-NLS-1$
+
+	private AmfSampler sampler = null;
+
+	private PostMethod httpMethod = null;
+
+	public void setup(AmfSampler sampler) {
+		this.sampler = sampler;
+	}
+
+	public int execute(URL url, byte[] request, AmfSampleResult res) throws IOException {
+		httpMethod = new PostMethod(url.toString());
+		if (request != null) {
+			httpMethod.setRequestEntity(new ByteArrayRequestEntity(request, CONTENT_TYPE));
+		}
+
+		long connectStart = System.nanoTime();
+		// Set any default request headers
+		sampler.setDefaultRequestHeaders(httpMethod);
+		// Setup connection
+		HttpClient client = sampler.setupHttpClient(url, httpMethod, res);
+		openConnection(client);
+
+		// Execute POST
+		long sendStart = System.nanoTime();
+		res.setPhaseNanos(AmfSamplePhase.CONNECT, sendStart - connectStart);
+		int statusCode = client.executeMethod(httpMethod);
+		res.setPhaseNanos(AmfSamplePhase.FIRST_BYTE, System.nanoTime() - sendStart);
+
+		// Needs to be done after execute to pick up all the headers
+		res.setRequestHeaders(sampler.getHttpRequestHeaders(httpMethod));
+		return statusCode;
+	}
+
+	public InputStream getResponseBody() throws IOException {
+		return httpMethod.getResponseBodyAsStream();
+	}
+
+	public long getResponseContentLength() {
+		return httpMethod.getResponseContentLength();
+	}
+
+	public String getResponseHeader(String name) {
+		Header header = httpMethod.getResponseHeader(name);
+		return header == null ? null : header.getValue();
+	}
+
+	public void complete(AmfSampleResult res) throws IOException {
+		// Pick up Actual path (after redirects)
+		res.setSampleLabel(httpMethod.getURI().toString());
+		res.setResponseMessage(httpMethod.getStatusText());
+		res.setResponseHeaders(sampler.getHttpResponseHeaders(httpMethod));
+
+		// Store any cookies received in the cookie manager:
+		sampler.saveHttpCookies(httpMethod, res.getURL());
+
+		// Save cache information
+		final CacheManager cacheManager = sampler.getCacheManager();
+		if (cacheManager != null){
+			cacheManager.saveDetails(httpMethod, res);
+		}
+	}
+
+	public void release() {
+		sampler.releaseHttpClient();
+		if (httpMethod != null) {
+			httpMethod.releaseConnection();
+			httpMethod = null;
+		}
+	}
+
+	public boolean interrupt() {
+		return sampler.interruptHttpClient();
+	}
+
+	public void close() {
+		// The clients of each thread are closed by HTTPSampler2.threadFinished()
+	}
+
+	/**
+	 * Acquire the connection the request will be sent on and open it, if it is not already
+	 * open, so that the time taken to connect is not included in the time to first byte.
+	 * The connection is released to the connection manager, which hands the same connection
+	 * to executeMethod().  Connections through a proxy, which may require tunnelling, are
+	 * left to executeMethod().
+	 */
+	private void openConnection(HttpClient client) throws IOException {
+		HostConfiguration hostConfiguration = client.getHostConfiguration();
+		if (hostConfiguration.getHost() == null || hostConfiguration.getProxyHost() != null) {
+			return;
+		}
+		HttpConnectionManager connectionManager = client.getHttpConnectionManager();
+		HttpConnection connection = connectionManager.getConnectionWithTimeout(hostConfiguration,
+				client.getParams().getConnectionManagerTimeout());
+		try {
+			if (!connection.isOpen()) {
+				connection.open();
+			}
+		} finally {
+			connectionManager.releaseConnection(connection);
+		}
+	}
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * Records the latency of AMF samples in HdrHistograms keyed by operation, e.g. the
+ * destination and operation name of a RemotingMessage, and writes the full percentile
+ * distribution of each operation at the end of the test.
+ * <p>
+ * Each sampler records to its own SingleWriterRecorder, which is only ever written by
+ * the sampler's thread and so records without locks or contended writes.  At each
+ * interval, and at the end of the test, a single merging thread takes the interval
+ * histogram of every recorder and adds it to the total histogram of its operation.
+ * <p>
+ * Recording is enabled by the amf.latency.enabled JMeter property, and configured by:
+ * <ul>
+ * <li>amf.latency.file - the file the percentile distributions are written to, default amf-latency.hgrm</li>
+ * <li>amf.latency.interval - the merge interval in seconds, default 10</li>
+ * <li>amf.latency.digits - the number of significant value digits, 1 to 5, default 2</li>
+ * </ul>
+ * Latencies are recorded in microseconds and reported in milliseconds.
+ *
+ */
+public class AmfLatencyRecorder {
+
+    //--------------------------------------------------------------------------
+    // Public Static Variables
+    //--------------------------------------------------------------------------
+
+	public static final String ENABLED_PROPERTY = "amf.latency.enabled"; // $NON-NLS-1$
+
+	public static final String FILE_PROPERTY = "amf.latency.file"; // $NON-NLS-1$
+
+	public static final String INTERVAL_PROPERTY = "amf.latency.interval"; // $NON-NLS-1$
+
+	public static final String DIGITS_PROPERTY = "amf.latency.digits"; // $NON-NLS-1$
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	private static final double MICROS_PER_MILLI = 1000.0;
+
+	private static final double[] SUMMARY_PERCENTILES = { 50.0, 90.0, 99.0, 99.9, 99.99 };
+
+	private static final String[] SUMMARY_LABELS = { " p50=", " p90=", " p99=", " p99.9=", " p99.99=" }; // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$ $NON-NLS-4$ $NON-NLS-5$
+
+	/**
+	 * The recorder of the running test, null if recording is not enabled or no test is running.
+	 */
+	private static volatile AmfLatencyRecorder instance = null;
+
+	/**
+	 * The number of test listeners that have started the current test and not yet ended it.
+	 */
+	private static int testListeners = 0;
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final int significantDigits;
+
+	private final File file;
+
+	private final long startTime = System.currentTimeMillis();
+
+	private final List<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+
+	/**
+	 * The total histogram of each operation, only accessed while holding the merge lock.
+	 */
+	private final Map<String, Histogram> totals = new TreeMap<String, Histogram>();
+
+	private final Object mergeLock = new Object();
+
+	private final Timer timer;
+
+	//--------------------------------------------------------------------------
+	//
+	// Constructor
+	//
+	//--------------------------------------------------------------------------
+
+	AmfLatencyRecorder(int significantDigits, File file, long intervalMillis) {
+		this.significantDigits = significantDigits;
+		this.file = file;
+		timer = new Timer("AMF Latency Merge", true); // $NON-NLS-1$
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				merge();
+			}
+		}, intervalMillis, intervalMillis);
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Test lifecycle
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Called by each AmfSampler as the test starts.  The first call creates the recorder
+	 * of the test, if recording is enabled.
+	 */
+	public static synchronized void testStarted() {
+		if (testListeners++ > 0 || !JMeterUtils.getPropDefault(ENABLED_PROPERTY, false)) {
+			return;
+		}
+		int digits = Math.max(1, Math.min(5, JMeterUtils.getPropDefault(DIGITS_PROPERTY, 2)));
+		long interval = Math.max(1, JMeterUtils.getPropDefault(INTERVAL_PROPERTY, 10)) * 1000L;
+		File file = new File(JMeterUtils.getPropDefault(FILE_PROPERTY, "amf-latency.hgrm")); // $NON-NLS-1$
+		instance = new AmfLatencyRecorder(digits, file, interval);
+		log.info("Recording AMF latencies to " + file.getAbsolutePath());
+	}
+
+	/**
+	 * Called by each AmfSampler as the test ends.  The last call merges the remaining
+	 * recorded latencies and writes the percentile distributions.
+	 */
+	public static synchronized void testEnded() {
+		if (testListeners == 0 || --testListeners > 0) {
+			return;
+		}
+		AmfLatencyRecorder recorder = instance;
+		instance = null;
+		if (recorder != null) {
+			recorder.close();
+		}
+	}
+
+	/**
+	 * @return the recorder of the running test, or null if latencies are not recorded.
+	 */
+	public static AmfLatencyRecorder getInstance() {
+		return instance;
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Recording
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Create a recorder for the latencies of the given operation, to be written by a
+	 * single thread.
+	 *
+	 * @param operation the key the latencies are merged and reported under.
+	 */
+	public SingleWriterRecorder createRecorder(String operation) {
+		SingleWriterRecorder recorder = new SingleWriterRecorder(significantDigits);
+		registrations.add(new Registration(operation, recorder));
+		return recorder;
+	}
+
+	/**
+	 * Add the latencies recorded since the last merge to the totals of each operation.
+	 */
+	void merge() {
+		synchronized (mergeLock) {
+			for (Registration registration : registrations) {
+				registration.interval = registration.recorder.getIntervalHistogram(registration.interval);
+				if (registration.interval.getTotalCount() == 0) {
+					continue;
+				}
+				Histogram total = totals.get(registration.operation);
+				if (total == null) {
+					total = new Histogram(significantDigits);
+					totals.put(registration.operation, total);
+				}
+				total.add(registration.interval);
+			}
+		}
+	}
+
+	private void close() {
+		timer.cancel();
+		merge();
+		synchronized (mergeLock) {
+			PrintStream out = null;
+			try {
+				out = new PrintStream(new FileOutputStream(file), false, "UTF-8"); // $NON-NLS-1$
+				write(out);
+			} catch (IOException ex) {
+				log.error("Unable to write AMF latencies to " + file.getAbsolutePath(), ex);
+			} finally {
+				if (out != null) {
+					out.close();
+				}
+			}
+			for (Map.Entry<String, Histogram> entry : totals.entrySet()) {
+				log.info("AMF latency " + entry.getKey() + "\t" + summarize(entry.getValue()));
+			}
+		}
+	}
+
+	/**
+	 * Write a summary of each operation, followed by its percentile distribution.
+	 */
+	private void write(PrintStream out) {
+		out.println("# AMF sample latencies (ms), test started " + new Date(startTime)); // $NON-NLS-1$
+		for (Map.Entry<String, Histogram> entry : totals.entrySet()) {
+			out.println("# " + entry.getKey() + "\t" + summarize(entry.getValue())); // $NON-NLS-1$ $NON-NLS-2$
+		}
+		for (Map.Entry<String, Histogram> entry : totals.entrySet()) {
+			out.println();
+			out.println("# Operation: " + entry.getKey()); // $NON-NLS-1$
+			entry.getValue().outputPercentileDistribution(out, Double.valueOf(MICROS_PER_MILLI));
+		}
+	}
+
+	private static String summarize(Histogram histogram) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("count=").append(histogram.getTotalCount()); // $NON-NLS-1$
+		sb.append(" mean=").append(format(histogram.getMean())); // $NON-NLS-1$
+		for (int i = 0; i < SUMMARY_PERCENTILES.length; i++) {
+			sb.append(SUMMARY_LABELS[i]).append(format(histogram.getValueAtPercentile(SUMMARY_PERCENTILES[i])));
+		}
+		sb.append(" max=").append(format(histogram.getMaxValue())); // $NON-NLS-1$
+		return sb.toString();
+	}
+
+	private static String format(double micros) {
+		return String.format("%.3f", Double.valueOf(micros / MICROS_PER_MILLI)); // $NON-NLS-1$
+	}
+
+	/**
+	 * A recorder of one sampler and the interval histogram recycled when merging it.
+	 */
+	private static class Registration {
+		final String operation;
+		final SingleWriterRecorder recorder;
+		Histogram interval = null;
+
+		Registration(String operation, SingleWriterRecorder recorder) {
+			this.operation = operation;
+			this.recorder = recorder;
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import flex.messaging.messages.AcknowledgeMessage;
+
+/**
+ * An AcknowledgeMessage whose headers and acknowledgement fields have been read
+ * by AmfResponseScanner, but whose body has not yet been deserialized.  The body is
+ * deserialized from the original response bytes the first time getBody() is called,
+ * so samples that only need the message headers, such as the DSId, never pay for
+ * deserializing the body object graph.
+ *
+ */
+public class AmfLazyAcknowledgeMessage extends AcknowledgeMessage {
+
+	private static final long serialVersionUID = 1L;
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	/**
+	 * The serialized response this message was read from, released once the body
+	 * has been deserialized.
+	 */
+	private transient byte[] response;
+
+	private boolean bodyDecoded;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+	/**
+	 * @param response the serialized AMF response this message was read from.
+	 */
+	public AmfLazyAcknowledgeMessage(byte[] response) {
+		super();
+		this.response = response;
+		this.bodyDecoded = false;
+	}
+
+	/**
+	 * Returns the body of this message, deserializing it from the response if this is
+	 * the first time the body has been requested.
+	 */
+	@Override
+	public Object getBody() {
+		if (!bodyDecoded) {
+			bodyDecoded = true;
+			byte[] bytes = response;
+			response = null;
+			super.setBody(AmfResponseScanner.decodeBody(bytes));
+		}
+		return super.getBody();
+	}
+
+	@Override
+	public void setBody(Object body) {
+		bodyDecoded = true;
+		response = null;
+		super.setBody(body);
+	}
+
+	/**
+	 * @return true if the body of this message has been deserialized.
+	 */
+	public boolean isBodyDecoded() {
+		return bodyDecoded;
+	}
+
+}
@@ -1,509 +1,806 @@
-/*
- * Licensed to the Apache Software Foundation (ASF) under one or more
- * contributor license agreements.  See the NOTICE file distributed with
- * this work for additional information regarding copyright ownership.
- * The ASF licenses this file to You under the Apache License, Version 2.0
- * (the "License"); you may not use this file except in compliance with
- * the License.  You may obtain a copy of the License at
- *
- *   http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package org.apache.jmeter.protocol.amf.sampler;
-
-import static org.apache.jmeter.protocol.amf.sampler.AmfRequestVariable.FLEX_CLIENT_ID_VARIABLE;
-import static org.apache.jmeter.protocol.amf.sampler.AmfRequestVariable.LAST_OPERATION_SUCCEEDED_VARIABLE;
-
-import java.io.IOException;
-import java.util.Iterator;
-import java.util.Map.Entry;
-
-import org.apache.jmeter.config.Arguments;
-import org.apache.jmeter.protocol.java.sampler.JavaSamplerContext;
-import org.apache.jmeter.samplers.SampleResult;
-import org.apache.jmeter.threads.JMeterContext;
-import org.apache.jmeter.threads.JMeterContextService;
-import org.apache.jmeter.threads.JMeterVariables;
-import org.apache.jorphan.logging.LoggingManager;
-import org.apache.log.Logger;
-
-import com.thoughtworks.xstream.XStream;
-
-import flex.messaging.io.amf.client.exceptions.ClientStatusException;
-import flex.messaging.io.amf.client.exceptions.ServerStatusException;
-import flex.messaging.messages.AbstractMessage;
-import flex.messaging.messages.AcknowledgeMessage;
-import flex.messaging.messages.AcknowledgeMessageExt;
-import flex.messaging.messages.Message;
-
-/**
- * An abstract implementation of AmfMessageInterface. This implementation provides 
- * default implementations of most of the methods in the interface, as well as some
- * convenience methods, in order to simplify development of AmfMessageInterface implementations.
- * <p>
- * Most custom implementations of this interface will want to extend either the
- * AmfCommandMessage or AmfRemotingMessage classes, which extend this class, and
- * provide concrete implementations of the createMessage() method.  Custom implementations
- * will also most likely providing application specific implementations the protected 
- * processResult() methods from this class.   
- * 
- */
-public abstract class AmfMessage implements AmfMessageInterface {
-
-    //--------------------------------------------------------------------------
-    // Static Variables
-    //--------------------------------------------------------------------------
-
-    private static final Logger log = LoggingManager.getLoggerForClass();
-
-    private static final String OBJECT_ENCODING_ID_PARAMETER_NAME = "Object Encoding Id";
-
-    protected static final String FLEX_CLIENT_ID_PARAMETER_NAME = "DSId";
-    protected static final String FLEX_CLIENT_ID_PARAMETER_DEFAULT = "";
-
-    protected static final String DESTINATION_PARAMETER_NAME = "Destination";
-    protected static final String DESTINATION_PARAMETER_DEFAULT = "";
-
-    protected static final String SOURCE_PARAMETER_NAME = "Source";
-    protected static final String SOURCE_PARAMETER_DEFAULT = "";
-
-    private static final String ENDPOINT_PARAMETER_NAME = "Channel Definition Id";
-    private static final String ENDPOINT_PARAMETER_DEFAULT = "my-amf";
-
-    //--------------------------------------------------------------------------
-    // Private Variables
-    //--------------------------------------------------------------------------
-
-    private int responseCode = -1;
-    private String responseMessage = "";
-
-    /**
-     * JMeter variables are maintained through the thread context
-     */ 
-    private transient JMeterContext threadContext = null;
-
-    //--------------------------------------------------------------------------
-    // Protected Variables
-    //--------------------------------------------------------------------------
-
-    protected AmfMessageHelper amfMessageHelper = new AmfMessageHelper();
-
-    /**
-     * The Flex message source.
-     */
-    protected String source = "";
-
-    /**
-     * The Flex message destination.
-     */
-    protected String destination = "";
-
-    /**
-     * This field corresponds to the Flex channel definition id, or "DSEndpoint", message header
-     */
-    protected String endpointId = "";
-    
-    /**
-     * This field corresponds to the Flex client id, or "DSId", message header
-     */
-    protected String flexClientId = null;
-
-    /**
-     * The XStream instance used for converting an object to an XML string.
-     */
-	protected XStream stream = new XStream();
-	
-	public void setResponseCode(String responseCode) {
-		this.responseCode = -1;
-		if (responseCode != null && responseCode.length() > 0) {
-			try {
-				Integer rc = Integer.valueOf(responseCode);
-				this.responseCode = rc.intValue();
-			} catch (NumberFormatException ex) {
-				this.responseCode = -1;
-			}
-		}
-	}
-
-	/**
-	 * @return the responseMessage
-	 */
-	public String getResponseMessage() {
-		return responseMessage;
-	}
-
-	/**
-	 * @param responseMessage the responseMessage to set
-	 */
-	public void setResponseMessage(String responseMessage) {
-		this.responseMessage = responseMessage;
-	}
-
-	/**
-	 * @return the responseCode
-	 */
-	public int getResponseCode() {
-		return responseCode;
-	}
-
-	/**
-     * Setup AMF Test.
-     *
-     * @param context
-     *            the context to run with. This provides access to
-     *            initialization parameters.
-     */
-    public void setupTest(AmfSamplerContext context) {
-        getLogger().debug(whoAmI() + "\tsetupTest()");
-        listParameters(context);
-
-        flexClientId = context.getParameter(FLEX_CLIENT_ID_PARAMETER_NAME, "nil");
-        	
-        endpointId = context.getParameter(ENDPOINT_PARAMETER_NAME, "");
-        
-        source = context.getParameter(SOURCE_PARAMETER_NAME, "");
-        
-        destination = context.getParameter(DESTINATION_PARAMETER_NAME, "");
-        
-        amfMessageHelper.setObjectEncoding(context.getIntParameter(OBJECT_ENCODING_ID_PARAMETER_NAME,
-        		AmfMessageHelper.getDefaultObjectEncoding()));
-        
-        amfMessageHelper.setXStream(stream);
-    }
-    
-    public void open() {
-    	amfMessageHelper.open();
-    }
-
-	public byte[] createRequest(AmfSamplerContext context) {
-        AbstractMessage message = createAbstractMessage(context);
-        if (getLogger().isDebugEnabled()) {
-        	getLogger().debug(whoAmI()+"\tAMF Request [\n"+stream.toXML(message)+"\n]");
-        }
-        return amfMessageHelper.serializeMessage(message);
-	}
-
-	public void processResponse(SampleResult result) {
-		
-		byte[] httpResponse = result.getResponseData();
-		
-		if (httpResponse != null) {
-			
-			setResponseCode(result.getResponseCode());
-	        setResponseMessage(result.getResponseMessage());
-			
-			Object amfResponse;
-			try {
-				amfResponse = amfMessageHelper.getDataObjectFromMessage(httpResponse);
-		        if (getLogger().isDebugEnabled() && amfResponse != null) {
-		        	getLogger().debug(whoAmI()+"\tAMF Response [\n"+stream.toXML(amfResponse)+"\n]");
-		        }
-	            // process result
-	           	if (amfResponse != null && amfResponse instanceof AcknowledgeMessage) {
-	           		processResult((AcknowledgeMessage)amfResponse);
-	           	} else if (amfResponse != null && amfResponse instanceof AcknowledgeMessageExt) {
-	                processResult((AcknowledgeMessageExt)amfResponse);
-	           	} else if (result != null) {
-	                getLogger().error(whoAmI() + "\tunexpected result type ["+result.getClass().getName()+"]");
-	           	} else {
-	                getLogger().error(whoAmI() + "\tnull result object.");
-	           	}
-			} catch (ClassNotFoundException ex) {
-	            getLogger().error(whoAmI() + "\tClassNotFoundException thrown. ", ex);
-			} catch (IOException ex) {
-	            getLogger().error(whoAmI() + "\tIOException thrown. ", ex);
-			} catch (ClientStatusException ex) {
-	            getLogger().error(whoAmI() + "\tClientStatusException thrown. ", ex);
-			} catch (ServerStatusException ex) {
-	            getLogger().error(whoAmI() + "\tServerStatusException thrown. ", ex);
-			}
-			
-		} else {
-			
-		}
-		
-	}
-    
-    public void close() {
-    	amfMessageHelper.close();
-    }
-
-	protected abstract AbstractMessage createAbstractMessage(AmfSamplerContext context);
-
-	/**
-     * Process the AcknowledgeMessage instance received from the remote service call.
-     * 
-     * @param ackMessage
-     */
-    protected boolean processResult(AcknowledgeMessage ackMessage) {
-    	boolean resultOK = true;
-    	
-		if (getLogger().isDebugEnabled())
-			getLogger().debug(whoAmI()+"\t[\n"+stream.toXML(ackMessage)+"\n]");
-		
-		// Extract the Flex Client Id from the AMF Message Headers and save 
-		// this to a JMeter variable so it can be used in subsequent messages.
-   		Object flexClientId = ackMessage.getHeader(Message.FLEX_CLIENT_ID_HEADER);
-   		if (flexClientId != null && flexClientId instanceof String) {
-			putVariable(FLEX_CLIENT_ID_VARIABLE.getName(), (String)flexClientId);
-   		} else {
-   			resultOK = false;
-   		}
-   		
-    	putVariable(LAST_OPERATION_SUCCEEDED_VARIABLE.getName(), resultOK);
-   		return resultOK;
-    }
-    
-    /**
-     * Process the AcknowledgeMessageExt instance received from the remote service call.
-     * 
-     * @param ackMessage
-     */
-    protected boolean processResult(AcknowledgeMessageExt ackMessage) {
-    	boolean resultOK = true;
-    	
-		if (getLogger().isDebugEnabled())
-			getLogger().debug(whoAmI()+"\t[\n"+stream.toXML(ackMessage)+"\n]");
-		
-		// Extract the Flex Client Id from the AMF Message Headers and save 
-		// this to a JMeter variable so it can be used in subsequent messages.
-   		Object flexClientId = ackMessage.getHeader(Message.FLEX_CLIENT_ID_HEADER);
-   		if (flexClientId != null && flexClientId instanceof String) {
-			putVariable(FLEX_CLIENT_ID_VARIABLE.getName(), (String)flexClientId);
-   		} else {
-   			resultOK = false;
-   		}
-   		
-    	putVariable(LAST_OPERATION_SUCCEEDED_VARIABLE.getName(), resultOK);
-   		return resultOK;
-    }
-
-    /**
-     * Provide a list of parameters which this test supports.
-     *
-     * @return a specification of the parameters used by this test which should
-     *         be listed in the GUI, or null if no parameters should be listed.
-     */
-    public abstract Arguments getDefaultParameters();
-
-    /**
-     * Provide a list of non-remoting service specific parameters which tests
-     * that extend this class can use as common parameters.
-     *
-     * @return a specification of the parameters used by this test which should
-     *         be listed in the GUI, or null if no parameters should be listed.
-     */
-    protected Arguments getBaseDefaultParameters() {
-        Arguments params = new Arguments();
-        params.addArgument(ENDPOINT_PARAMETER_NAME, ENDPOINT_PARAMETER_DEFAULT);
-        return params;
-    }
-
-    /**
-     * Dump a list of the parameters in this context to the debug log.
-     *
-     * @param context
-     *            the context which contains the initialization parameters.
-     */
-    protected void listParameters(JavaSamplerContext context) {
-        if (getLogger().isDebugEnabled()) {
-            Iterator<String> argsIt = context.getParameterNamesIterator();
-            while (argsIt.hasNext()) {
-                String name = argsIt.next();
-                getLogger().debug(whoAmI()+name + "=" + context.getParameter(name));
-            }
-        }
-    }
-
-    /**
-     * Get a Logger instance which can be used by subclasses to log information.
-     * This is the same Logger which is used by the base JavaSampler classes
-     * (jmeter.protocol.java).
-     *
-     * @return a Logger instance which can be used for logging
-     */
-    protected Logger getLogger() {
-        return log;
-    }
-
-    /**
-     * Generate a String identifier of this test for debugging purposes.
-     *
-     * @return a String identifier for this test instance
-     */
-    protected String whoAmI() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(Thread.currentThread().toString());
-        sb.append("@");
-        sb.append(Integer.toHexString(hashCode()));
-        return sb.toString();
-    }
-
-    /**
-     * Get a named JMeter variable
-     * 
-     * @param varName
-     * @return
-     */
-    protected String getVariable(String varName) {
-        JMeterVariables jmvars = getThreadContext().getVariables();
-        String value = jmvars.get(varName);
-        if (value != null) 
-        	return value;
-        else
-        	return "";
-    }
-
-    /**
-     * Get a named JMeter Integer variable
-     * 
-     * @param varName
-     * @return
-     */
-    protected Integer getIntVariable(String varName) {
-    	Integer retValue = null;
-        String value = getVariable(varName);
-        if (value.length() > 0) {
-    		try {
-    			retValue = Integer.valueOf(value);
-    		} catch (NumberFormatException ex) {
-    			retValue = null;
-    		}
-        }
-        return retValue;
-    }
-
-    /**
-     * Get a named JMeter Long variable
-     * 
-     * @param varName
-     * @return
-     */
-    protected Long getLongVariable(String varName) {
-    	Long retValue = null;
-        String value = getVariable(varName);
-        if (value.length() > 0) {
-    		try {
-    			retValue = Long.valueOf(value);
-    		} catch (NumberFormatException ex) {
-    			retValue = null;
-    		}
-        }
-        return retValue;
-    }
-
-    /**
-     * Get a named JMeter Boolean variable
-     * 
-     * @param varName
-     * @return
-     */
-    protected Boolean getBooleanVariable(String varName) {
-    	Boolean retValue = null;
-        String value = getVariable(varName);
-        if (value.length() > 0) {
-    		try {
-    			retValue = Boolean.valueOf(value);
-    		} catch (NumberFormatException ex) {
-    			retValue = null;
-    		}
-        }
-        return retValue;
-    }
-
-    /**
-     * Store the value of a named JMeter variable
-     * 
-     * @param varName
-     * @param value
-     */
-    protected void putVariable(String varName, String value) {
-        JMeterVariables jmvars = getThreadContext().getVariables();
-    	if (value != null && value.trim().length() > 0) { 
-    		jmvars.put(varName, value.toString());
-    	}
-    };
-
-    /**
-     * Store the value of a named JMeter variable
-     * 
-     * @param varName
-     * @param value
-     */
-    protected void putVariable(String varName, Integer value) {
-        JMeterVariables jmvars = getThreadContext().getVariables();
-    	if (value != null) { 
-    		jmvars.put(varName, value.toString());
-    	}
-    };
-
-    /**
-     * Store the value of a named JMeter variable
-     * 
-     * @param varName
-     * @param value
-     */
-    protected void putVariable(String varName, Long value) {
-        JMeterVariables jmvars = getThreadContext().getVariables();
-    	if (value != null) { 
-    		jmvars.put(varName, value.toString());
-    	}
-    };
-
-    /**
-     * Store the value of a named JMeter variable
-     * 
-     * @param varName
-     * @param value
-     */
-    protected void putVariable(String varName, Boolean value) {
-        JMeterVariables jmvars = getThreadContext().getVariables();
-    	if (value != null) { 
-    		jmvars.put(varName, value.toString());
-    	}
-    };
-    
-    protected int getUserNumber() {
-    	return getThreadContext().getThreadNum();
-    }
-
-    /**
-     * @return Returns the threadContext.
-     */
-    protected JMeterContext getThreadContext() {
-        if (threadContext == null) {
-            /*
-             * Only samplers have the thread context set up by JMeterThread at
-             * present, so suppress the warning for now
-             */
-            // log.warn("ThreadContext was not set up - should only happen in
-            // JUnit testing..."
-            // ,new Throwable("Debug"));
-            threadContext = JMeterContextService.getContext();
-        }
-        return threadContext;
-    }
-    
-    protected void dumpJMeterVariables() {
-    	if (getLogger().isDebugEnabled()) {
-            JMeterVariables jmvars = getThreadContext().getVariables();
-    		StringBuilder logMessage = new StringBuilder("JMeterVariables [\n");
-    		Iterator<Entry<String, Object>> iter = jmvars.getIterator();
-    		while (iter.hasNext()) {
-    			Entry<String, Object> entry = iter.next();
-    			logMessage.append(entry.getKey().toString());
-    			logMessage.append("=");
-    			logMessage.append(entry.getValue().toString());
-        		logMessage.append("\n");
-    		}
-    		logMessage.append("]");
-    		getLogger().debug(logMessage.toString());
-    	}
-    }
-
-}
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import static org.apache.jmeter.protocol.amf.sampler.AmfRequestVariable.FLEX_CLIENT_ID_VARIABLE;
+import static org.apache.jmeter.protocol.amf.sampler.AmfRequestVariable.LAST_OPERATION_SUCCEEDED_VARIABLE;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.protocol.java.sampler.JavaSamplerContext;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.threads.JMeterContext;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import com.thoughtworks.xstream.XStream;
+
+import flex.messaging.io.amf.client.exceptions.ClientStatusException;
+import flex.messaging.io.amf.client.exceptions.ServerStatusException;
+import flex.messaging.messages.AbstractMessage;
+import flex.messaging.messages.AcknowledgeMessage;
+import flex.messaging.messages.AcknowledgeMessageExt;
+import flex.messaging.messages.ErrorMessage;
+import flex.messaging.messages.Message;
+
+/**
+ * An abstract implementation of AmfMessageInterface. This implementation provides 
+ * default implementations of most of the methods in the interface, as well as some
+ * convenience methods, in order to simplify development of AmfMessageInterface implementations.
+ * <p>
+ * Most custom implementations of this interface will want to extend either the
+ * AmfCommandMessage or AmfRemotingMessage classes, which extend this class, and
+ * provide concrete implementations of the createMessage() method.  Custom implementations
+ * will also most likely providing application specific implementations the protected 
+ * processResult() methods from this class.   
+ * 
+ */
+public abstract class AmfMessage implements AmfStreamingMessageInterface {
+
+    //--------------------------------------------------------------------------
+    // Static Variables
+    //--------------------------------------------------------------------------
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final String OBJECT_ENCODING_ID_PARAMETER_NAME = "Object Encoding Id";
+
+    protected static final String FLEX_CLIENT_ID_PARAMETER_NAME = "DSId";
+    protected static final String FLEX_CLIENT_ID_PARAMETER_DEFAULT = "";
+
+    protected static final String DESTINATION_PARAMETER_NAME = "Destination";
+    protected static final String DESTINATION_PARAMETER_DEFAULT = "";
+
+    protected static final String SOURCE_PARAMETER_NAME = "Source";
+    protected static final String SOURCE_PARAMETER_DEFAULT = "";
+
+    private static final String ENDPOINT_PARAMETER_NAME = "Channel Definition Id";
+    private static final String ENDPOINT_PARAMETER_DEFAULT = "my-amf";
+
+    protected static final String REQUEST_TEMPLATE_PARAMETER_NAME = "Use Request Template";
+    protected static final String REQUEST_TEMPLATE_PARAMETER_DEFAULT = "false";
+
+    protected static final String REUSE_BUFFERS_PARAMETER_NAME = "Reuse Serialization Buffers";
+    protected static final String REUSE_BUFFERS_PARAMETER_DEFAULT = "false";
+
+    protected static final String NATIVE_ENCODING_PARAMETER_NAME = "Native AMF Encoding";
+    protected static final String NATIVE_ENCODING_PARAMETER_DEFAULT = "false";
+
+    protected static final String STREAM_RESPONSES_PARAMETER_NAME = "Stream Responses";
+    protected static final String STREAM_RESPONSES_PARAMETER_DEFAULT = "false";
+
+    protected static final String RESPONSE_COPY_LIMIT_PARAMETER_NAME = "Response Copy Limit";
+    protected static final String RESPONSE_COPY_LIMIT_PARAMETER_DEFAULT = "0";
+
+    protected static final String LAZY_DECODING_PARAMETER_NAME = "Lazy Response Decoding";
+    protected static final String LAZY_DECODING_PARAMETER_DEFAULT = "false";
+
+    protected static final String BATCH_SIZE_PARAMETER_NAME = "Batch Size";
+    protected static final String BATCH_SIZE_PARAMETER_DEFAULT = "1";
+
+    protected static final String MESSAGE_ID_GENERATOR_PARAMETER_NAME = "Message Id Generator";
+    protected static final String MESSAGE_ID_GENERATOR_PARAMETER_DEFAULT = AmfMessageIdGeneratorFactory.DEFAULT_ALIAS;
+
+    protected static final String CACHE_CLASS_ALIASES_PARAMETER_NAME = "Cache Class Aliases";
+    protected static final String CACHE_CLASS_ALIASES_PARAMETER_DEFAULT = "false";
+
+    protected static final String DECODE_AS_OBJECTS_PARAMETER_NAME = "Decode As ASObject";
+    protected static final String DECODE_AS_OBJECTS_PARAMETER_DEFAULT = "false";
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+    private int responseCode = -1;
+    private String responseMessage = "";
+
+    /**
+     * The pre-serialized request envelope used when request templates are enabled.
+     */
+    private transient AmfRequestTemplate requestTemplate = null;
+
+    /**
+     * The response decoded by decodeResponse(), held until processResponse().
+     */
+    private transient Object decodedResponse = null;
+    private transient Exception decodeException = null;
+    private transient boolean responseDecoded = false;
+
+    /**
+     * JMeter variables are maintained through the thread context
+     */ 
+    private transient JMeterContext threadContext = null;
+
+    //--------------------------------------------------------------------------
+    // Protected Variables
+    //--------------------------------------------------------------------------
+
+    protected AmfMessageHelper amfMessageHelper = new AmfMessageHelper();
+
+    /**
+     * The Flex message source.
+     */
+    protected String source = "";
+
+    /**
+     * The Flex message destination.
+     */
+    protected String destination = "";
+
+    /**
+     * This field corresponds to the Flex channel definition id, or "DSEndpoint", message header
+     */
+    protected String endpointId = "";
+    
+    /**
+     * This field corresponds to the Flex client id, or "DSId", message header
+     */
+    protected String flexClientId = null;
+
+    /**
+     * Indicates whether requests are produced by patching a pre-serialized request
+     * template rather than serializing a new message for every sample.  This should
+     * only be enabled for messages whose content, other than the message id and DSId,
+     * is fixed at setupTest.
+     */
+    protected boolean useRequestTemplate = false;
+
+    /**
+     * Indicates whether responses are decoded directly from the HTTP response stream.
+     */
+    protected boolean streamingResponse = false;
+
+    /**
+     * The maximum number of response bytes kept as sample response data when streaming.
+     */
+    protected int responseCopyLimit = 0;
+
+    /**
+     * The number of messages, each in its own message body, sent with each request.
+     */
+    protected int batchSize = 1;
+
+    /**
+     * The generator of the message ids assigned to request messages.
+     */
+    protected AmfMessageIdGenerator messageIdGenerator = null;
+
+    /**
+     * The XStream instance used for converting an object to an XML string.
+     *
+     * @deprecated messages are rendered on demand by AmfMessageRenderer, which shares
+     * a single XStream instance between all threads.
+     */
+	@Deprecated
+	protected XStream stream = AmfMessageRenderer.getXStream();
+	
+	public void setResponseCode(String responseCode) {
+		this.responseCode = -1;
+		if (responseCode != null && responseCode.length() > 0) {
+			try {
+				Integer rc = Integer.valueOf(responseCode);
+				this.responseCode = rc.intValue();
+			} catch (NumberFormatException ex) {
+				this.responseCode = -1;
+			}
+		}
+	}
+
+	/**
+	 * @return the responseMessage
+	 */
+	public String getResponseMessage() {
+		return responseMessage;
+	}
+
+	/**
+	 * @param responseMessage the responseMessage to set
+	 */
+	public void setResponseMessage(String responseMessage) {
+		this.responseMessage = responseMessage;
+	}
+
+	/**
+	 * @return the responseCode
+	 */
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	/**
+     * Setup AMF Test.
+     *
+     * @param context
+     *            the context to run with. This provides access to
+     *            initialization parameters.
+     */
+    public void setupTest(AmfSamplerContext context) {
+        getLogger().debug(whoAmI() + "\tsetupTest()");
+        listParameters(context);
+
+        flexClientId = context.getParameter(FLEX_CLIENT_ID_PARAMETER_NAME, "nil");
+        	
+        endpointId = context.getParameter(ENDPOINT_PARAMETER_NAME, "");
+        
+        source = context.getParameter(SOURCE_PARAMETER_NAME, "");
+        
+        destination = context.getParameter(DESTINATION_PARAMETER_NAME, "");
+        
+        amfMessageHelper.setObjectEncoding(context.getIntParameter(OBJECT_ENCODING_ID_PARAMETER_NAME,
+        		AmfMessageHelper.getDefaultObjectEncoding()));
+        
+
+        amfMessageHelper.setReuseBuffers(Boolean.valueOf(context.getParameter(REUSE_BUFFERS_PARAMETER_NAME,
+        		REUSE_BUFFERS_PARAMETER_DEFAULT).trim()).booleanValue());
+
+        amfMessageHelper.setNativeEncoding(Boolean.valueOf(context.getParameter(NATIVE_ENCODING_PARAMETER_NAME,
+        		NATIVE_ENCODING_PARAMETER_DEFAULT).trim()).booleanValue());
+
+        useRequestTemplate = Boolean.valueOf(context.getParameter(REQUEST_TEMPLATE_PARAMETER_NAME,
+        		REQUEST_TEMPLATE_PARAMETER_DEFAULT).trim()).booleanValue();
+        requestTemplate = null;
+
+        streamingResponse = Boolean.valueOf(context.getParameter(STREAM_RESPONSES_PARAMETER_NAME,
+        		STREAM_RESPONSES_PARAMETER_DEFAULT).trim()).booleanValue();
+        try {
+        	responseCopyLimit = Integer.parseInt(context.getParameter(RESPONSE_COPY_LIMIT_PARAMETER_NAME,
+        			RESPONSE_COPY_LIMIT_PARAMETER_DEFAULT).trim());
+        } catch (NumberFormatException ex) {
+        	responseCopyLimit = 0;
+        }
+
+        amfMessageHelper.setCacheClassAliases(Boolean.valueOf(context.getParameter(CACHE_CLASS_ALIASES_PARAMETER_NAME,
+        		CACHE_CLASS_ALIASES_PARAMETER_DEFAULT).trim()).booleanValue());
+
+        amfMessageHelper.setDecodeAsObjects(Boolean.valueOf(context.getParameter(DECODE_AS_OBJECTS_PARAMETER_NAME,
+        		DECODE_AS_OBJECTS_PARAMETER_DEFAULT).trim()).booleanValue());
+
+        amfMessageHelper.setLazyDecoding(Boolean.valueOf(context.getParameter(LAZY_DECODING_PARAMETER_NAME,
+        		LAZY_DECODING_PARAMETER_DEFAULT).trim()).booleanValue());
+        try {
+        	batchSize = Math.max(1, Integer.parseInt(context.getParameter(BATCH_SIZE_PARAMETER_NAME,
+        			BATCH_SIZE_PARAMETER_DEFAULT).trim()));
+        } catch (NumberFormatException ex) {
+        	batchSize = 1;
+        }
+
+        String generator = context.getParameter(MESSAGE_ID_GENERATOR_PARAMETER_NAME,
+        		MESSAGE_ID_GENERATOR_PARAMETER_DEFAULT);
+        try {
+        	messageIdGenerator = AmfMessageIdGeneratorFactory.newInstance(generator);
+        } catch (UnsupportedOperationException ex) {
+        	getLogger().error(whoAmI() + "\tUnable to create message id generator [" + generator
+        			+ "], using " + AmfMessageIdGeneratorFactory.DEFAULT_ALIAS + ".", ex);
+        	messageIdGenerator = AmfMessageIdGeneratorFactory.newInstance();
+        }
+
+        if (streamingResponse && amfMessageHelper.isLazyDecoding()) {
+        	// Lazy decoding reads the body from the buffered response
+        	getLogger().warn(whoAmI() + "\t" + STREAM_RESPONSES_PARAMETER_NAME + " is ignored when "
+        			+ LAZY_DECODING_PARAMETER_NAME + " is enabled.");
+        	streamingResponse = false;
+        }
+    }
+
+	public boolean isStreamingResponse() {
+		return streamingResponse;
+	}
+
+	public int getResponseCopyLimit() {
+		return responseCopyLimit;
+	}
+
+	/**
+	 * Provide the key the latencies of this message are recorded under, when latency
+	 * recording is enabled.  Called once after setupTest().
+	 *
+	 * @return the operation key, or null to use the sampler name.
+	 */
+	public String getOperationKey() {
+		return destination == null || destination.length() == 0 ? null : destination;
+	}
+
+	public void decodeResponse(InputStream in) {
+		responseDecoded = true;
+		try {
+			if (batchSize > 1) {
+				decodedResponse = amfMessageHelper.getDataObjectsFromStream(in);
+			} else {
+				decodedResponse = amfMessageHelper.getDataObjectFromStream(in);
+			}
+		} catch (Exception ex) {
+			decodeException = ex;
+		}
+	}
+    
+    public void open() {
+    	amfMessageHelper.open();
+    }
+
+	public byte[] createRequest(AmfSamplerContext context) {
+		if (batchSize > 1) {
+			return createBatchRequest(context);
+		}
+		if (useRequestTemplate) {
+			byte[] request = createRequestFromTemplate(context);
+			if (request != null) {
+				return request;
+			}
+		}
+        AbstractMessage message = createAbstractMessage(context);
+        if (getLogger().isDebugEnabled()) {
+        	getLogger().debug(whoAmI()+"\tAMF Request [\n"+AmfMessageRenderer.describe(message)+"\n]");
+        }
+        return amfMessageHelper.serializeMessage(message);
+	}
+
+	/**
+	 * Create a serialized request containing batchSize messages, each created by
+	 * createAbstractMessage() and written to its own message body.
+	 * 
+	 * @return the serialized request.
+	 */
+	protected byte[] createBatchRequest(AmfSamplerContext context) {
+		Object[] messages = new Object[batchSize];
+		for (int i = 0; i < batchSize; i++) {
+			messages[i] = createAbstractMessage(context);
+		}
+        if (getLogger().isDebugEnabled()) {
+        	getLogger().debug(whoAmI()+"\tAMF Request [\n"+AmfMessageRenderer.describe(messages)+"\n]");
+        }
+		return amfMessageHelper.serializeBatch(messages);
+	}
+
+	/**
+	 * Create a serialized request by patching the message id and DSId into a copy of the
+	 * pre-serialized request template, building the template first if required.
+	 * 
+	 * @return the serialized request, or null if a template could not be built, in which
+	 * case request templates are disabled for this message.
+	 */
+	protected byte[] createRequestFromTemplate(AmfSamplerContext context) {
+		if (requestTemplate == null || !requestTemplate.accepts(flexClientId)) {
+			requestTemplate = AmfRequestTemplate.create(createAbstractMessage(context), flexClientId,
+					amfMessageHelper);
+			if (requestTemplate == null) {
+				getLogger().warn(whoAmI() + "\tUnable to create request template, request templates disabled.");
+				useRequestTemplate = false;
+				return null;
+			}
+			if (getLogger().isDebugEnabled()) {
+				getLogger().debug(whoAmI() + "\tCreated request template [" + requestTemplate.length() + " bytes]");
+			}
+		}
+		return requestTemplate.createRequest(createMessageId(), flexClientId);
+	}
+
+	public void processResponse(SampleResult result) {
+		
+		byte[] httpResponse = result.getResponseData();
+		
+		if (httpResponse != null || responseDecoded) {
+			
+			setResponseCode(result.getResponseCode());
+	        setResponseMessage(result.getResponseMessage());
+			
+			Object amfResponse;
+			try {
+				if (responseDecoded) {
+					amfResponse = takeDecodedResponse();
+				} else if (batchSize > 1) {
+					amfResponse = amfMessageHelper.getDataObjectsFromMessage(httpResponse);
+				} else {
+					amfResponse = amfMessageHelper.getDataObjectFromMessage(httpResponse);
+				}
+		        if (getLogger().isDebugEnabled() && amfResponse != null) {
+		        	getLogger().debug(whoAmI()+"\tAMF Response [\n"+AmfMessageRenderer.describe(amfResponse)+"\n]");
+		        }
+	            // process result
+	           	if (batchSize > 1 && amfResponse instanceof List<?>) {
+	           		processBatchResponse(result, (List<?>)amfResponse);
+	           	} else if (amfResponse != null && amfResponse instanceof AcknowledgeMessage) {
+	           		processResult((AcknowledgeMessage)amfResponse);
+	           	} else if (amfResponse != null && amfResponse instanceof AcknowledgeMessageExt) {
+	                processResult((AcknowledgeMessageExt)amfResponse);
+	           	} else if (result != null) {
+	                getLogger().error(whoAmI() + "\tunexpected result type ["+result.getClass().getName()+"]");
+	           	} else {
+	                getLogger().error(whoAmI() + "\tnull result object.");
+	           	}
+			} catch (ClassNotFoundException ex) {
+	            getLogger().error(whoAmI() + "\tClassNotFoundException thrown. ", ex);
+			} catch (IOException ex) {
+	            getLogger().error(whoAmI() + "\tIOException thrown. ", ex);
+			} catch (ClientStatusException ex) {
+	            getLogger().error(whoAmI() + "\tClientStatusException thrown. ", ex);
+			} catch (ServerStatusException ex) {
+	            getLogger().error(whoAmI() + "\tServerStatusException thrown. ", ex);
+			}
+			
+		} else {
+			
+		}
+		
+	}
+    
+	/**
+	 * Process the data objects received for each message body of a batch request.  Each
+	 * body is reported as a sub-result of the sample, successful if the body contains an
+	 * acknowledgement accepted by processResult().  The sample is marked as failed if any
+	 * body failed, or if fewer bodies were received than were sent.
+	 * 
+	 * @param result the sample result of the batch request.
+	 * @param bodies the data objects received, in the order received.
+	 */
+	protected void processBatchResponse(SampleResult result, List<?> bodies) {
+		boolean batchOK = bodies.size() == batchSize;
+		for (int i = 0; i < bodies.size(); i++) {
+			Object body = bodies.get(i);
+			
+			SampleResult subResult = new SampleResult();
+			subResult.setSampleLabel(result.getSampleLabel() + "-" + (i + 1));
+			subResult.setStampAndTime(result.getStartTime(), result.getTime());
+			subResult.setDataType(SampleResult.TEXT);
+			
+			boolean bodyOK = false;
+			if (body instanceof ErrorMessage) {
+				ErrorMessage errorMessage = (ErrorMessage)body;
+				subResult.setResponseCode(errorMessage.getFaultCode());
+				subResult.setResponseMessage(errorMessage.getFaultString());
+			} else if (body instanceof AcknowledgeMessage) {
+				bodyOK = processResult((AcknowledgeMessage)body);
+				subResult.setResponseCodeOK();
+				subResult.setResponseMessageOK();
+			} else {
+                getLogger().error(whoAmI() + "\tunexpected result type ["
+                		+ (body == null ? "null" : body.getClass().getName()) + "] in message body " + (i + 1));
+			}
+			subResult.setSuccessful(bodyOK);
+			
+			result.addSubResult(subResult);
+			batchOK = batchOK && bodyOK;
+		}
+		if (!batchOK) {
+			result.setSuccessful(false);
+		}
+	}
+
+    public void close() {
+    	amfMessageHelper.close();
+    	responseDecoded = false;
+    	decodedResponse = null;
+    	decodeException = null;
+    }
+
+	/**
+	 * Return the response held by decodeResponse(), rethrowing any exception encountered
+	 * while decoding it.
+	 */
+	private Object takeDecodedResponse() throws ClassNotFoundException, IOException,
+			ClientStatusException, ServerStatusException {
+		Object amfResponse = decodedResponse;
+		Exception ex = decodeException;
+		responseDecoded = false;
+		decodedResponse = null;
+		decodeException = null;
+		if (ex instanceof ClassNotFoundException) {
+			throw (ClassNotFoundException) ex;
+		} else if (ex instanceof IOException) {
+			throw (IOException) ex;
+		} else if (ex instanceof ClientStatusException) {
+			throw (ClientStatusException) ex;
+		} else if (ex instanceof ServerStatusException) {
+			throw (ServerStatusException) ex;
+		} else if (ex instanceof RuntimeException) {
+			throw (RuntimeException) ex;
+		}
+		return amfResponse;
+	}
+
+	protected abstract AbstractMessage createAbstractMessage(AmfSamplerContext context);
+
+	/**
+	 * Generate a unique id for a new message.
+	 * 
+	 * @return a new message id.
+	 */
+	protected String createMessageId() {
+		if (messageIdGenerator == null) {
+			messageIdGenerator = AmfMessageIdGeneratorFactory.newInstance();
+		}
+		return messageIdGenerator.nextMessageId();
+	}
+
+	/**
+     * Process the AcknowledgeMessage instance received from the remote service call.
+     * 
+     * @param ackMessage
+     */
+    protected boolean processResult(AcknowledgeMessage ackMessage) {
+    	boolean resultOK = true;
+    	
+		if (getLogger().isDebugEnabled())
+			getLogger().debug(whoAmI()+"\t[\n"+AmfMessageRenderer.describe(ackMessage)+"\n]");
+		
+		// Extract the Flex Client Id from the AMF Message Headers and save 
+		// this to a JMeter variable so it can be used in subsequent messages.
+   		Object flexClientId = ackMessage.getHeader(Message.FLEX_CLIENT_ID_HEADER);
+   		if (flexClientId != null && flexClientId instanceof String) {
+			putVariable(FLEX_CLIENT_ID_VARIABLE.getName(), (String)flexClientId);
+   		} else {
+   			resultOK = false;
+   		}
+   		
+    	putVariable(LAST_OPERATION_SUCCEEDED_VARIABLE.getName(), resultOK);
+   		return resultOK;
+    }
+    
+    /**
+     * Process the AcknowledgeMessageExt instance received from the remote service call.
+     * 
+     * @param ackMessage
+     */
+    protected boolean processResult(AcknowledgeMessageExt ackMessage) {
+    	boolean resultOK = true;
+    	
+		if (getLogger().isDebugEnabled())
+			getLogger().debug(whoAmI()+"\t[\n"+AmfMessageRenderer.describe(ackMessage)+"\n]");
+		
+		// Extract the Flex Client Id from the AMF Message Headers and save 
+		// this to a JMeter variable so it can be used in subsequent messages.
+   		Object flexClientId = ackMessage.getHeader(Message.FLEX_CLIENT_ID_HEADER);
+   		if (flexClientId != null && flexClientId instanceof String) {
+			putVariable(FLEX_CLIENT_ID_VARIABLE.getName(), (String)flexClientId);
+   		} else {
+   			resultOK = false;
+   		}
+   		
+    	putVariable(LAST_OPERATION_SUCCEEDED_VARIABLE.getName(), resultOK);
+   		return resultOK;
+    }
+
+    /**
+     * Provide a list of parameters which this test supports.
+     *
+     * @return a specification of the parameters used by this test which should
+     *         be listed in the GUI, or null if no parameters should be listed.
+     */
+    public abstract Arguments getDefaultParameters();
+
+    /**
+     * Provide a list of non-remoting service specific parameters which tests
+     * that extend this class can use as common parameters.
+     *
+     * @return a specification of the parameters used by this test which should
+     *         be listed in the GUI, or null if no parameters should be listed.
+     */
+    protected Arguments getBaseDefaultParameters() {
+        Arguments params = new Arguments();
+        params.addArgument(ENDPOINT_PARAMETER_NAME, ENDPOINT_PARAMETER_DEFAULT);
+        return params;
+    }
+
+    /**
+     * Dump a list of the parameters in this context to the debug log.
+     *
+     * @param context
+     *            the context which contains the initialization parameters.
+     */
+    protected void listParameters(JavaSamplerContext context) {
+        if (getLogger().isDebugEnabled()) {
+            Iterator<String> argsIt = context.getParameterNamesIterator();
+            while (argsIt.hasNext()) {
+                String name = argsIt.next();
+                getLogger().debug(whoAmI()+name + "=" + context.getParameter(name));
+            }
+        }
+    }
+
+    /**
+     * Get a Logger instance which can be used by subclasses to log information.
+     * This is the same Logger which is used by the base JavaSampler classes
+     * (jmeter.protocol.java).
+     *
+     * @return a Logger instance which can be used for logging
+     */
+    protected Logger getLogger() {
+        return log;
+    }
+
+    /**
+     * Generate a String identifier of this test for debugging purposes.
+     *
+     * @return a String identifier for this test instance
+     */
+    protected String whoAmI() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(Thread.currentThread().toString());
+        sb.append("@");
+        sb.append(Integer.toHexString(hashCode()));
+        return sb.toString();
+    }
+
+    /**
+     * Get a named JMeter variable
+     * 
+     * @param varName
+     * @return
+     */
+    protected String getVariable(String varName) {
+        JMeterVariables jmvars = getThreadContext().getVariables();
+        String value = jmvars.get(varName);
+        if (value != null) 
+        	return value;
+        else
+        	return "";
+    }
+
+    /**
+     * Get a named JMeter Integer variable
+     * 
+     * @param varName
+     * @return
+     */
+    protected Integer getIntVariable(String varName) {
+    	Integer retValue = null;
+        String value = getVariable(varName);
+        if (value.length() > 0) {
+    		try {
+    			retValue = Integer.valueOf(value);
+    		} catch (NumberFormatException ex) {
+    			retValue = null;
+    		}
+        }
+        return retValue;
+    }
+
+    /**
+     * Get a named JMeter Long variable
+     * 
+     * @param varName
+     * @return
+     */
+    protected Long getLongVariable(String varName) {
+    	Long retValue = null;
+        String value = getVariable(varName);
+        if (value.length() > 0) {
+    		try {
+    			retValue = Long.valueOf(value);
+    		} catch (NumberFormatException ex) {
+    			retValue = null;
+    		}
+        }
+        return retValue;
+    }
+
+    /**
+     * Get a named JMeter Boolean variable
+     * 
+     * @param varName
+     * @return
+     */
+    protected Boolean getBooleanVariable(String varName) {
+    	Boolean retValue = null;
+        String value = getVariable(varName);
+        if (value.length() > 0) {
+    		try {
+    			retValue = Boolean.valueOf(value);
+    		} catch (NumberFormatException ex) {
+    			retValue = null;
+    		}
+        }
+        return retValue;
+    }
+
+    /**
+     * Store the value of a named JMeter variable
+     * 
+     * @param varName
+     * @param value
+     */
+    protected void putVariable(String varName, String value) {
+        JMeterVariables jmvars = getThreadContext().getVariables();
+    	if (value != null && value.trim().length() > 0) { 
+    		jmvars.put(varName, value.toString());
+    	}
+    };
+
+    /**
+     * Store the value of a named JMeter variable
+     * 
+     * @param varName
+     * @param value
+     */
+    protected void putVariable(String varName, Integer value) {
+        JMeterVariables jmvars = getThreadContext().getVariables();
+    	if (value != null) { 
+    		jmvars.put(varName, value.toString());
+    	}
+    };
+
+    /**
+     * Store the value of a named JMeter variable
+     * 
+     * @param varName
+     * @param value
+     */
+    protected void putVariable(String varName, Long value) {
+        JMeterVariables jmvars = getThreadContext().getVariables();
+    	if (value != null) { 
+    		jmvars.put(varName, value.toString());
+    	}
+    };
+
+    /**
+     * Store the value of a named JMeter variable
+     * 
+     * @param varName
+     * @param value
+     */
+    protected void putVariable(String varName, Boolean value) {
+        JMeterVariables jmvars = getThreadContext().getVariables();
+    	if (value != null) { 
+    		jmvars.put(varName, value.toString());
+    	}
+    };
+    
+    protected int getUserNumber() {
+    	return getThreadContext().getThreadNum();
+    }
+
+    /**
+     * @return Returns the threadContext.
+     */
+    protected JMeterContext getThreadContext() {
+        if (threadContext == null) {
+            /*
+             * Only samplers have the thread context set up by JMeterThread at
+             * present, so suppress the warning for now
+             */
+            // log.warn("ThreadContext was not set up - should only happen in
+            // JUnit testing..."
+            // ,new Throwable("Debug"));
+            threadContext = JMeterContextService.getContext();
+        }
+        return threadContext;
+    }
+    
+    protected void dumpJMeterVariables() {
+    	if (getLogger().isDebugEnabled()) {
+            JMeterVariables jmvars = getThreadContext().getVariables();
+    		StringBuilder logMessage = new StringBuilder("JMeterVariables [\n");
+    		Iterator<Entry<String, Object>> iter = jmvars.getIterator();
+    		while (iter.hasNext()) {
+    			Entry<String, Object> entry = iter.next();
+    			logMessage.append(entry.getKey().toString());
+    			logMessage.append("=");
+    			logMessage.append(entry.getValue().toString());
+        		logMessage.append("\n");
+    		}
+    		logMessage.append("]");
+    		getLogger().debug(logMessage.toString());
+    	}
+    }
+
+}
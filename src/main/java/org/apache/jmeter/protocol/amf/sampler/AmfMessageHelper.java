@@ -1,324 +1,665 @@
-/*
- * Licensed to the Apache Software Foundation (ASF) under one or more
- * contributor license agreements.  See the NOTICE file distributed with
- * this work for additional information regarding copyright ownership.
- * The ASF licenses this file to You under the Apache License, Version 2.0
- * (the "License"); you may not use this file except in compliance with
- * the License.  You may obtain a copy of the License at
- *
- *   http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package org.apache.jmeter.protocol.amf.sampler;
-
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
-import java.util.List;
-
-import org.apache.jorphan.logging.LoggingManager;
-import org.apache.log.Logger;
-
-import com.thoughtworks.xstream.XStream;
-
-import flex.messaging.io.ClassAliasRegistry;
-import flex.messaging.io.MessageDeserializer;
-import flex.messaging.io.SerializationContext;
-import flex.messaging.io.amf.ActionContext;
-import flex.messaging.io.amf.ActionMessage;
-import flex.messaging.io.amf.AmfMessageDeserializer;
-import flex.messaging.io.amf.AmfMessageSerializer;
-import flex.messaging.io.amf.MessageBody;
-import flex.messaging.io.amf.MessageHeader;
-import flex.messaging.io.amf.client.AMFConnection;
-import flex.messaging.io.amf.client.AMFHeaderProcessor;
-import flex.messaging.io.amf.client.exceptions.ClientStatusException;
-import flex.messaging.io.amf.client.exceptions.ServerStatusException;
-import flex.messaging.io.amf.client.exceptions.ServerStatusException.HttpResponseInfo;
-import flex.messaging.messages.AcknowledgeMessageExt;
-import flex.messaging.messages.AsyncMessageExt;
-import flex.messaging.messages.CommandMessageExt;
-
-/**
- * An extension to flex.messaging.io.amf.client.AMFConnection that uses inherited methods
- * for serializing/deserializing AMF messages to/from a byte array.  It is expected
- * that the caller of this class uses an external connection class, as opposed to the
- * internal URLConnection within AMFConnection, to actually send/receive the messages.
- * 
- */
-public class AmfMessageHelper extends AMFConnection {
-
-    //--------------------------------------------------------------------------
-    // Static Initializer
-    //--------------------------------------------------------------------------
-	
-	static {
-		// Register known Endpoint aliases to prevent ClassNotFoundException's during
-		// response message deserialization.
-		ClassAliasRegistry aliasRegistry = ClassAliasRegistry.getRegistry();
-		aliasRegistry.registerAlias(AcknowledgeMessageExt.CLASS_ALIAS, "flex.messaging.messages.AcknowledgeMessageExt");
-		aliasRegistry.registerAlias(CommandMessageExt.CLASS_ALIAS, "flex.messaging.messages.CommandMessageExt");
-		aliasRegistry.registerAlias(AsyncMessageExt.CLASS_ALIAS, "flex.messaging.messages.AsyncMessageExt");
-	}
-
-    //--------------------------------------------------------------------------
-    // Private Static Variables
-    //--------------------------------------------------------------------------
-
-    private static final Logger log = LoggingManager.getLoggerForClass();
-
-    //--------------------------------------------------------------------------
-    // Private Variables
-    //--------------------------------------------------------------------------
-
-    private ActionContext actionContext = null;
-    private SerializationContext serializationContext = null;
-    private String command = "";
-    private int responseCode = -1;
-    private String responseMessage = "";
-
-    //--------------------------------------------------------------------------
-    // Protected Variables
-    //--------------------------------------------------------------------------
-
-    /**
-     * List of AMF message headers.
-     */
-    protected List<MessageHeader> amfHeaders;
-
-    /**
-     * An AMF connection may have an AMF header processor where AMF headers
-     * can be passed to as they are encountered in AMF response messages.
-     */
-    protected AMFHeaderProcessor amfHeaderProcessor;
-
-    /**
-     * The XStream instance used for converting an object to an XML string.
-     */
-	protected XStream stream = null;
-
-    //--------------------------------------------------------------------------
-    //
-    // Constructor
-    //
-    //--------------------------------------------------------------------------
-
-    /**
-     * Creates a default AMF Message Helper instance.
-     */
-    public AmfMessageHelper() {
-    	// Initialize response counter to 1 for compatibility with Flourine-Fx
-    	responseCounter = 1;
-    }
-	
-	public void setResponseCode(String responseCode) {
-		this.responseCode = -1;
-		if (responseCode != null && responseCode.length() > 0) {
-			try {
-				Integer rc = Integer.valueOf(responseCode);
-				this.responseCode = rc.intValue();
-			} catch (NumberFormatException ex) {
-				this.responseCode = -1;
-			}
-		}
-	}
-
-	/**
-	 * @return the stream
-	 */
-	public XStream getXStream() {
-		return stream;
-	}
-
-	/**
-	 * @param stream the stream to set
-	 */
-	public void setXStream(XStream stream) {
-		this.stream = stream;
-	}
-
-	/**
-	 * @return the responseMessage
-	 */
-	public String getResponseMessage() {
-		return responseMessage;
-	}
-
-	/**
-	 * @param responseMessage the responseMessage to set
-	 */
-	public void setResponseMessage(String responseMessage) {
-		this.responseMessage = responseMessage;
-	}
-
-	/**
-	 * @return the responseCode
-	 */
-	public int getResponseCode() {
-		return responseCode;
-	}
-
-    /**
-     * Initialize the required contexts for processing an AMF message. 
-     * 
-     */
-	public void open() {
-        serializationContext = new SerializationContext();
-        serializationContext.createASObjectForMissingType = true;
-        serializationContext.instantiateTypes = true;
-        actionContext = new ActionContext();
-	}
-	
-	/**
-	 * Serialize an AMF AbstractMessage in preparation for sending it to a remote server using
-	 * an external transport mechanism.
-	 * 
-	 * @param message an Object of type flex.messaging.messages.AbstractMessage.
-	 * NOTE: The underlying serialization logic expects to process an object array of message body
-	 * data, thus the declaration of a variable number of Object input parameters, but the current
-	 * implementation follows the current limitation of AMFConnection of only supporting
-	 * one message per request.
-	 * 
-	 * @return A serialized object of type flex.messaging.io.amf.ActionMessage 
-	 * as a byte array.
-	 */
-	public byte[] serializeMessage(Object... message) {
-
-    	ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
-
-    	if (message != null) {
-    		
-			String responseURI = getResponseURI();
-			
-	        ActionMessage requestMessage = new ActionMessage(getObjectEncoding());
-	
-	        if (amfHeaders != null)
-	        {
-	            for (MessageHeader header : amfHeaders)
-	                requestMessage.addHeader(header);
-	        }
-	
-	        MessageBody amfMessage = new MessageBody(command, responseURI, message);
-	        requestMessage.addBody(amfMessage);
-	
-	        // Setup for AMF message serializer
-	        actionContext.setRequestMessage(requestMessage);
-	        
-	        AmfMessageSerializer amfMessageSerializer = new AmfMessageSerializer();
-	        amfMessageSerializer.initialize(serializationContext, outBuffer, null/*debugTrace*/);
-	        
-	        try {
-				amfMessageSerializer.writeMessage(requestMessage);
-			} catch (IOException e) {
-	            // ClientStatusException exception = new ClientStatusException(e, ClientStatusException.AMF_CALL_FAILED_CODE);
-	            // throw exception;
-			}
-			
-    	}
-    	
-    	byte[] byteArray = outBuffer.toByteArray(); 
-
-        if (getLogger().isDebugEnabled()) {
-	        String temp = new String(byteArray);
-	       	getLogger().debug(whoAmI()+"\tAMF Request byte[] [\n"+temp+"\n]");
-        }
-        
-		return byteArray;
-	}
-
-	/**
-	 * Deserialize a byte array, representing an AMF ActionMessage received
-	 * as a response to a remote server request, and return the data object 
-	 * that is found within the processed message body.  Note that the current
-	 * implementation of AMFConnection returns the data object for the first
-	 * message in a multi-message response.
-	 * 
-	 * @param byteArray A byte array of the message to be processed.
-	 *  
-	 * @return The data object found within the processed message body.
-	 * 
-	 * @throws ClassNotFoundException thrown if a required class can not be found
-	 * during the serialization of the input byte array.
-	 * @throws IOException thrown if an error is encountered while deserializing
-	 * the input byte array.
-	 * @throws ClientStatusException thrown if an error is encountered while
-	 * processing any AMF message headers.
-	 * @throws ServerStatusException thrown if the server returns a status
-	 * message instead of a result message.
-	 */
-    public Object getDataObjectFromMessage(byte[] byteArray)
-            throws ClassNotFoundException, IOException, ClientStatusException,
-            ServerStatusException
-    {
-        if (getLogger().isDebugEnabled()) {
-	        String temp = new String(byteArray);
-	       	getLogger().debug(whoAmI()+"\tAMF Response byte[] [\n"+temp+"\n]");
-        }
-        ByteArrayInputStream bin = new ByteArrayInputStream(byteArray); 
-        DataInputStream din = new DataInputStream(bin);
-        ActionMessage message = new ActionMessage();
-        actionContext.setRequestMessage(message);
-        MessageDeserializer deserializer = new AmfMessageDeserializer();
-        deserializer.initialize(serializationContext, din, null/*trace*/);
-        try {
-        	deserializer.readMessage(message, actionContext);
-        } catch (Exception ex) {
-        	getLogger().error("An exception was encountered while deserializing response. ", ex);
-        }
-        din.close();
-        return processAmfPacket(message);
-    }
-
-    /**
-     * Release/close contexts required to process an AMF message. 
-     * 
-     */
-	public void close() {
-        serializationContext = null;
-	}
-
-    /**
-     * Generates the HTTP response info for the server status exception.
-     *
-     * @return The HTTP response info for the server status exception.
-     */
-    protected HttpResponseInfo generateHttpResponseInfo()
-    {
-        HttpResponseInfo httpResponseInfo = null;
-        int responseCode = getResponseCode();
-        String responseMessage = getResponseMessage();
-        httpResponseInfo = new HttpResponseInfo(responseCode, responseMessage);
-        return httpResponseInfo;
-    }
-
-    /**
-     * Get a Logger instance which can be used by subclasses to log information.
-     * This is the same Logger which is used by the base JavaSampler classes
-     * (jmeter.protocol.java).
-     *
-     * @return a Logger instance which can be used for logging
-     */
-    protected Logger getLogger() {
-        return log;
-    }
-
-    /**
-     * Generate a String identifier of this test for debugging purposes.
-     *
-     * @return a String identifier for this test instance
-     */
-    protected String whoAmI() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(Thread.currentThread().toString());
-        sb.append("@");
-        sb.append(Integer.toHexString(hashCode()));
-        return sb.toString();
-    }
-
-}
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import com.thoughtworks.xstream.XStream;
+
+import flex.messaging.io.ClassAliasRegistry;
+import flex.messaging.io.MessageDeserializer;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.ActionContext;
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.AmfMessageDeserializer;
+import flex.messaging.io.amf.AmfMessageSerializer;
+import flex.messaging.io.amf.MessageBody;
+import flex.messaging.io.amf.MessageHeader;
+import flex.messaging.io.amf.client.AMFConnection;
+import flex.messaging.io.amf.client.AMFHeaderProcessor;
+import flex.messaging.io.amf.client.exceptions.ClientStatusException;
+import flex.messaging.io.amf.client.exceptions.ServerStatusException;
+import flex.messaging.io.amf.client.exceptions.ServerStatusException.HttpResponseInfo;
+import flex.messaging.messages.AcknowledgeMessageExt;
+import flex.messaging.messages.AsyncMessageExt;
+import flex.messaging.messages.CommandMessageExt;
+
+/**
+ * An extension to flex.messaging.io.amf.client.AMFConnection that uses inherited methods
+ * for serializing/deserializing AMF messages to/from a byte array.  It is expected
+ * that the caller of this class uses an external connection class, as opposed to the
+ * internal URLConnection within AMFConnection, to actually send/receive the messages.
+ * 
+ */
+public class AmfMessageHelper extends AMFConnection {
+
+    //--------------------------------------------------------------------------
+    // Static Initializer
+    //--------------------------------------------------------------------------
+	
+	static {
+		// Register known Endpoint aliases to prevent ClassNotFoundException's during
+		// response message deserialization.
+		ClassAliasRegistry aliasRegistry = ClassAliasRegistry.getRegistry();
+		aliasRegistry.registerAlias(AcknowledgeMessageExt.CLASS_ALIAS, "flex.messaging.messages.AcknowledgeMessageExt");
+		aliasRegistry.registerAlias(CommandMessageExt.CLASS_ALIAS, "flex.messaging.messages.CommandMessageExt");
+		aliasRegistry.registerAlias(AsyncMessageExt.CLASS_ALIAS, "flex.messaging.messages.AsyncMessageExt");
+	}
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+    private ActionContext actionContext = null;
+    private SerializationContext serializationContext = null;
+
+    /**
+     * The per-thread pool of serialization objects, set between open() and close()
+     * when buffer reuse is enabled.
+     */
+    private AmfSerializationPool pool = null;
+
+    private boolean reuseBuffers = false;
+
+    /**
+     * The encoder used in place of AmfMessageSerializer when native encoding is enabled.
+     */
+    private AmfNativeEncoder nativeEncoder = null;
+
+    private boolean nativeEncoding = false;
+    private boolean nativeEncodingVerified = false;
+
+    private boolean lazyDecoding = false;
+    private boolean cacheClassAliases = false;
+    private boolean decodeAsObjects = false;
+    private String command = "";
+    private int responseCode = -1;
+    private String responseMessage = "";
+
+    //--------------------------------------------------------------------------
+    // Protected Variables
+    //--------------------------------------------------------------------------
+
+    /**
+     * List of AMF message headers.
+     */
+    protected List<MessageHeader> amfHeaders;
+
+    /**
+     * An AMF connection may have an AMF header processor where AMF headers
+     * can be passed to as they are encountered in AMF response messages.
+     */
+    protected AMFHeaderProcessor amfHeaderProcessor;
+
+    /**
+     * The XStream instance used for converting an object to an XML string.
+     *
+     * @deprecated messages are rendered on demand by AmfMessageRenderer.
+     */
+	@Deprecated
+	protected XStream stream = AmfMessageRenderer.getXStream();
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Creates a default AMF Message Helper instance.
+     */
+    public AmfMessageHelper() {
+    	// Initialize response counter to 1 for compatibility with Flourine-Fx
+    	responseCounter = 1;
+    }
+	
+	public void setResponseCode(String responseCode) {
+		this.responseCode = -1;
+		if (responseCode != null && responseCode.length() > 0) {
+			try {
+				Integer rc = Integer.valueOf(responseCode);
+				this.responseCode = rc.intValue();
+			} catch (NumberFormatException ex) {
+				this.responseCode = -1;
+			}
+		}
+	}
+
+	/**
+	 * @return the stream
+	 * @deprecated use AmfMessageRenderer.getXStream()
+	 */
+	@Deprecated
+	public XStream getXStream() {
+		return stream;
+	}
+
+	/**
+	 * @param stream the stream to set
+	 * @deprecated messages are rendered on demand by AmfMessageRenderer.
+	 */
+	@Deprecated
+	public void setXStream(XStream stream) {
+		this.stream = stream;
+	}
+
+	/**
+	 * @return true if serialization objects and buffers are reused across samples.
+	 */
+	public boolean isReuseBuffers() {
+		return reuseBuffers;
+	}
+
+	/**
+	 * @param reuseBuffers true if the serialization contexts, serializer, deserializer and
+	 * buffers should be kept per thread and reset between samples, rather than allocated
+	 * for each sample.
+	 */
+	public void setReuseBuffers(boolean reuseBuffers) {
+		this.reuseBuffers = reuseBuffers;
+	}
+
+	/**
+	 * @return true if request messages are written by AmfNativeEncoder.
+	 */
+	public boolean isNativeEncoding() {
+		return nativeEncoding;
+	}
+
+	/**
+	 * @param nativeEncoding true if request messages should be written by AmfNativeEncoder,
+	 * falling back to AmfMessageSerializer for messages the native encoder does not support.
+	 * The first message written natively is checked against AmfMessageSerializer, and native
+	 * encoding is disabled if the two differ, or if a message can not be written natively.
+	 */
+	public void setNativeEncoding(boolean nativeEncoding) {
+		this.nativeEncoding = nativeEncoding;
+	}
+
+	/**
+	 * @return true if response message bodies are deserialized on demand.
+	 */
+	public boolean isLazyDecoding() {
+		return lazyDecoding;
+	}
+
+	/**
+	 * @param lazyDecoding true if only the headers and acknowledgement fields of a
+	 * response should be read by getDataObjectFromMessage(), leaving the body of the
+	 * acknowledgement to be deserialized when it is first requested.
+	 */
+	public void setLazyDecoding(boolean lazyDecoding) {
+		this.lazyDecoding = lazyDecoding;
+	}
+
+	/**
+	 * @return true if the class names of typed objects are resolved through the AmfClassAliasCache.
+	 */
+	public boolean isCacheClassAliases() {
+		return cacheClassAliases;
+	}
+
+	/**
+	 * @param cacheClassAliases true if the class names of typed objects in responses should be
+	 * resolved through the AmfClassAliasCache, rather than the ClassAliasRegistry and
+	 * class loader, when deserializing.
+	 */
+	public void setCacheClassAliases(boolean cacheClassAliases) {
+		this.cacheClassAliases = cacheClassAliases;
+	}
+
+	/**
+	 * @return true if typed objects in responses are deserialized as ASObjects.
+	 */
+	public boolean isDecodeAsObjects() {
+		return decodeAsObjects;
+	}
+
+	/**
+	 * @param decodeAsObjects true if typed objects in responses, other than the BlazeDS
+	 * (flex.*) classes, should be deserialized as ASObject maps carrying the class name as
+	 * their type, rather than as instances of the corresponding Java classes.
+	 */
+	public void setDecodeAsObjects(boolean decodeAsObjects) {
+		this.decodeAsObjects = decodeAsObjects;
+	}
+
+	/**
+	 * @return the responseMessage
+	 */
+	public String getResponseMessage() {
+		return responseMessage;
+	}
+
+	/**
+	 * @param responseMessage the responseMessage to set
+	 */
+	public void setResponseMessage(String responseMessage) {
+		this.responseMessage = responseMessage;
+	}
+
+	/**
+	 * @return the responseCode
+	 */
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+    /**
+     * Initialize the required contexts for processing an AMF message. 
+     * 
+     */
+	public void open() {
+		if (reuseBuffers) {
+			pool = AmfSerializationPool.getPool();
+	        serializationContext = pool.getSerializationContext();
+	        actionContext = pool.getActionContext();
+		} else {
+	        serializationContext = new SerializationContext();
+	        actionContext = new ActionContext();
+		}
+        serializationContext.createASObjectForMissingType = true;
+        serializationContext.instantiateTypes = !decodeAsObjects;
+	}
+	
+	/**
+	 * Serialize an AMF AbstractMessage in preparation for sending it to a remote server using
+	 * an external transport mechanism.
+	 * 
+	 * @param message an Object of type flex.messaging.messages.AbstractMessage.
+	 * NOTE: The underlying serialization logic expects to process an object array of message body
+	 * data, thus the declaration of a variable number of Object input parameters, but the current
+	 * implementation follows the current limitation of AMFConnection of only supporting
+	 * one message per request.
+	 * 
+	 * @return A serialized object of type flex.messaging.io.amf.ActionMessage 
+	 * as a byte array.
+	 */
+	public byte[] serializeMessage(Object... message) {
+
+		ActionMessage requestMessage = null;
+    	if (message != null) {
+    		
+			String responseURI = getResponseURI();
+			
+	        requestMessage = createRequestMessage();
+	
+	        MessageBody amfMessage = new MessageBody(command, responseURI, message);
+	        requestMessage.addBody(amfMessage);
+	
+    	}
+    	
+		return writeRequestMessage(requestMessage);
+	}
+
+	/**
+	 * Serialize a batch of AMF AbstractMessages into a single request, in the same way the
+	 * Flex runtime batches calls that are queued within the same frame.  Each message is
+	 * written to its own message body, with its own response URI, so that the server
+	 * returns a separate result or status for each.
+	 * 
+	 * @param messages Objects of type flex.messaging.messages.AbstractMessage.
+	 * 
+	 * @return A serialized object of type flex.messaging.io.amf.ActionMessage 
+	 * as a byte array.
+	 */
+	public byte[] serializeBatch(Object[] messages) {
+
+		ActionMessage requestMessage = null;
+    	if (messages != null) {
+	        requestMessage = createRequestMessage();
+	        for (int i = 0; i < messages.length; i++) {
+	        	requestMessage.addBody(new MessageBody(command, getResponseURI(), new Object[] { messages[i] }));
+	        }
+    	}
+
+		return writeRequestMessage(requestMessage);
+	}
+
+	private ActionMessage createRequestMessage() {
+        ActionMessage requestMessage = new ActionMessage(getObjectEncoding());
+
+        if (amfHeaders != null)
+        {
+            for (MessageHeader header : amfHeaders)
+                requestMessage.addHeader(header);
+        }
+        return requestMessage;
+	}
+
+	private byte[] writeRequestMessage(ActionMessage requestMessage) {
+
+    	AmfByteBuffer outBuffer;
+    	AmfMessageSerializer amfMessageSerializer = null;
+    	if (pool != null) {
+    		outBuffer = pool.getOutputBuffer();
+    		outBuffer.reset();
+    		amfMessageSerializer = pool.getSerializer();
+    	} else {
+    		outBuffer = new AmfByteBuffer();
+    	}
+
+    	if (requestMessage != null) {
+    		
+	        // Setup for AMF message serializer
+	        actionContext.setRequestMessage(requestMessage);
+	        
+	        if (!nativeEncoding || !writeNativeMessage(requestMessage, outBuffer)) {
+		        if (amfMessageSerializer == null) {
+			        amfMessageSerializer = new AmfMessageSerializer();
+			        amfMessageSerializer.initialize(serializationContext, outBuffer, null/*debugTrace*/);
+		        }
+		        
+		        try {
+					amfMessageSerializer.writeMessage(requestMessage);
+				} catch (IOException e) {
+		            // ClientStatusException exception = new ClientStatusException(e, ClientStatusException.AMF_CALL_FAILED_CODE);
+		            // throw exception;
+				}
+	        }
+			
+    	}
+    	
+    	byte[] byteArray = outBuffer.toByteArray(); 
+
+        if (getLogger().isDebugEnabled()) {
+	       	getLogger().debug(whoAmI()+"\tAMF Request byte[] [\n"+AmfMessageRenderer.describe(byteArray)+"\n]");
+        }
+        
+		return byteArray;
+	}
+
+	/**
+	 * Write a request message using AmfNativeEncoder.
+	 * 
+	 * @return true if the message was written, or false if the message should be
+	 * written by AmfMessageSerializer instead.
+	 */
+	private boolean writeNativeMessage(ActionMessage requestMessage, AmfByteBuffer outBuffer) {
+		if (amfHeaders != null && !amfHeaders.isEmpty()) {
+			return false;
+		}
+		if (nativeEncoder == null || nativeEncoder.getObjectEncoding() != getObjectEncoding()) {
+			nativeEncoder = new AmfNativeEncoder(getObjectEncoding());
+		}
+		try {
+			if (!nativeEncodingVerified) {
+				if (!AmfEncoderVerifier.verify(nativeEncoder, requestMessage)) {
+					getLogger().warn(whoAmI()+"\tNative AMF encoding differs from AmfMessageSerializer, native encoding disabled.");
+					nativeEncoding = false;
+					return false;
+				}
+				nativeEncodingVerified = true;
+			}
+			nativeEncoder.writeMessage(outBuffer, requestMessage);
+			return true;
+		} catch (AmfNativeEncoder.UnsupportedTypeException ex) {
+			// The messages of a sampler keep their types, so don't try each of them twice
+			getLogger().info(whoAmI()+"\t"+ex.getMessage()+", native encoding disabled.");
+			nativeEncoding = false;
+			return false;
+		} catch (IOException ex) {
+			// AmfMessageSerializer could not write the message to verify against
+			getLogger().warn(whoAmI()+"\tUnable to verify native AMF encoding, native encoding disabled.", ex);
+			nativeEncoding = false;
+			return false;
+		}
+	}
+
+	/**
+	 * Deserialize a byte array, representing an AMF ActionMessage received
+	 * as a response to a remote server request, and return the data object 
+	 * that is found within the processed message body.  Note that the current
+	 * implementation of AMFConnection returns the data object for the first
+	 * message in a multi-message response.
+	 * 
+	 * @param byteArray A byte array of the message to be processed.
+	 *  
+	 * @return The data object found within the processed message body.
+	 * 
+	 * @throws ClassNotFoundException thrown if a required class can not be found
+	 * during the serialization of the input byte array.
+	 * @throws IOException thrown if an error is encountered while deserializing
+	 * the input byte array.
+	 * @throws ClientStatusException thrown if an error is encountered while
+	 * processing any AMF message headers.
+	 * @throws ServerStatusException thrown if the server returns a status
+	 * message instead of a result message.
+	 */
+    public Object getDataObjectFromMessage(byte[] byteArray)
+            throws ClassNotFoundException, IOException, ClientStatusException,
+            ServerStatusException
+    {
+        if (getLogger().isDebugEnabled()) {
+	       	getLogger().debug(whoAmI()+"\tAMF Response byte[] [\n"+AmfMessageRenderer.describe(byteArray)+"\n]");
+        }
+        if (lazyDecoding) {
+        	AmfLazyAcknowledgeMessage ack = AmfResponseScanner.scan(byteArray);
+        	if (ack != null) {
+        		return ack;
+        	}
+        }
+        return processAmfPacket(readBufferedMessage(byteArray));
+    }
+
+	/**
+	 * Deserialize a byte array, representing an AMF ActionMessage received as a response
+	 * to a batch of messages sent with serializeBatch(), and return the data object found
+	 * within each message body.  A body containing a status, rather than a result, returns
+	 * the status data object, typically a flex.messaging.messages.ErrorMessage.
+	 * 
+	 * @param byteArray A byte array of the message to be processed.
+	 *  
+	 * @return The data objects found within the message bodies, in the order received.
+	 */
+    public List<Object> getDataObjectsFromMessage(byte[] byteArray)
+    		throws IOException
+    {
+        if (getLogger().isDebugEnabled()) {
+	       	getLogger().debug(whoAmI()+"\tAMF Response byte[] [\n"+AmfMessageRenderer.describe(byteArray)+"\n]");
+        }
+        return getBodyData(readBufferedMessage(byteArray));
+    }
+
+	/**
+	 * Deserialize an AMF ActionMessage received as a response to a batch of messages
+	 * directly from a stream, and return the data object found within each message body.
+	 * 
+	 * @see #getDataObjectsFromMessage(byte[])
+	 */
+    public List<Object> getDataObjectsFromStream(InputStream in)
+    		throws IOException
+    {
+        DataInputStream din = new DataInputStream(in);
+        MessageDeserializer deserializer = createDeserializer();
+        deserializer.initialize(serializationContext, din, null/*trace*/);
+        return getBodyData(readMessage(deserializer));
+    }
+
+    private List<Object> getBodyData(ActionMessage message) {
+    	int bodyCount = message.getBodyCount();
+    	List<Object> data = new ArrayList<Object>(bodyCount);
+    	for (int i = 0; i < bodyCount; i++) {
+    		data.add(message.getBody(i).getData());
+    	}
+    	return data;
+    }
+
+    private ActionMessage readBufferedMessage(byte[] byteArray) throws IOException {
+        DataInputStream din;
+        MessageDeserializer deserializer;
+        if (pool != null) {
+        	pool.getInputBuffer().setBuffer(byteArray);
+        	din = pool.getDataInput();
+        	deserializer = cacheClassAliases ? pool.getCachingDeserializer() : pool.getDeserializer();
+        } else {
+	        ByteArrayInputStream bin = new ByteArrayInputStream(byteArray); 
+	        din = new DataInputStream(bin);
+	        deserializer = createDeserializer();
+	        deserializer.initialize(serializationContext, din, null/*trace*/);
+        }
+        ActionMessage message = readMessage(deserializer);
+        if (pool != null) {
+        	pool.getInputBuffer().release();
+        } else {
+        	din.close();
+        }
+        return message;
+    }
+
+	/**
+	 * Deserialize an AMF ActionMessage directly from a stream, such as an HTTP response
+	 * body, as it is received, and return the data object that is found within the
+	 * processed message body.  The stream is not closed by this method.
+	 * 
+	 * @param in A stream containing the message to be processed.
+	 *  
+	 * @return The data object found within the processed message body.
+	 * 
+	 * @see #getDataObjectFromMessage(byte[])
+	 */
+    public Object getDataObjectFromStream(InputStream in)
+            throws ClassNotFoundException, IOException, ClientStatusException,
+            ServerStatusException
+    {
+        DataInputStream din = new DataInputStream(in);
+        MessageDeserializer deserializer = createDeserializer();
+        deserializer.initialize(serializationContext, din, null/*trace*/);
+        return processAmfPacket(readMessage(deserializer));
+    }
+
+    /**
+     * Deserialize a complete AMF ActionMessage, such as a recorded request, independently
+     * of the serialization context of any test in progress.
+     * 
+     * @param byteArray the serialized message.
+     * @return the deserialized message.
+     * @throws IOException if the message can not be deserialized.
+     */
+    public static ActionMessage decodeActionMessage(byte[] byteArray) throws IOException {
+    	SerializationContext context = new SerializationContext();
+    	context.createASObjectForMissingType = true;
+    	context.instantiateTypes = true;
+
+    	AmfMessageDeserializer deserializer = new AmfMessageDeserializer();
+    	deserializer.initialize(context, new DataInputStream(new ByteArrayInputStream(byteArray)), null/*trace*/);
+    	ActionMessage message = new ActionMessage();
+    	try {
+    		deserializer.readMessage(message, new ActionContext());
+    	} catch (ClassNotFoundException ex) {
+    		throw new IOException("Unable to deserialize message: " + ex.getMessage(), ex);
+    	}
+    	return message;
+    }
+
+    /**
+     * Serialize a complete AMF ActionMessage, such as a response written by a stand-in
+     * server, independently of the serialization context of any test in progress.
+     * 
+     * @param message the message to serialize.
+     * @return the serialized message.
+     * @throws IOException if the message can not be serialized.
+     */
+    public static byte[] encodeActionMessage(ActionMessage message) throws IOException {
+    	AmfByteBuffer out = new AmfByteBuffer();
+    	AmfMessageSerializer serializer = new AmfMessageSerializer();
+    	serializer.initialize(new SerializationContext(), out, null/*debugTrace*/);
+    	serializer.writeMessage(message);
+    	return out.toByteArray();
+    }
+
+    private MessageDeserializer createDeserializer() {
+    	return cacheClassAliases ? new AmfCachingMessageDeserializer() : new AmfMessageDeserializer();
+    }
+
+    private ActionMessage readMessage(MessageDeserializer deserializer) {
+        ActionMessage message = new ActionMessage();
+        actionContext.setRequestMessage(message);
+        try {
+        	deserializer.readMessage(message, actionContext);
+        } catch (Exception ex) {
+        	getLogger().error("An exception was encountered while deserializing response. ", ex);
+        }
+        return message;
+    }
+
+    /**
+     * Release/close contexts required to process an AMF message. 
+     * 
+     */
+	public void close() {
+		if (pool != null) {
+			pool.reset();
+			pool = null;
+		}
+        serializationContext = null;
+        actionContext = null;
+	}
+
+    /**
+     * Generates the HTTP response info for the server status exception.
+     *
+     * @return The HTTP response info for the server status exception.
+     */
+    protected HttpResponseInfo generateHttpResponseInfo()
+    {
+        HttpResponseInfo httpResponseInfo = null;
+        int responseCode = getResponseCode();
+        String responseMessage = getResponseMessage();
+        httpResponseInfo = new HttpResponseInfo(responseCode, responseMessage);
+        return httpResponseInfo;
+    }
+
+    /**
+     * Get a Logger instance which can be used by subclasses to log information.
+     * This is the same Logger which is used by the base JavaSampler classes
+     * (jmeter.protocol.java).
+     *
+     * @return a Logger instance which can be used for logging
+     */
+    protected Logger getLogger() {
+        return log;
+    }
+
+    /**
+     * Generate a String identifier of this test for debugging purposes.
+     *
+     * @return a String identifier for this test instance
+     */
+    protected String whoAmI() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(Thread.currentThread().toString());
+        sb.append("@");
+        sb.append(Integer.toHexString(hashCode()));
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+/**
+ * Generates the message ids assigned to AMF request messages.  Implementations
+ * must be safe for use by multiple threads, and must produce ids that are 36
+ * character strings in the canonical UUID form, so that they remain compatible
+ * with request templates.
+ * <p>
+ * Implementations are created by AmfMessageIdGeneratorFactory, either by alias or
+ * by class name, in which case the class must have a public no-argument constructor.
+ *
+ */
+public interface AmfMessageIdGenerator {
+
+	/**
+	 * @return a new message id.
+	 */
+	public String nextMessageId();
+
+}
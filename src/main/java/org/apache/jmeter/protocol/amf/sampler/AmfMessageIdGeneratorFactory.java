@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+/**
+ * Factory to return the AmfMessageIdGenerator selected by the "Message Id Generator"
+ * parameter of an AMF request.
+ *
+ */
+public class AmfMessageIdGeneratorFactory {
+
+    /** Random (version 4) UUIDs from java.util.UUID, which share a single SecureRandom */
+    public static final String RANDOM = "random"; //$NON-NLS-1$
+
+    /** Random UUIDs from a per-thread, non-cryptographic random number generator */
+    public static final String FAST = "fast"; //$NON-NLS-1$
+
+    /** UUID formatted ids made of a random per-generator prefix and a counter */
+    public static final String COUNTER = "counter"; //$NON-NLS-1$
+
+    /** Random UUIDs from a per-thread generator seeded from the amf.messageid.seed property */
+    public static final String SEEDED = "seeded"; //$NON-NLS-1$
+
+    public static final String DEFAULT_ALIAS = RANDOM;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private AmfMessageIdGeneratorFactory() {
+        // Not intended to be instantiated
+    }
+
+    /**
+     * Create a new instance of the default generator
+     *
+     * @return instance of default generator
+     */
+    public static AmfMessageIdGenerator newInstance() {
+        return newInstance(DEFAULT_ALIAS);
+    }
+
+    /**
+     * Create a new instance of the required generator type
+     *
+     * @param alias RANDOM, FAST, COUNTER, SEEDED or the name of a class implementing
+     * AmfMessageIdGenerator
+     * @return the appropriate generator
+     * @throws UnsupportedOperationException if alias is not recognised
+     */
+    public static AmfMessageIdGenerator newInstance(String alias) {
+        alias = alias == null ? "" : alias.trim();
+        if (alias.length() == 0) {
+            alias = DEFAULT_ALIAS;
+        }
+        if (alias.equalsIgnoreCase(RANDOM)) {
+            return new AmfRandomMessageIdGenerator();
+        } else if (alias.equalsIgnoreCase(FAST)) {
+            return new AmfFastMessageIdGenerator();
+        } else if (alias.equalsIgnoreCase(COUNTER)) {
+            return new AmfCounterMessageIdGenerator();
+        } else if (alias.equalsIgnoreCase(SEEDED)) {
+            return new AmfSeededMessageIdGenerator();
+        }
+        try {
+            Class<?> generatorClass = Class.forName(alias, true, Thread.currentThread().getContextClassLoader());
+            return (AmfMessageIdGenerator) generatorClass.newInstance();
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("Cannot create class: " + alias, e);
+        }
+    }
+
+    /**
+     * Format a 128 bit value as a canonical UUID string, marking it as a version 4
+     * (random) IETF variant UUID.
+     *
+     * @param mostSigBits the most significant 64 bits.
+     * @param leastSigBits the least significant 64 bits.
+     * @return the formatted UUID.
+     */
+    static String toRandomUUIDString(long mostSigBits, long leastSigBits) {
+        mostSigBits = (mostSigBits & 0xFFFFFFFFFFFF0FFFL) | 0x0000000000004000L;
+        leastSigBits = (leastSigBits & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+
+        char[] chars = new char[36];
+        formatHex(mostSigBits >>> 32, chars, 0, 8);
+        chars[8] = '-';
+        formatHex(mostSigBits >>> 16, chars, 9, 4);
+        chars[13] = '-';
+        formatHex(mostSigBits, chars, 14, 4);
+        chars[18] = '-';
+        formatHex(leastSigBits >>> 48, chars, 19, 4);
+        chars[23] = '-';
+        formatHex(leastSigBits, chars, 24, 12);
+        return new String(chars);
+    }
+
+    private static void formatHex(long value, char[] chars, int offset, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            chars[i] = HEX_DIGITS[(int) (value & 0x0F)];
+            value >>>= 4;
+        }
+    }
+
+}
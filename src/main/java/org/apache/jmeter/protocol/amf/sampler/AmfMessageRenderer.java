@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.util.JMeterUtils;
+
+import com.thoughtworks.xstream.XStream;
+
+import flex.messaging.messages.Message;
+import flex.messaging.messages.RemotingMessage;
+
+/**
+ * Renders AMF messages as XML for display, using a single XStream instance shared
+ * by all threads.  Rendering is only done on request, for example by the AMF view
+ * of the View Results Tree listener, from the raw request and response bytes kept
+ * with each sample, so the sample path itself never converts messages to XML.
+ * <p>
+ * The describe() methods produce the text used in debug logging: a one line summary,
+ * or the full XML rendering when the amf.debug.dump JMeter property is true.
+ *
+ */
+public class AmfMessageRenderer {
+
+    //--------------------------------------------------------------------------
+    // Public Static Variables
+    //--------------------------------------------------------------------------
+
+	/**
+	 * JMeter property enabling full message dumps in debug logging.
+	 */
+	public static final String DEBUG_DUMP_PROPERTY = "amf.debug.dump"; // $NON-NLS-1$
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+	/**
+	 * XStream is thread-safe once configured, so a single instance is shared.
+	 */
+	private static final XStream stream = new XStream();
+
+	private static final boolean debugDump = JMeterUtils.getPropDefault(DEBUG_DUMP_PROPERTY, false);
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+	private AmfMessageRenderer() {
+		// Not intended to be instantiated
+	}
+
+	/**
+	 * @return the shared XStream instance.
+	 */
+	public static XStream getXStream() {
+		return stream;
+	}
+
+	/**
+	 * @return true if debug logging should include full message dumps.
+	 */
+	public static boolean isDebugDump() {
+		return debugDump;
+	}
+
+	/**
+	 * Render an object as XML.
+	 */
+	public static String toXML(Object object) {
+		return stream.toXML(object);
+	}
+
+	/**
+	 * Render the AMF request and response of a sample.  The request is only available
+	 * for samples produced by AmfSampler.
+	 *
+	 * @param result the sample to render.
+	 * @return the rendered request and response.
+	 */
+	public static String render(SampleResult result) {
+		StringBuilder sb = new StringBuilder();
+		if (result instanceof AmfSampleResult) {
+			sb.append("AMF Request\n\n"); // $NON-NLS-1$
+			sb.append(render(((AmfSampleResult) result).getAmfRequest()));
+			sb.append("\n\n"); // $NON-NLS-1$
+		}
+		sb.append("AMF Response\n\n"); // $NON-NLS-1$
+		byte[] response = result.getResponseData();
+		if (result instanceof AmfSampleResult && ((AmfSampleResult) result).isResponseTruncated()) {
+			sb.append("[Response data truncated to " + response.length + " bytes]"); // $NON-NLS-1$
+		} else {
+			sb.append(render(response));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Render a serialized AMF message as XML.
+	 *
+	 * @param message the serialized message.
+	 * @return the rendered message, or a description of the error if the message can
+	 * not be deserialized.
+	 */
+	public static String render(byte[] message) {
+		if (message == null || message.length == 0) {
+			return "[No data]"; // $NON-NLS-1$
+		}
+		try {
+			return stream.toXML(AmfMessageHelper.decodeActionMessage(message));
+		} catch (Exception ex) {
+			return "[Unable to decode " + message.length + " bytes: " + ex + "]"; // $NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Describe a message, or other object, for debug logging.
+	 */
+	public static String describe(Object object) {
+		if (debugDump) {
+			return stream.toXML(object);
+		}
+		if (object == null) {
+			return "null"; // $NON-NLS-1$
+		}
+		if (object instanceof Object[]) {
+			Object[] objects = (Object[]) object;
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < objects.length; i++) {
+				if (i > 0) {
+					sb.append(", "); // $NON-NLS-1$
+				}
+				sb.append(describe(objects[i]));
+			}
+			return sb.toString();
+		}
+		StringBuilder sb = new StringBuilder(object.getClass().getName());
+		if (object instanceof Message) {
+			Message message = (Message) object;
+			sb.append(" messageId=").append(message.getMessageId()); // $NON-NLS-1$
+			if (message.getDestination() != null && message.getDestination().length() > 0) {
+				sb.append(" destination=").append(message.getDestination()); // $NON-NLS-1$
+			}
+			if (message instanceof RemotingMessage) {
+				sb.append(" operation=").append(((RemotingMessage) message).getOperation()); // $NON-NLS-1$
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Describe a serialized message for debug logging.
+	 */
+	public static String describe(byte[] message) {
+		if (message == null) {
+			return "null"; // $NON-NLS-1$
+		}
+		if (debugDump) {
+			return render(message);
+		}
+		return message.length + " bytes"; // $NON-NLS-1$
+	}
+
+}
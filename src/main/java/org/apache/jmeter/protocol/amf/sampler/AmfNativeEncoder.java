@@ -0,0 +1,590 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import flex.messaging.io.ArrayCollection;
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.PropertyProxy;
+import flex.messaging.io.PropertyProxyRegistry;
+import flex.messaging.io.amf.ASObject;
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.MessageBody;
+import flex.messaging.messages.AbstractMessage;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.RemotingMessage;
+
+/**
+ * An AMF3 writer that encodes request envelopes carrying RemotingMessage and
+ * CommandMessage instances directly into a reusable AmfByteBuffer.
+ * <p>
+ * Unlike the BlazeDS AmfMessageSerializer, message properties are read through
+ * direct accessors rather than the reflective PropertyProxy path.  The PropertyProxy
+ * for a message class is only consulted once, to capture the class alias and the
+ * order in which BlazeDS writes the sealed properties of that class, so that the
+ * output of this encoder matches the output of AmfMessageSerializer byte-for-byte.
+ * <p>
+ * The supported value types are null, String, Character, Boolean, Byte, Short,
+ * Integer, Long, Float, Double, Date, Object[], List (written as an ArrayCollection),
+ * untyped Maps (written as anonymous dynamic objects) and AbstractMessage, and the
+ * data of each message body must be one of the complex types, which are the values
+ * AmfMessageSerializer switches to AMF3.  An UnsupportedTypeException is thrown for any other value, in which case the caller
+ * is expected to fall back to AmfMessageSerializer.  Use AmfEncoderVerifier to check
+ * the output of this encoder against AmfMessageSerializer.
+ *
+ */
+public class AmfNativeEncoder {
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+	private static final int AMF0_AVMPLUS_OBJECT_TYPE = 0x11;
+
+	private static final int AMF3_NULL_TYPE = 0x01;
+	private static final int AMF3_FALSE_TYPE = 0x02;
+	private static final int AMF3_TRUE_TYPE = 0x03;
+	private static final int AMF3_INTEGER_TYPE = 0x04;
+	private static final int AMF3_DOUBLE_TYPE = 0x05;
+	private static final int AMF3_STRING_TYPE = 0x06;
+	private static final int AMF3_DATE_TYPE = 0x08;
+	private static final int AMF3_ARRAY_TYPE = 0x09;
+	private static final int AMF3_OBJECT_TYPE = 0x0A;
+
+	private static final int INT28_MIN_VALUE = -(1 << 28);
+	private static final int INT28_MAX_VALUE = (1 << 28) - 1;
+
+	private static final int EMPTY_STRING = 0x01;
+
+	private static final String NULL_URI = "null"; // $NON-NLS-1$
+
+	private static final String ARRAY_COLLECTION_ALIAS = ArrayCollection.class.getName();
+
+	private static final ClassTraits ANONYMOUS_DYNAMIC_TRAITS =
+		new ClassTraits("", true, false, new String[0], new Accessor[0]);
+
+	private static final ClassTraits ARRAY_COLLECTION_TRAITS =
+		new ClassTraits(ARRAY_COLLECTION_ALIAS, false, true, new String[0], new Accessor[0]);
+
+	/**
+	 * Marks a class that can not be written by this encoder.
+	 */
+	private static final ClassTraits UNSUPPORTED_TRAITS =
+		new ClassTraits("", false, false, new String[0], new Accessor[0]);
+
+	private static final Map<Class<?>, ClassTraits> classTraitsCache =
+		new ConcurrentHashMap<Class<?>, ClassTraits>();
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final int objectEncoding;
+
+	private AmfByteBuffer out = null;
+
+	private final Map<String, Integer> stringTable = new HashMap<String, Integer>();
+	private final Map<Object, Integer> objectTable = new IdentityHashMap<Object, Integer>();
+	private final Map<ClassTraits, Integer> traitsTable = new IdentityHashMap<ClassTraits, Integer>();
+	private int objectCount = 0;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+	/**
+	 * @param objectEncoding the object encoding of the messages to be written.  Only
+	 * MessageIOConstants.AMF3 is supported.
+	 */
+	public AmfNativeEncoder(int objectEncoding) {
+		this.objectEncoding = objectEncoding;
+	}
+
+	public int getObjectEncoding() {
+		return objectEncoding;
+	}
+
+	/**
+	 * Write an AMF request envelope to the end of the given buffer.  If an exception is
+	 * thrown, any bytes written by this call are discarded from the buffer.
+	 *
+	 * @param buffer the buffer to write to.
+	 * @param message the message to write.  Message headers are not supported.
+	 *
+	 * @throws UnsupportedTypeException if the message contains a value that can not be
+	 * written by this encoder.
+	 */
+	public void writeMessage(AmfByteBuffer buffer, ActionMessage message) throws UnsupportedTypeException {
+		if (objectEncoding != MessageIOConstants.AMF3) {
+			throw new UnsupportedTypeException("object encoding " + objectEncoding);
+		}
+		if (message.getHeaderCount() > 0) {
+			throw new UnsupportedTypeException("AMF message headers");
+		}
+
+		out = buffer;
+		int start = buffer.size();
+		try {
+			out.appendShort(objectEncoding);
+			out.appendShort(0);
+
+			int bodyCount = message.getBodyCount();
+			out.appendShort(bodyCount);
+			for (int i = 0; i < bodyCount; i++) {
+				writeBody(message.getBody(i));
+			}
+		} catch (UnsupportedTypeException ex) {
+			buffer.truncate(start);
+			throw ex;
+		} finally {
+			resetTables();
+			out = null;
+		}
+	}
+
+	private void writeBody(MessageBody body) throws UnsupportedTypeException {
+		writeUTF(body.getTargetURI() == null ? NULL_URI : body.getTargetURI());
+		writeUTF(body.getResponseURI() == null ? NULL_URI : body.getResponseURI());
+		out.appendInt(-1);
+
+		// Amf0Output only switches complex values to AMF3, simple values are written as AMF0
+		Object data = body.getData();
+		if (!(data instanceof Object[] || data instanceof List<?> || data instanceof Map<?, ?>
+				|| data instanceof AbstractMessage)) {
+			throw new UnsupportedTypeException("body data " + (data == null ? null : data.getClass().getName()));
+		}
+		writeAvmPlusValue(data);
+	}
+
+	private void writeAvmPlusValue(Object value) throws UnsupportedTypeException {
+		// Each switch to AMF3 starts with new reference tables
+		resetTables();
+		out.append(AMF0_AVMPLUS_OBJECT_TYPE);
+		writeValue(value);
+	}
+
+	private void writeValue(Object value) throws UnsupportedTypeException {
+		if (value == null) {
+			out.append(AMF3_NULL_TYPE);
+		} else if (value instanceof String || value instanceof Character) {
+			out.append(AMF3_STRING_TYPE);
+			writeString(value.toString());
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			writeInteger(((Number) value).intValue());
+		} else if (value instanceof Long || value instanceof Double || value instanceof Float) {
+			out.append(AMF3_DOUBLE_TYPE);
+			out.appendDouble(((Number) value).doubleValue());
+		} else if (value instanceof Boolean) {
+			out.append(((Boolean) value).booleanValue() ? AMF3_TRUE_TYPE : AMF3_FALSE_TYPE);
+		} else if (value instanceof Date) {
+			writeDate((Date) value);
+		} else if (value instanceof Object[]) {
+			writeArray((Object[]) value);
+		} else if (value instanceof List<?>) {
+			writeArrayCollection((List<?>) value);
+		} else if (value instanceof AbstractMessage) {
+			writeMessageObject(value);
+		} else if (value instanceof Map<?, ?>) {
+			if (value instanceof ASObject && ((ASObject) value).getType() != null) {
+				throw new UnsupportedTypeException("typed ASObject " + ((ASObject) value).getType());
+			}
+			writeMap((Map<?, ?>) value);
+		} else {
+			throw new UnsupportedTypeException(value.getClass().getName());
+		}
+	}
+
+	private void writeInteger(int i) {
+		if (i >= INT28_MIN_VALUE && i <= INT28_MAX_VALUE) {
+			out.append(AMF3_INTEGER_TYPE);
+			writeUInt29(i & 0x1FFFFFFF);
+		} else {
+			out.append(AMF3_DOUBLE_TYPE);
+			out.appendDouble(i);
+		}
+	}
+
+	private void writeDate(Date date) {
+		out.append(AMF3_DATE_TYPE);
+		if (writeReference(date)) {
+			return;
+		}
+		writeUInt29(1);
+		out.appendDouble(date.getTime());
+	}
+
+	private void writeArray(Object[] values) throws UnsupportedTypeException {
+		out.append(AMF3_ARRAY_TYPE);
+		if (writeReference(values)) {
+			return;
+		}
+		writeUInt29((values.length << 1) | 1);
+		out.append(EMPTY_STRING); // no associative elements
+		for (int i = 0; i < values.length; i++) {
+			writeValue(values[i]);
+		}
+	}
+
+	private void writeArrayCollection(List<?> list) throws UnsupportedTypeException {
+		out.append(AMF3_OBJECT_TYPE);
+		// Lists other than ArrayCollection are referenced by the original instance
+		if (writeReference(list)) {
+			return;
+		}
+		writeTraits(ARRAY_COLLECTION_TRAITS);
+		writeArray(list.toArray());
+	}
+
+	private void writeMap(Map<?, ?> map) throws UnsupportedTypeException {
+		out.append(AMF3_OBJECT_TYPE);
+		if (writeReference(map)) {
+			return;
+		}
+		writeTraits(ANONYMOUS_DYNAMIC_TRAITS);
+		for (Iterator<?> iter = map.entrySet().iterator(); iter.hasNext(); ) {
+			Map.Entry<?, ?> entry = (Map.Entry<?, ?>) iter.next();
+			if (!(entry.getKey() instanceof String) || ((String) entry.getKey()).length() == 0) {
+				throw new UnsupportedTypeException("map key " + entry.getKey());
+			}
+			writeString((String) entry.getKey());
+			writeValue(entry.getValue());
+		}
+		out.append(EMPTY_STRING); // end of dynamic members
+	}
+
+	private void writeMessageObject(Object message) throws UnsupportedTypeException {
+		ClassTraits traits = getClassTraits(message);
+		out.append(AMF3_OBJECT_TYPE);
+		if (writeReference(message)) {
+			return;
+		}
+		writeTraits(traits);
+		Accessor[] accessors = traits.accessors;
+		for (int i = 0; i < accessors.length; i++) {
+			writeValue(accessors[i].get(message));
+		}
+	}
+
+	private void writeTraits(ClassTraits traits) {
+		Integer reference = traitsTable.get(traits);
+		if (reference != null) {
+			writeUInt29((reference.intValue() << 2) | 1);
+			return;
+		}
+		traitsTable.put(traits, Integer.valueOf(traitsTable.size()));
+
+		int flags = 0x03;
+		if (traits.externalizable) {
+			flags |= 0x04;
+		}
+		if (traits.dynamic) {
+			flags |= 0x08;
+		}
+		writeUInt29(flags | (traits.names.length << 4));
+		writeString(traits.alias);
+		for (int i = 0; i < traits.names.length; i++) {
+			writeString(traits.names[i]);
+		}
+	}
+
+	/**
+	 * Write a reference to an object that has already been written, or add the object
+	 * to the reference table.
+	 *
+	 * @return true if a reference was written.
+	 */
+	private boolean writeReference(Object value) {
+		Integer reference = objectTable.get(value);
+		if (reference != null) {
+			writeUInt29(reference.intValue() << 1);
+			return true;
+		}
+		objectTable.put(value, Integer.valueOf(objectCount++));
+		return false;
+	}
+
+	private void writeString(String s) {
+		if (s.length() == 0) {
+			out.append(EMPTY_STRING);
+			return;
+		}
+		Integer reference = stringTable.get(s);
+		if (reference != null) {
+			writeUInt29(reference.intValue() << 1);
+			return;
+		}
+		stringTable.put(s, Integer.valueOf(stringTable.size()));
+		int length = utfLength(s);
+		writeUInt29((length << 1) | 1);
+		writeUTFBytes(s, length);
+	}
+
+	private void writeUInt29(int v) {
+		if (v < 0x80) {
+			out.append(v);
+		} else if (v < 0x4000) {
+			out.append(((v >> 7) & 0x7F) | 0x80);
+			out.append(v & 0x7F);
+		} else if (v < 0x200000) {
+			out.append(((v >> 14) & 0x7F) | 0x80);
+			out.append(((v >> 7) & 0x7F) | 0x80);
+			out.append(v & 0x7F);
+		} else {
+			out.append(((v >> 22) & 0x7F) | 0x80);
+			out.append(((v >> 15) & 0x7F) | 0x80);
+			out.append(((v >> 8) & 0x7F) | 0x80);
+			out.append(v & 0xFF);
+		}
+	}
+
+	/**
+	 * Write an AMF0 UTF string, as written by DataOutputStream.writeUTF().
+	 */
+	private void writeUTF(String s) throws UnsupportedTypeException {
+		int length = utfLength(s);
+		if (length > 0xFFFF) {
+			throw new UnsupportedTypeException("AMF0 string of " + length + " bytes");
+		}
+		out.appendShort(length);
+		writeUTFBytes(s, length);
+	}
+
+	private void writeUTFBytes(String s, int length) {
+		out.ensureCapacity(length);
+		int count = s.length();
+		for (int i = 0; i < count; i++) {
+			char c = s.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F) {
+				out.append(c);
+			} else if (c > 0x07FF) {
+				out.append(0xE0 | ((c >> 12) & 0x0F));
+				out.append(0x80 | ((c >> 6) & 0x3F));
+				out.append(0x80 | (c & 0x3F));
+			} else {
+				out.append(0xC0 | ((c >> 6) & 0x1F));
+				out.append(0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	private static int utfLength(String s) {
+		int length = 0;
+		int count = s.length();
+		for (int i = 0; i < count; i++) {
+			char c = s.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F) {
+				length++;
+			} else if (c > 0x07FF) {
+				length += 3;
+			} else {
+				length += 2;
+			}
+		}
+		return length;
+	}
+
+	private void resetTables() {
+		if (!stringTable.isEmpty()) {
+			stringTable.clear();
+		}
+		if (!objectTable.isEmpty()) {
+			objectTable.clear();
+		}
+		if (!traitsTable.isEmpty()) {
+			traitsTable.clear();
+		}
+		objectCount = 0;
+	}
+
+	private static ClassTraits getClassTraits(Object message) throws UnsupportedTypeException {
+		Class<?> messageClass = message.getClass();
+		ClassTraits traits = classTraitsCache.get(messageClass);
+		if (traits == null) {
+			traits = createClassTraits(message);
+			classTraitsCache.put(messageClass, traits);
+		}
+		if (traits == UNSUPPORTED_TRAITS) {
+			throw new UnsupportedTypeException(messageClass.getName());
+		}
+		return traits;
+	}
+
+	/**
+	 * Capture the alias and sealed property order BlazeDS uses for the class of the
+	 * given message, binding a direct accessor to each known property.
+	 */
+	private static ClassTraits createClassTraits(Object message) {
+		PropertyProxy proxy = PropertyProxyRegistry.getProxy(message);
+		if (proxy == null || proxy.isExternalizable(message) || proxy.isDynamic()) {
+			return UNSUPPORTED_TRAITS;
+		}
+		List<?> propertyNames = proxy.getPropertyNames(message);
+		int count = propertyNames == null ? 0 : propertyNames.size();
+		String[] names = new String[count];
+		Accessor[] accessors = new Accessor[count];
+		for (int i = 0; i < count; i++) {
+			names[i] = (String) propertyNames.get(i);
+			accessors[i] = getAccessor(message.getClass(), names[i]);
+			if (accessors[i] == null) {
+				accessors[i] = new ProxyAccessor(proxy, names[i]);
+			}
+		}
+		String alias = proxy.getAlias(message);
+		return new ClassTraits(alias == null ? "" : alias, false, false, names, accessors);
+	}
+
+	private static Accessor getAccessor(Class<?> messageClass, String name) {
+		if ("body".equals(name)) {
+			return BODY;
+		} else if ("clientId".equals(name)) {
+			return CLIENT_ID;
+		} else if ("destination".equals(name)) {
+			return DESTINATION;
+		} else if ("headers".equals(name)) {
+			return HEADERS;
+		} else if ("messageId".equals(name)) {
+			return MESSAGE_ID;
+		} else if ("timestamp".equals(name)) {
+			return TIMESTAMP;
+		} else if ("timeToLive".equals(name)) {
+			return TIME_TO_LIVE;
+		} else if ("operation".equals(name) && RemotingMessage.class.isAssignableFrom(messageClass)) {
+			return REMOTING_OPERATION;
+		} else if ("source".equals(name) && RemotingMessage.class.isAssignableFrom(messageClass)) {
+			return REMOTING_SOURCE;
+		} else if ("operation".equals(name) && CommandMessage.class.isAssignableFrom(messageClass)) {
+			return COMMAND_OPERATION;
+		} else if ("correlationId".equals(name) && AsyncMessage.class.isAssignableFrom(messageClass)) {
+			return CORRELATION_ID;
+		}
+		return null;
+	}
+
+    //--------------------------------------------------------------------------
+    //
+    // Inner Classes
+    //
+    //--------------------------------------------------------------------------
+
+	/**
+	 * Thrown when a value can not be written by this encoder.
+	 */
+	public static class UnsupportedTypeException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		public UnsupportedTypeException(String message) {
+			super("Unsupported by native AMF encoder: " + message);
+		}
+	}
+
+	/**
+	 * The AMF3 traits written for a class.
+	 */
+	private static final class ClassTraits {
+		final String alias;
+		final boolean dynamic;
+		final boolean externalizable;
+		final String[] names;
+		final Accessor[] accessors;
+
+		ClassTraits(String alias, boolean dynamic, boolean externalizable, String[] names, Accessor[] accessors) {
+			this.alias = alias;
+			this.dynamic = dynamic;
+			this.externalizable = externalizable;
+			this.names = names;
+			this.accessors = accessors;
+		}
+	}
+
+	private static abstract class Accessor {
+		abstract Object get(Object instance);
+	}
+
+	/**
+	 * Reads a property without a direct accessor through its PropertyProxy.
+	 */
+	private static final class ProxyAccessor extends Accessor {
+		private final PropertyProxy proxy;
+		private final String name;
+
+		ProxyAccessor(PropertyProxy proxy, String name) {
+			this.proxy = proxy;
+			this.name = name;
+		}
+
+		Object get(Object instance) {
+			return proxy.getValue(instance, name);
+		}
+	}
+
+	private static final Accessor BODY = new Accessor() {
+		Object get(Object instance) { return ((AbstractMessage) instance).getBody(); }
+	};
+
+	private static final Accessor CLIENT_ID = new Accessor() {
+		Object get(Object instance) { return ((AbstractMessage) instance).getClientId(); }
+	};
+
+	private static final Accessor DESTINATION = new Accessor() {
+		Object get(Object instance) { return ((AbstractMessage) instance).getDestination(); }
+	};
+
+	private static final Accessor HEADERS = new Accessor() {
+		Object get(Object instance) { return ((AbstractMessage) instance).getHeaders(); }
+	};
+
+	private static final Accessor MESSAGE_ID = new Accessor() {
+		Object get(Object instance) { return ((AbstractMessage) instance).getMessageId(); }
+	};
+
+	private static final Accessor TIMESTAMP = new Accessor() {
+		Object get(Object instance) { return Long.valueOf(((AbstractMessage) instance).getTimestamp()); }
+	};
+
+	private static final Accessor TIME_TO_LIVE = new Accessor() {
+		Object get(Object instance) { return Long.valueOf(((AbstractMessage) instance).getTimeToLive()); }
+	};
+
+	private static final Accessor REMOTING_OPERATION = new Accessor() {
+		Object get(Object instance) { return ((RemotingMessage) instance).getOperation(); }
+	};
+
+	private static final Accessor REMOTING_SOURCE = new Accessor() {
+		Object get(Object instance) { return ((RemotingMessage) instance).getSource(); }
+	};
+
+	private static final Accessor COMMAND_OPERATION = new Accessor() {
+		Object get(Object instance) { return Integer.valueOf(((CommandMessage) instance).getOperation()); }
+	};
+
+	private static final Accessor CORRELATION_ID = new Accessor() {
+		Object get(Object instance) { return ((AsyncMessage) instance).getCorrelationId(); }
+	};
+
+}
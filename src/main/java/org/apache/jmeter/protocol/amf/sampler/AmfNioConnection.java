@@ -0,0 +1,557 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * A persistent, non-blocking HTTP/1.1 connection of a virtual session, served by an
+ * AmfNioReactor.  The connection sends one AmfNioExchange at a time: the request is
+ * written as the channel becomes writable and the response is parsed incrementally as it
+ * is read, so the reactor's thread never blocks on the connection.  The address of the
+ * server is resolved by the sampling thread, see AmfNioExchange.
+ * <p>
+ * The connection is kept open between exchanges to the same address, while the
+ * server allows it and within the idle timeout and maximum age of AmfConnectionPool, and
+ * is watched while idle so that a connection closed by the server is noticed before it
+ * is used again.  A request on a reused connection that the server closes before
+ * responding is sent again on a new connection.  Only plain HTTP is supported, and
+ * requests are sent directly to the server, without a proxy.
+ *
+ */
+public class AmfNioConnection {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+	private static final String ENCODING = "ISO-8859-1"; // $NON-NLS-1$
+
+	private static final String HTTP = "http"; // $NON-NLS-1$
+
+	private static final String HTTP_1_1 = "HTTP/1.1"; // $NON-NLS-1$
+
+	private static final String HEADER_CONNECTION = "Connection"; // $NON-NLS-1$
+	private static final String HEADER_CONTENT_LENGTH = "Content-Length"; // $NON-NLS-1$
+	private static final String HEADER_TRANSFER_ENCODING = "Transfer-Encoding"; // $NON-NLS-1$
+	private static final String CHUNKED = "chunked"; // $NON-NLS-1$
+	private static final String CONNECTION_CLOSE = "close"; // $NON-NLS-1$
+	private static final String CONNECTION_KEEP_ALIVE = "keep-alive"; // $NON-NLS-1$
+
+	/**
+	 * The states of the response parser.
+	 */
+	private static final int HEAD = 0;
+	private static final int BODY_LENGTH = 1;
+	private static final int BODY_CLOSE = 2;
+	private static final int CHUNK_SIZE = 3;
+	private static final int CHUNK_DATA = 4;
+	private static final int CHUNK_END = 5;
+	private static final int TRAILER = 6;
+	private static final int DONE = 7;
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final AmfNioReactor reactor;
+
+	private final long connectTimeoutNanos;
+
+	private final long responseTimeoutNanos;
+
+	/**
+	 * The pool of the running test, whose idle timeout and maximum age also apply to
+	 * this connection.
+	 */
+	private final AmfConnectionPool pool;
+
+	// The following are only accessed by the reactor's thread
+
+	private SocketChannel channel = null;
+	private SelectionKey key = null;
+	private InetSocketAddress address = null;
+
+	/**
+	 * Indicates whether the channel was open before the current exchange started.
+	 */
+	private boolean reused = false;
+
+	// When the connection was opened, for AmfConnectionPool.recordMiss() and its maximum age
+	private long openNanos = 0;
+
+	// When the last exchange on the connection completed, for the idle timeout
+	private long lastUsedNanos = 0;
+
+	private AmfNioExchange exchange = null;
+
+	/**
+	 * The time by which the current connect, or response, must complete, 0 if there is no limit.
+	 */
+	private long deadline = 0;
+
+	private int state = HEAD;
+	private final AmfByteBuffer head = new AmfByteBuffer(512);
+	private int lineEnds = 0;
+	private long remaining = 0;
+	private int chunkSizeDigits = 0;
+	private boolean chunkExtension = false;
+	private boolean persistent = false;
+
+	//--------------------------------------------------------------------------
+	//
+	// Constructor
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * @param reactor the reactor serving the connection.
+	 * @param connectTimeout the connect timeout in milliseconds, 0 for none.
+	 * @param responseTimeout the time allowed for the response, in milliseconds, 0 for none.
+	 */
+	AmfNioConnection(AmfNioReactor reactor, int connectTimeout, int responseTimeout) {
+		this.reactor = reactor;
+		this.connectTimeoutNanos = Math.max(0, connectTimeout) * 1000000L;
+		this.responseTimeoutNanos = Math.max(0, responseTimeout) * 1000000L;
+		this.pool = AmfConnectionPool.getInstance();
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Any thread
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Send the request of the exchange, which is added to its completion queue once the
+	 * response has been received or the exchange has failed.  The previous exchange must
+	 * have completed.
+	 */
+	public void send(final AmfNioExchange exchange) {
+		reactor.execute(new Runnable() {
+			public void run() {
+				start(exchange);
+			}
+		});
+	}
+
+	/**
+	 * Fail the exchange in progress, if any, and close the connection.
+	 */
+	public void cancel() {
+		reactor.execute(new Runnable() {
+			public void run() {
+				abort(new InterruptedIOException("Sample interrupted"));
+			}
+		});
+	}
+
+	/**
+	 * Close the connection.
+	 */
+	public void close() {
+		reactor.execute(new Runnable() {
+			public void run() {
+				abort(new IOException("Connection closed"));
+			}
+		});
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Reactor thread
+	//
+	//--------------------------------------------------------------------------
+
+	private void start(AmfNioExchange next) {
+		exchange = next;
+		resetParser();
+		URL url = next.getURL();
+		try {
+			if (!HTTP.equalsIgnoreCase(url.getProtocol())) {
+				throw new IOException(url.getProtocol() + " is not supported by AMF virtual sessions");
+			}
+			InetSocketAddress nextAddress = next.getAddress();
+			if (channel != null && channel.isOpen() && nextAddress.equals(address) && !evict()) {
+				reused = true;
+				AmfConnectionPool.recordHit();
+				next.connected(true);
+				write();
+			} else {
+				closeChannel();
+				address = nextAddress;
+				open();
+			}
+		} catch (IOException ex) {
+			closeChannel();
+			fail(ex);
+		}
+	}
+
+	private void open() throws IOException {
+		reused = false;
+		openNanos = System.nanoTime();
+		channel = SocketChannel.open();
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		key = channel.register(reactor.getSelector(), 0, this);
+		if (channel.connect(address)) {
+			connected();
+			write();
+		} else {
+			deadline = connectTimeoutNanos == 0 ? 0 : System.nanoTime() + connectTimeoutNanos;
+			key.interestOps(SelectionKey.OP_CONNECT);
+		}
+	}
+
+	/**
+	 * @return true if the open connection has been idle too long or reached its maximum
+	 * age, as for the connections of AmfConnectionPool.
+	 */
+	private boolean evict() {
+		long now = System.nanoTime();
+		return pool.evict(now - openNanos, now - lastUsedNanos);
+	}
+
+	private void connected() {
+		AmfConnectionPool.recordMiss(System.nanoTime() - openNanos);
+		exchange.connected(false);
+	}
+
+	/**
+	 * Called by the reactor when the channel is ready for the operations of interest.
+	 */
+	void ready(SelectionKey readyKey) {
+		try {
+			if (!readyKey.isValid()) {
+				return;
+			}
+			if (readyKey.isConnectable()) {
+				channel.finishConnect();
+				connected();
+				write();
+			} else if (readyKey.isWritable()) {
+				write();
+			} else if (readyKey.isReadable()) {
+				read();
+			}
+		} catch (IOException ex) {
+			failOrRetry(ex);
+		}
+	}
+
+	/**
+	 * Called by the reactor periodically, to fail an exchange whose connect or response
+	 * has not completed in time.
+	 */
+	void checkTimeout(long now) {
+		if (exchange != null && deadline != 0 && now - deadline > 0) {
+			boolean connecting = key != null && key.isValid() && (key.interestOps() & SelectionKey.OP_CONNECT) != 0;
+			abort(new SocketTimeoutException(connecting ? "Connect timed out" : "Read timed out"));
+		}
+	}
+
+	/**
+	 * Fail the exchange in progress, if any, and close the channel.
+	 */
+	void abort(IOException ex) {
+		closeChannel();
+		fail(ex);
+	}
+
+	private void write() throws IOException {
+		ByteBuffer[] request = exchange.getRequest();
+		channel.write(request);
+		if (request[request.length - 1].hasRemaining()) {
+			key.interestOps(SelectionKey.OP_WRITE);
+		} else {
+			deadline = responseTimeoutNanos == 0 ? 0 : System.nanoTime() + responseTimeoutNanos;
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	private void read() throws IOException {
+		ByteBuffer buffer = reactor.getReadBuffer();
+		buffer.clear();
+		int n = channel.read(buffer);
+		if (exchange == null) {
+			// The idle connection was closed by the server, or sent data that was not asked for
+			closeChannel();
+			return;
+		}
+		if (n < 0) {
+			if (state == BODY_CLOSE) {
+				persistent = false;
+				complete();
+				return;
+			}
+			throw new EOFException(exchange.isResponseStarted()
+					? "Connection closed before the response was complete"
+					: "Connection closed before the response was received");
+		}
+		if (n > 0) {
+			if (!exchange.isResponseStarted()) {
+				exchange.firstByte();
+			}
+			buffer.flip();
+			parse(buffer);
+			if (state == DONE) {
+				complete();
+			}
+		}
+	}
+
+	/**
+	 * Fail the exchange, unless the request was sent on a reused connection that the
+	 * server closed before responding, in which case it is sent again on a new connection.
+	 */
+	private void failOrRetry(IOException ex) {
+		closeChannel();
+		if (exchange == null) {
+			return;
+		}
+		if (reused && !exchange.isResponseStarted()) {
+			if (log.isDebugEnabled()) {
+				log.debug("Persistent connection to " + address + " closed, reconnecting: " + ex);
+			}
+			AmfConnectionPool.recordStale();
+			exchange.rewind();
+			resetParser();
+			try {
+				open();
+				return;
+			} catch (IOException retry) {
+				closeChannel();
+				ex = retry;
+			}
+		}
+		fail(ex);
+	}
+
+	private void complete() {
+		AmfNioExchange completed = exchange;
+		exchange = null;
+		deadline = 0;
+		if (persistent) {
+			// Watch the idle connection, to notice the server closing it
+			key.interestOps(SelectionKey.OP_READ);
+			lastUsedNanos = System.nanoTime();
+		} else {
+			closeChannel();
+		}
+		completed.complete();
+	}
+
+	private void fail(IOException ex) {
+		AmfNioExchange failed = exchange;
+		exchange = null;
+		deadline = 0;
+		if (failed != null) {
+			failed.fail(ex);
+		}
+	}
+
+	private void closeChannel() {
+		SocketChannel c = channel;
+		channel = null;
+		key = null;
+		if (c != null) {
+			try {
+				c.close();
+			} catch (IOException ex) {
+				// Ignored
+			}
+		}
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Response parser
+	//
+	//--------------------------------------------------------------------------
+
+	private void resetParser() {
+		state = HEAD;
+		head.reset();
+		lineEnds = 0;
+		remaining = 0;
+		chunkSizeDigits = 0;
+		chunkExtension = false;
+		persistent = false;
+	}
+
+	/**
+	 * Consume the bytes read from the connection, advancing the parser.
+	 */
+	private void parse(ByteBuffer buffer) throws IOException {
+		AmfByteBuffer body = exchange.getResponseBody();
+		while (buffer.hasRemaining() && state != DONE) {
+			switch (state) {
+			case HEAD: {
+				byte b = buffer.get();
+				if (head.size() == 0 && (b == '\r' || b == '\n')) {
+					// Skip any empty lines preceding the status line
+					break;
+				}
+				head.append(b);
+				if (b == '\n') {
+					if (++lineEnds == 2) {
+						parseHead();
+					}
+				} else if (b != '\r') {
+					lineEnds = 0;
+				}
+				break;
+			}
+			case BODY_LENGTH:
+			case CHUNK_DATA: {
+				int n = (int) Math.min(remaining, buffer.remaining());
+				body.append(buffer.array(), buffer.arrayOffset() + buffer.position(), n);
+				buffer.position(buffer.position() + n);
+				remaining -= n;
+				if (remaining == 0) {
+					state = state == BODY_LENGTH ? DONE : CHUNK_END;
+				}
+				break;
+			}
+			case BODY_CLOSE: {
+				int n = buffer.remaining();
+				body.append(buffer.array(), buffer.arrayOffset() + buffer.position(), n);
+				buffer.position(buffer.position() + n);
+				break;
+			}
+			case CHUNK_SIZE: {
+				byte b = buffer.get();
+				if (b == '\n') {
+					if (chunkSizeDigits == 0) {
+						throw new IOException("Invalid chunk size");
+					}
+					state = remaining == 0 ? TRAILER : CHUNK_DATA;
+					lineEnds = 1;
+				} else if (!chunkExtension) {
+					int digit = Character.digit((char) b, 16);
+					if (digit >= 0) {
+						remaining = (remaining << 4) + digit;
+						chunkSizeDigits++;
+					} else {
+						chunkExtension = true;
+					}
+				}
+				break;
+			}
+			case CHUNK_END: {
+				if (buffer.get() == '\n') {
+					state = CHUNK_SIZE;
+					remaining = 0;
+					chunkSizeDigits = 0;
+					chunkExtension = false;
+				}
+				break;
+			}
+			case TRAILER: {
+				byte b = buffer.get();
+				if (b == '\n') {
+					if (++lineEnds == 2) {
+						state = DONE;
+					}
+				} else if (b != '\r') {
+					lineEnds = 0;
+				}
+				break;
+			}
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Parse the status line and headers held in head, and choose how the body is read.
+	 * Interim (1xx) responses are discarded.
+	 */
+	private void parseHead() throws IOException {
+		String text;
+		try {
+			text = new String(head.getBuffer(), 0, head.size(), ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		head.reset();
+		lineEnds = 0;
+
+		String[] lines = text.split("\r?\n"); // $NON-NLS-1$
+		String statusLine = lines[0];
+		// HTTP-Version SP Status-Code SP Reason-Phrase
+		int first = statusLine.indexOf(' ');
+		int second = first < 0 ? -1 : statusLine.indexOf(' ', first + 1);
+		int statusCode;
+		if (!statusLine.startsWith("HTTP/") || first < 0) { // $NON-NLS-1$
+			throw new IOException("Invalid status line: " + statusLine);
+		}
+		try {
+			statusCode = Integer.parseInt(second < 0 ? statusLine.substring(first + 1) : statusLine.substring(first + 1, second));
+		} catch (NumberFormatException ex) {
+			throw new IOException("Invalid status line: " + statusLine);
+		}
+		exchange.setStatus(statusLine, statusCode, second < 0 ? "" : statusLine.substring(second + 1)); // $NON-NLS-1$
+		for (int i = 1; i < lines.length; i++) {
+			int colon = lines[i].indexOf(':');
+			if (colon > 0) {
+				exchange.addResponseHeader(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+			}
+		}
+		if (statusCode >= 100 && statusCode < 200) {
+			return;
+		}
+
+		String connection = exchange.getResponseHeader(HEADER_CONNECTION);
+		if (statusLine.startsWith(HTTP_1_1)) {
+			persistent = connection == null || !CONNECTION_CLOSE.equalsIgnoreCase(connection);
+		} else {
+			persistent = CONNECTION_KEEP_ALIVE.equalsIgnoreCase(connection);
+		}
+
+		String transferEncoding = exchange.getResponseHeader(HEADER_TRANSFER_ENCODING);
+		String length = exchange.getResponseHeader(HEADER_CONTENT_LENGTH);
+		if (statusCode == 204 || statusCode == 304) {
+			state = DONE;
+		} else if (transferEncoding != null && transferEncoding.toLowerCase().indexOf(CHUNKED) >= 0) {
+			state = CHUNK_SIZE;
+		} else if (length != null) {
+			try {
+				remaining = Long.parseLong(length);
+			} catch (NumberFormatException ex) {
+				throw new IOException("Invalid Content-Length: " + length);
+			}
+			state = remaining == 0 ? DONE : BODY_LENGTH;
+		} else {
+			// The body is ended by the server closing the connection
+			state = BODY_CLOSE;
+		}
+	}
+
+}
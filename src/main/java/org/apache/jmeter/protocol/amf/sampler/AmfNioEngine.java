@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * A small pool of I/O threads, each running an AmfNioReactor, that multiplexes the
+ * non-blocking connections of the virtual sessions of every AmfSampler in the test.
+ * <p>
+ * The engine is started when the first virtual session is created and stopped as the
+ * test ends.  The number of I/O threads is set by the amf.nio.threads JMeter property,
+ * default the number of available processors.
+ *
+ */
+public class AmfNioEngine {
+
+    //--------------------------------------------------------------------------
+    // Public Static Variables
+    //--------------------------------------------------------------------------
+
+	public static final String THREADS_PROPERTY = "amf.nio.threads"; // $NON-NLS-1$
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	/**
+	 * The engine of the running test, null until the first virtual session is created.
+	 */
+	private static AmfNioEngine instance = null;
+
+	/**
+	 * The number of test listeners that have started the current test and not yet ended it.
+	 */
+	private static int testListeners = 0;
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final AmfNioReactor[] reactors;
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	//--------------------------------------------------------------------------
+	//
+	// Constructor
+	//
+	//--------------------------------------------------------------------------
+
+	AmfNioEngine(int threads) throws IOException {
+		reactors = new AmfNioReactor[threads];
+		try {
+			for (int i = 0; i < threads; i++) {
+				reactors[i] = new AmfNioReactor("AMF NIO " + (i + 1)); // $NON-NLS-1$
+			}
+		} catch (IOException ex) {
+			close();
+			throw ex;
+		}
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Test lifecycle
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Called by each AmfSampler as the test starts.
+	 */
+	public static synchronized void testStarted() {
+		testListeners++;
+	}
+
+	/**
+	 * Called by each AmfSampler as the test ends.  The last call stops the engine, if
+	 * it was started.
+	 */
+	public static synchronized void testEnded() {
+		if (testListeners == 0 || --testListeners > 0) {
+			return;
+		}
+		AmfNioEngine engine = instance;
+		instance = null;
+		if (engine != null) {
+			engine.close();
+		}
+	}
+
+	/**
+	 * @return the engine of the running test, starting it if required.
+	 */
+	public static synchronized AmfNioEngine getInstance() throws IOException {
+		if (instance == null) {
+			int threads = Math.max(1, JMeterUtils.getPropDefault(THREADS_PROPERTY,
+					Runtime.getRuntime().availableProcessors()));
+			instance = new AmfNioEngine(threads);
+			log.info("Started AMF NIO engine with " + threads + " I/O threads");
+		}
+		return instance;
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Connections
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Create a connection served by one of the engine's I/O threads, which are assigned
+	 * in turn.
+	 */
+	public AmfNioConnection createConnection(int connectTimeout, int responseTimeout) {
+		int index = (next.getAndIncrement() & Integer.MAX_VALUE) % reactors.length;
+		return new AmfNioConnection(reactors[index], connectTimeout, responseTimeout);
+	}
+
+	private void close() {
+		for (AmfNioReactor reactor : reactors) {
+			if (reactor != null) {
+				reactor.close();
+			}
+		}
+		log.info("Stopped AMF NIO engine");
+	}
+
+}
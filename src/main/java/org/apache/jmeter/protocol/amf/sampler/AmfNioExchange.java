@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A single request and response exchanged by an AmfNioConnection on behalf of a virtual
+ * session.  The exchange is created by the sampling thread, filled in by the I/O thread of
+ * the connection, and handed back to the sampling thread through its completion queue once
+ * the response has been received or the exchange has failed.
+ *
+ */
+public class AmfNioExchange {
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final Object attachment;
+
+	private final URL url;
+
+	private final InetSocketAddress address;
+
+	private final ByteBuffer[] request;
+
+	private final BlockingQueue<AmfNioExchange> completions;
+
+	private final long startTime = System.currentTimeMillis();
+
+	private final long startNanos = System.nanoTime();
+
+	private long connectedNanos = 0;
+
+	private boolean connectionReused = false;
+
+	private long firstByteNanos = 0;
+
+	private long endNanos = 0;
+
+	private String statusLine = null;
+
+	private int statusCode = -1;
+
+	private String reasonPhrase = null;
+
+	private final List<String[]> responseHeaders = new ArrayList<String[]>();
+
+	private final AmfByteBuffer responseBody = new AmfByteBuffer();
+
+	private IOException exception = null;
+
+	//--------------------------------------------------------------------------
+	//
+	// Constructor
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * @param attachment an object identifying the exchange to the sampling thread, e.g. its session.
+	 * @param url the URL the request is sent to.
+	 * @param address the resolved address of the host and port of the URL, so that the
+	 * reactor does not look it up.
+	 * @param request the buffers holding the request head and body, written in order.
+	 * @param completions the queue the exchange is added to when it completes.
+	 */
+	public AmfNioExchange(Object attachment, URL url, InetSocketAddress address, ByteBuffer[] request,
+			BlockingQueue<AmfNioExchange> completions) {
+		this.attachment = attachment;
+		this.url = url;
+		this.address = address;
+		this.request = request;
+		this.completions = completions;
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Sampling thread
+	//
+	//--------------------------------------------------------------------------
+
+	public Object getAttachment() {
+		return attachment;
+	}
+
+	public URL getURL() {
+		return url;
+	}
+
+	/**
+	 * @return the time the exchange was created, in milliseconds.
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return the time from creating the exchange until it completed, in nanoseconds.
+	 */
+	public long getElapsedNanos() {
+		return endNanos - startNanos;
+	}
+
+	/**
+	 * @return the time from creating the exchange until the connection was available, in nanoseconds.
+	 */
+	public long getConnectNanos() {
+		return connectedNanos == 0 ? 0 : connectedNanos - startNanos;
+	}
+
+	/**
+	 * @return the time from the connection being available until the first byte of the
+	 * response was received, in nanoseconds.
+	 */
+	public long getFirstByteNanos() {
+		return firstByteNanos == 0 || connectedNanos == 0 ? 0 : firstByteNanos - connectedNanos;
+	}
+
+	/**
+	 * @return the time from creating the exchange until the first byte of the response was
+	 * received, in nanoseconds.
+	 */
+	public long getLatencyNanos() {
+		return firstByteNanos == 0 ? 0 : firstByteNanos - startNanos;
+	}
+
+	/**
+	 * @return the time from the first byte of the response until the last, in nanoseconds.
+	 */
+	public long getTransferNanos() {
+		return firstByteNanos == 0 ? 0 : endNanos - firstByteNanos;
+	}
+
+	/**
+	 * @return the exception the exchange failed with, or null if a response was received.
+	 */
+	public IOException getException() {
+		return exception;
+	}
+
+	public String getStatusLine() {
+		return statusLine;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public String getReasonPhrase() {
+		return reasonPhrase;
+	}
+
+	/**
+	 * @return the headers of the response, as name and value pairs.
+	 */
+	public List<String[]> getResponseHeaders() {
+		return responseHeaders;
+	}
+
+	/**
+	 * @return the value of the first response header with the given name, or null.
+	 */
+	public String getResponseHeader(String name) {
+		for (String[] header : responseHeaders) {
+			if (header[0].equalsIgnoreCase(name)) {
+				return header[1];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the body of the response, as received.
+	 */
+	public AmfByteBuffer getResponseBody() {
+		return responseBody;
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// I/O thread
+	//
+	//--------------------------------------------------------------------------
+
+	InetSocketAddress getAddress() {
+		return address;
+	}
+
+	ByteBuffer[] getRequest() {
+		return request;
+	}
+
+	/**
+	 * Prepare the request to be written again, on a new connection.
+	 */
+	void rewind() {
+		for (ByteBuffer buffer : request) {
+			buffer.rewind();
+		}
+		connectedNanos = 0;
+		firstByteNanos = 0;
+	}
+
+	void connected(boolean reused) {
+		connectedNanos = System.nanoTime();
+		connectionReused = reused;
+	}
+
+	/**
+	 * @return true if the request was sent on a connection that was already open.
+	 */
+	public boolean isConnectionReused() {
+		return connectionReused;
+	}
+
+	boolean isResponseStarted() {
+		return firstByteNanos != 0;
+	}
+
+	void firstByte() {
+		firstByteNanos = System.nanoTime();
+	}
+
+	/**
+	 * Set the status of the response, discarding the status and headers of any interim
+	 * response received before it.
+	 */
+	void setStatus(String statusLine, int statusCode, String reasonPhrase) {
+		this.statusLine = statusLine;
+		this.statusCode = statusCode;
+		this.reasonPhrase = reasonPhrase;
+		responseHeaders.clear();
+	}
+
+	void addResponseHeader(String name, String value) {
+		responseHeaders.add(new String[] { name, value });
+	}
+
+	void complete() {
+		endNanos = System.nanoTime();
+		completions.add(this);
+	}
+
+	void fail(IOException ex) {
+		exception = ex;
+		complete();
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * An I/O thread of the AmfNioEngine, serving the AmfNioConnections registered with its
+ * selector.  All work on a connection is run by its reactor's thread: other threads hand
+ * work to the reactor with execute(), which queues it and wakes the selector.
+ *
+ */
+public class AmfNioReactor implements Runnable {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+	/**
+	 * The longest time the selector waits, and so the resolution of timeouts.
+	 */
+	private static final long SELECT_MILLIS = 100;
+
+	private static final int READ_BUFFER_SIZE = 65536;
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final Selector selector;
+
+	private final Thread thread;
+
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	/**
+	 * The buffer each read of a connection is made into, only used by the reactor's thread.
+	 */
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+	private volatile boolean running = true;
+
+	//--------------------------------------------------------------------------
+	//
+	// Constructor
+	//
+	//--------------------------------------------------------------------------
+
+	AmfNioReactor(String name) throws IOException {
+		selector = Selector.open();
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Run the task on the reactor's thread.
+	 */
+	public void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	Selector getSelector() {
+		return selector;
+	}
+
+	ByteBuffer getReadBuffer() {
+		return readBuffer;
+	}
+
+	/**
+	 * Stop the reactor, failing any exchanges in progress and closing its connections.
+	 */
+	void close() {
+		running = false;
+		selector.wakeup();
+	}
+
+	public void run() {
+		long nextTimeoutCheck = System.nanoTime();
+		while (running) {
+			try {
+				selector.select(SELECT_MILLIS);
+				runTasks();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					((AmfNioConnection) key.attachment()).ready(key);
+				}
+				long now = System.nanoTime();
+				if (now - nextTimeoutCheck >= 0) {
+					nextTimeoutCheck = now + SELECT_MILLIS * 1000000L;
+					for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+						((AmfNioConnection) key.attachment()).checkTimeout(now);
+					}
+				}
+			} catch (IOException ex) {
+				log.error(thread.getName() + "\tSelection failed", ex);
+			} catch (RuntimeException ex) {
+				log.error(thread.getName() + "\tUnexpected exception", ex);
+			}
+		}
+
+		runTasks();
+		for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+			((AmfNioConnection) key.attachment()).abort(new IOException("AMF NIO engine stopped"));
+		}
+		try {
+			selector.close();
+		} catch (IOException ex) {
+			// Ignored
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			try {
+				task.run();
+			} catch (RuntimeException ex) {
+				log.error(thread.getName() + "\tUnexpected exception", ex);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * Binds sampler parameters to the positional parameters of a remote call.
+ * <p>
+ * The parameters are added while setting up a test, with the index and type taken
+ * from their names, and compile() then resolves the positional layout and converts
+ * the values that can not change.  For each sample, bind() only replaces the values
+ * of the parameters containing JMeter functions or variables.  A parameter whose
+ * value is a single variable reference, e.g. ${userId}, is read directly from the
+ * thread's JMeterVariables, and a variable already holding an Integer or Long object
+ * is used without conversion.  OBJECT parameters are compiled from their raw value
+ * into an AmfParameterTemplate, which is only rebuilt for each sample if it contains
+ * placeholders.
+ *
+ */
+public class AmfParameterBinder {
+
+	/**
+	 * The type a parameter value is converted to.
+	 */
+	public enum ParameterType {
+		STRING,
+		INT,
+		LONG,
+		/**
+		 * An object graph built from an AmfParameterTemplate.
+		 */
+		OBJECT
+	}
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    /**
+     * Matches a value consisting of a single variable reference.  Names starting with
+     * two underscores are functions, which may be called without parentheses.
+     */
+    private static final Pattern VARIABLE_REFERENCE = Pattern.compile("^\\$\\{(?!__)([^${}()]+)\\}$"); // $NON-NLS-1$
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	/**
+	 * The parameters added before compile(), by call parameter index.
+	 */
+	private Map<Integer, Slot> layout = new TreeMap<Integer, Slot>();
+
+	/**
+	 * The parameters re-evaluated for each sample, after compile().
+	 */
+	private Slot[] dynamicSlots = new Slot[0];
+
+	/**
+	 * Add a parameter.  A parameter added with the same index as an earlier one
+	 * replaces it.
+	 *
+	 * @param index the index of the parameter within the remote call parameters.
+	 * @param type the type of the parameter.
+	 * @param parameterName the name of the sampler parameter holding the value.
+	 */
+	public void addParameter(int index, ParameterType type, String parameterName) {
+		if (layout == null) {
+			throw new IllegalStateException("Parameters can not be added once compiled"); // $NON-NLS-1$
+		}
+		layout.put(Integer.valueOf(index), new Slot(type, parameterName));
+	}
+
+	/**
+	 * Resolve the layout of the parameters added and convert their values.
+	 *
+	 * @param context the context of the test being set up.
+	 * @return the call parameters, in index order, for the first sample.
+	 * @throws NumberFormatException if the value of a static INT or LONG parameter is invalid.
+	 * @throws IllegalArgumentException if an OBJECT parameter is not a valid template.
+	 */
+	public List<Object> compile(AmfSamplerContext context) {
+		List<Object> parameters = new ArrayList<Object>(layout.size());
+		List<Slot> dynamic = new ArrayList<Slot>();
+		AmfSamplerConfig config = context.getConfig();
+
+		for (Slot slot : layout.values()) {
+			slot.position = parameters.size();
+			slot.configIndex = config.indexOf(slot.parameterName);
+			if (slot.type == ParameterType.OBJECT) {
+				// Compiled from the raw value, the template resolves its own placeholders
+				slot.template = AmfParameterTemplate.compile(context.getRawParameter(slot.parameterName));
+				if (slot.template.isDynamic()) {
+					dynamic.add(slot);
+					parameters.add(slot.template.build(JMeterContextService.getContext().getVariables()));
+				} else {
+					parameters.add(slot.template.build(null));
+				}
+			} else if (context.isDynamicParameter(slot.parameterName)) {
+				Matcher matcher = VARIABLE_REFERENCE.matcher(context.getRawParameter(slot.parameterName));
+				if (matcher.matches()) {
+					slot.variableName = matcher.group(1);
+				}
+				dynamic.add(slot);
+				parameters.add(slot.convert(context.getValue(slot.configIndex)));
+			} else {
+				parameters.add(slot.convertStatic(context.getValue(slot.configIndex)));
+			}
+		}
+
+		dynamicSlots = dynamic.toArray(new Slot[dynamic.size()]);
+		layout = null;
+		return parameters;
+	}
+
+	/**
+	 * @return true if any parameter values may change between samples.
+	 */
+	public boolean isDynamic() {
+		return dynamicSlots.length > 0;
+	}
+
+	/**
+	 * Replace the values of the dynamic parameters with their values for a sample.
+	 *
+	 * @param context the context of the sample.
+	 * @param parameters the call parameters returned by compile().
+	 */
+	public void bind(AmfSamplerContext context, List<Object> parameters) {
+		JMeterVariables variables = JMeterContextService.getContext().getVariables();
+		for (int i = 0; i < dynamicSlots.length; i++) {
+			Slot slot = dynamicSlots[i];
+			if (slot.template != null) {
+				parameters.set(slot.position, slot.template.build(variables));
+				continue;
+			}
+			Object value = null;
+			if (slot.variableName != null && variables != null) {
+				value = variables.getObject(slot.variableName);
+			}
+			if (value == null) {
+				value = context.getValue(slot.configIndex);
+			}
+			parameters.set(slot.position, slot.convert(value));
+		}
+	}
+
+	/**
+	 * A call parameter.
+	 */
+	private static final class Slot {
+
+		private final ParameterType type;
+
+		private final String parameterName;
+
+		private int position;
+
+		private int configIndex;
+
+		private String variableName = null;
+
+		private AmfParameterTemplate template = null;
+
+		Slot(ParameterType type, String parameterName) {
+			this.type = type;
+			this.parameterName = parameterName;
+		}
+
+		Object convertStatic(String value) {
+			switch (type) {
+			case INT:
+				return Integer.valueOf(Integer.parseInt(value));
+			case LONG:
+				return Long.valueOf(Long.parseLong(value));
+			default:
+				return value;
+			}
+		}
+
+		/**
+		 * Convert a dynamic value, logging rather than failing the test if it is invalid.
+		 */
+		Object convert(Object value) {
+			if (value == null || type == ParameterType.STRING) {
+				return value == null ? null : value.toString();
+			}
+			if (type == ParameterType.INT && value instanceof Integer
+					|| type == ParameterType.LONG && value instanceof Long) {
+				return value;
+			}
+			try {
+				return convertStatic(value.toString().trim());
+			} catch (NumberFormatException ex) {
+				log.warn("Value for parameter '" + parameterName + "' not " + (type == ParameterType.INT ? "an integer" : "a long") // $NON-NLS-1$
+						+ ": '" + value + "', sending null."); // $NON-NLS-1$
+				return null;
+			}
+		}
+	}
+
+}
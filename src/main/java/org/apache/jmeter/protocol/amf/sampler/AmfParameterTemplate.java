@@ -0,0 +1,841 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.jmeter.engine.util.CompoundVariable;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import flex.messaging.io.ArrayCollection;
+import flex.messaging.io.PropertyProxy;
+import flex.messaging.io.PropertyProxyRegistry;
+import flex.messaging.io.amf.ASObject;
+
+/**
+ * A remoting call parameter compiled from a JSON-like template into a tree of nodes
+ * that builds the parameter object graph for each sample.
+ * <p>
+ * The template syntax is JSON with the following additions:
+ * <ul>
+ * <li>Integral numbers are sent as Integer, or Long when suffixed with L or too large
+ * for an Integer, and numbers with a fraction or exponent as Double.</li>
+ * <li>An object containing a "@type" member is sent as a typed object, an ASObject
+ * with the given class alias; other objects are sent as anonymous objects.</li>
+ * <li>{"@collection": [...]} is sent as an ArrayCollection, other arrays as arrays.</li>
+ * <li>{"@date": "2010-06-01T12:00:00Z"} is sent as a Date.  The value may also be a
+ * date (yyyy-MM-dd), a local date and time (yyyy-MM-ddTHH:mm:ss) or milliseconds
+ * since the epoch.</li>
+ * <li>A value "${name}", quoted or not, is replaced by the object held in the JMeter
+ * variable name, and "${name:type}" converts it to one of string, int, long, double,
+ * boolean or date.  Any other string containing ${...} is evaluated as a JMeter
+ * expression, allowing functions to be called.</li>
+ * </ul>
+ * Subtrees that contain no variables or expressions are built when the template is
+ * compiled and the same objects are sent with every request.
+ *
+ */
+public class AmfParameterTemplate {
+
+	/**
+	 * The types a placeholder value can be converted to.
+	 */
+	public enum ValueType {
+		STRING,
+		INT,
+		LONG,
+		DOUBLE,
+		BOOLEAN,
+		DATE
+	}
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final String TYPE_KEY = "@type"; // $NON-NLS-1$
+
+    private static final String COLLECTION_KEY = "@collection"; // $NON-NLS-1$
+
+    private static final String DATE_KEY = "@date"; // $NON-NLS-1$
+
+    /**
+     * Matches a placeholder, a variable reference with an optional type.  Names starting
+     * with two underscores are functions, which may be called without parentheses.
+     */
+    private static final Pattern PLACEHOLDER = Pattern.compile("^\\$\\{(?!__)([^${}():]+)(?::(\\w+))?\\}$"); // $NON-NLS-1$
+
+    private static final Pattern MILLISECONDS = Pattern.compile("^-?\\d+$"); // $NON-NLS-1$
+
+    private static final String[] DATE_FORMATS = {
+    	"yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", // $NON-NLS-1$
+    	"yyyy-MM-dd'T'HH:mm:ss'Z'", // $NON-NLS-1$
+    	"yyyy-MM-dd'T'HH:mm:ss", // $NON-NLS-1$
+    	"yyyy-MM-dd" // $NON-NLS-1$
+    };
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+    private final Node root;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    private AmfParameterTemplate(Node root) {
+    	this.root = root;
+    }
+
+    /**
+     * Compile a template.
+     *
+     * @param template the template text.
+     * @return the compiled template.
+     * @throws IllegalArgumentException if the template is not valid.
+     */
+    public static AmfParameterTemplate compile(String template) {
+    	Parser parser = new Parser(template);
+    	Node root = parser.parseValue();
+    	parser.skipWhitespace();
+    	if (!parser.atEnd()) {
+    		throw parser.error("Unexpected text after value"); // $NON-NLS-1$
+    	}
+    	return new AmfParameterTemplate(root);
+    }
+
+    /**
+     * @return true if the built parameter may differ between samples.
+     */
+    public boolean isDynamic() {
+    	return root.isDynamic();
+    }
+
+    /**
+     * Build the parameter for a sample.
+     *
+     * @param variables the variables of the sampling thread.
+     * @return the parameter object graph.
+     */
+    public Object build(JMeterVariables variables) {
+    	return root.build(variables);
+    }
+
+    /**
+     * Convert a value to the given type.
+     *
+     * @throws IllegalArgumentException if the value can not be converted.
+     */
+    public static Object convert(Object value, ValueType type) {
+    	if (value == null || type == null) {
+    		return value;
+    	}
+    	switch (type) {
+    	case STRING:
+    		return value.toString();
+    	case INT:
+    		if (value instanceof Integer) {
+    			return value;
+    		}
+    		return value instanceof Number ? Integer.valueOf(((Number) value).intValue())
+    				: Integer.valueOf(value.toString().trim());
+    	case LONG:
+    		if (value instanceof Long) {
+    			return value;
+    		}
+    		return value instanceof Number ? Long.valueOf(((Number) value).longValue())
+    				: Long.valueOf(value.toString().trim());
+    	case DOUBLE:
+    		if (value instanceof Double) {
+    			return value;
+    		}
+    		return value instanceof Number ? Double.valueOf(((Number) value).doubleValue())
+    				: Double.valueOf(value.toString().trim());
+    	case BOOLEAN:
+    		return value instanceof Boolean ? value : Boolean.valueOf(value.toString().trim());
+    	case DATE:
+    		if (value instanceof Date) {
+    			return value;
+    		}
+    		return value instanceof Number ? new Date(((Number) value).longValue()) : parseDate(value.toString().trim());
+    	default:
+    		return value;
+    	}
+    }
+
+    /**
+     * Parse a date in one of the supported formats, or as milliseconds since the epoch.
+     *
+     * @throws IllegalArgumentException if the date can not be parsed.
+     */
+    public static Date parseDate(String text) {
+    	if (MILLISECONDS.matcher(text).matches()) {
+    		return new Date(Long.parseLong(text));
+    	}
+    	for (int i = 0; i < DATE_FORMATS.length; i++) {
+    		SimpleDateFormat format = new SimpleDateFormat(DATE_FORMATS[i]);
+    		format.setLenient(false);
+    		if (DATE_FORMATS[i].endsWith("'Z'")) { // $NON-NLS-1$
+    			format.setTimeZone(TimeZone.getTimeZone("UTC")); // $NON-NLS-1$
+    		}
+    		ParsePosition position = new ParsePosition(0);
+    		Date date = format.parse(text, position);
+    		if (date != null && position.getIndex() == text.length()) {
+    			return date;
+    		}
+    	}
+    	throw new IllegalArgumentException("Invalid date: " + text); // $NON-NLS-1$
+    }
+
+    /**
+     * Write an object graph, such as a recorded remoting call parameter, as a template
+     * that compiles to an equivalent graph.
+     *
+     * @param value the object graph.
+     * @return the template.
+     * @throws IllegalArgumentException if the graph holds values a template can not express.
+     */
+    public static String toTemplate(Object value) {
+    	StringBuilder sb = new StringBuilder();
+    	appendTemplate(sb, value, new IdentityHashMap<Object, Object>());
+    	return sb.toString();
+    }
+
+    private static void appendTemplate(StringBuilder sb, Object value, Map<Object, Object> parents) {
+    	if (value == null) {
+    		sb.append("null"); // $NON-NLS-1$
+    	} else if (value instanceof String || value instanceof Character) {
+    		appendString(sb, value.toString());
+    	} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+    		sb.append(value);
+    	} else if (value instanceof Long) {
+    		sb.append(value).append('L');
+    	} else if (value instanceof Double || value instanceof Float) {
+    		double d = ((Number) value).doubleValue();
+    		if (Double.isNaN(d) || Double.isInfinite(d)) {
+    			throw new IllegalArgumentException("Unsupported number: " + value); // $NON-NLS-1$
+    		}
+    		sb.append(Double.toString(d));
+    	} else if (value instanceof Boolean) {
+    		sb.append(value);
+    	} else if (value instanceof Date) {
+    		sb.append("{\"" + DATE_KEY + "\": ").append(((Date) value).getTime()).append('}'); // $NON-NLS-1$
+    	} else {
+    		if (parents.put(value, value) != null) {
+    			throw new IllegalArgumentException("Cyclic object graph"); // $NON-NLS-1$
+    		}
+    		if (value instanceof Object[]) {
+    			appendElements(sb, Arrays.asList((Object[]) value), parents);
+    		} else if (value.getClass().isArray()) {
+    			throw new IllegalArgumentException("Unsupported type: " + value.getClass().getName()); // $NON-NLS-1$
+    		} else if (value instanceof Collection<?>) {
+    			sb.append("{\"" + COLLECTION_KEY + "\": "); // $NON-NLS-1$
+    			appendElements(sb, (Collection<?>) value, parents);
+    			sb.append('}');
+    		} else if (value instanceof Map<?, ?>) {
+    			String type = value instanceof ASObject ? ((ASObject) value).getType() : null;
+    			Map<?, ?> map = (Map<?, ?>) value;
+    			List<String> keys = new ArrayList<String>();
+    			List<Object> values = new ArrayList<Object>();
+    			for (Map.Entry<?, ?> entry : map.entrySet()) {
+    				keys.add(String.valueOf(entry.getKey()));
+    				values.add(entry.getValue());
+    			}
+    			appendMembers(sb, type, keys, values, parents);
+    		} else {
+    			PropertyProxy proxy = PropertyProxyRegistry.getProxy(value);
+    			List<String> keys = new ArrayList<String>();
+    			List<Object> values = new ArrayList<Object>();
+    			for (Object name : proxy.getPropertyNames(value)) {
+    				keys.add(name.toString());
+    				values.add(proxy.getValue(value, name.toString()));
+    			}
+    			appendMembers(sb, proxy.getAlias(value), keys, values, parents);
+    		}
+    		parents.remove(value);
+    	}
+    }
+
+    private static void appendElements(StringBuilder sb, Collection<?> elements, Map<Object, Object> parents) {
+    	sb.append('[');
+    	boolean first = true;
+    	for (Object element : elements) {
+    		if (!first) {
+    			sb.append(", "); // $NON-NLS-1$
+    		}
+    		first = false;
+    		appendTemplate(sb, element, parents);
+    	}
+    	sb.append(']');
+    }
+
+    private static void appendMembers(StringBuilder sb, String type, List<String> keys, List<Object> values,
+    		Map<Object, Object> parents) {
+    	sb.append('{');
+    	boolean first = true;
+    	if (type != null && type.length() > 0) {
+    		appendString(sb, TYPE_KEY);
+    		sb.append(": "); // $NON-NLS-1$
+    		appendString(sb, type);
+    		first = false;
+    	}
+    	for (int i = 0; i < keys.size(); i++) {
+    		if (!first) {
+    			sb.append(", "); // $NON-NLS-1$
+    		}
+    		first = false;
+    		appendString(sb, keys.get(i));
+    		sb.append(": "); // $NON-NLS-1$
+    		appendTemplate(sb, values.get(i), parents);
+    	}
+    	sb.append('}');
+    }
+
+    private static void appendString(StringBuilder sb, String value) {
+    	sb.append('"');
+    	for (int i = 0; i < value.length(); i++) {
+    		char c = value.charAt(i);
+    		if (c == '"' || c == '\\') {
+    			sb.append('\\').append(c);
+    		} else if (c < ' ') {
+    			sb.append(String.format("\\u%04x", Integer.valueOf(c))); // $NON-NLS-1$
+    		} else {
+    			sb.append(c);
+    		}
+    	}
+    	sb.append('"');
+    }
+
+    private static ValueType toValueType(String name) {
+    	if (name == null) {
+    		return null;
+    	}
+    	try {
+    		return ValueType.valueOf(name.toUpperCase());
+    	} catch (IllegalArgumentException ex) {
+    		throw new IllegalArgumentException("Unknown placeholder type: " + name); // $NON-NLS-1$
+    	}
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Nodes
+    //
+    //--------------------------------------------------------------------------
+
+    private static abstract class Node {
+
+    	abstract boolean isDynamic();
+
+    	abstract Object build(JMeterVariables variables);
+
+    	/**
+    	 * @return this node, or a constant holding the value of this node if it is not dynamic.
+    	 */
+    	Node fold() {
+    		return isDynamic() ? this : new ConstantNode(build(null));
+    	}
+    }
+
+    private static final class ConstantNode extends Node {
+
+    	private final Object value;
+
+    	ConstantNode(Object value) {
+    		this.value = value;
+    	}
+
+    	boolean isDynamic() {
+    		return false;
+    	}
+
+    	Object build(JMeterVariables variables) {
+    		return value;
+    	}
+    }
+
+    /**
+     * A placeholder replaced by the value of a variable.
+     */
+    private static final class VariableNode extends Node {
+
+    	private final String name;
+
+    	private final ValueType type;
+
+    	VariableNode(String name, ValueType type) {
+    		this.name = name;
+    		this.type = type;
+    	}
+
+    	boolean isDynamic() {
+    		return true;
+    	}
+
+    	Object build(JMeterVariables variables) {
+    		Object value = variables == null ? null : variables.getObject(name);
+    		try {
+    			return convert(value, type);
+    		} catch (IllegalArgumentException ex) {
+    			log.warn("Value of variable '" + name + "' not a valid " + type.name().toLowerCase() // $NON-NLS-1$
+    					+ ": '" + value + "', sending null."); // $NON-NLS-1$
+    			return null;
+    		}
+    	}
+    }
+
+    /**
+     * A string evaluated as a JMeter expression, which may call functions.
+     */
+    private static final class ExpressionNode extends Node {
+
+    	private final CompoundVariable expression;
+
+    	private final ValueType type;
+
+    	ExpressionNode(String expression, ValueType type) {
+    		this.expression = new CompoundVariable(expression);
+    		this.type = type;
+    	}
+
+    	boolean isDynamic() {
+    		return true;
+    	}
+
+    	Object build(JMeterVariables variables) {
+    		String value = expression.execute();
+    		try {
+    			return convert(value, type);
+    		} catch (IllegalArgumentException ex) {
+    			log.warn("Value of expression '" + expression.getRawParameters() + "' not a valid " // $NON-NLS-1$
+    					+ type.name().toLowerCase() + ": '" + value + "', sending null."); // $NON-NLS-1$
+    			return null;
+    		}
+    	}
+    }
+
+    private static final class ArrayNode extends Node {
+
+    	private final Node[] elements;
+
+    	private final boolean dynamic;
+
+    	ArrayNode(Node[] elements) {
+    		this.elements = elements;
+    		this.dynamic = anyDynamic(elements);
+    	}
+
+    	boolean isDynamic() {
+    		return dynamic;
+    	}
+
+    	Object build(JMeterVariables variables) {
+    		Object[] array = new Object[elements.length];
+    		for (int i = 0; i < elements.length; i++) {
+    			array[i] = elements[i].build(variables);
+    		}
+    		return array;
+    	}
+    }
+
+    private static final class CollectionNode extends Node {
+
+    	private final Node[] elements;
+
+    	private final boolean dynamic;
+
+    	CollectionNode(Node[] elements) {
+    		this.elements = elements;
+    		this.dynamic = anyDynamic(elements);
+    	}
+
+    	boolean isDynamic() {
+    		return dynamic;
+    	}
+
+    	Object build(JMeterVariables variables) {
+    		ArrayCollection collection = new ArrayCollection(elements.length);
+    		for (int i = 0; i < elements.length; i++) {
+    			collection.add(elements[i].build(variables));
+    		}
+    		return collection;
+    	}
+    }
+
+    private static final class ObjectNode extends Node {
+
+    	private final String type;
+
+    	private final String[] keys;
+
+    	private final Node[] values;
+
+    	private final boolean dynamic;
+
+    	ObjectNode(String type, String[] keys, Node[] values) {
+    		this.type = type;
+    		this.keys = keys;
+    		this.values = values;
+    		this.dynamic = anyDynamic(values);
+    	}
+
+    	boolean isDynamic() {
+    		return dynamic;
+    	}
+
+    	Object build(JMeterVariables variables) {
+    		ASObject object = new ASObject(type);
+    		for (int i = 0; i < keys.length; i++) {
+    			object.put(keys[i], values[i].build(variables));
+    		}
+    		return object;
+    	}
+    }
+
+    private static final class DateNode extends Node {
+
+    	private final Node value;
+
+    	DateNode(Node value) {
+    		this.value = value;
+    	}
+
+    	boolean isDynamic() {
+    		return value.isDynamic();
+    	}
+
+    	Object build(JMeterVariables variables) {
+    		Object date = value.build(variables);
+    		try {
+    			return convert(date, ValueType.DATE);
+    		} catch (IllegalArgumentException ex) {
+    			log.warn("Invalid date: '" + date + "', sending null."); // $NON-NLS-1$
+    			return null;
+    		}
+    	}
+    }
+
+    private static boolean anyDynamic(Node[] nodes) {
+    	for (int i = 0; i < nodes.length; i++) {
+    		if (nodes[i].isDynamic()) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Parser
+    //
+    //--------------------------------------------------------------------------
+
+    private static final class Parser {
+
+    	private final String text;
+
+    	private int pos = 0;
+
+    	Parser(String text) {
+    		this.text = text == null ? "" : text; // $NON-NLS-1$
+    	}
+
+    	boolean atEnd() {
+    		return pos >= text.length();
+    	}
+
+    	IllegalArgumentException error(String message) {
+    		return new IllegalArgumentException(message + " at position " + pos + " of template: " + text); // $NON-NLS-1$
+    	}
+
+    	void skipWhitespace() {
+    		while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+    			pos++;
+    		}
+    	}
+
+    	void expect(char c) {
+    		skipWhitespace();
+    		if (atEnd() || text.charAt(pos) != c) {
+    			throw error("Expected '" + c + "'"); // $NON-NLS-1$
+    		}
+    		pos++;
+    	}
+
+    	Node parseValue() {
+    		skipWhitespace();
+    		if (atEnd()) {
+    			throw error("Expected a value"); // $NON-NLS-1$
+    		}
+    		char c = text.charAt(pos);
+    		switch (c) {
+    		case '{':
+    			return parseObject();
+    		case '[':
+    			return new ArrayNode(parseElements()).fold();
+    		case '"':
+    		case '\'':
+    			return stringNode(parseString());
+    		case '$':
+    			return stringNode(parsePlaceholder());
+    		default:
+    			if (text.startsWith("true", pos)) { // $NON-NLS-1$
+    				pos += 4;
+    				return new ConstantNode(Boolean.TRUE);
+    			} else if (text.startsWith("false", pos)) { // $NON-NLS-1$
+    				pos += 5;
+    				return new ConstantNode(Boolean.FALSE);
+    			} else if (text.startsWith("null", pos)) { // $NON-NLS-1$
+    				pos += 4;
+    				return new ConstantNode(null);
+    			}
+    			return new ConstantNode(parseNumber());
+    		}
+    	}
+
+    	private Node parseObject() {
+    		expect('{');
+    		Map<String, Node> members = new LinkedHashMap<String, Node>();
+    		skipWhitespace();
+    		if (!atEnd() && text.charAt(pos) == '}') {
+    			pos++;
+    		} else {
+    			while (true) {
+    				skipWhitespace();
+    				String key = parseKey();
+    				expect(':');
+    				members.put(key, parseValue());
+    				skipWhitespace();
+    				if (!atEnd() && text.charAt(pos) == ',') {
+    					pos++;
+    				} else {
+    					expect('}');
+    					break;
+    				}
+    			}
+    		}
+
+    		if (members.containsKey(COLLECTION_KEY)) {
+    			Node elements = members.get(COLLECTION_KEY);
+    			if (members.size() != 1 || !(elements instanceof ArrayNode || elements.build(null) instanceof Object[])) {
+    				throw error(COLLECTION_KEY + " must be the only member and hold an array"); // $NON-NLS-1$
+    			}
+    			Node[] nodes = elements instanceof ArrayNode ? ((ArrayNode) elements).elements
+    					: toConstantNodes((Object[]) elements.build(null));
+    			return new CollectionNode(nodes).fold();
+    		}
+    		if (members.containsKey(DATE_KEY)) {
+    			if (members.size() != 1) {
+    				throw error(DATE_KEY + " must be the only member"); // $NON-NLS-1$
+    			}
+    			Node date = new DateNode(members.get(DATE_KEY));
+    			if (!date.isDynamic() && date.build(null) == null) {
+    				throw error("Invalid " + DATE_KEY + " value"); // $NON-NLS-1$
+    			}
+    			return date.fold();
+    		}
+
+    		String type = null;
+    		Node typeNode = members.remove(TYPE_KEY);
+    		if (typeNode != null) {
+    			Object alias = typeNode.build(null);
+    			if (typeNode.isDynamic() || !(alias instanceof String) || ((String) alias).length() == 0) {
+    				throw error(TYPE_KEY + " must be a class alias"); // $NON-NLS-1$
+    			}
+    			type = (String) alias;
+    		}
+    		return new ObjectNode(type, members.keySet().toArray(new String[members.size()]),
+    				members.values().toArray(new Node[members.size()])).fold();
+    	}
+
+    	private Node[] parseElements() {
+    		expect('[');
+    		List<Node> elements = new ArrayList<Node>();
+    		skipWhitespace();
+    		if (!atEnd() && text.charAt(pos) == ']') {
+    			pos++;
+    		} else {
+    			while (true) {
+    				elements.add(parseValue());
+    				skipWhitespace();
+    				if (!atEnd() && text.charAt(pos) == ',') {
+    					pos++;
+    				} else {
+    					expect(']');
+    					break;
+    				}
+    			}
+    		}
+    		return elements.toArray(new Node[elements.size()]);
+    	}
+
+    	private String parseKey() {
+    		if (atEnd()) {
+    			throw error("Expected a member name"); // $NON-NLS-1$
+    		}
+    		char c = text.charAt(pos);
+    		if (c == '"' || c == '\'') {
+    			return parseString();
+    		}
+    		int start = pos;
+    		while (pos < text.length() && (Character.isJavaIdentifierPart(text.charAt(pos)) || text.charAt(pos) == '@')) {
+    			pos++;
+    		}
+    		if (start == pos) {
+    			throw error("Expected a member name"); // $NON-NLS-1$
+    		}
+    		return text.substring(start, pos);
+    	}
+
+    	private String parseString() {
+    		char quote = text.charAt(pos++);
+    		StringBuilder sb = new StringBuilder();
+    		while (true) {
+    			if (atEnd()) {
+    				throw error("Unterminated string"); // $NON-NLS-1$
+    			}
+    			char c = text.charAt(pos++);
+    			if (c == quote) {
+    				return sb.toString();
+    			}
+    			if (c != '\\') {
+    				sb.append(c);
+    				continue;
+    			}
+    			if (atEnd()) {
+    				throw error("Unterminated string"); // $NON-NLS-1$
+    			}
+    			c = text.charAt(pos++);
+    			switch (c) {
+    			case 'b': sb.append('\b'); break;
+    			case 'f': sb.append('\f'); break;
+    			case 'n': sb.append('\n'); break;
+    			case 'r': sb.append('\r'); break;
+    			case 't': sb.append('\t'); break;
+    			case 'u':
+    				if (pos + 4 > text.length()) {
+    					throw error("Invalid unicode escape"); // $NON-NLS-1$
+    				}
+    				try {
+    					sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+    				} catch (NumberFormatException ex) {
+    					throw error("Invalid unicode escape"); // $NON-NLS-1$
+    				}
+    				pos += 4;
+    				break;
+    			default:
+    				sb.append(c);
+    			}
+    		}
+    	}
+
+    	private String parsePlaceholder() {
+    		int start = pos;
+    		int depth = 0;
+    		while (pos < text.length()) {
+    			char c = text.charAt(pos++);
+    			if (c == '{') {
+    				depth++;
+    			} else if (c == '}' && --depth == 0) {
+    				return text.substring(start, pos);
+    			}
+    		}
+    		throw error("Unterminated placeholder"); // $NON-NLS-1$
+    	}
+
+    	private Object parseNumber() {
+    		int start = pos;
+    		boolean floating = false;
+    		if (pos < text.length() && (text.charAt(pos) == '-' || text.charAt(pos) == '+')) {
+    			pos++;
+    		}
+    		while (pos < text.length()) {
+    			char c = text.charAt(pos);
+    			if (c == '.' || c == 'e' || c == 'E') {
+    				floating = true;
+    			} else if (!Character.isDigit(c) && !((c == '-' || c == '+') && floating)) {
+    				break;
+    			}
+    			pos++;
+    		}
+    		String number = text.substring(start, pos);
+    		try {
+    			if (pos < text.length() && (text.charAt(pos) == 'L' || text.charAt(pos) == 'l') && !floating) {
+    				pos++;
+    				return Long.valueOf(number);
+    			}
+    			if (pos < text.length() && (text.charAt(pos) == 'D' || text.charAt(pos) == 'd')) {
+    				pos++;
+    				return Double.valueOf(number);
+    			}
+    			if (floating) {
+    				return Double.valueOf(number);
+    			}
+    			long value = Long.parseLong(number);
+    			if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+    				return Integer.valueOf((int) value);
+    			}
+    			return Long.valueOf(value);
+    		} catch (NumberFormatException ex) {
+    			pos = start;
+    			throw error("Expected a value"); // $NON-NLS-1$
+    		}
+    	}
+
+    	/**
+    	 * @return a node for a string value, which may be a placeholder or an expression.
+    	 */
+    	private Node stringNode(String value) {
+    		Matcher matcher = PLACEHOLDER.matcher(value);
+    		if (matcher.matches()) {
+    			return new VariableNode(matcher.group(1), toValueType(matcher.group(2)));
+    		}
+    		if (value.indexOf("${") >= 0) { // $NON-NLS-1$
+    			return new ExpressionNode(value, ValueType.STRING);
+    		}
+    		return new ConstantNode(value);
+    	}
+
+    	private Node[] toConstantNodes(Object[] values) {
+    		Node[] nodes = new Node[values.length];
+    		for (int i = 0; i < values.length; i++) {
+    			nodes[i] = new ConstantNode(values[i]);
+    		}
+    		return nodes;
+    	}
+    }
+
+}
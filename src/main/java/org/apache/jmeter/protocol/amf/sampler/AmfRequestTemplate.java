@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import flex.messaging.messages.AbstractMessage;
+import flex.messaging.messages.Message;
+
+/**
+ * A serialized AMF request envelope that is built once and then used to produce
+ * each subsequent request by patching the message id and Flex client id (DSId)
+ * values directly within a copy of the serialized bytes.
+ * <p>
+ * The template is built by serializing a message in which the message id and DSId
+ * header have been replaced with unique sentinel values of the same encoded length,
+ * and then locating those sentinels within the serialized output.  Since AMF strings
+ * are length prefixed, a value can only be patched in place if its encoded length
+ * matches the length of the slot, otherwise the template must be rebuilt.
+ * <p>
+ * A template is only valid for messages whose content, other than the message id
+ * and DSId, does not change between samples.
+ *
+ */
+public class AmfRequestTemplate {
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final String ENCODING = "UTF-8"; // $NON-NLS-1$
+
+    private static final char[] SENTINEL_CHARS =
+    	"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    /**
+     * The number of attempts made to find sentinel values that occur exactly once
+     * within the serialized message.
+     */
+    private static final int MAX_SENTINEL_ATTEMPTS = 4;
+
+    private static final Random sentinelRandom = new Random();
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+    private final byte[] template;
+
+    private final int messageIdOffset;
+    private final int messageIdLength;
+
+    private final int flexClientIdOffset;
+    private final int flexClientIdLength;
+
+    /**
+     * The DSId value this template was built with.
+     */
+    private final String flexClientId;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    private AmfRequestTemplate(byte[] template, int messageIdOffset, int messageIdLength,
+    		int flexClientIdOffset, int flexClientIdLength, String flexClientId) {
+    	this.template = template;
+    	this.messageIdOffset = messageIdOffset;
+    	this.messageIdLength = messageIdLength;
+    	this.flexClientIdOffset = flexClientIdOffset;
+    	this.flexClientIdLength = flexClientIdLength;
+    	this.flexClientId = flexClientId;
+    }
+
+    /**
+     * Build a request template from the given message.  Note that the message id and
+     * DSId header of the message are overwritten while building the template.
+     *
+     * @param message the message to build the template from.
+     * @param flexClientId the DSId value that will be patched into each request, or null
+     * if the DSId header of the message should be treated as a constant.
+     * @param helper the AmfMessageHelper used to serialize the message.
+     *
+     * @return a request template, or null if a template could not be built for the message.
+     */
+    public static AmfRequestTemplate create(AbstractMessage message, String flexClientId,
+    		AmfMessageHelper helper) {
+
+    	if (message == null) {
+    		return null;
+    	}
+
+    	// Only patch the DSId header if it holds the value supplied by the caller
+    	Object header = message.getHeader(Message.FLEX_CLIENT_ID_HEADER);
+    	boolean patchFlexClientId = flexClientId != null && flexClientId.length() > 0
+    		&& flexClientId.equals(header);
+
+    	for (int attempt = 0; attempt < MAX_SENTINEL_ATTEMPTS; attempt++) {
+
+    		String messageIdSentinel = UUID.randomUUID().toString();
+    		String flexClientIdSentinel = null;
+
+    		message.setMessageId(messageIdSentinel);
+    		if (patchFlexClientId) {
+    			flexClientIdSentinel = createSentinel(encodedLength(flexClientId));
+    			message.setHeader(Message.FLEX_CLIENT_ID_HEADER, flexClientIdSentinel);
+    		}
+
+    		byte[] bytes = helper.serializeMessage(message);
+
+    		int messageIdOffset = indexOfUnique(bytes, encode(messageIdSentinel));
+    		if (messageIdOffset < 0) {
+    			continue;
+    		}
+
+    		int flexClientIdOffset = -1;
+    		int flexClientIdLength = 0;
+    		if (patchFlexClientId) {
+    			byte[] sentinel = encode(flexClientIdSentinel);
+    			flexClientIdOffset = indexOfUnique(bytes, sentinel);
+    			if (flexClientIdOffset < 0) {
+    				continue;
+    			}
+    			flexClientIdLength = sentinel.length;
+    		}
+
+    		return new AmfRequestTemplate(bytes, messageIdOffset, encode(messageIdSentinel).length,
+    				flexClientIdOffset, flexClientIdLength, flexClientId);
+    	}
+
+    	log.warn("Unable to locate message id/DSId slots within the serialized request.");
+    	return null;
+    }
+
+    /**
+     * Indicates whether this template can produce requests carrying the given DSId value.
+     *
+     * @param flexClientId the DSId value to be sent with the next request.
+     * @return true if the value equals the DSId the template was built with, or the
+     * template has a DSId slot the value fits in.
+     */
+    public boolean accepts(String flexClientId) {
+    	if (this.flexClientId == null ? flexClientId == null : this.flexClientId.equals(flexClientId)) {
+    		return true;
+    	}
+    	return flexClientIdOffset >= 0 && flexClientId != null
+    		&& encodedLength(flexClientId) == flexClientIdLength;
+    }
+
+    /**
+     * Produce a serialized request from this template.
+     *
+     * @param messageId the message id to patch into the request.
+     * @param flexClientId the DSId value to patch into the request.
+     *
+     * @return the serialized request, or null if either value does not fit in its slot.
+     */
+    public byte[] createRequest(String messageId, String flexClientId) {
+    	byte[] messageIdBytes = encode(messageId);
+    	if (messageIdBytes.length != messageIdLength) {
+    		return null;
+    	}
+    	byte[] request = new byte[template.length];
+    	System.arraycopy(template, 0, request, 0, template.length);
+    	System.arraycopy(messageIdBytes, 0, request, messageIdOffset, messageIdLength);
+
+    	if (flexClientIdOffset >= 0) {
+    		if (flexClientId == null) {
+    			return null;
+    		}
+    		byte[] flexClientIdBytes = encode(flexClientId);
+    		if (flexClientIdBytes.length != flexClientIdLength) {
+    			return null;
+    		}
+    		System.arraycopy(flexClientIdBytes, 0, request, flexClientIdOffset, flexClientIdLength);
+    	}
+    	return request;
+    }
+
+    /**
+     * @return the length, in bytes, of a serialized request created from this template.
+     */
+    public int length() {
+    	return template.length;
+    }
+
+    private static String createSentinel(int length) {
+    	char[] chars = new char[length];
+    	synchronized (sentinelRandom) {
+    		for (int i = 0; i < length; i++) {
+    			chars[i] = SENTINEL_CHARS[sentinelRandom.nextInt(SENTINEL_CHARS.length)];
+    		}
+    	}
+    	return new String(chars);
+    }
+
+    /**
+     * Returns the offset of the only occurrence of the pattern within the data, or -1
+     * if the pattern does not occur exactly once.
+     */
+    static int indexOfUnique(byte[] data, byte[] pattern) {
+    	int found = -1;
+    	for (int i = 0; i <= data.length - pattern.length; i++) {
+    		int j = 0;
+    		while (j < pattern.length && data[i + j] == pattern[j]) {
+    			j++;
+    		}
+    		if (j == pattern.length) {
+    			if (found >= 0) {
+    				return -1;
+    			}
+    			found = i;
+    		}
+    	}
+    	return found;
+    }
+
+    private static int encodedLength(String value) {
+    	return encode(value).length;
+    }
+
+    static byte[] encode(String value) {
+    	try {
+			return value.getBytes(ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+    }
+
+}
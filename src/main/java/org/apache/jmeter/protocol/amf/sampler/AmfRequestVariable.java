@@ -1,40 +1,47 @@
-/*
- * Licensed to the Apache Software Foundation (ASF) under one or more
- * contributor license agreements.  See the NOTICE file distributed with
- * this work for additional information regarding copyright ownership.
- * The ASF licenses this file to You under the Apache License, Version 2.0
- * (the "License"); you may not use this file except in compliance with
- * the License.  You may obtain a copy of the License at
- *
- *   http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package org.apache.jmeter.protocol.amf.sampler;
-
-public enum AmfRequestVariable {
-
-	FLEX_CLIENT_ID_VARIABLE("DSId"),
-	OPERATION_SUCCESS_VARIABLE("operationSuccess"),
-	LAST_OPERATION_SUCCEEDED_VARIABLE("lastOperationSucceeded");
-
-	private String name = null;
-	
-	private AmfRequestVariable(String name) {
-		this.name = name;
-	}
-	
-	public String getName() {
-		return name;
-	}
-
-	@Override
-	public String toString() {
-		return getName();
-	}
-
-}
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+public enum AmfRequestVariable {
+
+	FLEX_CLIENT_ID_VARIABLE("DSId"),
+	OPERATION_SUCCESS_VARIABLE("operationSuccess"),
+	LAST_OPERATION_SUCCEEDED_VARIABLE("lastOperationSucceeded"),
+	SERIALIZE_TIME_VARIABLE("amfSerializeMicros"),
+	CONNECT_TIME_VARIABLE("amfConnectMicros"),
+	FIRST_BYTE_TIME_VARIABLE("amfFirstByteMicros"),
+	TRANSFER_TIME_VARIABLE("amfTransferMicros"),
+	INFLATE_TIME_VARIABLE("amfInflateMicros"),
+	DECODE_TIME_VARIABLE("amfDecodeMicros"),
+	CONNECTION_REUSED_VARIABLE("amfConnectionReused");
+
+	private String name = null;
+	
+	private AmfRequestVariable(String name) {
+		this.name = name;
+	}
+	
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return getName();
+	}
+
+}
@@ -0,0 +1,765 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import flex.messaging.io.ArrayCollection;
+import flex.messaging.io.ObjectProxy;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.ASObject;
+import flex.messaging.io.amf.ActionContext;
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.AmfMessageDeserializer;
+import flex.messaging.messages.AcknowledgeMessage;
+import flex.messaging.messages.AcknowledgeMessageExt;
+import flex.messaging.messages.AsyncMessageExt;
+import flex.messaging.messages.CommandMessageExt;
+import flex.messaging.messages.Message;
+
+/**
+ * Reads the envelope, message headers and acknowledgement fields of an AMF3 response
+ * without deserializing the body of the acknowledgement.  The body is stepped over,
+ * keeping the AMF3 reference tables in step so that headers referring back to strings
+ * within the body are still resolved, and is left to be deserialized on demand by
+ * AmfLazyAcknowledgeMessage.
+ * <p>
+ * Both the full AcknowledgeMessage encoding and the "small message" encoding used for
+ * AcknowledgeMessageExt (DSK) are understood.  For any response that can not be read
+ * this way, such as a status (fault) response, a response with AMF headers or an
+ * acknowledgement containing an externalizable type other than those known to this
+ * class, scan() returns null and the caller is expected to deserialize the response
+ * in full.
+ *
+ */
+public class AmfResponseScanner {
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final String ENCODING = "UTF-8"; // $NON-NLS-1$
+
+    private static final String RESULT_METHOD = "/onResult"; // $NON-NLS-1$
+
+    private static final int AMF0_AVMPLUS_OBJECT_TYPE = 0x11;
+
+    private static final int AMF3_UNDEFINED_TYPE = 0x00;
+    private static final int AMF3_NULL_TYPE = 0x01;
+    private static final int AMF3_FALSE_TYPE = 0x02;
+    private static final int AMF3_TRUE_TYPE = 0x03;
+    private static final int AMF3_INTEGER_TYPE = 0x04;
+    private static final int AMF3_DOUBLE_TYPE = 0x05;
+    private static final int AMF3_STRING_TYPE = 0x06;
+    private static final int AMF3_XML_DOC_TYPE = 0x07;
+    private static final int AMF3_DATE_TYPE = 0x08;
+    private static final int AMF3_ARRAY_TYPE = 0x09;
+    private static final int AMF3_OBJECT_TYPE = 0x0A;
+    private static final int AMF3_XML_TYPE = 0x0B;
+    private static final int AMF3_BYTE_ARRAY_TYPE = 0x0C;
+
+    private static final int HAS_NEXT_FLAG = 0x80;
+
+    private static final String ACKNOWLEDGE_MESSAGE_CLASS = AcknowledgeMessage.class.getName();
+    private static final String ACKNOWLEDGE_MESSAGE_EXT_CLASS = AcknowledgeMessageExt.class.getName();
+    private static final String ARRAY_COLLECTION_CLASS = ArrayCollection.class.getName();
+    private static final String OBJECT_PROXY_CLASS = ObjectProxy.class.getName();
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Marks an object reference table entry for an object that was skipped.
+     */
+    private static final Object SKIPPED = new Object();
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+    private final byte[] data;
+    private int pos = 0;
+
+    private int[] stringOffsets = new int[16];
+    private int[] stringLengths = new int[16];
+    private int stringCount = 0;
+
+    private final List<Object> objectTable = new ArrayList<Object>();
+    private final List<Traits> traitsTable = new ArrayList<Traits>();
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    private AmfResponseScanner(byte[] data) {
+    	this.data = data;
+    }
+
+    /**
+     * Read the headers and acknowledgement fields of a serialized AMF response.
+     *
+     * @param response the serialized response.
+     * @return an acknowledgement whose body will be deserialized on demand, or null
+     * if the response must be deserialized in full.
+     */
+    public static AmfLazyAcknowledgeMessage scan(byte[] response) {
+    	if (response == null) {
+    		return null;
+    	}
+    	try {
+    		return new AmfResponseScanner(response).readResponse();
+    	} catch (UnsupportedResponseException ex) {
+    		if (log.isDebugEnabled()) {
+    			log.debug("Response requires full deserialization: " + ex.getMessage());
+    		}
+    	} catch (RuntimeException ex) {
+    		// Typically a truncated or malformed response
+    		if (log.isDebugEnabled()) {
+    			log.debug("Unable to scan response: " + ex);
+    		}
+    	}
+    	return null;
+    }
+
+    /**
+     * Deserialize a response in full and return the body of the first message found
+     * within it.
+     *
+     * @param response the serialized response.
+     * @return the body of the message, or null if the response could not be deserialized.
+     */
+    public static Object decodeBody(byte[] response) {
+    	if (response == null) {
+    		return null;
+    	}
+    	SerializationContext serializationContext = new SerializationContext();
+    	serializationContext.createASObjectForMissingType = true;
+    	serializationContext.instantiateTypes = true;
+
+    	AmfMessageDeserializer deserializer = new AmfMessageDeserializer();
+    	deserializer.initialize(serializationContext,
+    			new DataInputStream(new ByteArrayInputStream(response)), null/*trace*/);
+    	ActionMessage message = new ActionMessage();
+    	ActionContext actionContext = new ActionContext();
+    	actionContext.setRequestMessage(message);
+    	try {
+    		deserializer.readMessage(message, actionContext);
+    	} catch (Exception ex) {
+    		log.error("An exception was encountered while deserializing response body. ", ex);
+    		return null;
+    	}
+    	if (message.getBodyCount() == 0) {
+    		return null;
+    	}
+    	Object data = message.getBody(0).getData();
+    	return data instanceof Message ? ((Message) data).getBody() : null;
+    }
+
+    private AmfLazyAcknowledgeMessage readResponse() throws UnsupportedResponseException {
+    	readUnsignedShort(); // version
+    	if (readUnsignedShort() > 0) {
+    		throw new UnsupportedResponseException("AMF message headers");
+    	}
+    	if (readUnsignedShort() == 0) {
+    		throw new UnsupportedResponseException("no message bodies");
+    	}
+    	String targetURI = readUTF();
+    	readUTF(); // response URI
+    	readInt(); // body length
+    	if (targetURI == null || !targetURI.endsWith(RESULT_METHOD)) {
+    		throw new UnsupportedResponseException("target " + targetURI);
+    	}
+    	if (readUnsignedByte() != AMF0_AVMPLUS_OBJECT_TYPE) {
+    		throw new UnsupportedResponseException("AMF0 message body");
+    	}
+
+    	AmfLazyAcknowledgeMessage ack = new AmfLazyAcknowledgeMessage(data);
+    	readAcknowledge(ack);
+    	return ack;
+    }
+
+    private void readAcknowledge(AmfLazyAcknowledgeMessage ack) throws UnsupportedResponseException {
+    	if (readUnsignedByte() != AMF3_OBJECT_TYPE) {
+    		throw new UnsupportedResponseException("message is not an object");
+    	}
+    	int ref = readUInt29();
+    	if ((ref & 1) == 0) {
+    		throw new UnsupportedResponseException("message is an object reference");
+    	}
+    	Traits traits = readTraits(ref);
+    	objectTable.add(ack);
+
+    	if (traits.externalizable) {
+    		if (!AcknowledgeMessageExt.CLASS_ALIAS.equals(traits.className)) {
+    			throw new UnsupportedResponseException(traits.className);
+    		}
+    		readSmallAcknowledge(ack);
+    	} else {
+    		if (!ACKNOWLEDGE_MESSAGE_CLASS.equals(traits.className)
+    				&& !ACKNOWLEDGE_MESSAGE_EXT_CLASS.equals(traits.className)) {
+    			throw new UnsupportedResponseException(traits.className);
+    		}
+    		for (int i = 0; i < traits.names.length; i++) {
+    			readAcknowledgeProperty(ack, traits.names[i]);
+    		}
+    		if (traits.dynamic) {
+    			skipDynamicMembers();
+    		}
+    	}
+    }
+
+    private void readAcknowledgeProperty(AcknowledgeMessage ack, String name) throws UnsupportedResponseException {
+    	if ("body".equals(name)) { // $NON-NLS-1$
+    		skipValue();
+    	} else if ("headers".equals(name)) { // $NON-NLS-1$
+    		ack.setHeaders(toMap(readValue()));
+    	} else if ("clientId".equals(name)) { // $NON-NLS-1$
+    		ack.setClientId(readValue());
+    	} else if ("correlationId".equals(name)) { // $NON-NLS-1$
+    		ack.setCorrelationId(toString(readValue()));
+    	} else if ("destination".equals(name)) { // $NON-NLS-1$
+    		ack.setDestination(toString(readValue()));
+    	} else if ("messageId".equals(name)) { // $NON-NLS-1$
+    		ack.setMessageId(toString(readValue()));
+    	} else if ("timestamp".equals(name)) { // $NON-NLS-1$
+    		ack.setTimestamp(toLong(readValue()));
+    	} else if ("timeToLive".equals(name)) { // $NON-NLS-1$
+    		ack.setTimeToLive(toLong(readValue()));
+    	} else {
+    		skipValue();
+    	}
+    }
+
+    /**
+     * Read an acknowledgement written in the flag-prefixed "small message" format of
+     * AbstractMessage, AsyncMessage and AcknowledgeMessage readExternal().
+     */
+    private void readSmallAcknowledge(AcknowledgeMessage ack) throws UnsupportedResponseException {
+    	// AbstractMessage
+    	int[] flags = readFlags();
+    	for (int i = 0; i < flags.length; i++) {
+    		int f = flags[i];
+    		int reserved = 0;
+    		if (i == 0) {
+    			if ((f & 0x01) != 0) {
+    				skipValue(); // body
+    			}
+    			if ((f & 0x02) != 0) {
+    				ack.setClientId(readValue());
+    			}
+    			if ((f & 0x04) != 0) {
+    				ack.setDestination(toString(readValue()));
+    			}
+    			if ((f & 0x08) != 0) {
+    				ack.setHeaders(toMap(readValue()));
+    			}
+    			if ((f & 0x10) != 0) {
+    				ack.setMessageId(toString(readValue()));
+    			}
+    			if ((f & 0x20) != 0) {
+    				ack.setTimestamp(toLong(readValue()));
+    			}
+    			if ((f & 0x40) != 0) {
+    				ack.setTimeToLive(toLong(readValue()));
+    			}
+    			reserved = 7;
+    		} else if (i == 1) {
+    			if ((f & 0x01) != 0) {
+    				ack.setClientId(toUUID(readValue()));
+    			}
+    			if ((f & 0x02) != 0) {
+    				ack.setMessageId(toUUID(readValue()));
+    			}
+    			reserved = 2;
+    		}
+    		skipReserved(f, reserved);
+    	}
+
+    	// AsyncMessage
+    	flags = readFlags();
+    	for (int i = 0; i < flags.length; i++) {
+    		int f = flags[i];
+    		int reserved = 0;
+    		if (i == 0) {
+    			if ((f & 0x01) != 0) {
+    				ack.setCorrelationId(toString(readValue()));
+    			}
+    			if ((f & 0x02) != 0) {
+    				ack.setCorrelationId(toUUID(readValue()));
+    			}
+    			reserved = 2;
+    		}
+    		skipReserved(f, reserved);
+    	}
+
+    	// AcknowledgeMessage
+    	flags = readFlags();
+    	for (int i = 0; i < flags.length; i++) {
+    		skipReserved(flags[i], 0);
+    	}
+    }
+
+    /**
+     * Step over a small message of the given alias without reading any of its fields.
+     */
+    private void skipSmallMessage(String alias) throws UnsupportedResponseException {
+    	// AbstractMessage
+    	int[] flags = readFlags();
+    	for (int i = 0; i < flags.length; i++) {
+    		skipReserved(flags[i], 0, i == 0 ? 7 : 6);
+    	}
+    	// AsyncMessage
+    	flags = readFlags();
+    	for (int i = 0; i < flags.length; i++) {
+    		skipReserved(flags[i], 0);
+    	}
+    	if (AsyncMessageExt.CLASS_ALIAS.equals(alias)) {
+    		return;
+    	}
+    	// AcknowledgeMessage or CommandMessage
+    	flags = readFlags();
+    	for (int i = 0; i < flags.length; i++) {
+    		skipReserved(flags[i], 0);
+    	}
+    }
+
+    /**
+     * Step over the values of any flags from the given position onwards, as done by the
+     * readExternal() methods of the BlazeDS messages for flags they do not recognize.
+     */
+    private void skipReserved(int flags, int reserved) throws UnsupportedResponseException {
+    	skipReserved(flags, reserved, 6);
+    }
+
+    private void skipReserved(int flags, int reserved, int limit) throws UnsupportedResponseException {
+    	if ((flags >> reserved) != 0) {
+    		for (int j = reserved; j < limit; j++) {
+    			if (((flags >> j) & 1) != 0) {
+    				skipValue();
+    			}
+    		}
+    	}
+    }
+
+    private int[] readFlags() {
+    	int[] flags = new int[2];
+    	int count = 0;
+    	int f;
+    	do {
+    		f = readUnsignedByte();
+    		if (count == flags.length) {
+    			int[] newFlags = new int[count << 1];
+    			System.arraycopy(flags, 0, newFlags, 0, count);
+    			flags = newFlags;
+    		}
+    		flags[count++] = f;
+    	} while ((f & HAS_NEXT_FLAG) != 0);
+
+    	int[] result = new int[count];
+    	System.arraycopy(flags, 0, result, 0, count);
+    	return result;
+    }
+
+    private void skipValue() throws UnsupportedResponseException {
+    	readValue(false);
+    }
+
+    private Object readValue() throws UnsupportedResponseException {
+    	return readValue(true);
+    }
+
+    /**
+     * Read an AMF3 value, adding any strings, objects and traits to the reference tables.
+     *
+     * @param materialize true if the value should be returned, false if it is only stepped over.
+     * @return the value, or null if the value was stepped over.
+     */
+    private Object readValue(boolean materialize) throws UnsupportedResponseException {
+    	int type = readUnsignedByte();
+    	switch (type) {
+    	case AMF3_UNDEFINED_TYPE:
+    	case AMF3_NULL_TYPE:
+    		return null;
+    	case AMF3_FALSE_TYPE:
+    		return Boolean.FALSE;
+    	case AMF3_TRUE_TYPE:
+    		return Boolean.TRUE;
+    	case AMF3_INTEGER_TYPE:
+    		int i = (readUInt29() << 3) >> 3;
+    		return materialize ? Integer.valueOf(i) : null;
+    	case AMF3_DOUBLE_TYPE:
+    		long bits = readLong();
+    		return materialize ? Double.valueOf(Double.longBitsToDouble(bits)) : null;
+    	case AMF3_STRING_TYPE:
+    		return readString(materialize);
+    	case AMF3_XML_DOC_TYPE:
+    	case AMF3_XML_TYPE:
+    		return readXml(materialize);
+    	case AMF3_DATE_TYPE:
+    		return readDate(materialize);
+    	case AMF3_ARRAY_TYPE:
+    		return readArray(materialize);
+    	case AMF3_OBJECT_TYPE:
+    		return readObject(materialize);
+    	case AMF3_BYTE_ARRAY_TYPE:
+    		return readByteArray(materialize);
+    	default:
+    		throw new UnsupportedResponseException("AMF3 type " + type);
+    	}
+    }
+
+    private Object readReference(int ref, boolean materialize) throws UnsupportedResponseException {
+    	Object value = objectTable.get(ref >> 1);
+    	if (!materialize) {
+    		return null;
+    	}
+    	if (value == SKIPPED) {
+    		throw new UnsupportedResponseException("reference to a skipped object");
+    	}
+    	return value;
+    }
+
+    private Object readXml(boolean materialize) throws UnsupportedResponseException {
+    	int ref = readUInt29();
+    	if ((ref & 1) == 0) {
+    		return readReference(ref, materialize);
+    	}
+    	if (materialize) {
+    		throw new UnsupportedResponseException("XML value");
+    	}
+    	skipBytes(ref >> 1);
+    	objectTable.add(SKIPPED);
+    	return null;
+    }
+
+    private Object readDate(boolean materialize) throws UnsupportedResponseException {
+    	int ref = readUInt29();
+    	if ((ref & 1) == 0) {
+    		return readReference(ref, materialize);
+    	}
+    	Date date = new Date((long) Double.longBitsToDouble(readLong()));
+    	objectTable.add(date);
+    	return materialize ? date : null;
+    }
+
+    private Object readByteArray(boolean materialize) throws UnsupportedResponseException {
+    	int ref = readUInt29();
+    	if ((ref & 1) == 0) {
+    		return readReference(ref, materialize);
+    	}
+    	int length = ref >> 1;
+    	if (!materialize) {
+    		skipBytes(length);
+    		objectTable.add(SKIPPED);
+    		return null;
+    	}
+    	byte[] bytes = new byte[length];
+    	System.arraycopy(data, pos, bytes, 0, length);
+    	pos += length;
+    	objectTable.add(bytes);
+    	return bytes;
+    }
+
+    private Object readArray(boolean materialize) throws UnsupportedResponseException {
+    	int ref = readUInt29();
+    	if ((ref & 1) == 0) {
+    		return readReference(ref, materialize);
+    	}
+    	int length = ref >> 1;
+
+    	String name = readString(true);
+    	if (name.length() == 0) {
+    		Object[] array = materialize ? new Object[length] : null;
+    		objectTable.add(materialize ? array : SKIPPED);
+    		for (int i = 0; i < length; i++) {
+    			Object value = readValue(materialize);
+    			if (materialize) {
+    				array[i] = value;
+    			}
+    		}
+    		return array;
+    	}
+
+    	Map<String, Object> map = materialize ? new HashMap<String, Object>() : null;
+    	objectTable.add(materialize ? map : SKIPPED);
+    	while (name.length() > 0) {
+    		Object value = readValue(materialize);
+    		if (materialize) {
+    			map.put(name, value);
+    		}
+    		name = readString(true);
+    	}
+    	for (int i = 0; i < length; i++) {
+    		Object value = readValue(materialize);
+    		if (materialize) {
+    			map.put(String.valueOf(i), value);
+    		}
+    	}
+    	return map;
+    }
+
+    private Object readObject(boolean materialize) throws UnsupportedResponseException {
+    	int ref = readUInt29();
+    	if ((ref & 1) == 0) {
+    		return readReference(ref, materialize);
+    	}
+    	Traits traits = readTraits(ref);
+
+    	if (traits.externalizable) {
+    		int index = objectTable.size();
+    		objectTable.add(SKIPPED);
+    		if (ARRAY_COLLECTION_CLASS.equals(traits.className)
+    				|| OBJECT_PROXY_CLASS.equals(traits.className)) {
+    			Object value = readValue(materialize);
+    			if (materialize) {
+    				objectTable.set(index, value);
+    			}
+    			return value;
+    		} else if (!materialize && (AcknowledgeMessageExt.CLASS_ALIAS.equals(traits.className)
+    				|| AsyncMessageExt.CLASS_ALIAS.equals(traits.className)
+    				|| CommandMessageExt.CLASS_ALIAS.equals(traits.className))) {
+    			skipSmallMessage(traits.className);
+    			return null;
+    		}
+    		throw new UnsupportedResponseException("externalizable " + traits.className);
+    	}
+
+    	if (materialize && traits.className.length() > 0) {
+    		throw new UnsupportedResponseException("typed object " + traits.className);
+    	}
+    	ASObject object = materialize ? new ASObject() : null;
+    	objectTable.add(materialize ? object : SKIPPED);
+    	for (int i = 0; i < traits.names.length; i++) {
+    		Object value = readValue(materialize);
+    		if (materialize) {
+    			object.put(traits.names[i], value);
+    		}
+    	}
+    	if (traits.dynamic) {
+    		String name = readString(true);
+    		while (name.length() > 0) {
+    			Object value = readValue(materialize);
+    			if (materialize) {
+    				object.put(name, value);
+    			}
+    			name = readString(true);
+    		}
+    	}
+    	return object;
+    }
+
+    private void skipDynamicMembers() throws UnsupportedResponseException {
+    	String name = readString(true);
+    	while (name.length() > 0) {
+    		skipValue();
+    		name = readString(true);
+    	}
+    }
+
+    private Traits readTraits(int ref) {
+    	if ((ref & 3) == 1) {
+    		return traitsTable.get(ref >> 2);
+    	}
+    	boolean externalizable = (ref & 4) == 4;
+    	boolean dynamic = (ref & 8) == 8;
+    	int count = ref >> 4;
+    	String className = readString(true);
+    	String[] names = new String[count];
+    	for (int i = 0; i < count; i++) {
+    		names[i] = readString(true);
+    	}
+    	Traits traits = new Traits(className, externalizable, dynamic, names);
+    	traitsTable.add(traits);
+    	return traits;
+    }
+
+    /**
+     * Read an AMF3 string, adding it to the string reference table.  A string that is
+     * not materialized is only decoded if it is later referenced and materialized.
+     */
+    private String readString(boolean materialize) {
+    	int ref = readUInt29();
+    	if ((ref & 1) == 0) {
+    		int index = ref >> 1;
+    		if (index >= stringCount) {
+    			throw new IndexOutOfBoundsException("string reference " + index);
+    		}
+    		return materialize ? decode(stringOffsets[index], stringLengths[index]) : null;
+    	}
+    	int length = ref >> 1;
+    	if (length == 0) {
+    		return "";
+    	}
+    	if (stringCount == stringOffsets.length) {
+    		int[] newOffsets = new int[stringCount << 1];
+    		int[] newLengths = new int[stringCount << 1];
+    		System.arraycopy(stringOffsets, 0, newOffsets, 0, stringCount);
+    		System.arraycopy(stringLengths, 0, newLengths, 0, stringCount);
+    		stringOffsets = newOffsets;
+    		stringLengths = newLengths;
+    	}
+    	stringOffsets[stringCount] = pos;
+    	stringLengths[stringCount] = length;
+    	stringCount++;
+    	skipBytes(length);
+    	return materialize ? decode(pos - length, length) : null;
+    }
+
+    private String readUTF() {
+    	int length = readUnsignedShort();
+    	skipBytes(length);
+    	return decode(pos - length, length);
+    }
+
+    private String decode(int offset, int length) {
+    	try {
+			return new String(data, offset, length, ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+    }
+
+    private void skipBytes(int length) {
+    	if (length < 0 || pos + length > data.length) {
+    		throw new IndexOutOfBoundsException("length " + length + " at " + pos);
+    	}
+    	pos += length;
+    }
+
+    private int readUnsignedByte() {
+    	if (pos >= data.length) {
+    		throw new IndexOutOfBoundsException("end of response at " + pos);
+    	}
+    	return data[pos++] & 0xFF;
+    }
+
+    private int readUnsignedShort() {
+    	return (readUnsignedByte() << 8) | readUnsignedByte();
+    }
+
+    private int readInt() {
+    	return (readUnsignedShort() << 16) | readUnsignedShort();
+    }
+
+    private long readLong() {
+    	return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    private int readUInt29() {
+    	int b = readUnsignedByte();
+    	if (b < 0x80) {
+    		return b;
+    	}
+    	int value = (b & 0x7F) << 7;
+    	b = readUnsignedByte();
+    	if (b < 0x80) {
+    		return value | b;
+    	}
+    	value = (value | (b & 0x7F)) << 7;
+    	b = readUnsignedByte();
+    	if (b < 0x80) {
+    		return value | b;
+    	}
+    	value = (value | (b & 0x7F)) << 8;
+    	return value | readUnsignedByte();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> toMap(Object value) throws UnsupportedResponseException {
+    	if (value == null) {
+    		return null;
+    	}
+    	if (!(value instanceof Map<?, ?>)) {
+    		throw new UnsupportedResponseException("message headers of type " + value.getClass().getName());
+    	}
+    	return (Map<String, Object>) value;
+    }
+
+    private static String toString(Object value) {
+    	return value == null ? null : value.toString();
+    }
+
+    private static long toLong(Object value) {
+    	return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    /**
+     * Format a 16 byte UUID in the form used by flex.messaging.util.UUIDUtils.
+     */
+    private static String toUUID(Object value) throws UnsupportedResponseException {
+    	if (value == null) {
+    		return null;
+    	}
+    	if (!(value instanceof byte[]) || ((byte[]) value).length != 16) {
+    		throw new UnsupportedResponseException("UUID bytes");
+    	}
+    	byte[] bytes = (byte[]) value;
+    	StringBuilder sb = new StringBuilder(36);
+    	for (int i = 0; i < bytes.length; i++) {
+    		if (i == 4 || i == 6 || i == 8 || i == 10) {
+    			sb.append('-');
+    		}
+    		sb.append(HEX_DIGITS[(bytes[i] >> 4) & 0x0F]);
+    		sb.append(HEX_DIGITS[bytes[i] & 0x0F]);
+    	}
+    	return sb.toString();
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Inner Classes
+    //
+    //--------------------------------------------------------------------------
+
+    private static class UnsupportedResponseException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		UnsupportedResponseException(String message) {
+			super(message);
+		}
+    }
+
+    private static final class Traits {
+    	final String className;
+    	final boolean externalizable;
+    	final boolean dynamic;
+    	final String[] names;
+
+    	Traits(String className, boolean externalizable, boolean dynamic, String[] names) {
+    		this.className = className;
+    		this.externalizable = externalizable;
+    		this.dynamic = dynamic;
+    		this.names = names;
+    	}
+    }
+
+}
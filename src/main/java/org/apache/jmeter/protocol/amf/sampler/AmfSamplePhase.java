@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+/**
+ * The phases of an AmfSampler sample that are timed separately.  The time of each
+ * phase is kept by the AmfSampleResult and published, in microseconds, to the JMeter
+ * variable of the phase after each sample.
+ *
+ */
+public enum AmfSamplePhase {
+
+	/**
+	 * Creating the serialized request, before the sample time starts.
+	 */
+	SERIALIZE(AmfRequestVariable.SERIALIZE_TIME_VARIABLE),
+
+	/**
+	 * Setting up the HTTP client and acquiring a connection, opening it if required.
+	 */
+	CONNECT(AmfRequestVariable.CONNECT_TIME_VARIABLE),
+
+	/**
+	 * Sending the request and waiting for the response status and headers.
+	 */
+	FIRST_BYTE(AmfRequestVariable.FIRST_BYTE_TIME_VARIABLE),
+
+	/**
+	 * Receiving the response body.
+	 */
+	TRANSFER(AmfRequestVariable.TRANSFER_TIME_VARIABLE),
+
+	/**
+	 * Inflating a gzip encoded response body.
+	 */
+	INFLATE(AmfRequestVariable.INFLATE_TIME_VARIABLE),
+
+	/**
+	 * Decoding and processing the AMF response.
+	 */
+	DECODE(AmfRequestVariable.DECODE_TIME_VARIABLE);
+
+	private final AmfRequestVariable variable;
+
+	private AmfSamplePhase(AmfRequestVariable variable) {
+		this.variable = variable;
+	}
+
+	/**
+	 * @return the JMeter variable the phase time is published to.
+	 */
+	public AmfRequestVariable getVariable() {
+		return variable;
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import org.apache.jmeter.protocol.http.sampler.HTTPSampleResult;
+import org.apache.jmeter.threads.JMeterVariables;
+
+/**
+ * The result of an AmfSampler sample.  In addition to the HTTP details, the result
+ * keeps a reference to the serialized AMF request, so that it can be rendered by
+ * listeners without the sampler rendering it up front, and the time taken by each
+ * phase of the sample.
+ *
+ */
+public class AmfSampleResult extends HTTPSampleResult {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final AmfSamplePhase[] PHASES = AmfSamplePhase.values();
+
+	private transient byte[] amfRequest = null;
+
+	private boolean responseTruncated = false;
+
+	/**
+	 * The time of each phase of the sample, in nanoseconds, indexed by ordinal.
+	 */
+	private final long[] phaseNanos = new long[PHASES.length];
+
+	/**
+	 * Whether the request was sent on a connection that was already open, null if the
+	 * transport does not report it.
+	 */
+	private Boolean connectionReused = null;
+
+	public AmfSampleResult() {
+		super();
+	}
+
+	/**
+	 * @return the serialized AMF request, or null if it is not available.
+	 */
+	public byte[] getAmfRequest() {
+		return amfRequest;
+	}
+
+	/**
+	 * @param amfRequest the serialized AMF request.
+	 */
+	public void setAmfRequest(byte[] amfRequest) {
+		this.amfRequest = amfRequest;
+	}
+
+	/**
+	 * @return true if the response data holds only part of the response received.
+	 */
+	public boolean isResponseTruncated() {
+		return responseTruncated;
+	}
+
+	public void setResponseTruncated(boolean responseTruncated) {
+		this.responseTruncated = responseTruncated;
+	}
+
+	/**
+	 * @return the time taken by the given phase of the sample, in nanoseconds, 0 if
+	 * the phase did not take place.
+	 */
+	public long getPhaseNanos(AmfSamplePhase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	public void setPhaseNanos(AmfSamplePhase phase, long nanos) {
+		phaseNanos[phase.ordinal()] = Math.max(0, nanos);
+	}
+
+	public void addPhaseNanos(AmfSamplePhase phase, long nanos) {
+		setPhaseNanos(phase, phaseNanos[phase.ordinal()] + nanos);
+	}
+
+	/**
+	 * @return true if the request was sent on a connection that was already open, false
+	 * if a connection was opened for it, or null if the transport does not report it.
+	 */
+	public Boolean getConnectionReused() {
+		return connectionReused;
+	}
+
+	public void setConnectionReused(boolean connectionReused) {
+		this.connectionReused = Boolean.valueOf(connectionReused);
+	}
+
+	/**
+	 * Store the time of each phase, in microseconds, in its JMeter variable, and whether
+	 * the connection was reused, if known.
+	 *
+	 * @param variables the variables of the sampling thread.
+	 */
+	public void putPhaseVariables(JMeterVariables variables) {
+		for (AmfSamplePhase phase : PHASES) {
+			variables.put(phase.getVariable().getName(), Long.toString(phaseNanos[phase.ordinal()] / 1000));
+		}
+		if (connectionReused != null) {
+			variables.put(AmfRequestVariable.CONNECTION_REUSED_VARIABLE.getName(), connectionReused.toString());
+		}
+	}
+
+}
@@ -1,372 +1,697 @@
-/*
- * Licensed to the Apache Software Foundation (ASF) under one or more
- * contributor license agreements.  See the NOTICE file distributed with
- * this work for additional information regarding copyright ownership.
- * The ASF licenses this file to You under the Apache License, Version 2.0
- * (the "License"); you may not use this file except in compliance with
- * the License.  You may obtain a copy of the License at
- *
- *   http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package org.apache.jmeter.protocol.amf.sampler;
-
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
-import java.util.zip.GZIPInputStream;
-
-import org.apache.commons.httpclient.Header;
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.HttpMethod;
-import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
-import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.jmeter.config.Arguments;
-import org.apache.jmeter.protocol.http.control.CacheManager;
-import org.apache.jmeter.protocol.http.sampler.HTTPSampleResult;
-import org.apache.jmeter.protocol.http.sampler.HTTPSampler2;
-import org.apache.jmeter.protocol.java.sampler.JavaSamplerContext;
-import org.apache.jmeter.samplers.Entry;
-import org.apache.jmeter.samplers.Interruptible;
-import org.apache.jmeter.samplers.SampleResult;
-import org.apache.jorphan.logging.LoggingManager;
-import org.apache.jorphan.util.JOrphanUtils;
-import org.apache.log.Logger;
-
-import flex.messaging.messages.AbstractMessage;
-import flex.messaging.messages.AcknowledgeMessage;
-import flex.messaging.messages.AcknowledgeMessageExt;
-
-/**
- * A sampler for testing Flex/BlazeDS applications using Adobe's AMF protocol over Http.
- * <p>
- * This sampler extends HTTPSampler2, taking advantage of that samplers use of the Apache 
- * Commons HTTPClient and associated built-in support for cookie management (via the HTTP Cookie Manager).
- * This was found to be necessary when working with certain load balancers and sticky session handling via cookies, 
- * which tend to favor the behavior of the Apache Commons HTTPClient over the default Java implementation
- * used within, for example, flex.messaging.io.amf.client.AMFConnection.
- * <p>
- * This sampler does, though, use an extension to AMFConnection for support in the serialization and deserialization 
- * of AMF messages sent to/from a remote server.  Serialized AMF messages are sent to the remote server as an HTTP POST
- * method request entity and the Http response body received from the remote server are deserialized and processed.
- * <p>
- * This sampler borrows from the AbstractJavaSamplerClient concept, supporting custom pre/post-processing implementations
- * based on user-supplied extensions of the AmfCommandMessage and AmfRemotingMessage classes provided with this
- * sampler.
- *
- */
-public class AmfSampler extends HTTPSampler2 implements Interruptible {
-
-	private static final long serialVersionUID = 1L;
-
-    private static final Logger log = LoggingManager.getLoggerForClass();
-
-    public static final String RESPONSE_CODE_200 = "200"; // $NON-NLS-1$
-
-    /**
-     * Property key representing the arguments to use in the AmfMessageInterface.
-     */
-    public static final String ARGUMENTS = "AmfSampler.arguments"; // $NON-NLS-1$
-
-    /**
-     * Property key representing the classname of the AmfMessageInterface to user.
-     */
-    public static final String CLASSNAME = "AmfSampler.classname"; // $NON-NLS-1$
-
-    /**
-     * Property key representing the object encoding version to set in the AmfMessageInterface.
-     */
-    public static final String OBJECT_ENCODING_VERSION = "AmfSampler.objectEncoding"; // $NON-NLS-1$
-
-    /**
-     * The AmfMessageInterface instance used by this sampler to actually perform
-     * the sample.
-     */
-    private transient AmfMessageInterface amfRequest = null;
-
-    /**
-     * The AmfSamplerContext instance used by this sampler to hold information
-     * related to the test run, such as the parameters specified for the sampler
-     * client.
-     */
-    private transient AmfSamplerContext context = null;
-
-    /**
-     * Sets the Classname attribute of the JavaConfig object
-     *
-     * @param classname
-     *            the new Classname value
-     */
-    public void setClassname(String classname) {
-        setProperty(CLASSNAME, classname);
-    }
-
-    /**
-     * Gets the Classname attribute of the JavaConfig object
-     *
-     * @return the Classname value
-     */
-    public String getClassname() {
-        return getPropertyAsString(CLASSNAME);
-    }
-
-    /**
-     * Performs a test sample.
-     *
-     * The <code>sample()</code> method retrieves the reference to the Java
-     * client and calls its <code>runTest()</code> method.
-     *
-     * @see JavaSamplerClient#runTest(JavaSamplerContext)
-     *
-     * @param entry
-     *            the Entry for this sample
-     * @return test SampleResult
-     */
-    public SampleResult sample(Entry entry) {
-
-    	Arguments arguments = (Arguments) getProperty(AmfSampler.ARGUMENTS).getObjectValue();
-    	arguments.addArgument(OBJECT_ENCODING_VERSION, getProperty(OBJECT_ENCODING_VERSION).getStringValue());
-        context = new AmfSamplerContext(arguments);
-        
-        if (amfRequest == null) {
-            createAmfRequest();
-            amfRequest.setupTest(context);
-        }
-
-        amfRequest.open();
-
-        SampleResult result = null;
-        try {
-	        // Issue Http request
-	        result = super.sample();
-	        
-	        if (result.getResponseCode().equals(RESPONSE_CODE_200)) {
-	        	
-	        	// decode and process AMF message response
-	            amfRequest.processResponse(result);
-	            
-	        }
-        } finally {
-        	amfRequest.close();
-        }
-
-        return result;
-    }
-
-    @Override
-    protected HTTPSampleResult sample(URL url, String method, boolean areFollowingRedirect, int frameDepth) {
-
-        String urlStr = url.toString();
-
-        log.debug("Start : sample " + urlStr);
-        log.debug("method " + method);
-
-        PostMethod httpMethod = new PostMethod(urlStr);
-
-        String contentType = "application/x-amf";
-        
-        // Create an encrypted AMF request and add it as the POST request body
-        byte[] amfMessage = amfRequest.createRequest(context);
-        
-        if (amfMessage != null) {
-	        ByteArrayRequestEntity requestEntity = new ByteArrayRequestEntity(amfMessage, contentType); 
-	        httpMethod.setRequestEntity(requestEntity);
-        }
-
-        HTTPSampleResult res = new HTTPSampleResult();
-        res.setMonitor(isMonitor());
-
-        res.setSampleLabel(urlStr); // May be replaced later
-        res.setHTTPMethod(method);
-        res.setURL(url);
-
-        res.sampleStart(); // Count the retries as well in the time
-        HttpClient client = null;
-        InputStream instream = null;
-        try {
-            // Set any default request headers
-            setDefaultRequestHeaders(httpMethod);
-            // Setup connection
-            client = setupConnection(url, httpMethod, res);
-            savedClient = client;
-
-            // Execute POST
-            int statusCode = client.executeMethod(httpMethod);
-
-            // Needs to be done after execute to pick up all the headers
-            res.setRequestHeaders(getConnectionHeaders(httpMethod));
-
-            // Request sent. Now get the response:
-            instream = httpMethod.getResponseBodyAsStream();
-
-            if (instream != null) {// will be null for HEAD
-
-                Header responseHeader = httpMethod.getResponseHeader(HEADER_CONTENT_ENCODING);
-                if (responseHeader!= null && ENCODING_GZIP.equals(responseHeader.getValue())) {
-                    instream = new GZIPInputStream(instream);
-                }
-                res.setResponseData(readResponse(res, instream, (int) httpMethod.getResponseContentLength()));
-            }
-
-            res.sampleEnd();
-            // Done with the sampling proper.
-
-            // Now collect the results into the HTTPSampleResult:
-
-            res.setSampleLabel(httpMethod.getURI().toString());
-            // Pick up Actual path (after redirects)
-
-            res.setResponseCode(Integer.toString(statusCode));
-            res.setSuccessful(isSuccessCode(statusCode));
-
-            res.setResponseMessage(httpMethod.getStatusText());
-
-            String ct = null;
-            org.apache.commons.httpclient.Header h
-                = httpMethod.getResponseHeader(HEADER_CONTENT_TYPE);
-            if (h != null)// Can be missing, e.g. on redirect
-            {
-                ct = h.getValue();
-                res.setContentType(ct);// e.g. text/html; charset=ISO-8859-1
-                res.setEncodingAndType(ct);
-            }
-
-            res.setResponseHeaders(getResponseHeaders(httpMethod));
-
-            // Store any cookies received in the cookie manager:
-            saveConnectionCookies(httpMethod, res.getURL(), getCookieManager());
-
-            // Save cache information
-            final CacheManager cacheManager = getCacheManager();
-            if (cacheManager != null){
-                cacheManager.saveDetails(httpMethod, res);
-            }
-
-            log.debug("End : sample");
-            httpMethod.releaseConnection();
-            return res;
-        } catch (IllegalArgumentException e)// e.g. some kinds of invalid URL
-        {
-            res.sampleEnd();
-            HTTPSampleResult err = errorResult(e, res);
-            err.setSampleLabel("Error: " + url.toString());
-            return err;
-        } catch (IOException e) {
-            res.sampleEnd();
-            HTTPSampleResult err = errorResult(e, res);
-            err.setSampleLabel("Error: " + url.toString());
-            return err;
-        } finally {
-            savedClient = null;
-            JOrphanUtils.closeQuietly(instream);
-            if (httpMethod != null) {
-                httpMethod.releaseConnection();
-            }
-        }
-    }
-
-    protected void setDefaultRequestHeaders(HttpMethod httpMethod) {
-    	httpMethod.setRequestHeader("Cache-Control", "no-cache");
-    	httpMethod.setRequestHeader("Accept", "*/*");
-    	httpMethod.setRequestHeader("Accept-Encoding", "gzip, deflate");
-    }
-    
-    public void testEnded() {
-    	super.testEnded();
-    	
-    }
-
-    /**
-     * Returns reference to <code>AmfMessageInterface</code>.
-     *
-     * The <code>createAMFRequest()</code> method uses reflection to create an
-     * instance of the specified AMF request client. If the class can not be
-     * found, the method returns a reference to <code>this</code> object.
-     *
-     * @return JavaSamplerClient reference.
-     */
-    private void createAmfRequest() {
-        log.debug(whoAmI() + "Creating AMF Request");
-        try {
-            Class<?> javaClass = Class.forName(getClassname().trim(), false, Thread.currentThread()
-                    .getContextClassLoader());
-            amfRequest = (AmfMessageInterface) javaClass.newInstance();
-
-            if (log.isDebugEnabled()) {
-                log.debug(whoAmI() + "\tCreated:\t" + getClassname() + "@"
-                        + Integer.toHexString(amfRequest.hashCode()));
-            }
-        } catch (Exception e) {
-            log.error(whoAmI() + "\tException creating: " + getClassname(), e);
-            amfRequest = new ErrorSamplerClient();
-        }
-    }
-
-    /**
-     * Generate a String identifier of this instance for debugging purposes.
-     *
-     * @return a String identifier for this sampler instance
-     */
-    private String whoAmI() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(Thread.currentThread().getName());
-        sb.append("@");
-        sb.append(Integer.toHexString(hashCode()));
-        sb.append("-");
-        sb.append(getName());
-        return sb.toString();
-    }
-
-    /**
-     * An {@link AmfMessageInterface} implementation used for error handling. If an
-     * error occurs while creating the real AmfMessageInterface object, it is
-     * replaced with an instance of this class. Each time a sample occurs with
-     * this class, the result is marked as a failure so the user can see that
-     * the test failed.
-     */
-    class ErrorSamplerClient extends AmfMessage {
-        /**
-         * Return SampleResult with data on error.
-         *
-         * @see JavaSamplerClient#runTest(JavaSamplerContext)
-         */
-        public SampleResult runTest(JavaSamplerContext p_context) {
-            log.debug(whoAmI() + "\trunTest");
-            Thread.yield();
-            SampleResult results = new SampleResult();
-            results.setSuccessful(false);
-            results.setResponseData(("Class not found: " + getClassname()), null);
-            results.setSampleLabel("ERROR: " + getClassname());
-            return results;
-        }
-
-		@Override
-		protected boolean processResult(AcknowledgeMessage ackMessage) {
-			return false;
-		}
-
-		@Override
-		protected boolean processResult(AcknowledgeMessageExt ackMessage) {
-			return false;
-		}
-
-		@Override
-		protected AbstractMessage createAbstractMessage(
-				AmfSamplerContext context) {
-			// TODO Auto-generated method stub
-			return null;
-		}
-
-		@Override
-		public Arguments getDefaultParameters() {
-			// TODO Auto-generated method stub
-			return null;
-		}
-    }
-
-}
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+import org.HdrHistogram.SingleWriterRecorder;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.protocol.http.sampler.HTTPSampleResult;
+import org.apache.jmeter.protocol.http.sampler.HTTPSampler2;
+import org.apache.jmeter.protocol.java.sampler.JavaSamplerContext;
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.Interruptible;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+import flex.messaging.messages.AbstractMessage;
+import flex.messaging.messages.AcknowledgeMessage;
+import flex.messaging.messages.AcknowledgeMessageExt;
+
+/**
+ * A sampler for testing Flex/BlazeDS applications using Adobe's AMF protocol over Http.
+ * <p>
+ * This sampler extends HTTPSampler2, taking advantage of that samplers use of the Apache 
+ * Commons HTTPClient and associated built-in support for cookie management (via the HTTP Cookie Manager).
+ * This was found to be necessary when working with certain load balancers and sticky session handling via cookies, 
+ * which tend to favor the behavior of the Apache Commons HTTPClient over the default Java implementation
+ * used within, for example, flex.messaging.io.amf.client.AMFConnection.
+ * <p>
+ * This sampler does, though, use an extension to AMFConnection for support in the serialization and deserialization 
+ * of AMF messages sent to/from a remote server.  Serialized AMF messages are sent to the remote server as an HTTP POST
+ * method request entity and the Http response body received from the remote server are deserialized and processed.
+ * <p>
+ * This sampler borrows from the AbstractJavaSamplerClient concept, supporting custom pre/post-processing implementations
+ * based on user-supplied extensions of the AmfCommandMessage and AmfRemotingMessage classes provided with this
+ * sampler.
+ *
+ */
+public class AmfSampler extends HTTPSampler2 implements Interruptible {
+
+	private static final long serialVersionUID = 1L;
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    public static final String RESPONSE_CODE_200 = "200"; // $NON-NLS-1$
+
+    /**
+     * Property key representing the arguments to use in the AmfMessageInterface.
+     */
+    public static final String ARGUMENTS = "AmfSampler.arguments"; // $NON-NLS-1$
+
+    /**
+     * Property key representing the classname of the AmfMessageInterface to user.
+     */
+    public static final String CLASSNAME = "AmfSampler.classname"; // $NON-NLS-1$
+
+    /**
+     * Property key representing the object encoding version to set in the AmfMessageInterface.
+     */
+    public static final String OBJECT_ENCODING_VERSION = "AmfSampler.objectEncoding"; // $NON-NLS-1$
+
+    /**
+     * The "Send Parameters With Request" parameter controlling whether the time of each
+     * phase of a sample is published to JMeter variables.
+     */
+    private static final String PHASE_TIMINGS_PARAMETER_NAME = "Phase Timings"; // $NON-NLS-1$
+    private static final String PHASE_TIMINGS_PARAMETER_DEFAULT = "true"; // $NON-NLS-1$
+
+    /**
+     * The "Send Parameters With Request" parameter selecting the AmfTransport requests are sent with.
+     */
+    private static final String TRANSPORT_PARAMETER_NAME = "Transport"; // $NON-NLS-1$
+
+    /**
+     * The "Send Parameters With Request" parameter selecting the AmfConnectionStrategy of
+     * the socket transport.
+     */
+    private static final String CONNECTION_STRATEGY_PARAMETER_NAME = "Connection Strategy"; // $NON-NLS-1$
+
+    /**
+     * The "Send Parameters With Request" parameter setting the number of virtual sessions
+     * driven by each thread, see AmfVirtualSessions.
+     */
+    private static final String VIRTUAL_SESSIONS_PARAMETER_NAME = "Virtual Sessions"; // $NON-NLS-1$
+    private static final String VIRTUAL_SESSIONS_PARAMETER_DEFAULT = "1"; // $NON-NLS-1$
+
+    /**
+     * The "Send Parameters With Request" parameter running each virtual session on a thread
+     * of its own, see AmfSessionThreads, rather than over the AmfNioEngine.
+     */
+    private static final String VIRTUAL_THREADS_PARAMETER_NAME = "Virtual Threads"; // $NON-NLS-1$
+    private static final String VIRTUAL_THREADS_PARAMETER_DEFAULT = "false"; // $NON-NLS-1$
+
+    /**
+     * The buffer a streamed response is decoded from when phase timings are measured.
+     */
+    private static final int STREAMING_BUFFER_SIZE = 8192;
+
+    /**
+     * The headers sent with every request, as name and value pairs.
+     */
+    static final String[][] DEFAULT_REQUEST_HEADERS = {
+    	{ "Cache-Control", "no-cache" }, // $NON-NLS-1$ $NON-NLS-2$
+    	{ "Accept", "*/*" }, // $NON-NLS-1$ $NON-NLS-2$
+    	{ "Accept-Encoding", "gzip, deflate" } // $NON-NLS-1$ $NON-NLS-2$
+    };
+
+    /**
+     * The AmfMessageInterface instance used by this sampler to actually perform
+     * the sample.
+     */
+    private transient AmfMessageInterface amfRequest = null;
+
+    /**
+     * The AmfSamplerContext instance used by this sampler to hold information
+     * related to the test run, such as the parameters specified for the sampler
+     * client.
+     */
+    private transient AmfSamplerContext context = null;
+
+    /**
+     * The parameters of this sampler, compiled on the first sample of each thread.
+     */
+    private transient AmfSamplerConfig config = null;
+
+    /**
+     * Indicates whether phase times are published to JMeter variables after each sample.
+     */
+    private transient boolean phaseTimings = true;
+
+    /**
+     * The recorder of the latencies of this sampler's thread, null if latencies are not recorded.
+     */
+    private transient SingleWriterRecorder latencyRecorder = null;
+
+    /**
+     * The transport requests are sent with, created on the first sample of each thread.
+     */
+    private transient volatile AmfTransport transport = null;
+
+    /**
+     * How the socket transport reuses connections.
+     */
+    private transient AmfConnectionStrategy connectionStrategy = AmfConnectionStrategy.USER;
+
+    /**
+     * The virtual sessions driven by this sampler's thread, null if the thread runs a single session.
+     */
+    private transient volatile AmfVirtualSessions virtualSessions = null;
+
+    /**
+     * The session threads driven by this sampler's thread, null unless virtual sessions run on threads.
+     */
+    private transient volatile AmfSessionThreads sessionThreads = null;
+
+    /**
+     * Sets the Classname attribute of the JavaConfig object
+     *
+     * @param classname
+     *            the new Classname value
+     */
+    public void setClassname(String classname) {
+        setProperty(CLASSNAME, classname);
+    }
+
+    /**
+     * Gets the Classname attribute of the JavaConfig object
+     *
+     * @return the Classname value
+     */
+    public String getClassname() {
+        return getPropertyAsString(CLASSNAME);
+    }
+
+    /**
+     * Performs a test sample.
+     *
+     * The <code>sample()</code> method retrieves the reference to the Java
+     * client and calls its <code>runTest()</code> method.
+     *
+     * @see JavaSamplerClient#runTest(JavaSamplerContext)
+     *
+     * @param entry
+     *            the Entry for this sample
+     * @return test SampleResult
+     */
+    public SampleResult sample(Entry entry) {
+
+    	if (config == null) {
+    		// Compiled once per thread, the sampler arguments are not modified
+    		Arguments arguments = (Arguments) getProperty(AmfSampler.ARGUMENTS).getObjectValue();
+    		config = AmfSamplerConfig.compile(arguments, this, OBJECT_ENCODING_VERSION);
+    		if (log.isDebugEnabled()) {
+    			log.debug(whoAmI() + "\tCompiled " + config.getNames().size() + " parameters, "
+    					+ config.getDynamicCount() + " dynamic");
+    		}
+    	}
+        context = config.createContext();
+        
+        if (amfRequest == null) {
+            amfRequest = createAmfRequest();
+            amfRequest.setupTest(context);
+            phaseTimings = Boolean.valueOf(context.getParameter(PHASE_TIMINGS_PARAMETER_NAME,
+            		PHASE_TIMINGS_PARAMETER_DEFAULT).trim()).booleanValue();
+            String transportAlias = context.getParameter(TRANSPORT_PARAMETER_NAME, AmfTransportFactory.DEFAULT_ALIAS);
+            setConnectionStrategy(context.getParameter(CONNECTION_STRATEGY_PARAMETER_NAME,
+            		AmfConnectionStrategy.USER.getAlias()));
+            createTransport(transportAlias);
+            AmfLatencyRecorder recorder = AmfLatencyRecorder.getInstance();
+            if (recorder != null) {
+            	String operation = amfRequest instanceof AmfMessage ? ((AmfMessage) amfRequest).getOperationKey() : null;
+            	latencyRecorder = recorder.createRecorder(operation != null ? operation : getName());
+            }
+            createVirtualSessions(context.getParameter(VIRTUAL_SESSIONS_PARAMETER_NAME, VIRTUAL_SESSIONS_PARAMETER_DEFAULT),
+            		context.getParameter(VIRTUAL_THREADS_PARAMETER_NAME, VIRTUAL_THREADS_PARAMETER_DEFAULT), transportAlias);
+        }
+
+        if (virtualSessions != null) {
+        	return virtualSessions.sample(latencyRecorder, phaseTimings);
+        }
+        if (sessionThreads != null) {
+        	return sessionThreads.sample(latencyRecorder, phaseTimings);
+        }
+
+        amfRequest.open();
+
+        SampleResult result = null;
+        long sampleStart = System.nanoTime();
+        try {
+	        // Issue Http request
+	        result = super.sample();
+	        
+	        if (result.getResponseCode().equals(RESPONSE_CODE_200)) {
+	        	
+	        	// decode and process AMF message response
+	        	long decodeStart = System.nanoTime();
+	            amfRequest.processResponse(result);
+	            if (result instanceof AmfSampleResult) {
+	            	((AmfSampleResult) result).addPhaseNanos(AmfSamplePhase.DECODE, System.nanoTime() - decodeStart);
+	            }
+	            
+	        }
+	        if (latencyRecorder != null) {
+	        	latencyRecorder.recordValue((System.nanoTime() - sampleStart) / 1000);
+	        }
+	        if (phaseTimings && result instanceof AmfSampleResult) {
+	        	((AmfSampleResult) result).putPhaseVariables(JMeterContextService.getContext().getVariables());
+	        }
+        } finally {
+        	amfRequest.close();
+        }
+
+        return result;
+    }
+
+    @Override
+    protected HTTPSampleResult sample(URL url, String method, boolean areFollowingRedirect, int frameDepth) {
+    	return sample(url, method, amfRequest, context, transport, phaseTimings);
+    }
+
+    /**
+     * Send the request of an AmfMessageInterface with a transport, and read the response.
+     * Used for the samples of this sampler's thread, and by the session threads of
+     * AmfSessionThreads, each with its own request, context and transport.
+     *
+     * @param phaseTimings true if the transfer, inflate and decode times of the response
+     * body are measured.
+     */
+    HTTPSampleResult sample(URL url, String method, AmfMessageInterface amfRequest,
+    		AmfSamplerContext context, AmfTransport transport, boolean phaseTimings) {
+
+        String urlStr = url.toString();
+
+        log.debug("Start : sample " + urlStr);
+        log.debug("method " + method);
+
+        // Create an encrypted AMF request to be sent as the POST request body
+        long serializeStart = System.nanoTime();
+        byte[] amfMessage = amfRequest.createRequest(context);
+        long serializeNanos = System.nanoTime() - serializeStart;
+
+        AmfSampleResult res = new AmfSampleResult();
+        res.setMonitor(isMonitor());
+        // Keep a reference to the request, it is only rendered if a listener asks for it
+        res.setAmfRequest(amfMessage);
+        res.setPhaseNanos(AmfSamplePhase.SERIALIZE, serializeNanos);
+
+        res.setSampleLabel(urlStr); // May be replaced later
+        res.setHTTPMethod(method);
+        res.setURL(url);
+
+        res.sampleStart(); // Count the retries as well in the time
+        InputStream instream = null;
+        try {
+            // Send the request, receiving the response status and headers
+            int statusCode = transport.execute(url, amfMessage, res);
+
+            // Request sent. Now get the response:
+            instream = transport.getResponseBody();
+
+            if (instream != null) {// will be null for HEAD
+
+                boolean gzip = ENCODING_GZIP.equals(transport.getResponseHeader(HEADER_CONTENT_ENCODING));
+                boolean streaming = statusCode == 200 && isStreamingResponse(amfRequest);
+                int length = (int) transport.getResponseContentLength();
+                if (!phaseTimings) {
+                	if (gzip) {
+                		instream = new GZIPInputStream(instream);
+                	}
+                	if (streaming) {
+                		res.setResponseData(decodeResponse(amfRequest, res, instream, length));
+                	} else {
+                		res.setResponseData(readResponse(res, instream, length));
+                	}
+                } else {
+                	// Time reads of the body, and of the inflated body, to separate transfer,
+                	// inflation and, when streaming, decoding, which all happen while reading
+                	long readStart = System.nanoTime();
+                	AmfTimingInputStream transfer = new AmfTimingInputStream(instream);
+                	AmfTimingInputStream inflate = null;
+                	instream = transfer;
+                	if (gzip) {
+                		inflate = new AmfTimingInputStream(new GZIPInputStream(transfer));
+                		instream = inflate;
+                	}
+                	if (streaming) {
+                		// The decoder reads a byte at a time, time only the reads that fill the buffer
+                		instream = new BufferedInputStream(instream, STREAMING_BUFFER_SIZE);
+                		res.setResponseData(decodeResponse(amfRequest, res, instream, length));
+                	} else {
+                		res.setResponseData(readResponse(res, instream, length));
+                	}
+                	long readNanos = inflate == null ? transfer.getNanos() : inflate.getNanos();
+                	res.setPhaseNanos(AmfSamplePhase.TRANSFER, transfer.getNanos());
+                	res.setPhaseNanos(AmfSamplePhase.INFLATE, readNanos - transfer.getNanos());
+                	if (streaming) {
+                		res.setPhaseNanos(AmfSamplePhase.DECODE, System.nanoTime() - readStart - readNanos);
+                	}
+                }
+            }
+
+            res.sampleEnd();
+            // Done with the sampling proper.
+
+            // Now collect the results into the HTTPSampleResult:
+
+            res.setResponseCode(Integer.toString(statusCode));
+            res.setSuccessful(isSuccessCode(statusCode));
+
+            String ct = transport.getResponseHeader(HEADER_CONTENT_TYPE);
+            if (ct != null)// Can be missing, e.g. on redirect
+            {
+                res.setContentType(ct);// e.g. text/html; charset=ISO-8859-1
+                res.setEncodingAndType(ct);
+            }
+
+            // Label, response message and headers, and store any cookies received
+            transport.complete(res);
+
+            log.debug("End : sample");
+            return res;
+        } catch (IllegalArgumentException e)// e.g. some kinds of invalid URL
+        {
+            res.sampleEnd();
+            HTTPSampleResult err = errorResult(e, res);
+            err.setSampleLabel("Error: " + url.toString());
+            return err;
+        } catch (IOException e) {
+            res.sampleEnd();
+            HTTPSampleResult err = errorResult(e, res);
+            err.setSampleLabel("Error: " + url.toString());
+            return err;
+        } finally {
+            JOrphanUtils.closeQuietly(instream);
+            transport.release();
+        }
+    }
+
+    /**
+     * @return true if the AMF response should be decoded directly from the response stream.
+     */
+    private static boolean isStreamingResponse(AmfMessageInterface amfRequest) {
+    	return amfRequest instanceof AmfStreamingMessageInterface
+    		&& ((AmfStreamingMessageInterface) amfRequest).isStreamingResponse();
+    }
+
+    /**
+     * Decode the AMF response directly from the response stream, as it is received, keeping
+     * a bounded copy of the response body for listeners.  The decoded response is held by the
+     * AmfMessageInterface and processed by processResponse().
+     *
+     * @return the copy of the response body to be used as the sample response data.
+     */
+    private byte[] decodeResponse(AmfMessageInterface amfRequest, AmfSampleResult res, InputStream instream,
+    		int length) throws IOException {
+    	AmfStreamingMessageInterface streamingRequest = (AmfStreamingMessageInterface) amfRequest;
+    	AmfTeeInputStream tee = new AmfTeeInputStream(instream, streamingRequest.getResponseCopyLimit(), length);
+    	res.latencyEnd();
+    	streamingRequest.decodeResponse(tee);
+    	tee.drain();
+    	res.setBytes((int) tee.getCount());
+    	res.setResponseTruncated(tee.isTruncated());
+    	if (log.isDebugEnabled() && tee.isTruncated()) {
+    		log.debug(whoAmI() + "\tResponse data truncated to " + streamingRequest.getResponseCopyLimit()
+    				+ " of " + tee.getCount() + " bytes");
+    	}
+    	return tee.getCopy();
+    }
+
+    protected void setDefaultRequestHeaders(HttpMethod httpMethod) {
+    	for (String[] header : DEFAULT_REQUEST_HEADERS) {
+    		httpMethod.setRequestHeader(header[0], header[1]);
+    	}
+    }
+
+    @Override
+    public boolean interrupt() {
+    	AmfVirtualSessions sessions = virtualSessions;
+    	if (sessions != null) {
+    		return sessions.interrupt();
+    	}
+    	AmfSessionThreads threads = sessionThreads;
+    	if (threads != null) {
+    		return threads.interrupt();
+    	}
+    	AmfTransport current = transport;
+    	return current != null ? current.interrupt() : super.interrupt();
+    }
+
+    @Override
+    public void threadFinished() {
+    	super.threadFinished();
+    	if (transport != null) {
+    		transport.close();
+    		transport = null;
+    	}
+    	if (virtualSessions != null) {
+    		virtualSessions.close();
+    		virtualSessions = null;
+    	}
+    	if (sessionThreads != null) {
+    		sessionThreads.close();
+    		sessionThreads = null;
+    	}
+    }
+
+    //--------------------------------------------------------------------------
+    // Access to HTTPSampler2 for AmfHttpClientTransport
+    //--------------------------------------------------------------------------
+
+    HttpClient setupHttpClient(URL url, HttpMethodBase httpMethod, HTTPSampleResult res) throws IOException {
+    	HttpClient client = setupConnection(url, httpMethod, res);
+    	savedClient = client;
+    	return client;
+    }
+
+    void releaseHttpClient() {
+    	savedClient = null;
+    }
+
+    String getHttpRequestHeaders(HttpMethod httpMethod) {
+    	return getConnectionHeaders(httpMethod);
+    }
+
+    String getHttpResponseHeaders(HttpMethod httpMethod) {
+    	return getResponseHeaders(httpMethod);
+    }
+
+    void saveHttpCookies(HttpMethod httpMethod, URL url) {
+    	saveConnectionCookies(httpMethod, url, getCookieManager());
+    }
+
+    boolean interruptHttpClient() {
+    	return super.interrupt();
+    }
+
+    //--------------------------------------------------------------------------
+    // Access to HTTPSamplerBase for AmfVirtualSessions
+    //--------------------------------------------------------------------------
+
+    HTTPSampleResult errorHttpResult(Throwable e, HTTPSampleResult res) {
+    	return errorResult(e, res);
+    }
+
+    boolean isSuccessStatus(int statusCode) {
+    	return isSuccessCode(statusCode);
+    }
+    
+    @Override
+    public void testStarted() {
+    	super.testStarted();
+    	AmfLatencyRecorder.testStarted();
+    	AmfNioEngine.testStarted();
+    	AmfConnectionPool.testStarted();
+    }
+
+    @Override
+    public void testEnded() {
+    	super.testEnded();
+    	AmfLatencyRecorder.testEnded();
+    	AmfNioEngine.testEnded();
+    	AmfConnectionPool.testEnded();
+    }
+
+    /**
+     * Returns reference to <code>AmfMessageInterface</code>.
+     *
+     * The <code>createAMFRequest()</code> method uses reflection to create an
+     * instance of the specified AMF request client. If the class can not be
+     * found, the method returns a reference to <code>this</code> object.
+     *
+     * @return JavaSamplerClient reference.
+     */
+    AmfMessageInterface createAmfRequest() {
+        log.debug(whoAmI() + "Creating AMF Request");
+        try {
+            Class<?> javaClass = Class.forName(getClassname().trim(), false, Thread.currentThread()
+                    .getContextClassLoader());
+            AmfMessageInterface request = (AmfMessageInterface) javaClass.newInstance();
+
+            if (log.isDebugEnabled()) {
+                log.debug(whoAmI() + "\tCreated:\t" + getClassname() + "@"
+                        + Integer.toHexString(request.hashCode()));
+            }
+            return request;
+        } catch (Exception e) {
+            log.error(whoAmI() + "\tException creating: " + getClassname(), e);
+            return new ErrorSamplerClient();
+        }
+    }
+
+    /**
+     * Create the transport selected by the Transport parameter, using the default
+     * transport if it can not be created.
+     */
+    private void createTransport(String alias) {
+    	try {
+    		transport = AmfTransportFactory.newInstance(alias);
+    	} catch (UnsupportedOperationException ex) {
+    		log.error(whoAmI() + "\tUnable to create transport [" + alias + "], using "
+    				+ AmfTransportFactory.DEFAULT_ALIAS + ".", ex);
+    		transport = AmfTransportFactory.newInstance(AmfTransportFactory.DEFAULT_ALIAS);
+    	}
+    	transport.setup(this);
+    	if (transport instanceof AmfSocketTransport) {
+    		((AmfSocketTransport) transport).setConnectionStrategy(connectionStrategy);
+    	} else if (connectionStrategy != AmfConnectionStrategy.USER) {
+    		log.warn(whoAmI() + "\t" + CONNECTION_STRATEGY_PARAMETER_NAME + " only applies to the "
+    				+ AmfTransportFactory.SOCKET + " transport.");
+    	}
+    	if (log.isDebugEnabled()) {
+    		log.debug(whoAmI() + "\tUsing transport " + transport.getClass().getName());
+    	}
+    }
+
+    /**
+     * Set the connection strategy named by the Connection Strategy parameter, using the
+     * user strategy if the name is not known.
+     */
+    private void setConnectionStrategy(String alias) {
+    	connectionStrategy = AmfConnectionStrategy.forAlias(alias.trim());
+    	if (connectionStrategy == null) {
+    		log.warn(whoAmI() + "\tUnknown " + CONNECTION_STRATEGY_PARAMETER_NAME + " [" + alias + "], using "
+    				+ AmfConnectionStrategy.USER.getAlias() + ".");
+    		connectionStrategy = AmfConnectionStrategy.USER;
+    	}
+    }
+
+    /**
+     * @return how the socket transports of this sampler's thread reuse connections.
+     */
+    AmfConnectionStrategy getConnectionStrategy() {
+    	return connectionStrategy;
+    }
+
+    /**
+     * Create the virtual sessions of this thread, if the Virtual Sessions parameter is
+     * greater than 1, on threads of their own if the Virtual Threads parameter is true.
+     */
+    private void createVirtualSessions(String count, String threads, String transportAlias) {
+    	int sessions;
+    	try {
+    		sessions = Integer.parseInt(count.trim());
+    	} catch (NumberFormatException ex) {
+    		log.warn(whoAmI() + "\tInvalid " + VIRTUAL_SESSIONS_PARAMETER_NAME + " [" + count + "], using 1.");
+    		return;
+    	}
+    	if (sessions <= 1) {
+    		return;
+    	}
+    	if (Boolean.valueOf(threads.trim()).booleanValue()) {
+    		if (!AmfVirtualThreads.isSupported()) {
+    			log.warn(whoAmI() + "\tVirtual threads require Java 21 or later, using platform threads.");
+    		}
+    		sessionThreads = new AmfSessionThreads(this, config, sessions, transportAlias);
+    		if (log.isDebugEnabled()) {
+    			log.debug(whoAmI() + "\tCreated " + sessions + " session threads");
+    		}
+    		return;
+    	}
+    	try {
+    		virtualSessions = new AmfVirtualSessions(this, config, sessions);
+    		if (log.isDebugEnabled()) {
+    			log.debug(whoAmI() + "\tCreated " + sessions + " virtual sessions");
+    		}
+    	} catch (IOException ex) {
+    		log.error(whoAmI() + "\tUnable to create virtual sessions, using a single session.", ex);
+    	}
+    }
+
+    /**
+     * Generate a String identifier of this instance for debugging purposes.
+     *
+     * @return a String identifier for this sampler instance
+     */
+    private String whoAmI() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(Thread.currentThread().getName());
+        sb.append("@");
+        sb.append(Integer.toHexString(hashCode()));
+        sb.append("-");
+        sb.append(getName());
+        return sb.toString();
+    }
+
+    /**
+     * An {@link AmfMessageInterface} implementation used for error handling. If an
+     * error occurs while creating the real AmfMessageInterface object, it is
+     * replaced with an instance of this class. Each time a sample occurs with
+     * this class, the result is marked as a failure so the user can see that
+     * the test failed.
+     */
+    class ErrorSamplerClient extends AmfMessage {
+        /**
+         * Return SampleResult with data on error.
+         *
+         * @see JavaSamplerClient#runTest(JavaSamplerContext)
+         */
+        public SampleResult runTest(JavaSamplerContext p_context) {
+            log.debug(whoAmI() + "\trunTest");
+            Thread.yield();
+            SampleResult results = new SampleResult();
+            results.setSuccessful(false);
+            results.setResponseData(("Class not found: " + getClassname()), null);
+            results.setSampleLabel("ERROR: " + getClassname());
+            return results;
+        }
+
+		@Override
+		protected boolean processResult(AcknowledgeMessage ackMessage) {
+			return false;
+		}
+
+		@Override
+		protected boolean processResult(AcknowledgeMessageExt ackMessage) {
+			return false;
+		}
+
+		@Override
+		protected AbstractMessage createAbstractMessage(
+				AmfSamplerContext context) {
+			// TODO Auto-generated method stub
+			return null;
+		}
+
+		@Override
+		public Arguments getDefaultParameters() {
+			// TODO Auto-generated method stub
+			return null;
+		}
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jmeter.config.Argument;
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.engine.util.CompoundVariable;
+import org.apache.jmeter.functions.Function;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.property.FunctionProperty;
+import org.apache.jmeter.testelement.property.JMeterProperty;
+import org.apache.jmeter.testelement.property.PropertyIterator;
+
+/**
+ * An immutable snapshot of the parameters of an AmfSampler, compiled once per thread.
+ * <p>
+ * Parameter values that do not contain JMeter functions or variables are evaluated
+ * when the snapshot is compiled, and the same AmfSamplerContext is returned for every
+ * sample.  Only the values that do contain functions or variables are re-evaluated, by
+ * the context created for each sample, which shares the names and static values of the
+ * snapshot.
+ * <p>
+ * The FunctionProperty of a dynamic parameter caches its value for each iteration of the
+ * JMeter thread, so the virtual sessions of a thread each evaluate their parameters
+ * through a copy returned by forSession(), which holds functions of its own.
+ *
+ */
+public final class AmfSamplerConfig {
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	/**
+	 * The index of each parameter within the values array, by parameter name.
+	 */
+	private final Map<String, Integer> indexes;
+
+	private final List<String> names;
+
+	/**
+	 * The evaluated value of the static parameters, or the raw value of the dynamic ones.
+	 */
+	private final String[] values;
+
+	/**
+	 * The property of each dynamic parameter, null for static parameters.
+	 */
+	private final JMeterProperty[] dynamicProperties;
+
+	/**
+	 * The functions evaluating the dynamic parameters of a session copy, null for the
+	 * snapshot shared by the sampler, and for parameters whose function can not be copied.
+	 */
+	private final CompoundVariable[] sessionFunctions;
+
+	private final int[] dynamicIndexes;
+
+	/**
+	 * Flags the dynamic parameters, copied into each context to mark the values it
+	 * has yet to evaluate.
+	 */
+	private final boolean[] dynamicFlags;
+
+	/**
+	 * The context returned for every sample when there are no dynamic parameters.
+	 */
+	private final AmfSamplerContext staticContext;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+	private AmfSamplerConfig(List<String> names, List<JMeterProperty> properties) {
+		this.indexes = new HashMap<String, Integer>();
+		this.names = Collections.unmodifiableList(names);
+		this.values = new String[names.size()];
+		this.dynamicProperties = new JMeterProperty[names.size()];
+
+		int dynamicCount = 0;
+		for (int i = 0; i < values.length; i++) {
+			JMeterProperty property = properties.get(i);
+			indexes.put(names.get(i), Integer.valueOf(i));
+			if (property instanceof FunctionProperty) {
+				dynamicProperties[i] = property;
+				values[i] = getRawValue((FunctionProperty) property);
+				dynamicCount++;
+			} else {
+				values[i] = property.getStringValue();
+			}
+		}
+
+		this.dynamicIndexes = new int[dynamicCount];
+		this.dynamicFlags = new boolean[values.length];
+		for (int i = 0, j = 0; i < values.length; i++) {
+			if (dynamicProperties[i] != null) {
+				dynamicIndexes[j++] = i;
+				dynamicFlags[i] = true;
+			}
+		}
+
+		this.staticContext = dynamicCount == 0 ? new AmfSamplerContext(this, values, null) : null;
+		this.sessionFunctions = null;
+	}
+
+	/**
+	 * Create a session copy of the given snapshot, sharing all but the functions of the
+	 * dynamic parameters.
+	 */
+	private AmfSamplerConfig(AmfSamplerConfig shared) {
+		this.indexes = shared.indexes;
+		this.names = shared.names;
+		this.values = shared.values;
+		this.dynamicProperties = shared.dynamicProperties;
+		this.dynamicIndexes = shared.dynamicIndexes;
+		this.dynamicFlags = shared.dynamicFlags;
+		this.staticContext = null;
+		this.sessionFunctions = new CompoundVariable[values.length];
+		for (int i = 0; i < dynamicIndexes.length; i++) {
+			int index = dynamicIndexes[i];
+			if (((FunctionProperty) dynamicProperties[index]).getFunction() instanceof CompoundVariable) {
+				sessionFunctions[index] = new CompoundVariable(values[index]);
+			}
+		}
+	}
+
+	/**
+	 * Compile the given arguments and sampler properties into a snapshot.  Arguments with
+	 * the same name replace earlier ones, as they do in Arguments.getArgumentsAsMap().
+	 *
+	 * @param arguments the sampler arguments.
+	 * @param element the element holding the properties, may be null if there are none.
+	 * @param propertyNames the names of properties of the element to include as parameters.
+	 * @return the compiled snapshot.
+	 */
+	public static AmfSamplerConfig compile(Arguments arguments, TestElement element, String... propertyNames) {
+		List<String> names = new ArrayList<String>();
+		List<JMeterProperty> properties = new ArrayList<JMeterProperty>();
+
+		if (arguments != null) {
+			PropertyIterator iter = arguments.iterator();
+			while (iter.hasNext()) {
+				Argument argument = (Argument) iter.next().getObjectValue();
+				add(names, properties, argument.getName(), argument.getProperty(Argument.VALUE));
+			}
+		}
+		if (element != null) {
+			for (String propertyName : propertyNames) {
+				add(names, properties, propertyName, element.getProperty(propertyName));
+			}
+		}
+
+		return new AmfSamplerConfig(names, properties);
+	}
+
+	private static void add(List<String> names, List<JMeterProperty> properties, String name, JMeterProperty property) {
+		int index = names.indexOf(name);
+		if (index >= 0) {
+			properties.set(index, property);
+		} else {
+			names.add(name);
+			properties.add(property);
+		}
+	}
+
+	private static String getRawValue(FunctionProperty property) {
+		Function function = property.getFunction();
+		if (function instanceof CompoundVariable) {
+			return ((CompoundVariable) function).getRawParameters();
+		}
+		return function.toString();
+	}
+
+	/**
+	 * Create the context for a sample.  If none of the parameters are dynamic, the
+	 * same context is returned for every sample.  Otherwise the dynamic parameters of
+	 * the new context are evaluated when first requested.
+	 *
+	 * @return the context holding the current parameter values.
+	 */
+	public AmfSamplerContext createContext() {
+		if (staticContext != null) {
+			return staticContext;
+		}
+		return new AmfSamplerContext(this, values.clone(), dynamicFlags.clone());
+	}
+
+	/**
+	 * Create a copy of this snapshot for a virtual session, whose dynamic parameters are
+	 * evaluated each time a context requests them, with functions of its own and the
+	 * variables of the current JMeter context, rather than through the FunctionProperty
+	 * shared by the sessions of the thread.  A copy is only used by one thread at a time.
+	 *
+	 * @return the session copy, or this snapshot if there are no dynamic parameters.
+	 */
+	public AmfSamplerConfig forSession() {
+		return staticContext != null ? this : new AmfSamplerConfig(this);
+	}
+
+	/**
+	 * @return the current value of the dynamic parameter at the given index.
+	 */
+	String evaluate(int index) {
+		if (sessionFunctions != null && sessionFunctions[index] != null) {
+			return sessionFunctions[index].execute();
+		}
+		return dynamicProperties[index].getStringValue();
+	}
+
+	/**
+	 * @return the parameter names, in the order they were first defined.
+	 */
+	public List<String> getNames() {
+		return names;
+	}
+
+	/**
+	 * @return the index of the named parameter, or -1 if there is no such parameter.
+	 */
+	int indexOf(String name) {
+		Integer index = indexes.get(name);
+		return index == null ? -1 : index.intValue();
+	}
+
+	/**
+	 * @return the value of the named parameter as defined, before any functions or
+	 * variables are evaluated, or null if there is no such parameter.
+	 */
+	public String getRawValue(String name) {
+		int index = indexOf(name);
+		return index < 0 ? null : values[index];
+	}
+
+	/**
+	 * @return true if the value of the named parameter contains functions or variables.
+	 */
+	public boolean isDynamic(String name) {
+		int index = indexOf(name);
+		return index >= 0 && dynamicProperties[index] != null;
+	}
+
+	/**
+	 * @return the number of parameters re-evaluated for each sample.
+	 */
+	public int getDynamicCount() {
+		return dynamicIndexes.length;
+	}
+
+}
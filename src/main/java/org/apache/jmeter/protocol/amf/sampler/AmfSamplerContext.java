@@ -1,33 +1,179 @@
-/*
- * Licensed to the Apache Software Foundation (ASF) under one or more
- * contributor license agreements.  See the NOTICE file distributed with
- * this work for additional information regarding copyright ownership.
- * The ASF licenses this file to You under the Apache License, Version 2.0
- * (the "License"); you may not use this file except in compliance with
- * the License.  You may obtain a copy of the License at
- *
- *   http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package org.apache.jmeter.protocol.amf.sampler;
-
-import org.apache.jmeter.config.Arguments;
-import org.apache.jmeter.protocol.java.sampler.JavaSamplerContext;
-
-/**
- * AmfSamplerContext is used to provide context information to an
- * AmfMessageInterface implementation. This currently consists of the
- * initialization parameters which were specified in the GUI.
- */
-public class AmfSamplerContext extends JavaSamplerContext {
-
-	public AmfSamplerContext(Arguments args) {
-		super(args);
-	}
-
-}
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.util.Iterator;
+
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.protocol.java.sampler.JavaSamplerContext;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * AmfSamplerContext is used to provide context information to an
+ * AmfMessageInterface implementation. This currently consists of the
+ * initialization parameters which were specified in the GUI.
+ * <p>
+ * The parameter values are held in an array indexed by an AmfSamplerConfig, so
+ * that a context can be created for each sample without building a new map.  Values
+ * containing JMeter functions or variables are evaluated when first requested, so
+ * parameters that are only read while setting up a test, or that are compiled from
+ * their raw value, are not evaluated for each sample.
+ */
+public class AmfSamplerContext extends JavaSamplerContext {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    /**
+     * Passed to JavaSamplerContext, whose parameter map is not used.
+     */
+    private static final Arguments NO_ARGUMENTS = new Arguments();
+
+	private final AmfSamplerConfig config;
+
+	private final String[] values;
+
+	/**
+	 * Flags the dynamic values not yet evaluated, null if there are none.
+	 */
+	private final boolean[] pending;
+
+	public AmfSamplerContext(Arguments args) {
+		super(NO_ARGUMENTS);
+		AmfSamplerContext context = AmfSamplerConfig.compile(args, null).createContext();
+		this.config = context.config;
+		this.values = context.values;
+		this.pending = context.pending;
+	}
+
+	AmfSamplerContext(AmfSamplerConfig config, String[] values, boolean[] pending) {
+		super(NO_ARGUMENTS);
+		this.config = config;
+		this.values = values;
+		this.pending = pending;
+	}
+
+	/**
+	 * @return the configuration snapshot this context was created from.
+	 */
+	public AmfSamplerConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * @return the value of the parameter at the given index of the configuration
+	 * snapshot, evaluating it if required.
+	 */
+	String getValue(int index) {
+		if (pending != null && pending[index]) {
+			pending[index] = false;
+			values[index] = config.evaluate(index);
+		}
+		return values[index];
+	}
+
+	@Override
+	public boolean containsParameter(String name) {
+		return config.indexOf(name) >= 0;
+	}
+
+	@Override
+	public Iterator<String> getParameterNamesIterator() {
+		return config.getNames().iterator();
+	}
+
+	@Override
+	public String getParameter(String name) {
+		return getParameter(name, null);
+	}
+
+	@Override
+	public String getParameter(String name, String defaultValue) {
+		String value = getValue(name);
+		return value == null ? defaultValue : value;
+	}
+
+	@Override
+	public int getIntParameter(String name) throws NumberFormatException {
+		String value = getValue(name);
+		if (value == null) {
+			throw new NumberFormatException("No value for parameter named '" + name + "'."); // $NON-NLS-1$
+		}
+		return Integer.parseInt(value);
+	}
+
+	@Override
+	public int getIntParameter(String name, int defaultValue) {
+		String value = getValue(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			log.warn("Value for parameter '" + name + "' not an integer: '" + value + "'.  Using default: '" // $NON-NLS-1$
+					+ defaultValue + "'.", e); // $NON-NLS-1$
+			return defaultValue;
+		}
+	}
+
+	@Override
+	public long getLongParameter(String name) throws NumberFormatException {
+		String value = getValue(name);
+		if (value == null) {
+			throw new NumberFormatException("No value for parameter named '" + name + "'."); // $NON-NLS-1$
+		}
+		return Long.parseLong(value);
+	}
+
+	@Override
+	public long getLongParameter(String name, long defaultValue) {
+		String value = getValue(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			log.warn("Value for parameter '" + name + "' not a long: '" + value + "'.  Using default: '" // $NON-NLS-1$
+					+ defaultValue + "'.", e); // $NON-NLS-1$
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @return the value of the named parameter as defined, before any functions or
+	 * variables are evaluated, or null if there is no such parameter.
+	 */
+	public String getRawParameter(String name) {
+		return config.getRawValue(name);
+	}
+
+	/**
+	 * @return true if the value of the named parameter contains functions or variables,
+	 * and so may differ between samples.
+	 */
+	public boolean isDynamicParameter(String name) {
+		return config.isDynamic(name);
+	}
+
+	private String getValue(String name) {
+		int index = config.indexOf(name);
+		return index < 0 ? null : getValue(index);
+	}
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.util.Random;
+
+import org.apache.jmeter.util.JMeterUtils;
+
+/**
+ * Generates random (version 4) UUID message ids from a per-thread random number
+ * generator whose seed is derived from the amf.messageid.seed JMeter property and
+ * the name of the thread.  All AMF requests executed by a thread share the same
+ * sequence, so a test plan that executes the same requests in the same order
+ * produces the same message ids on every run.
+ *
+ */
+public class AmfSeededMessageIdGenerator implements AmfMessageIdGenerator {
+
+    //--------------------------------------------------------------------------
+    // Public Static Variables
+    //--------------------------------------------------------------------------
+
+	public static final String SEED_PROPERTY = "amf.messageid.seed"; //$NON-NLS-1$
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+	private static final ThreadLocal<Random> randoms = new ThreadLocal<Random>() {
+		@Override
+		protected Random initialValue() {
+			long seed = JMeterUtils.getPropDefault(SEED_PROPERTY, 0L);
+			return new Random(seed ^ (Thread.currentThread().getName().hashCode() * 0x9E3779B97F4A7C15L));
+		}
+	};
+
+	public String nextMessageId() {
+		Random random = randoms.get();
+		return AmfMessageIdGeneratorFactory.toRandomUUIDString(random.nextLong(), random.nextLong());
+	}
+
+}
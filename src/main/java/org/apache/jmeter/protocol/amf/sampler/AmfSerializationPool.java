@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.DataInputStream;
+
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.ActionContext;
+import flex.messaging.io.amf.AmfMessageDeserializer;
+import flex.messaging.io.amf.AmfMessageSerializer;
+
+/**
+ * Holds the serialization contexts, serializer, deserializer and buffers used by
+ * AmfMessageHelper so they can be reused across samples rather than allocated for
+ * each one.  A single pool is kept per thread and shared by all helpers used by
+ * that thread, since a thread only ever processes one sample at a time.  The session
+ * threads of AmfSessionThreads live as long as their JMeter thread, so each virtual
+ * session has a pool of its own.
+ * <p>
+ * The serializer and deserializer are initialized once against the pooled buffers,
+ * and rely on the AMF reference tables being reset at the start of each message
+ * header and body.
+ *
+ */
+public class AmfSerializationPool {
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+	private static final ThreadLocal<AmfSerializationPool> pools = new ThreadLocal<AmfSerializationPool>() {
+		@Override
+		protected AmfSerializationPool initialValue() {
+			return new AmfSerializationPool();
+		}
+	};
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final SerializationContext serializationContext;
+	private final ActionContext actionContext;
+
+	private final AmfByteBuffer outputBuffer;
+	private final AmfMessageSerializer serializer;
+
+	private final AmfByteArrayInputStream inputBuffer;
+	private final DataInputStream dataInput;
+	private final AmfMessageDeserializer deserializer;
+	private AmfMessageDeserializer cachingDeserializer = null;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+	private AmfSerializationPool() {
+		serializationContext = new SerializationContext();
+		actionContext = new ActionContext();
+
+		outputBuffer = new AmfByteBuffer();
+		serializer = new AmfMessageSerializer();
+		serializer.initialize(serializationContext, outputBuffer, null/*debugTrace*/);
+
+		inputBuffer = new AmfByteArrayInputStream();
+		dataInput = new DataInputStream(inputBuffer);
+		deserializer = new AmfMessageDeserializer();
+		deserializer.initialize(serializationContext, dataInput, null/*trace*/);
+	}
+
+	/**
+	 * @return the pool belonging to the current thread.
+	 */
+	public static AmfSerializationPool getPool() {
+		return pools.get();
+	}
+
+	public SerializationContext getSerializationContext() {
+		return serializationContext;
+	}
+
+	public ActionContext getActionContext() {
+		return actionContext;
+	}
+
+	public AmfByteBuffer getOutputBuffer() {
+		return outputBuffer;
+	}
+
+	public AmfMessageSerializer getSerializer() {
+		return serializer;
+	}
+
+	public AmfByteArrayInputStream getInputBuffer() {
+		return inputBuffer;
+	}
+
+	public DataInputStream getDataInput() {
+		return dataInput;
+	}
+
+	public AmfMessageDeserializer getDeserializer() {
+		return deserializer;
+	}
+
+	/**
+	 * @return a deserializer that resolves class names through the AmfClassAliasCache,
+	 * reading from the same input buffer as getDeserializer().
+	 */
+	public AmfMessageDeserializer getCachingDeserializer() {
+		if (cachingDeserializer == null) {
+			cachingDeserializer = new AmfCachingMessageDeserializer();
+			cachingDeserializer.initialize(serializationContext, dataInput, null/*trace*/);
+		}
+		return cachingDeserializer;
+	}
+
+	/**
+	 * Reset the pooled objects between samples, releasing any references to the
+	 * messages and payloads of the previous sample.
+	 */
+	public void reset() {
+		actionContext.setRequestMessage(null);
+		actionContext.setResponseMessage(null);
+		outputBuffer.recycle();
+		inputBuffer.release();
+	}
+
+}
@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.HdrHistogram.SingleWriterRecorder;
+import org.apache.jmeter.protocol.http.sampler.HTTPSampleResult;
+import org.apache.jmeter.threads.JMeterContext;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * Runs the virtual sessions of an AmfSampler each on a thread of its own, a virtual
+ * thread when the JVM provides them (see AmfVirtualThreads).  Unlike AmfVirtualSessions,
+ * a session samples with the same blocking code as the sampler itself, using its own
+ * AmfMessageInterface, its own AmfTransport and AmfCookieJar, and its own JMeter
+ * variables (see AmfSessionVariables), which are set in the JMeter context of its thread.
+ * <p>
+ * Each session keeps its thread until the JMeter thread finishes, so that per-thread
+ * state, such as the AmfSerializationPool and the random number generators of the
+ * message id generators, belongs to the session and lasts across its samples.  Session
+ * threads are named after the JMeter thread, e.g. "Thread Group 1-1-session-3", so the
+ * seeded message id generator produces the same ids for a session on every run.
+ * <p>
+ * For each sample, the JMeter thread hands the URL to every session, then waits for all
+ * of them to complete.  Each session is reported as a sub-result of the sample, which
+ * fails if any session fails.  The httpclient transport keeps its state in the sampler,
+ * so sessions use the socket transport in its place, as they do for transports not based
+ * on AmfAbstractTransport.
+ *
+ */
+public class AmfSessionThreads {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+	private static final String METHOD = "POST"; // $NON-NLS-1$
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final AmfSampler sampler;
+
+	private final Session[] sessions;
+
+	//--------------------------------------------------------------------------
+	//
+	// Constructor
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Create the sessions and start their threads.  The AmfMessageInterface of each
+	 * session is set up by its thread, on its first sample.
+	 *
+	 * @param sampler the sampler whose thread drives the sessions.
+	 * @param config the compiled parameters of the sampler.
+	 * @param count the number of sessions.
+	 * @param transportAlias the transport selected by the Transport parameter.
+	 */
+	AmfSessionThreads(AmfSampler sampler, AmfSamplerConfig config, int count, String transportAlias) {
+		this.sampler = sampler;
+		JMeterContext threadContext = JMeterContextService.getContext();
+		JMeterVariables threadVariables = threadContext.getVariables();
+		String threadName = Thread.currentThread().getName();
+		sessions = new Session[count];
+		for (int i = 0; i < count; i++) {
+			Session session = new Session(i + 1, new AmfSessionVariables(threadVariables), config.forSession(),
+					createTransport(transportAlias, i == 0), threadContext.getThreadNum());
+			sessions[i] = session;
+			AmfVirtualThreads.newThread(threadName + "-session-" + session.number, session).start(); // $NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Create the transport of a session, falling back to the socket transport when the
+	 * selected transport can not be shared out between sessions.
+	 */
+	private AmfAbstractTransport createTransport(String alias, boolean report) {
+		AmfTransport transport = null;
+		try {
+			transport = AmfTransportFactory.newInstance(alias);
+		} catch (UnsupportedOperationException ex) {
+			if (report) {
+				log.error(sampler.getName() + "\tUnable to create transport [" + alias + "]", ex);
+			}
+		}
+		if (!(transport instanceof AmfAbstractTransport) || transport instanceof AmfHttpClientTransport) {
+			if (report) {
+				log.info(sampler.getName() + "\tSession threads use the " + AmfTransportFactory.SOCKET
+						+ " transport in place of [" + alias + "]");
+			}
+			transport = AmfTransportFactory.newInstance(AmfTransportFactory.SOCKET);
+		}
+		transport.setup(sampler);
+		if (transport instanceof AmfSocketTransport) {
+			((AmfSocketTransport) transport).setConnectionStrategy(sampler.getConnectionStrategy());
+		}
+		return (AmfAbstractTransport) transport;
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Sampling
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Have every session sample, and wait for them all to complete.
+	 *
+	 * @param latencyRecorder the recorder of the latency of each session, or null.
+	 * @param phaseTimings true if the phase times of each session are stored in its variables.
+	 * @return the result of the sample, with a sub-result for each session.
+	 */
+	AmfSampleResult sample(SingleWriterRecorder latencyRecorder, boolean phaseTimings) {
+		AmfSampleResult result = new AmfSampleResult();
+		result.setSampleLabel(sampler.getName());
+		result.setHTTPMethod(METHOD);
+		result.setDataType(HTTPSampleResult.TEXT);
+		result.sampleStart();
+
+		URL url;
+		try {
+			url = sampler.getUrl();
+			result.setURL(url);
+		} catch (MalformedURLException ex) {
+			result.sampleEnd();
+			return (AmfSampleResult) sampler.errorHttpResult(ex, result);
+		}
+
+		HTTPSampleResult[] subResults = new HTTPSampleResult[sessions.length];
+		// A queue per sample, so that samples interrupted earlier are not taken by this one
+		BlockingQueue<Task> completions = new LinkedBlockingQueue<Task>();
+		for (Session session : sessions) {
+			session.tasks.add(new Task(session, url, phaseTimings, completions));
+		}
+		int pending = sessions.length;
+		try {
+			while (pending > 0) {
+				Task task = completions.take();
+				pending--;
+				subResults[task.session.number - 1] = task.result;
+				// Recorded here, since the recorder only has a single writer
+				if (latencyRecorder != null) {
+					latencyRecorder.recordValue(task.elapsedNanos / 1000);
+				}
+			}
+		} catch (InterruptedException ex) {
+			log.warn(sampler.getName() + "\tInterrupted waiting for " + pending + " session threads");
+			interrupt();
+			Thread.currentThread().interrupt();
+		}
+		result.sampleEnd();
+		AmfVirtualSessions.addSubResults(sampler, result, subResults);
+		return result;
+	}
+
+	/**
+	 * Abort the requests in progress.
+	 */
+	boolean interrupt() {
+		for (Session session : sessions) {
+			session.transport.interrupt();
+		}
+		return true;
+	}
+
+	/**
+	 * Stop the session threads, which close their transports, as the thread finishes.
+	 */
+	void close() {
+		for (Session session : sessions) {
+			session.tasks.add(Task.CLOSE);
+		}
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Session
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * A sample of a session, handed to the session's thread and returned through the
+	 * completion queue of the sample once its result is set.
+	 */
+	private static class Task {
+
+		/**
+		 * Stops the thread of a session.
+		 */
+		static final Task CLOSE = new Task(null, null, false, null);
+
+		final Session session;
+		final URL url;
+		final boolean phaseTimings;
+		final BlockingQueue<Task> completions;
+
+		HTTPSampleResult result = null;
+		long elapsedNanos = 0;
+
+		Task(Session session, URL url, boolean phaseTimings, BlockingQueue<Task> completions) {
+			this.session = session;
+			this.url = url;
+			this.phaseTimings = phaseTimings;
+			this.completions = completions;
+		}
+
+	}
+
+	/**
+	 * A virtual session and the body of its thread.
+	 */
+	private class Session implements Runnable {
+
+		private final int number;
+
+		private final AmfSessionVariables variables;
+
+		/**
+		 * The parameters of the session, evaluated with its own functions and variables,
+		 * so that the session threads do not share the properties of the sampler.
+		 */
+		private final AmfSamplerConfig config;
+
+		private final AmfAbstractTransport transport;
+
+		private final int threadNum;
+
+		private final BlockingQueue<Task> tasks = new LinkedBlockingQueue<Task>();
+
+		private final AmfCookieJar cookies = new AmfCookieJar();
+
+		// Only used by the session's thread
+		private AmfMessageInterface request = null;
+
+		Session(int number, AmfSessionVariables variables, AmfSamplerConfig config, AmfAbstractTransport transport,
+				int threadNum) {
+			this.number = number;
+			this.variables = variables;
+			this.config = config;
+			this.transport = transport;
+			this.threadNum = threadNum;
+			transport.setCookieJar(cookies);
+		}
+
+		public void run() {
+			JMeterContext context = JMeterContextService.getContext();
+			context.setVariables(variables);
+			context.setThreadNum(threadNum);
+			context.setCurrentSampler(sampler);
+			context.setSamplingStarted(true);
+			try {
+				for (Task task = tasks.take(); task != Task.CLOSE; task = tasks.take()) {
+					long start = System.nanoTime();
+					task.result = sample(task.url, task.phaseTimings);
+					task.elapsedNanos = System.nanoTime() - start;
+					task.completions.add(task);
+				}
+			} catch (InterruptedException ex) {
+				log.warn(sampler.getName() + "\tSession thread " + number + " interrupted");
+			} finally {
+				transport.close();
+			}
+		}
+
+		/**
+		 * Sample as AmfSampler does, with the AmfMessageInterface, transport and variables
+		 * of the session.
+		 *
+		 * @return the result of the session.
+		 */
+		private HTTPSampleResult sample(URL url, boolean phaseTimings) {
+			String label = sampler.getName() + "-" + number;
+			try {
+				if (request == null) {
+					request = sampler.createAmfRequest();
+					request.setupTest(config.createContext());
+				}
+				request.open();
+				try {
+					HTTPSampleResult result = sampler.sample(url, METHOD, request, config.createContext(), transport,
+							phaseTimings);
+					result.setSampleLabel(label);
+					if (AmfSampler.RESPONSE_CODE_200.equals(result.getResponseCode())) {
+						long decodeStart = System.nanoTime();
+						request.processResponse(result);
+						if (result instanceof AmfSampleResult) {
+							((AmfSampleResult) result).addPhaseNanos(AmfSamplePhase.DECODE, System.nanoTime() - decodeStart);
+						}
+					}
+					if (phaseTimings && result instanceof AmfSampleResult) {
+						((AmfSampleResult) result).putPhaseVariables(variables);
+					}
+					return result;
+				} finally {
+					request.close();
+				}
+			} catch (RuntimeException ex) {
+				log.error(label + "\tSession sample failed", ex);
+				AmfSampleResult res = new AmfSampleResult();
+				res.setSampleLabel(label);
+				res.setHTTPMethod(METHOD);
+				res.setURL(url);
+				return sampler.errorHttpResult(ex, res);
+			}
+		}
+
+	}
+
+}
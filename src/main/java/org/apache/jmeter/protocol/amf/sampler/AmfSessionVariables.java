@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import org.apache.jmeter.threads.JMeterVariables;
+
+/**
+ * The JMeter variables of a virtual session.  Variables put while the session is sampling,
+ * e.g. the DSId received by the session, are held by the session.  Other variables are
+ * read from the variables of the JMeter thread the session runs on, so that user defined
+ * variables, and the values of CSV Data Sets and other config elements, are shared by the
+ * sessions of the thread.  The iteration is that of the JMeter thread.
+ *
+ */
+public class AmfSessionVariables extends JMeterVariables {
+
+	private final JMeterVariables threadVariables;
+
+	public AmfSessionVariables(JMeterVariables threadVariables) {
+		super();
+		this.threadVariables = threadVariables;
+	}
+
+	@Override
+	public String get(String key) {
+		String value = super.get(key);
+		return value != null ? value : threadVariables.get(key);
+	}
+
+	@Override
+	public Object getObject(String key) {
+		Object value = super.getObject(key);
+		return value != null ? value : threadVariables.getObject(key);
+	}
+
+	@Override
+	public int getIteration() {
+		return threadVariables.getIteration();
+	}
+
+	@Override
+	public void incIteration() {
+		threadVariables.incIteration();
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * An open connection of AmfSocketTransport: the socket, its channel for plain connections,
+ * its streams, and the times it was opened and last used, against which the idle timeout
+ * and maximum age of AmfConnectionPool are applied.  A connection is only used by one
+ * transport at a time.
+ *
+ */
+public class AmfSocketConnection {
+
+	private static final int BUFFER_SIZE = 8192;
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final Socket socket;
+	private final SocketChannel channel;
+	private final InputStream in;
+	private final OutputStream out;
+
+	private final String route;
+
+	private final long openedNanos;
+	private long lastUsedNanos;
+
+	private int responseTimeout;
+
+	//--------------------------------------------------------------------------
+	//
+	// Constructor
+	//
+	//--------------------------------------------------------------------------
+
+	private AmfSocketConnection(Socket socket, SocketChannel channel, String route, int responseTimeout) throws IOException {
+		this.socket = socket;
+		this.channel = channel;
+		this.route = route;
+		this.responseTimeout = responseTimeout;
+		// Socket streams are not buffered, reads go directly into the transport's buffer
+		in = socket.getInputStream();
+		out = channel == null ? new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE) : null;
+		openedNanos = System.nanoTime();
+		lastUsedNanos = openedNanos;
+	}
+
+	/**
+	 * Open a connection, completing the SSL handshake of secure connections so that it is
+	 * timed as part of connecting.
+	 *
+	 * @param host the host to connect to.
+	 * @param port the port to connect to.
+	 * @param secure true for an SSL connection.
+	 * @param connectTimeout the connect timeout in milliseconds, 0 for none.
+	 * @param responseTimeout the read timeout in milliseconds, 0 for none.
+	 * @return the connection.
+	 */
+	public static AmfSocketConnection open(String host, int port, boolean secure, int connectTimeout,
+			int responseTimeout) throws IOException {
+		// A channel is only used for plain connections, for its gathering write
+		SocketChannel c = secure ? null : SocketChannel.open();
+		Socket s = c == null ? new Socket() : c.socket();
+		try {
+			s.setTcpNoDelay(true);
+			s.connect(new InetSocketAddress(host, port), Math.max(0, connectTimeout));
+			s.setSoTimeout(Math.max(0, responseTimeout));
+			if (secure) {
+				SSLSocket ssl = (SSLSocket) HttpsURLConnection.getDefaultSSLSocketFactory().createSocket(s, host, port, true);
+				ssl.startHandshake();
+				s = ssl;
+			}
+			return new AmfSocketConnection(s, c, AmfConnectionPool.route(host, port, secure), responseTimeout);
+		} catch (IOException ex) {
+			s.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * @return the channel of a plain connection, null for an SSL connection.
+	 */
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
+	public InputStream getInputStream() {
+		return in;
+	}
+
+	/**
+	 * @return the buffered output stream of an SSL connection, null for a plain connection.
+	 */
+	public OutputStream getOutputStream() {
+		return out;
+	}
+
+	/**
+	 * @return the host, port and security of the connection, see AmfConnectionPool.route().
+	 */
+	public String getRoute() {
+		return route;
+	}
+
+	/**
+	 * @return true if the connection has not been closed by this side.
+	 */
+	public boolean isOpen() {
+		return !socket.isClosed();
+	}
+
+	/**
+	 * Set the read timeout, if it differs from the current one.
+	 */
+	public void setResponseTimeout(int responseTimeout) throws SocketException {
+		if (responseTimeout != this.responseTimeout) {
+			socket.setSoTimeout(Math.max(0, responseTimeout));
+			this.responseTimeout = responseTimeout;
+		}
+	}
+
+	/**
+	 * Record that the connection was last used at the given time.
+	 */
+	public void touch(long nanos) {
+		lastUsedNanos = nanos;
+	}
+
+	/**
+	 * @return the time since the connection was opened, in nanoseconds.
+	 */
+	public long getAgeNanos(long now) {
+		return now - openedNanos;
+	}
+
+	/**
+	 * @return the time since the connection was last used, in nanoseconds.
+	 */
+	public long getIdleNanos(long now) {
+		return now - lastUsedNanos;
+	}
+
+	public void close() {
+		try {
+			socket.close();
+		} catch (IOException ex) {
+			// Ignored
+		}
+	}
+
+}
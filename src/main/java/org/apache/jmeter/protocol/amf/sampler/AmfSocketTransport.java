@@ -0,0 +1,1063 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.SocketException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+import org.apache.jmeter.protocol.http.control.AuthManager;
+import org.apache.jmeter.protocol.http.control.Header;
+import org.apache.jmeter.protocol.http.control.HeaderManager;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * An AmfTransport implementing a minimal HTTP/1.1 client directly over a socket, for
+ * driving high request rates at a fixed endpoint.  Connections are reused as set by the
+ * AmfConnectionStrategy of the sampler, by default with each thread keeping its own
+ * persistent connection, and only while the sampler uses keep alive and the server does
+ * not close them (see AmfConnectionPool).  A request on a reused connection that the
+ * server has closed is sent again on a new connection, if it could not be written or the
+ * connection was closed or reset before any of the response was read.  Requests that time
+ * out or are interrupted are not sent again, as the server may have received them.
+ * <p>
+ * The request line and the headers that do not change between requests to the same URL
+ * (Host, Content-Type, the default request headers of AmfSampler, the names and values of
+ * the header manager headers and Connection) are encoded once, and only Content-Length and
+ * the cookie and authorization headers are written for each request.  On plain connections
+ * the header block, the per-request headers and the AMF body are sent with a single
+ * gathering write.  The status line and headers of the response are parsed in place from a
+ * buffer held by the transport, and Strings are only created for the headers that are
+ * requested.
+ * <p>
+ * Requests are sent directly to the server, without a proxy.  HTTPS connections use the
+ * default SSL socket factory of HttpsURLConnection, which JMeter replaces with one that
+ * accepts all certificates.  SSL sockets have no channel, so the parts of a request are
+ * written through a buffered stream and flushed once.
+ *
+ */
+public class AmfSocketTransport extends AmfAbstractTransport {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+	private static final String ENCODING = "ISO-8859-1"; // $NON-NLS-1$
+
+	private static final String HTTPS = "https"; // $NON-NLS-1$
+
+	private static final String HEADER_HOST = "Host"; // $NON-NLS-1$
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	private static final byte[] HTTP_VERSION = ascii("HTTP/1."); // $NON-NLS-1$
+
+	private static final byte[] CONTENT_LENGTH = lowerCase(HEADER_CONTENT_LENGTH);
+	private static final byte[] TRANSFER_ENCODING = lowerCase("Transfer-Encoding"); // $NON-NLS-1$
+	private static final byte[] CONNECTION = lowerCase(HEADER_CONNECTION);
+	private static final byte[] CHUNKED = lowerCase("chunked"); // $NON-NLS-1$
+	private static final byte[] CLOSE = lowerCase(CONNECTION_CLOSE);
+	private static final byte[] KEEP_ALIVE = lowerCase(CONNECTION_KEEP_ALIVE);
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The largest response head (status line and headers) accepted.
+	 */
+	private static final int MAX_HEAD_SIZE = 65536;
+
+	/**
+	 * How the end of the response body is found.
+	 */
+	private static final int BODY_NONE = 0;
+	private static final int BODY_LENGTH = 1;
+	private static final int BODY_CHUNKED = 2;
+	private static final int BODY_CLOSE = 3;
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private AmfConnectionStrategy strategy = AmfConnectionStrategy.USER;
+	private AmfConnectionPool pool = null;
+
+	// The connection in use, kept between requests by the user strategy only
+	private volatile AmfSocketConnection connection = null;
+	private SocketChannel channel = null;
+	private InputStream in = null;
+	private OutputStream out = null;
+	private boolean connectionReused = false;
+	private volatile boolean interrupted = false;
+
+	// The request line and headers encoded for the URL of the last request, see createRequestHead()
+	private String requestProtocol = null;
+	private String requestHost = null;
+	private int requestPort = -1;
+	private String requestFile = null;
+	private HeaderManager requestHeaderManager = null;
+	private String[][] requestHeaderValues = new String[0][];
+	private boolean requestKeepAlive = false;
+	private ByteBuffer requestHead = null;
+	private String requestHeadText = null;
+
+	// The headers written for each request
+	private byte[] requestTail = new byte[256];
+	private int requestTailLength = 0;
+	private ByteBuffer requestTailBuffer = ByteBuffer.wrap(requestTail);
+	private final StringBuilder requestTailText = new StringBuilder(256);
+	private final ByteBuffer[] requestBuffers = new ByteBuffer[3];
+
+	// Bytes read from the connection, buf[pos] to buf[limit - 1] are not yet consumed
+	private final byte[] buf = new byte[BUFFER_SIZE];
+	private int pos = 0;
+	private int limit = 0;
+
+	// The status line and headers of the current response, copied from buf
+	private byte[] head = new byte[BUFFER_SIZE];
+	private int headLength = 0;
+	private int statusLineEnd = 0;
+	private int statusCode = -1;
+	private int reasonStart = 0;
+	private boolean http11 = false;
+
+	// Offsets within head of the name start, name end, value start and value end of each header
+	private int[] headerOffsets = new int[64];
+	private int headerCount = 0;
+
+	private int bodyType = BODY_NONE;
+	private long contentLength = -1;
+	private boolean connectionClose = false;
+	private boolean connectionKeepAlive = false;
+	private boolean responseStarted = false;
+	private final BodyInputStream body = new BodyInputStream();
+
+	/**
+	 * Indicates whether the connection can be used for the next request once the
+	 * current response has been read.
+	 */
+	private boolean reusable = false;
+
+	//--------------------------------------------------------------------------
+	//
+	// AmfTransport
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Set how connections are reused, by default USER.
+	 */
+	public void setConnectionStrategy(AmfConnectionStrategy strategy) {
+		this.strategy = strategy;
+	}
+
+	public int execute(URL url, byte[] request, AmfSampleResult res) throws IOException {
+		reusable = false;
+		interrupted = false;
+		responseStarted = false;
+		long connectStart = System.nanoTime();
+		int requestLength = request == null ? 0 : request.length;
+		createRequestHead(url);
+		createRequestTail(url, requestLength);
+		boolean reused = connect(url, true);
+
+		long sendStart = System.nanoTime();
+		res.setPhaseNanos(AmfSamplePhase.CONNECT, sendStart - connectStart);
+		boolean written = false;
+		try {
+			writeRequest(request);
+			written = true;
+			readResponseHead();
+		} catch (IOException ex) {
+			if (!reused || !isStale(ex, written)) {
+				throw ex;
+			}
+			// The server closed the persistent connection, send the request on a new one
+			if (log.isDebugEnabled()) {
+				log.debug("Persistent connection to " + connection.getRoute() + " closed, reconnecting: " + ex);
+			}
+			AmfConnectionPool.recordStale();
+			closeConnection();
+			connect(url, false);
+			writeRequest(request);
+			readResponseHead();
+		}
+		res.setPhaseNanos(AmfSamplePhase.FIRST_BYTE, System.nanoTime() - sendStart);
+		res.setConnectionReused(connectionReused);
+
+		if (requestTailText.length() == 0) {
+			res.setRequestHeaders(requestHeadText);
+		} else {
+			res.setRequestHeaders(requestHeadText + requestTailText);
+		}
+		return statusCode;
+	}
+
+	public InputStream getResponseBody() throws IOException {
+		return body;
+	}
+
+	public long getResponseContentLength() {
+		return contentLength;
+	}
+
+	public String getResponseHeader(String name) {
+		int index = indexOfHeader(name, 0);
+		return index < 0 ? null : getHeaderValue(index);
+	}
+
+	public void complete(AmfSampleResult res) throws IOException {
+		res.setResponseMessage(string(head, reasonStart, statusLineEnd));
+		StringBuilder sb = new StringBuilder(headLength);
+		sb.append(string(head, 0, statusLineEnd)).append('\n');
+		for (int i = 0; i < headerCount; i++) {
+			int offset = i * 4;
+			sb.append(string(head, headerOffsets[offset], headerOffsets[offset + 1])).append(": ") // $NON-NLS-1$
+				.append(string(head, headerOffsets[offset + 2], headerOffsets[offset + 3])).append('\n');
+		}
+		res.setResponseHeaders(sb.toString());
+		if (isSavingCookies()) {
+			for (int index = indexOfHeader(HEADER_SET_COOKIE, 0); index >= 0; index = indexOfHeader(HEADER_SET_COOKIE, index + 1)) {
+				saveCookie(res.getURL(), getHeaderValue(index));
+			}
+		}
+		reusable = isPersistent();
+	}
+
+	public void release() {
+		if (reusable) {
+			// Read any remainder of the body, so the next response starts at the status line
+			try {
+				body.close();
+			} catch (IOException ex) {
+				reusable = false;
+			}
+			// Bytes beyond the response can not belong to the next one
+			reusable = reusable && pos == limit;
+		}
+		AmfSocketConnection c = connection;
+		if (c != null) {
+			if (!reusable || strategy == AmfConnectionStrategy.REQUEST) {
+				closeConnection();
+			} else if (strategy == AmfConnectionStrategy.SHARED) {
+				detach();
+				pool.giveBack(c);
+			} else {
+				c.touch(System.nanoTime());
+			}
+		}
+		headLength = 0;
+		headerCount = 0;
+		statusCode = -1;
+		contentLength = -1;
+		bodyType = BODY_NONE;
+	}
+
+	public boolean interrupt() {
+		interrupted = true;
+		AmfSocketConnection c = connection;
+		if (c != null) {
+			c.close();
+		}
+		return c != null;
+	}
+
+	public void close() {
+		closeConnection();
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Connection
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Acquire a connection to the host and port of the URL as set by the connection
+	 * strategy: the current connection, a connection from the shared pool, or a new one.
+	 *
+	 * @param reuse false if a new connection must be opened.
+	 * @return true if an open connection is reused.
+	 */
+	private boolean connect(URL url, boolean reuse) throws IOException {
+		String host = url.getHost();
+		int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+		boolean secure = HTTPS.equalsIgnoreCase(url.getProtocol());
+		if (pool == null) {
+			pool = AmfConnectionPool.getInstance();
+		}
+
+		AmfSocketConnection c = connection;
+		if (c != null) {
+			if (reuse && c.isOpen() && c.getRoute().equals(AmfConnectionPool.route(host, port, secure))
+					&& !pool.evict(c, System.nanoTime())) {
+				return attach(c, true);
+			}
+			closeConnection();
+		}
+		if (strategy == AmfConnectionStrategy.SHARED) {
+			c = pool.borrow(host, port, secure, reuse, sampler.getConnectTimeout());
+			if (c != null) {
+				return attach(c, true);
+			}
+			try {
+				return attach(open(host, port, secure), false);
+			} catch (IOException ex) {
+				pool.cancel(host, port, secure);
+				throw ex;
+			}
+		}
+		return attach(open(host, port, secure), false);
+	}
+
+	/**
+	 * @return true if the exception shows that the server closed the reused connection
+	 * before responding: the request could not be written, or the connection was closed
+	 * or reset before any of the response was read.
+	 */
+	private boolean isStale(IOException ex, boolean written) {
+		if (interrupted || responseStarted || ex instanceof InterruptedIOException) {
+			return false;
+		}
+		return !written || ex instanceof EOFException || ex instanceof SocketException;
+	}
+
+	private AmfSocketConnection open(String host, int port, boolean secure) throws IOException {
+		long openStart = System.nanoTime();
+		AmfSocketConnection c = AmfSocketConnection.open(host, port, secure, sampler.getConnectTimeout(),
+				sampler.getResponseTimeout());
+		AmfConnectionPool.recordMiss(System.nanoTime() - openStart);
+		return c;
+	}
+
+	/**
+	 * Make the connection the one requests are sent on.
+	 *
+	 * @return reused.
+	 */
+	private boolean attach(AmfSocketConnection c, boolean reused) throws IOException {
+		if (reused) {
+			c.setResponseTimeout(sampler.getResponseTimeout());
+			AmfConnectionPool.recordHit();
+		}
+		connection = c;
+		channel = c.getChannel();
+		in = c.getInputStream();
+		out = c.getOutputStream();
+		pos = 0;
+		limit = 0;
+		connectionReused = reused;
+		return reused;
+	}
+
+	private void detach() {
+		connection = null;
+		channel = null;
+		in = null;
+		out = null;
+		pos = 0;
+		limit = 0;
+	}
+
+	/**
+	 * Close the current connection, if any, freeing its place in the shared pool.
+	 */
+	private void closeConnection() {
+		AmfSocketConnection c = connection;
+		detach();
+		if (c == null) {
+			return;
+		}
+		if (strategy == AmfConnectionStrategy.SHARED) {
+			pool.discard(c);
+		} else {
+			c.close();
+		}
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Request
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Encode the request line and the headers that do not change between requests to the
+	 * URL, unless they have already been encoded for it.  The header manager headers are
+	 * part of the block, and it is encoded again if their values change.
+	 */
+	private void createRequestHead(URL url) throws IOException {
+		HeaderManager headerManager = sampler.getHeaderManager();
+		boolean keepAlive = isKeepAlive();
+		if (requestHead != null && url.getPort() == requestPort && url.getProtocol().equals(requestProtocol)
+				&& url.getHost().equals(requestHost) && url.getFile().equals(requestFile)
+				&& headerManager == requestHeaderManager && keepAlive == requestKeepAlive
+				&& headerManagerMatches(headerManager)) {
+			return;
+		}
+
+		List<String[]> headers = createStaticRequestHeaders();
+		if (!keepAlive) {
+			setHeader(headers, HEADER_CONNECTION, CONNECTION_CLOSE);
+		}
+		int count = headerManager == null ? 0 : headerManager.getHeaders().size();
+		requestHeaderValues = new String[count][];
+		for (int i = 0; i < count; i++) {
+			Header header = headerManager.getHeader(i);
+			requestHeaderValues[i] = new String[] { header.getName(), header.getValue() };
+		}
+
+		String path = url.getFile();
+		StringBuilder sb = new StringBuilder(512);
+		sb.append("POST ").append(path.length() == 0 ? "/" : path).append(" HTTP/1.1\r\n"); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+		sb.append(HEADER_HOST).append(": ").append(url.getHost()); // $NON-NLS-1$
+		if (url.getPort() >= 0 && url.getPort() != url.getDefaultPort()) {
+			sb.append(':').append(url.getPort());
+		}
+		sb.append("\r\n"); // $NON-NLS-1$
+		for (String[] header : headers) {
+			sb.append(header[0]).append(": ").append(header[1]).append("\r\n"); // $NON-NLS-1$ $NON-NLS-2$
+		}
+		requestHead = ByteBuffer.wrap(sb.toString().getBytes(ENCODING));
+		requestHeadText = formatHeaders(headers);
+
+		requestProtocol = url.getProtocol();
+		requestHost = url.getHost();
+		requestPort = url.getPort();
+		requestFile = url.getFile();
+		requestHeaderManager = headerManager;
+		requestKeepAlive = keepAlive;
+	}
+
+	/**
+	 * @return true if the names and values of the header manager headers are those encoded
+	 * in the current request head.
+	 */
+	private boolean headerManagerMatches(HeaderManager headerManager) {
+		int count = headerManager == null ? 0 : headerManager.getHeaders().size();
+		if (count != requestHeaderValues.length) {
+			return false;
+		}
+		for (int i = 0; i < count; i++) {
+			Header header = headerManager.getHeader(i);
+			if (!header.getName().equals(requestHeaderValues[i][0]) || !header.getValue().equals(requestHeaderValues[i][1])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Encode the headers written for each request: the cookie and authorization headers,
+	 * if any, and Content-Length, which ends the request head.
+	 */
+	private void createRequestTail(URL url, int length) {
+		requestTailLength = 0;
+		requestTailText.setLength(0);
+		appendHeader(HEADER_COOKIE, getCookieHeader(url));
+		AuthManager authManager = sampler.getAuthManager();
+		if (authManager != null) {
+			appendHeader(HEADER_AUTHORIZATION, authManager.getAuthHeaderForURL(url));
+		}
+		appendAscii(HEADER_CONTENT_LENGTH);
+		requestTail[requestTailLength++] = ':';
+		requestTail[requestTailLength++] = ' ';
+		requestTailLength = appendDigits(requestTail, requestTailLength, length);
+		requestTail[requestTailLength++] = '\r';
+		requestTail[requestTailLength++] = '\n';
+		requestTail[requestTailLength++] = '\r';
+		requestTail[requestTailLength++] = '\n';
+		requestTailBuffer.clear().limit(requestTailLength);
+	}
+
+	private void appendHeader(String name, String value) {
+		if (value == null) {
+			return;
+		}
+		ensureTailCapacity(name.length() + value.length() + 4);
+		appendAscii(name);
+		requestTail[requestTailLength++] = ':';
+		requestTail[requestTailLength++] = ' ';
+		appendAscii(value);
+		requestTail[requestTailLength++] = '\r';
+		requestTail[requestTailLength++] = '\n';
+		requestTailText.append(name).append(": ").append(value).append('\n'); // $NON-NLS-1$
+	}
+
+	private void appendAscii(String value) {
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			requestTail[requestTailLength++] = (byte) (c > 0xff ? '?' : c);
+		}
+	}
+
+	/**
+	 * Make room in requestTail for the given number of bytes, and for the Content-Length
+	 * header and the empty line that follow.
+	 */
+	private void ensureTailCapacity(int length) {
+		int required = requestTailLength + length + HEADER_CONTENT_LENGTH.length() + 20;
+		if (required > requestTail.length) {
+			byte[] tail = new byte[Math.max(required, requestTail.length * 2)];
+			System.arraycopy(requestTail, 0, tail, 0, requestTailLength);
+			requestTail = tail;
+			requestTailBuffer = ByteBuffer.wrap(tail);
+		}
+	}
+
+	private void writeRequest(byte[] request) throws IOException {
+		requestHead.rewind();
+		requestTailBuffer.rewind();
+		if (channel != null) {
+			requestBuffers[0] = requestHead;
+			requestBuffers[1] = requestTailBuffer;
+			requestBuffers[2] = request == null ? null : ByteBuffer.wrap(request);
+			int count = request == null ? 2 : 3;
+			ByteBuffer last = requestBuffers[count - 1];
+			while (last.hasRemaining()) {
+				channel.write(requestBuffers, 0, count);
+			}
+			requestBuffers[2] = null;
+		} else {
+			out.write(requestHead.array(), 0, requestHead.limit());
+			out.write(requestTail, 0, requestTailLength);
+			if (request != null) {
+				out.write(request);
+			}
+			out.flush();
+		}
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Response
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Read the status line and headers of the response, skipping any interim (1xx)
+	 * responses, and set up the stream the body is read from.
+	 */
+	private void readResponseHead() throws IOException {
+		responseStarted = false;
+		do {
+			headLength = 0;
+			headerCount = 0;
+			readHead();
+			parseHead();
+		} while (statusCode >= 100 && statusCode < 200);
+
+		if (statusCode == 204 || statusCode == 304) {
+			bodyType = BODY_NONE;
+			contentLength = 0;
+		} else if (bodyType == BODY_NONE) {
+			// Neither chunked nor a Content-Length, the body is ended by the server closing the connection
+			bodyType = BODY_CLOSE;
+		}
+		body.start();
+	}
+
+	/**
+	 * Copy the response head, up to and including the empty line ending it, from the
+	 * connection to head.
+	 */
+	private void readHead() throws IOException {
+		int state = 0; // The number of consecutive line ends seen, ignoring CR
+		while (true) {
+			if (pos == limit && fill() < 0) {
+				throw new EOFException("Connection closed before the response was received");
+			}
+			responseStarted = true;
+			if (headLength == 0) {
+				// Skip any empty lines preceding the status line
+				while (pos < limit && (buf[pos] == '\r' || buf[pos] == '\n')) {
+					pos++;
+				}
+				if (pos == limit) {
+					continue;
+				}
+			}
+			int start = pos;
+			while (pos < limit && state < 2) {
+				byte b = buf[pos++];
+				if (b == '\n') {
+					state++;
+				} else if (b != '\r') {
+					state = 0;
+				}
+			}
+			int length = pos - start;
+			if (headLength + length > head.length) {
+				if (headLength + length > MAX_HEAD_SIZE) {
+					throw new IOException("Response head larger than " + MAX_HEAD_SIZE + " bytes");
+				}
+				byte[] copy = new byte[Math.min(MAX_HEAD_SIZE, Math.max(head.length * 2, headLength + length))];
+				System.arraycopy(head, 0, copy, 0, headLength);
+				head = copy;
+			}
+			System.arraycopy(buf, start, head, headLength, length);
+			headLength += length;
+			if (state == 2) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Parse the status line and headers in head, recording the offsets of each header and
+	 * the headers that determine how the body is read.
+	 */
+	private void parseHead() throws IOException {
+		statusLineEnd = lineEnd(0);
+		// HTTP-Version SP Status-Code SP Reason-Phrase
+		if (statusLineEnd < HTTP_VERSION.length + 5 || !regionMatches(head, 0, HTTP_VERSION)
+				|| head[HTTP_VERSION.length + 1] != ' ') {
+			throw new IOException("Invalid status line: " + string(head, 0, statusLineEnd));
+		}
+		http11 = head[HTTP_VERSION.length] == '1';
+		int offset = HTTP_VERSION.length + 2;
+		statusCode = 0;
+		for (int i = 0; i < 3; i++) {
+			int digit = head[offset + i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new IOException("Invalid status line: " + string(head, 0, statusLineEnd));
+			}
+			statusCode = statusCode * 10 + digit;
+		}
+		reasonStart = Math.min(offset + 4, statusLineEnd);
+
+		bodyType = BODY_NONE;
+		contentLength = -1;
+		connectionClose = false;
+		connectionKeepAlive = false;
+		int lineStart = nextLine(statusLineEnd);
+		while (lineStart < headLength) {
+			int end = lineEnd(lineStart);
+			if (end == lineStart) {
+				break;
+			}
+			int colon = lineStart;
+			while (colon < end && head[colon] != ':') {
+				colon++;
+			}
+			if (colon > lineStart && colon < end) {
+				int valueStart = colon + 1;
+				int valueEnd = end;
+				while (valueStart < valueEnd && isSpace(head[valueStart])) {
+					valueStart++;
+				}
+				while (valueEnd > valueStart && isSpace(head[valueEnd - 1])) {
+					valueEnd--;
+				}
+				int nameEnd = colon;
+				while (nameEnd > lineStart && isSpace(head[nameEnd - 1])) {
+					nameEnd--;
+				}
+				addHeader(lineStart, nameEnd, valueStart, valueEnd);
+			}
+			lineStart = nextLine(end);
+		}
+	}
+
+	private void addHeader(int nameStart, int nameEnd, int valueStart, int valueEnd) throws IOException {
+		int offset = headerCount * 4;
+		if (offset + 4 > headerOffsets.length) {
+			int[] copy = new int[headerOffsets.length * 2];
+			System.arraycopy(headerOffsets, 0, copy, 0, headerOffsets.length);
+			headerOffsets = copy;
+		}
+		headerOffsets[offset] = nameStart;
+		headerOffsets[offset + 1] = nameEnd;
+		headerOffsets[offset + 2] = valueStart;
+		headerOffsets[offset + 3] = valueEnd;
+		headerCount++;
+
+		if (equalsIgnoreCase(nameStart, nameEnd, TRANSFER_ENCODING)) {
+			if (containsIgnoreCase(valueStart, valueEnd, CHUNKED)) {
+				bodyType = BODY_CHUNKED;
+				contentLength = -1;
+			}
+		} else if (equalsIgnoreCase(nameStart, nameEnd, CONTENT_LENGTH)) {
+			if (bodyType != BODY_CHUNKED) {
+				contentLength = parseLong(valueStart, valueEnd, 10);
+				if (contentLength < 0) {
+					throw new IOException("Invalid Content-Length: " + string(head, valueStart, valueEnd));
+				}
+				bodyType = BODY_LENGTH;
+			}
+		} else if (equalsIgnoreCase(nameStart, nameEnd, CONNECTION)) {
+			connectionClose |= containsIgnoreCase(valueStart, valueEnd, CLOSE);
+			connectionKeepAlive |= containsIgnoreCase(valueStart, valueEnd, KEEP_ALIVE);
+		}
+	}
+
+	/**
+	 * @return true if the sampler uses keep alive and connections are not opened for
+	 * each request.
+	 */
+	private boolean isKeepAlive() {
+		return sampler.getUseKeepAlive() && strategy != AmfConnectionStrategy.REQUEST;
+	}
+
+	/**
+	 * @return true if the connection can be reused after this response: the response body
+	 * is delimited, and both the sampler and the server keep the connection alive.
+	 */
+	private boolean isPersistent() {
+		if (bodyType == BODY_CLOSE || !isKeepAlive() || connectionClose) {
+			return false;
+		}
+		return http11 || connectionKeepAlive;
+	}
+
+	/**
+	 * @return the index of the first header at or after from with the given name, or -1.
+	 */
+	private int indexOfHeader(String name, int from) {
+		int length = name.length();
+		for (int i = from; i < headerCount; i++) {
+			int start = headerOffsets[i * 4];
+			if (headerOffsets[i * 4 + 1] - start != length) {
+				continue;
+			}
+			int j = 0;
+			while (j < length && toLowerCase(head[start + j]) == Character.toLowerCase(name.charAt(j))) {
+				j++;
+			}
+			if (j == length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private String getHeaderValue(int index) {
+		return string(head, headerOffsets[index * 4 + 2], headerOffsets[index * 4 + 3]);
+	}
+
+	/**
+	 * Read more of the response into buf, discarding the bytes already consumed.
+	 *
+	 * @return the number of bytes read, or -1 at the end of the stream.
+	 */
+	private int fill() throws IOException {
+		if (pos == limit) {
+			pos = 0;
+			limit = 0;
+		}
+		int n = in.read(buf, limit, buf.length - limit);
+		if (n > 0) {
+			limit += n;
+		}
+		return n;
+	}
+
+	/**
+	 * Read a chunk size line from the connection.
+	 *
+	 * @return the hexadecimal chunk size at the start of the line.
+	 */
+	private long readChunkSize() throws IOException {
+		long value = 0;
+		int digits = 0;
+		boolean extension = false;
+		while (true) {
+			if (pos == limit && fill() < 0) {
+				throw new EOFException("Connection closed within a chunked response body");
+			}
+			byte b = buf[pos++];
+			if (b == '\n') {
+				if (digits == 0) {
+					throw new IOException("Invalid chunk size");
+				}
+				return value;
+			}
+			int digit = extension ? -1 : Character.digit((char) b, 16);
+			if (digit >= 0) {
+				value = (value << 4) + digit;
+				digits++;
+			} else {
+				// Chunk extensions, or the line end
+				extension = true;
+			}
+		}
+	}
+
+	/**
+	 * Read and discard a line from the connection, e.g. the CRLF ending a chunk or a trailer.
+	 *
+	 * @return true if the line was empty.
+	 */
+	private boolean skipLine() throws IOException {
+		boolean empty = true;
+		while (true) {
+			if (pos == limit && fill() < 0) {
+				throw new EOFException("Connection closed within a chunked response body");
+			}
+			byte b = buf[pos++];
+			if (b == '\n') {
+				return empty;
+			}
+			empty &= b == '\r';
+		}
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Response body
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Reads the body of the current response from buf and the connection, ending at the
+	 * end of the body.  Closing the stream reads and discards the remainder of the body,
+	 * leaving the connection at the start of the next response.
+	 */
+	private class BodyInputStream extends InputStream {
+
+		/**
+		 * The bytes of the body, or of the current chunk, not yet read.
+		 */
+		private long remaining = 0;
+
+		/**
+		 * Indicates whether a chunk has been read, and so is followed by a CRLF.
+		 */
+		private boolean chunk = false;
+
+		private boolean eof = false;
+
+		void start() {
+			remaining = bodyType == BODY_LENGTH ? contentLength : 0;
+			chunk = false;
+			eof = bodyType == BODY_NONE || (bodyType == BODY_LENGTH && contentLength == 0);
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!fillBody()) {
+				return -1;
+			}
+			consume(1);
+			return buf[pos - 1] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!fillBody()) {
+				return -1;
+			}
+			int n = Math.min(len, available());
+			System.arraycopy(buf, pos, b, off, n);
+			consume(n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			if (eof) {
+				return 0;
+			}
+			int n = limit - pos;
+			return bodyType == BODY_CLOSE ? n : (int) Math.min(n, remaining);
+		}
+
+		@Override
+		public void close() throws IOException {
+			while (fillBody()) {
+				consume(available());
+			}
+		}
+
+		private void consume(int n) {
+			pos += n;
+			if (bodyType != BODY_CLOSE) {
+				remaining -= n;
+			}
+		}
+
+		/**
+		 * Make at least one byte of the body available in buf, reading the next chunk
+		 * header if required.
+		 *
+		 * @return false at the end of the body.
+		 */
+		private boolean fillBody() throws IOException {
+			if (eof) {
+				return false;
+			}
+			if (remaining == 0 && bodyType != BODY_CLOSE) {
+				if (bodyType != BODY_CHUNKED || !nextChunk()) {
+					eof = true;
+					return false;
+				}
+			}
+			if (pos == limit && fill() < 0) {
+				eof = true;
+				if (bodyType == BODY_CLOSE) {
+					return false;
+				}
+				throw new EOFException("Connection closed with " + remaining + " bytes of the response body unread");
+			}
+			return true;
+		}
+
+		/**
+		 * Read the header of the next chunk, after the end of the previous one.
+		 *
+		 * @return false if it is the last chunk, whose trailers are then read.
+		 */
+		private boolean nextChunk() throws IOException {
+			if (chunk) {
+				skipLine();
+			}
+			chunk = true;
+			remaining = readChunkSize();
+			if (remaining > 0) {
+				return true;
+			}
+			// Trailers, ending with an empty line
+			while (!skipLine()) {
+				// Discarded
+			}
+			return false;
+		}
+
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Utilities
+	//
+	//--------------------------------------------------------------------------
+
+	private int lineEnd(int from) {
+		int i = from;
+		while (i < headLength && head[i] != '\n') {
+			i++;
+		}
+		return i > from && head[i - 1] == '\r' ? i - 1 : i;
+	}
+
+	private int nextLine(int lineEnd) {
+		int i = lineEnd;
+		if (i < headLength && head[i] == '\r') {
+			i++;
+		}
+		return i + 1;
+	}
+
+	private boolean equalsIgnoreCase(int start, int end, byte[] lowerCase) {
+		return end - start == lowerCase.length && regionMatchesIgnoreCase(start, lowerCase);
+	}
+
+	private boolean containsIgnoreCase(int start, int end, byte[] lowerCase) {
+		for (int i = start; i <= end - lowerCase.length; i++) {
+			if (regionMatchesIgnoreCase(i, lowerCase)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean regionMatchesIgnoreCase(int offset, byte[] lowerCase) {
+		for (int i = 0; i < lowerCase.length; i++) {
+			if (toLowerCase(head[offset + i]) != lowerCase[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long parseLong(int start, int end, int radix) {
+		if (start == end) {
+			return -1;
+		}
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = Character.digit((char) head[i], radix);
+			if (digit < 0) {
+				return -1;
+			}
+			value = value * radix + digit;
+		}
+		return value;
+	}
+
+	private static boolean regionMatches(byte[] data, int offset, byte[] pattern) {
+		for (int i = 0; i < pattern.length; i++) {
+			if (data[offset + i] != pattern[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t';
+	}
+
+	private static byte toLowerCase(byte b) {
+		return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+	}
+
+	private static int appendDigits(byte[] data, int offset, int value) {
+		if (value == 0) {
+			data[offset] = '0';
+			return offset + 1;
+		}
+		int digits = 0;
+		for (int v = value; v > 0; v /= 10) {
+			digits++;
+		}
+		for (int i = offset + digits - 1, v = value; i >= offset; i--, v /= 10) {
+			data[i] = (byte) ('0' + v % 10);
+		}
+		return offset + digits;
+	}
+
+	private static String string(byte[] data, int start, int end) {
+		try {
+			return new String(data, start, end - start, ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] ascii(String value) {
+		try {
+			return value.getBytes(ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] lowerCase(String value) {
+		return ascii(value.toLowerCase());
+	}
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.InputStream;
+
+/**
+ * An AmfMessageInterface that is able to decode a response directly from the
+ * HTTP response stream while it is being received, rather than from a complete
+ * copy of the response body.
+ *
+ */
+public interface AmfStreamingMessageInterface extends AmfMessageInterface {
+
+	/**
+	 * @return true if responses should be decoded from the response stream.
+	 */
+	public boolean isStreamingResponse();
+
+	/**
+	 * @return the maximum number of response bytes to keep as the sample response
+	 * data when streaming, 0 for none or AmfTeeInputStream.UNLIMITED.
+	 */
+	public int getResponseCopyLimit();
+
+	/**
+	 * Decode a response from the given stream.  The decoded response is held until
+	 * the next call to processResponse(), which processes it in place of the response
+	 * data contained within the SampleResult.  Any exception encountered while decoding
+	 * is also held and reported by processResponse().
+	 *
+	 * @param in the (decompressed) HTTP response body.
+	 */
+	public void decodeResponse(InputStream in);
+
+}
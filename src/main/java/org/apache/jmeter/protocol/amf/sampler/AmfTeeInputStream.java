@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that counts the bytes read from an underlying stream and keeps
+ * a copy of, at most, the first copyLimit bytes.  Used when decoding a response
+ * directly from the HTTP response stream, so that listeners can still be given
+ * the response data without holding a complete copy of large responses.
+ *
+ */
+public class AmfTeeInputStream extends FilterInputStream {
+
+    //--------------------------------------------------------------------------
+    // Public Static Variables
+    //--------------------------------------------------------------------------
+
+	/**
+	 * A copy limit indicating that all bytes read should be copied.
+	 */
+	public static final int UNLIMITED = -1;
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final int copyLimit;
+
+	private final AmfByteBuffer copy;
+
+	private long count = 0;
+
+	private final byte[] skipBuffer = new byte[4096];
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+	/**
+	 * @param in the stream to read from.
+	 * @param copyLimit the maximum number of bytes to copy, 0 for none or UNLIMITED.
+	 * @param expectedLength the content length of the stream, if known, used to size the copy.
+	 */
+	public AmfTeeInputStream(InputStream in, int copyLimit, int expectedLength) {
+		super(in);
+		this.copyLimit = copyLimit;
+		if (copyLimit == 0) {
+			copy = null;
+		} else {
+			int initialCapacity = expectedLength > 0 ? expectedLength : AmfByteBuffer.DEFAULT_CAPACITY;
+			if (copyLimit > 0) {
+				initialCapacity = Math.min(initialCapacity, copyLimit);
+			}
+			copy = new AmfByteBuffer(initialCapacity);
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if (b >= 0) {
+			count++;
+			if (copy != null && (copyLimit < 0 || copy.size() < copyLimit)) {
+				copy.append(b);
+			}
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = in.read(b, off, len);
+		if (n > 0) {
+			count += n;
+			if (copy != null) {
+				int length = copyLimit < 0 ? n : Math.min(n, copyLimit - copy.size());
+				if (length > 0) {
+					copy.append(b, off, length);
+				}
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		// Read rather than skip, so that skipped bytes are counted and copied
+		long skipped = 0;
+		while (skipped < n) {
+			int length = read(skipBuffer, 0, (int) Math.min(skipBuffer.length, n - skipped));
+			if (length < 0) {
+				break;
+			}
+			skipped += length;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * Read and discard any remaining bytes, so that the underlying connection can be reused.
+	 *
+	 * @return the number of bytes discarded.
+	 */
+	public long drain() throws IOException {
+		long drained = 0;
+		int length;
+		while ((length = read(skipBuffer, 0, skipBuffer.length)) >= 0) {
+			drained += length;
+		}
+		return drained;
+	}
+
+	/**
+	 * @return the total number of bytes read from the underlying stream.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return true if fewer bytes were copied than were read.
+	 */
+	public boolean isTruncated() {
+		return copy == null ? count > 0 : copy.size() < count;
+	}
+
+	/**
+	 * @return the bytes copied from the stream.
+	 */
+	public byte[] getCopy() {
+		return copy == null ? new byte[0] : copy.toByteArray();
+	}
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * Sends the serialized AMF requests of an AmfSampler to a server over HTTP.  A transport
+ * is created for each sampler thread by AmfTransportFactory, as selected by the "Transport"
+ * parameter of the sampler, and is only ever used by that thread.
+ * <p>
+ * For each sample the sampler calls execute(), reads the response body returned by
+ * getResponseBody(), calls complete() and finally release(), whether or not the sample
+ * succeeded.  close() is called when the thread finishes.
+ * <p>
+ * Implementations created by class name must have a public no-argument constructor.
+ *
+ */
+public interface AmfTransport {
+
+	/**
+	 * Called once, before the first request, with the sampler the transport sends requests
+	 * for.  The sampler provides the connection settings and the cookie, header and
+	 * authorization managers.
+	 */
+	public void setup(AmfSampler sampler);
+
+	/**
+	 * Send a request and read the response status and headers.  The transport records the
+	 * CONNECT and FIRST_BYTE phases, and the request headers, in the result.
+	 *
+	 * @param url the URL to POST the request to.
+	 * @param request the serialized AMF request.
+	 * @param result the result of the sample, whose sample time has been started.
+	 * @return the HTTP status code of the response.
+	 */
+	public int execute(URL url, byte[] request, AmfSampleResult result) throws IOException;
+
+	/**
+	 * @return the response body, as received (e.g. still gzip encoded), or null if there
+	 * is none.
+	 */
+	public InputStream getResponseBody() throws IOException;
+
+	/**
+	 * @return the content length of the response, or -1 if it is not known.
+	 */
+	public long getResponseContentLength();
+
+	/**
+	 * @return the value of the named response header, or null if there is none.
+	 */
+	public String getResponseHeader(String name);
+
+	/**
+	 * Complete the result after the response body has been read: the sample label, the
+	 * response message and headers, and any cookies received.
+	 */
+	public void complete(AmfSampleResult result) throws IOException;
+
+	/**
+	 * Release the resources of the current request, keeping the connection for the next
+	 * request if it can be reused.
+	 */
+	public void release();
+
+	/**
+	 * Abort the current request, if any.
+	 *
+	 * @return true if a request was aborted.
+	 */
+	public boolean interrupt();
+
+	/**
+	 * Close any connections held by the transport.
+	 */
+	public void close();
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+/**
+ * Factory to return the AmfTransport selected by the "Transport" parameter of an
+ * AMF request.
+ *
+ */
+public class AmfTransportFactory {
+
+    /** Apache Commons HttpClient 3.1, as used by HTTPSampler2 */
+    public static final String HTTPCLIENT = "httpclient"; //$NON-NLS-1$
+
+    /** The JDK java.net.HttpURLConnection */
+    public static final String URLCONNECTION = "urlconnection"; //$NON-NLS-1$
+
+    /** A minimal HTTP/1.1 client over a plain or SSL socket */
+    public static final String SOCKET = "socket"; //$NON-NLS-1$
+
+    /** The JDK java.net.http.HttpClient, only built by the virtual-threads profile */
+    public static final String JDK_HTTPCLIENT = "jdkhttpclient"; //$NON-NLS-1$
+
+    private static final String JDK_HTTPCLIENT_CLASS =
+    	"org.apache.jmeter.protocol.amf.sampler.AmfJdkHttpClientTransport"; //$NON-NLS-1$
+
+    public static final String DEFAULT_ALIAS = HTTPCLIENT;
+
+    private AmfTransportFactory() {
+        // Not intended to be instantiated
+    }
+
+    /**
+     * Create a new instance of the required transport
+     *
+     * @param alias HTTPCLIENT, URLCONNECTION, SOCKET, JDK_HTTPCLIENT or the name of a class
+     * implementing AmfTransport
+     * @return the appropriate transport
+     * @throws UnsupportedOperationException if alias is not recognised, or its class can
+     * not be loaded by this JVM
+     */
+    public static AmfTransport newInstance(String alias) {
+        alias = alias == null ? "" : alias.trim();
+        if (alias.length() == 0) {
+            alias = DEFAULT_ALIAS;
+        }
+        if (alias.equalsIgnoreCase(HTTPCLIENT)) {
+            return new AmfHttpClientTransport();
+        } else if (alias.equalsIgnoreCase(URLCONNECTION)) {
+            return new AmfUrlConnectionTransport();
+        } else if (alias.equalsIgnoreCase(SOCKET)) {
+            return new AmfSocketTransport();
+        } else if (alias.equalsIgnoreCase(JDK_HTTPCLIENT)) {
+            // Compiled from src/main/java11, so only referenced by name.  On an older JVM
+            // loading it fails with an UnsupportedClassVersionError or NoClassDefFoundError
+            try {
+                return (AmfTransport) Class.forName(JDK_HTTPCLIENT_CLASS).newInstance();
+            } catch (Exception e) {
+                throw new UnsupportedOperationException("The " + JDK_HTTPCLIENT
+                        + " transport requires Java 11 and a build with JDK 21", e);
+            } catch (LinkageError e) {
+                throw new UnsupportedOperationException("The " + JDK_HTTPCLIENT
+                        + " transport requires Java 11 and a build with JDK 21", e);
+            }
+        }
+        try {
+            Class<?> transportClass = Class.forName(alias, true, Thread.currentThread().getContextClassLoader());
+            return (AmfTransport) transportClass.newInstance();
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("Cannot create class: " + alias, e);
+        } catch (LinkageError e) {
+            throw new UnsupportedOperationException("Cannot create class: " + alias, e);
+        }
+    }
+
+}
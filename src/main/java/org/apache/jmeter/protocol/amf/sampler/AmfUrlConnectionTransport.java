@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An AmfTransport sending requests with the JDK java.net.HttpURLConnection.  Connections
+ * are kept alive, and shared between threads, by the JDK, as configured by the http.keepAlive
+ * and http.maxConnections system properties, and proxies are those of the JVM.
+ *
+ */
+public class AmfUrlConnectionTransport extends AmfAbstractTransport {
+
+	private static final String POST = "POST"; // $NON-NLS-1$
+
+	private volatile HttpURLConnection connection = null;
+
+	private int statusCode = -1;
+
+	private InputStream body = null;
+
+	/**
+	 * Indicates whether the connection may be kept alive once the response has been read.
+	 */
+	private boolean reusable = false;
+
+	public int execute(URL url, byte[] request, AmfSampleResult res) throws IOException {
+		reusable = false;
+		long connectStart = System.nanoTime();
+		List<String[]> headers = createRequestHeaders(url);
+		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		connection = conn;
+		conn.setRequestMethod(POST);
+		conn.setDoOutput(true);
+		conn.setUseCaches(false);
+		conn.setInstanceFollowRedirects(false);
+		if (sampler.getConnectTimeout() > 0) {
+			conn.setConnectTimeout(sampler.getConnectTimeout());
+		}
+		if (sampler.getResponseTimeout() > 0) {
+			conn.setReadTimeout(sampler.getResponseTimeout());
+		}
+		for (String[] header : headers) {
+			conn.setRequestProperty(header[0], header[1]);
+		}
+		conn.setFixedLengthStreamingMode(request == null ? 0 : request.length);
+		conn.connect();
+
+		long sendStart = System.nanoTime();
+		res.setPhaseNanos(AmfSamplePhase.CONNECT, sendStart - connectStart);
+		OutputStream out = conn.getOutputStream();
+		if (request != null) {
+			out.write(request);
+		}
+		out.close();
+		statusCode = conn.getResponseCode();
+		res.setPhaseNanos(AmfSamplePhase.FIRST_BYTE, System.nanoTime() - sendStart);
+
+		res.setRequestHeaders(formatHeaders(headers));
+		return statusCode;
+	}
+
+	public InputStream getResponseBody() throws IOException {
+		body = statusCode >= HttpURLConnection.HTTP_BAD_REQUEST ? connection.getErrorStream() : connection.getInputStream();
+		return body;
+	}
+
+	public long getResponseContentLength() {
+		return connection.getContentLength();
+	}
+
+	public String getResponseHeader(String name) {
+		return connection.getHeaderField(name);
+	}
+
+	public void complete(AmfSampleResult res) throws IOException {
+		res.setResponseMessage(connection.getResponseMessage());
+
+		// The status line has a null key, and is returned first by getHeaderField(0)
+		StringBuilder headers = new StringBuilder();
+		headers.append(connection.getHeaderField(0)).append('\n');
+		for (Map.Entry<String, List<String>> entry : connection.getHeaderFields().entrySet()) {
+			if (entry.getKey() == null) {
+				continue;
+			}
+			for (String value : entry.getValue()) {
+				headers.append(entry.getKey()).append(": ").append(value).append('\n'); // $NON-NLS-1$
+				if (HEADER_SET_COOKIE.equalsIgnoreCase(entry.getKey())) {
+					saveCookie(res.getURL(), value);
+				}
+			}
+		}
+		res.setResponseHeaders(headers.toString());
+		reusable = sampler.getUseKeepAlive();
+	}
+
+	public void release() {
+		HttpURLConnection conn = connection;
+		if (body != null) {
+			// Closing the fully read body returns the connection to the keep-alive cache
+			try {
+				body.close();
+			} catch (IOException ex) {
+				reusable = false;
+			}
+			body = null;
+		}
+		if (conn != null && !reusable) {
+			conn.disconnect();
+		}
+		connection = null;
+		statusCode = -1;
+	}
+
+	public boolean interrupt() {
+		HttpURLConnection conn = connection;
+		if (conn != null) {
+			conn.disconnect();
+		}
+		return conn != null;
+	}
+
+	public void close() {
+		// Idle connections are held, and closed, by the JDK keep-alive cache
+	}
+
+}
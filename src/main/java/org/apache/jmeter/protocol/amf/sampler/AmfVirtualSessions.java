@@ -0,0 +1,439 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+import org.HdrHistogram.SingleWriterRecorder;
+import org.apache.jmeter.protocol.http.control.AuthManager;
+import org.apache.jmeter.protocol.http.sampler.HTTPSampleResult;
+import org.apache.jmeter.threads.JMeterContext;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * Drives several virtual sessions from the thread of an AmfSampler.  Each virtual session
+ * behaves as a separate Flex client, with its own AmfMessageInterface instance, its own
+ * JMeter variables (see AmfSessionVariables), its own cookies and its own persistent
+ * connection, served by the I/O threads of the AmfNioEngine.
+ * <p>
+ * For each sample, the thread creates and sends the request of every session, then
+ * processes each response as it completes, so that the round trips of all the sessions
+ * overlap and a JMeter thread no longer waits on a single request.  Each session is
+ * reported as a sub-result of the sample, which fails if any session fails.
+ * <p>
+ * Responses are read in full before they are decoded, the HTTP Cookie Manager, proxy,
+ * cache and redirect settings of the sampler are not used, and only plain HTTP is
+ * supported.
+ *
+ */
+public class AmfVirtualSessions {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+	private static final String ENCODING = "ISO-8859-1"; // $NON-NLS-1$
+
+	private static final String METHOD = "POST"; // $NON-NLS-1$
+
+	private static final String HEADER_CONTENT_ENCODING = "Content-Encoding"; // $NON-NLS-1$
+
+	private static final String ENCODING_GZIP = "gzip"; // $NON-NLS-1$
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private final AmfSampler sampler;
+
+	private final Session[] sessions;
+
+	// The request line and the headers that do not change between requests, for requestUrl
+	private String requestUrl = null;
+	private byte[] requestHead = null;
+	private String requestHeadText = null;
+
+	// The address of the host and port of requestUrl, resolved once rather than by the reactor
+	private InetSocketAddress requestAddress = null;
+
+	//--------------------------------------------------------------------------
+	//
+	// Constructor
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Create the sessions, each with its own AmfMessageInterface set up from the
+	 * configuration of the sampler.
+	 *
+	 * @param sampler the sampler whose thread drives the sessions.
+	 * @param config the compiled parameters of the sampler.
+	 * @param count the number of sessions.
+	 */
+	AmfVirtualSessions(AmfSampler sampler, AmfSamplerConfig config, int count) throws IOException {
+		this.sampler = sampler;
+		AmfNioEngine engine = AmfNioEngine.getInstance();
+		JMeterContext threadContext = JMeterContextService.getContext();
+		JMeterVariables threadVariables = threadContext.getVariables();
+		sessions = new Session[count];
+		for (int i = 0; i < count; i++) {
+			Session session = new Session(i + 1, new AmfSessionVariables(threadVariables), config.forSession(),
+					engine.createConnection(sampler.getConnectTimeout(), sampler.getResponseTimeout()));
+			threadContext.setVariables(session.variables);
+			try {
+				session.request = sampler.createAmfRequest();
+				session.request.setupTest(session.config.createContext());
+			} finally {
+				threadContext.setVariables(threadVariables);
+			}
+			sessions[i] = session;
+		}
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Sampling
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Send a request for every session and process the responses as they complete.
+	 *
+	 * @param latencyRecorder the recorder of the latency of each session, or null.
+	 * @param phaseTimings true if the phase times of each session are stored in its variables.
+	 * @return the result of the sample, with a sub-result for each session.
+	 */
+	AmfSampleResult sample(SingleWriterRecorder latencyRecorder, boolean phaseTimings) {
+		AmfSampleResult result = new AmfSampleResult();
+		result.setSampleLabel(sampler.getName());
+		result.setHTTPMethod(METHOD);
+		result.setDataType(HTTPSampleResult.TEXT);
+		result.sampleStart();
+
+		URL url;
+		try {
+			url = sampler.getUrl();
+			result.setURL(url);
+			createRequestHead(url);
+		} catch (MalformedURLException ex) {
+			result.sampleEnd();
+			return (AmfSampleResult) sampler.errorHttpResult(ex, result);
+		} catch (UnknownHostException ex) {
+			result.sampleEnd();
+			return (AmfSampleResult) sampler.errorHttpResult(ex, result);
+		} catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+
+		JMeterContext threadContext = JMeterContextService.getContext();
+		JMeterVariables threadVariables = threadContext.getVariables();
+		HTTPSampleResult[] subResults = new HTTPSampleResult[sessions.length];
+		// A queue per sample, so that exchanges failed by an interrupt are not taken by the next sample
+		BlockingQueue<AmfNioExchange> completions = new LinkedBlockingQueue<AmfNioExchange>();
+		int pending = 0;
+		try {
+			for (Session session : sessions) {
+				threadContext.setVariables(session.variables);
+				try {
+					session.send(url, completions);
+					pending++;
+				} catch (UnsupportedEncodingException ex) {
+					throw new IllegalStateException(ex);
+				} catch (RuntimeException ex) {
+					log.error(sampler.getName() + "\tUnable to send the request of virtual session " + session.number, ex);
+					session.request.close();
+				} finally {
+					threadContext.setVariables(threadVariables);
+				}
+			}
+			while (pending > 0) {
+				AmfNioExchange exchange = completions.take();
+				pending--;
+				Session session = (Session) exchange.getAttachment();
+				threadContext.setVariables(session.variables);
+				try {
+					subResults[session.number - 1] = session.receive(exchange, latencyRecorder, phaseTimings);
+				} finally {
+					threadContext.setVariables(threadVariables);
+				}
+			}
+		} catch (InterruptedException ex) {
+			log.warn(sampler.getName() + "\tInterrupted waiting for " + pending + " virtual sessions");
+			interrupt();
+			Thread.currentThread().interrupt();
+		}
+		result.sampleEnd();
+		addSubResults(sampler, result, subResults);
+		return result;
+	}
+
+	/**
+	 * Add the result of each session to the result of the sample, which only succeeds
+	 * if every session succeeded.  A session without a result is reported as failed.
+	 */
+	static void addSubResults(AmfSampler sampler, AmfSampleResult result, HTTPSampleResult[] subResults) {
+		int failed = 0;
+		String failedCode = null;
+		for (int i = 0; i < subResults.length; i++) {
+			HTTPSampleResult subResult = subResults[i];
+			if (subResult == null) {
+				subResult = new AmfSampleResult();
+				subResult.setSampleLabel(sampler.getName() + "-" + (i + 1));
+				subResult.setResponseMessage("No response");
+				subResult.setSuccessful(false);
+			}
+			if (!subResult.isSuccessful()) {
+				failed++;
+				if (failedCode == null) {
+					failedCode = subResult.getResponseCode();
+				}
+			}
+			result.addSubResult(subResult);
+		}
+		result.setSuccessful(failed == 0);
+		result.setResponseCode(failed == 0 ? AmfSampler.RESPONSE_CODE_200 : failedCode);
+		result.setResponseMessage(failed + " of " + subResults.length + " virtual sessions failed");
+	}
+
+	/**
+	 * Fail the exchanges in progress, and close the connections of the sessions.
+	 */
+	boolean interrupt() {
+		for (Session session : sessions) {
+			session.connection.cancel();
+		}
+		return true;
+	}
+
+	/**
+	 * Close the connections of the sessions as the thread finishes.
+	 */
+	void close() {
+		for (Session session : sessions) {
+			session.connection.close();
+		}
+	}
+
+	/**
+	 * Encode the request line and the headers that do not change between requests to the
+	 * URL, and resolve the address of its host, unless they have already been done for it.
+	 *
+	 * @throws UnknownHostException if the host of the URL can not be resolved.
+	 */
+	private void createRequestHead(URL url) throws UnsupportedEncodingException, UnknownHostException {
+		String urlText = url.toString();
+		if (requestHead != null && urlText.equals(requestUrl)) {
+			return;
+		}
+		int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+		InetSocketAddress address = new InetSocketAddress(url.getHost(), port);
+		if (address.isUnresolved()) {
+			throw new UnknownHostException(url.getHost());
+		}
+		List<String[]> headers = AmfAbstractTransport.createStaticRequestHeaders(sampler);
+		String path = url.getFile();
+		StringBuilder sb = new StringBuilder(512);
+		sb.append(METHOD).append(' ').append(path.length() == 0 ? "/" : path).append(" HTTP/1.1\r\n"); // $NON-NLS-1$ $NON-NLS-2$
+		sb.append("Host: ").append(url.getHost()); // $NON-NLS-1$
+		if (url.getPort() >= 0 && url.getPort() != url.getDefaultPort()) {
+			sb.append(':').append(url.getPort());
+		}
+		sb.append("\r\n"); // $NON-NLS-1$
+		for (String[] header : headers) {
+			sb.append(header[0]).append(": ").append(header[1]).append("\r\n"); // $NON-NLS-1$ $NON-NLS-2$
+		}
+		requestHead = sb.toString().getBytes(ENCODING);
+		requestHeadText = AmfAbstractTransport.formatHeaders(headers);
+		requestAddress = address;
+		requestUrl = urlText;
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Session
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * A virtual session, only used by the thread of the sampler.
+	 */
+	private class Session {
+
+		private final int number;
+
+		private final AmfSessionVariables variables;
+
+		/**
+		 * The parameters of the session, evaluated with its own functions and variables.
+		 */
+		private final AmfSamplerConfig config;
+
+		private final AmfNioConnection connection;
+
+		private AmfMessageInterface request = null;
+
+		private final AmfCookieJar cookies = new AmfCookieJar();
+
+		private byte[] amfRequest = null;
+
+		private long serializeNanos = 0;
+
+		Session(int number, AmfSessionVariables variables, AmfSamplerConfig config, AmfNioConnection connection) {
+			this.number = number;
+			this.variables = variables;
+			this.config = config;
+			this.connection = connection;
+		}
+
+		/**
+		 * Create the request of the session and send it, with the thread's variables
+		 * replaced by those of the session.
+		 */
+		void send(URL url, BlockingQueue<AmfNioExchange> completions) throws UnsupportedEncodingException {
+			request.open();
+			long serializeStart = System.nanoTime();
+			amfRequest = request.createRequest(config.createContext());
+			serializeNanos = System.nanoTime() - serializeStart;
+			if (amfRequest == null) {
+				amfRequest = new byte[0];
+			}
+
+			StringBuilder tail = new StringBuilder(128);
+			String cookieHeader = cookies.getCookieHeader();
+			if (cookieHeader != null) {
+				tail.append(AmfAbstractTransport.HEADER_COOKIE).append(": ").append(cookieHeader).append("\r\n"); // $NON-NLS-1$ $NON-NLS-2$
+			}
+			AuthManager authManager = sampler.getAuthManager();
+			String authorization = authManager == null ? null : authManager.getAuthHeaderForURL(url);
+			if (authorization != null) {
+				tail.append(AmfAbstractTransport.HEADER_AUTHORIZATION).append(": ").append(authorization).append("\r\n"); // $NON-NLS-1$ $NON-NLS-2$
+			}
+			tail.append(AmfAbstractTransport.HEADER_CONTENT_LENGTH).append(": ").append(amfRequest.length).append("\r\n\r\n"); // $NON-NLS-1$ $NON-NLS-2$
+
+			ByteBuffer[] buffers = {
+				ByteBuffer.wrap(requestHead),
+				ByteBuffer.wrap(tail.toString().getBytes(ENCODING)),
+				ByteBuffer.wrap(amfRequest)
+			};
+			connection.send(new AmfNioExchange(this, url, requestAddress, buffers, completions));
+		}
+
+		/**
+		 * Process the completed exchange of the session, with the thread's variables
+		 * replaced by those of the session.
+		 *
+		 * @return the result of the session.
+		 */
+		HTTPSampleResult receive(AmfNioExchange exchange, SingleWriterRecorder latencyRecorder, boolean phaseTimings) {
+			AmfSampleResult res = new AmfSampleResult();
+			res.setSampleLabel(sampler.getName() + "-" + number);
+			res.setHTTPMethod(METHOD);
+			res.setURL(exchange.getURL());
+			res.setAmfRequest(amfRequest);
+			res.setStampAndTime(exchange.getStartTime(), exchange.getElapsedNanos() / 1000000L);
+			res.setPhaseNanos(AmfSamplePhase.SERIALIZE, serializeNanos);
+			res.setPhaseNanos(AmfSamplePhase.CONNECT, exchange.getConnectNanos());
+			res.setPhaseNanos(AmfSamplePhase.FIRST_BYTE, exchange.getFirstByteNanos());
+			res.setPhaseNanos(AmfSamplePhase.TRANSFER, exchange.getTransferNanos());
+			res.setLatency(exchange.getLatencyNanos() / 1000000L);
+			res.setConnectionReused(exchange.isConnectionReused());
+			res.setRequestHeaders(requestHeadText);
+			amfRequest = null;
+
+			HTTPSampleResult result = res;
+			try {
+				if (exchange.getException() != null) {
+					result = sampler.errorHttpResult(exchange.getException(), res);
+					return result;
+				}
+				int statusCode = exchange.getStatusCode();
+				res.setResponseCode(Integer.toString(statusCode));
+				res.setResponseMessage(exchange.getReasonPhrase());
+				res.setSuccessful(sampler.isSuccessStatus(statusCode));
+				res.setResponseHeaders(exchange.getStatusLine() + "\n" // $NON-NLS-1$
+						+ AmfAbstractTransport.formatHeaders(exchange.getResponseHeaders()));
+				String ct = exchange.getResponseHeader(AmfAbstractTransport.HEADER_CONTENT_TYPE);
+				if (ct != null) {
+					res.setContentType(ct);
+					res.setEncodingAndType(ct);
+				}
+				for (String[] header : exchange.getResponseHeaders()) {
+					if (AmfAbstractTransport.HEADER_SET_COOKIE.equalsIgnoreCase(header[0])) {
+						cookies.save(header[1]);
+					}
+				}
+
+				AmfByteBuffer body = exchange.getResponseBody();
+				res.setBytes(body.size());
+				if (ENCODING_GZIP.equals(exchange.getResponseHeader(HEADER_CONTENT_ENCODING))) {
+					long inflateStart = System.nanoTime();
+					res.setResponseData(inflate(body));
+					res.setPhaseNanos(AmfSamplePhase.INFLATE, System.nanoTime() - inflateStart);
+				} else {
+					res.setResponseData(body.toByteArray());
+				}
+
+				if (statusCode == 200) {
+					long decodeStart = System.nanoTime();
+					request.processResponse(res);
+					res.setPhaseNanos(AmfSamplePhase.DECODE, System.nanoTime() - decodeStart);
+				}
+			} catch (IOException ex) {
+				result = sampler.errorHttpResult(ex, res);
+			} finally {
+				request.close();
+				if (latencyRecorder != null) {
+					latencyRecorder.recordValue(exchange.getElapsedNanos() / 1000);
+				}
+				if (phaseTimings) {
+					res.putPhaseVariables(variables);
+				}
+			}
+			return result;
+		}
+
+		private byte[] inflate(AmfByteBuffer body) throws IOException {
+			InputStream in = new GZIPInputStream(new ByteArrayInputStream(body.getBuffer(), 0, body.size()));
+			try {
+				AmfByteBuffer inflated = new AmfByteBuffer(Math.max(AmfByteBuffer.DEFAULT_CAPACITY, body.size() * 4));
+				byte[] buffer = new byte[4096];
+				int n;
+				while ((n = in.read(buffer)) >= 0) {
+					inflated.append(buffer, 0, n);
+				}
+				return inflated.toByteArray();
+			} finally {
+				in.close();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.lang.reflect.Method;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * Creates the threads of AmfSessionThreads: virtual threads when the JVM provides them
+ * (Java 21 or later), otherwise daemon platform threads.  Virtual threads are created by
+ * reflection, so that the sampler still builds and runs on the Java versions supported
+ * by JMeter.
+ *
+ */
+public final class AmfVirtualThreads {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+	// Thread.ofVirtual(), Thread.Builder.name(String) and Thread.Builder.unstarted(Runnable)
+	private static final Method ofVirtual;
+	private static final Method builderName;
+	private static final Method builderUnstarted;
+
+	static {
+		Method ofVirtualMethod = null;
+		Method nameMethod = null;
+		Method unstartedMethod = null;
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder"); // $NON-NLS-1$
+			ofVirtualMethod = Thread.class.getMethod("ofVirtual"); // $NON-NLS-1$
+			nameMethod = builderClass.getMethod("name", String.class); // $NON-NLS-1$
+			unstartedMethod = builderClass.getMethod("unstarted", Runnable.class); // $NON-NLS-1$
+			// Java 19 and 20 only provide virtual threads as a preview feature
+			ofVirtualMethod.invoke(null);
+		} catch (Exception ex) {
+			ofVirtualMethod = null;
+		}
+		ofVirtual = ofVirtualMethod;
+		builderName = nameMethod;
+		builderUnstarted = unstartedMethod;
+	}
+
+	private AmfVirtualThreads() {
+	}
+
+	/**
+	 * @return true if the JVM provides virtual threads.
+	 */
+	public static boolean isSupported() {
+		return ofVirtual != null;
+	}
+
+	/**
+	 * Create an unstarted thread, a virtual thread if they are supported.
+	 *
+	 * @param name the name of the thread.
+	 * @param task the task run by the thread.
+	 * @return the thread.
+	 */
+	public static Thread newThread(String name, Runnable task) {
+		if (ofVirtual != null) {
+			try {
+				Object builder = builderName.invoke(ofVirtual.invoke(null), name);
+				return (Thread) builderUnstarted.invoke(builder, task);
+			} catch (Exception ex) {
+				log.warn("Unable to create a virtual thread, using a platform thread.", ex);
+			}
+		}
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+}
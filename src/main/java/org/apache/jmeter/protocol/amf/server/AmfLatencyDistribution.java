@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.server;
+
+import java.util.Random;
+
+/**
+ * A distribution of the latency added by the AmfStandInServer before responding to
+ * a request.  A distribution is given as a specification of the form:
+ * <ul>
+ * <li>fixed:ms - always ms milliseconds, fixed:0 adds no latency</li>
+ * <li>uniform:min-max - uniformly distributed between min and max milliseconds</li>
+ * <li>exponential:mean - exponentially distributed with the given mean milliseconds</li>
+ * <li>normal:mean,stddev - normally distributed, latencies below zero are treated as zero</li>
+ * </ul>
+ * Millisecond values may be fractional.
+ *
+ */
+public abstract class AmfLatencyDistribution {
+
+    //--------------------------------------------------------------------------
+    // Public Static Variables
+    //--------------------------------------------------------------------------
+
+	/**
+	 * A distribution that adds no latency.
+	 */
+	public static final AmfLatencyDistribution NONE = new Fixed(0);
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+	private static final double NANOS_PER_MILLI = 1000000d;
+
+	//--------------------------------------------------------------------------
+	//
+	// Public Methods
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * @param random the source of randomness, owned by the calling thread.
+	 * @return the next latency, in nanoseconds.
+	 */
+	public abstract long nextDelay(Random random);
+
+	/**
+	 * Parse a latency distribution specification.
+	 *
+	 * @param spec the specification, as described above.
+	 * @return the distribution.
+	 * @throws IllegalArgumentException if the specification is invalid.
+	 */
+	public static AmfLatencyDistribution parse(String spec) {
+		if (spec == null || spec.trim().length() == 0) {
+			return NONE;
+		}
+		String value = spec.trim();
+		int colon = value.indexOf(':');
+		if (colon < 0) {
+			throw new IllegalArgumentException("Invalid latency distribution '" + spec
+					+ "', expected fixed:ms, uniform:min-max, exponential:mean or normal:mean,stddev");
+		}
+		String type = value.substring(0, colon).trim().toLowerCase();
+		// Only a uniform range is split on '-', and never on the sign of an exponent such as 1e-3
+		String[] args = value.substring(colon + 1).split("uniform".equals(type) ? "(?<![eE])-" : ","); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+		try {
+			if ("fixed".equals(type) && args.length == 1) { // $NON-NLS-1$
+				return new Fixed(millis(args[0]));
+			} else if ("uniform".equals(type) && args.length == 2) { // $NON-NLS-1$
+				double min = millis(args[0]);
+				double max = millis(args[1]);
+				if (max < min) {
+					throw new IllegalArgumentException("Invalid latency distribution '" + spec + "', max is less than min");
+				}
+				return new Uniform(min, max);
+			} else if ("exponential".equals(type) && args.length == 1) { // $NON-NLS-1$
+				return new Exponential(millis(args[0]));
+			} else if ("normal".equals(type) && args.length == 2) { // $NON-NLS-1$
+				return new Normal(millis(args[0]), millis(args[1]));
+			}
+		} catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("Invalid latency distribution '" + spec + "': " + ex.getMessage());
+		}
+		throw new IllegalArgumentException("Invalid latency distribution '" + spec + "'");
+	}
+
+	private static double millis(String value) {
+		double millis = Double.parseDouble(value.trim());
+		if (millis < 0 || Double.isNaN(millis) || Double.isInfinite(millis)) {
+			throw new NumberFormatException("invalid milliseconds " + value.trim());
+		}
+		return millis;
+	}
+
+	private static long toNanos(double millis) {
+		return millis <= 0 ? 0 : (long) (millis * NANOS_PER_MILLI);
+	}
+
+	//--------------------------------------------------------------------------
+	//
+	// Distributions
+	//
+	//--------------------------------------------------------------------------
+
+	private static class Fixed extends AmfLatencyDistribution {
+		private final double millis;
+		private final long nanos;
+
+		Fixed(double millis) {
+			this.millis = millis;
+			this.nanos = toNanos(millis);
+		}
+
+		public long nextDelay(Random random) {
+			return nanos;
+		}
+
+		public String toString() {
+			return "fixed:" + millis; // $NON-NLS-1$
+		}
+	}
+
+	private static class Uniform extends AmfLatencyDistribution {
+		private final double min;
+		private final double max;
+
+		Uniform(double min, double max) {
+			this.min = min;
+			this.max = max;
+		}
+
+		public long nextDelay(Random random) {
+			return toNanos(min + random.nextDouble() * (max - min));
+		}
+
+		public String toString() {
+			return "uniform:" + min + "-" + max; // $NON-NLS-1$ $NON-NLS-2$
+		}
+	}
+
+	private static class Exponential extends AmfLatencyDistribution {
+		private final double mean;
+
+		Exponential(double mean) {
+			this.mean = mean;
+		}
+
+		public long nextDelay(Random random) {
+			// 1 - nextDouble() is in (0, 1], avoiding log(0)
+			return toNanos(-mean * Math.log(1d - random.nextDouble()));
+		}
+
+		public String toString() {
+			return "exponential:" + mean; // $NON-NLS-1$
+		}
+	}
+
+	private static class Normal extends AmfLatencyDistribution {
+		private final double mean;
+		private final double stddev;
+
+		Normal(double mean, double stddev) {
+			this.mean = mean;
+			this.stddev = stddev;
+		}
+
+		public long nextDelay(Random random) {
+			return toNanos(mean + random.nextGaussian() * stddev);
+		}
+
+		public String toString() {
+			return "normal:" + mean + "," + stddev; // $NON-NLS-1$ $NON-NLS-2$
+		}
+	}
+
+}
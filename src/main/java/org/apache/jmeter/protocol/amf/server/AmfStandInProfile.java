@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.server;
+
+import java.util.Date;
+
+import flex.messaging.io.ArrayCollection;
+import flex.messaging.io.amf.ASObject;
+
+/**
+ * The response profile of an AmfStandInServer: the body returned for each
+ * RemotingMessage, the latency added before responding and the proportion of
+ * RemotingMessages answered with an ErrorMessage.
+ * <p>
+ * A profile can be parsed from name=value options:
+ * <ul>
+ * <li>payload=bytes - approximate size of the result body, default 256</li>
+ * <li>rows=n - 0 to return a String of the payload size, otherwise an ArrayCollection of
+ * n objects, each with id, name, value, active and created properties, default 0</li>
+ * <li>latency=distribution - as parsed by AmfLatencyDistribution, default fixed:0</li>
+ * <li>errors=rate - proportion of RemotingMessages answered with an ErrorMessage, 0 to 1, default 0</li>
+ * <li>small-messages=true|false - send AcknowledgeMessageExt, as BlazeDS does for clients
+ * that support small messages, default false</li>
+ * <li>seed=n - seed for the latency and error random number generators, default random</li>
+ * </ul>
+ *
+ */
+public class AmfStandInProfile {
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+	private static final int DEFAULT_PAYLOAD_SIZE = 256;
+
+	/**
+	 * The approximate serialized size of each row other than its name.
+	 */
+	private static final int ROW_OVERHEAD = 32;
+
+	/**
+	 * The created date of the first row, a fixed value so that the payload is the same
+	 * on every run.
+	 */
+	private static final long ROW_BASE_TIME = 1262304000000L;
+
+	private static final char[] PAYLOAD_CHARS = "abcdefghijklmnopqrstuvwxyz".toCharArray(); // $NON-NLS-1$
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+	private int payloadSize = DEFAULT_PAYLOAD_SIZE;
+
+	private int rows = 0;
+
+	private AmfLatencyDistribution latency = AmfLatencyDistribution.NONE;
+
+	private double errorRate = 0;
+
+	private boolean smallMessages = false;
+
+	private Long seed = null;
+
+	//--------------------------------------------------------------------------
+	//
+	// Public Methods
+	//
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Parse a profile from name=value options, as described above.
+	 *
+	 * @param options the options.
+	 * @return the profile.
+	 * @throws IllegalArgumentException if an option is unknown or invalid.
+	 */
+	public static AmfStandInProfile parse(String[] options) {
+		AmfStandInProfile profile = new AmfStandInProfile();
+		for (String option : options) {
+			int equals = option.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Invalid option '" + option + "', expected name=value");
+			}
+			String name = option.substring(0, equals).trim();
+			String value = option.substring(equals + 1).trim();
+			try {
+				if ("payload".equals(name)) { // $NON-NLS-1$
+					profile.setPayloadSize(Integer.parseInt(value));
+				} else if ("rows".equals(name)) { // $NON-NLS-1$
+					profile.setRows(Integer.parseInt(value));
+				} else if ("latency".equals(name)) { // $NON-NLS-1$
+					profile.setLatency(AmfLatencyDistribution.parse(value));
+				} else if ("errors".equals(name)) { // $NON-NLS-1$
+					profile.setErrorRate(Double.parseDouble(value));
+				} else if ("small-messages".equals(name)) { // $NON-NLS-1$
+					profile.setSmallMessages(Boolean.valueOf(value).booleanValue());
+				} else if ("seed".equals(name)) { // $NON-NLS-1$
+					profile.setSeed(Long.valueOf(value));
+				} else {
+					throw new IllegalArgumentException("Unknown option '" + name + "'");
+				}
+			} catch (NumberFormatException ex) {
+				throw new IllegalArgumentException("Invalid value for option '" + name + "': " + value);
+			}
+		}
+		return profile;
+	}
+
+	/**
+	 * Create the result body returned for each RemotingMessage.  The body is the same
+	 * for every call to this method with the same payload size and rows.
+	 *
+	 * @return a String, or an ArrayCollection of ASObjects.
+	 */
+	public Object createPayload() {
+		if (rows <= 0) {
+			return createString(0, payloadSize);
+		}
+		ArrayCollection list = new ArrayCollection();
+		int nameLength = Math.max(1, payloadSize / rows - ROW_OVERHEAD);
+		for (int i = 0; i < rows; i++) {
+			ASObject row = new ASObject();
+			row.put("id", Integer.valueOf(i)); // $NON-NLS-1$
+			// Names differ by row so that they are not sent as AMF string references
+			row.put("name", createString(i, nameLength)); // $NON-NLS-1$
+			row.put("value", Double.valueOf(i * 1.5d)); // $NON-NLS-1$
+			row.put("active", Boolean.valueOf(i % 2 == 0)); // $NON-NLS-1$
+			row.put("created", new Date(ROW_BASE_TIME + i * 1000L)); // $NON-NLS-1$
+			list.add(row);
+		}
+		return list;
+	}
+
+	private static String createString(int index, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = PAYLOAD_CHARS[i % PAYLOAD_CHARS.length];
+		}
+		String prefix = Integer.toString(index);
+		if (index > 0 && prefix.length() <= length) {
+			prefix.getChars(0, prefix.length(), chars, 0);
+		}
+		return new String(chars);
+	}
+
+	public int getPayloadSize() {
+		return payloadSize;
+	}
+
+	public void setPayloadSize(int payloadSize) {
+		if (payloadSize < 0) {
+			throw new IllegalArgumentException("Payload size must not be negative: " + payloadSize);
+		}
+		this.payloadSize = payloadSize;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public void setRows(int rows) {
+		if (rows < 0) {
+			throw new IllegalArgumentException("Rows must not be negative: " + rows);
+		}
+		this.rows = rows;
+	}
+
+	public AmfLatencyDistribution getLatency() {
+		return latency;
+	}
+
+	public void setLatency(AmfLatencyDistribution latency) {
+		this.latency = latency == null ? AmfLatencyDistribution.NONE : latency;
+	}
+
+	public double getErrorRate() {
+		return errorRate;
+	}
+
+	public void setErrorRate(double errorRate) {
+		if (!(errorRate >= 0 && errorRate <= 1)) {
+			throw new IllegalArgumentException("Error rate must be between 0 and 1: " + errorRate);
+		}
+		this.errorRate = errorRate;
+	}
+
+	public boolean isSmallMessages() {
+		return smallMessages;
+	}
+
+	public void setSmallMessages(boolean smallMessages) {
+		this.smallMessages = smallMessages;
+	}
+
+	/**
+	 * @return the random number generator seed, or null if the generators are seeded randomly.
+	 */
+	public Long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(Long seed) {
+		this.seed = seed;
+	}
+
+	public String toString() {
+		return "payload=" + payloadSize + " rows=" + rows + " latency=" + latency // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+			+ " errors=" + errorRate + " small-messages=" + smallMessages // $NON-NLS-1$ $NON-NLS-2$
+			+ (seed == null ? "" : " seed=" + seed); // $NON-NLS-1$ $NON-NLS-2$
+	}
+
+}
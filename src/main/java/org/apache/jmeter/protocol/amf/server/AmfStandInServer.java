@@ -0,0 +1,379 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jmeter.protocol.amf.sampler.AmfMessageHelper;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.MessageBody;
+import flex.messaging.messages.AcknowledgeMessage;
+import flex.messaging.messages.AcknowledgeMessageExt;
+import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.ErrorMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.messages.RemotingMessage;
+
+/**
+ * A stand-in for a BlazeDS AMF endpoint, run in-process on the loopback interface,
+ * for measuring the throughput of the AMF Request sampler itself and for comparing
+ * changes to the sampler against a known response profile without an application server.
+ * <p>
+ * Requests are decoded with AmfMessageHelper and each message body is answered in turn:
+ * <ul>
+ * <li>CommandMessages, e.g. the client ping, with an AcknowledgeMessage.</li>
+ * <li>RemotingMessages with an AcknowledgeMessage holding the payload of the
+ * AmfStandInProfile, or with an ErrorMessage at the error rate of the profile.</li>
+ * <li>Other messages with an empty AcknowledgeMessage.</li>
+ * </ul>
+ * Every acknowledgement carries a DSId header, echoing the DSId of the request or, if it
+ * has none, a new Flex client id.  The latency of the profile is added once per request.
+ * <p>
+ * Usage: java org.apache.jmeter.protocol.amf.server.AmfStandInServer port [name=value...]
+ * <br>
+ * e.g. java ... AmfStandInServer 8400 payload=4096 rows=20 latency=uniform:1-5 errors=0.01
+ *
+ */
+public class AmfStandInServer {
+
+    //--------------------------------------------------------------------------
+    // Public Static Variables
+    //--------------------------------------------------------------------------
+
+	/**
+	 * The path of the endpoint returned by getUrl(), the default BlazeDS AMF channel path.
+	 * Requests to any path are answered.
+	 */
+	public static final String DEFAULT_PATH = "/messagebroker/amf"; // $NON-NLS-1$
+
+	public static final String ERROR_FAULT_CODE = "Server.StandIn.Error"; // $NON-NLS-1$
+
+    //--------------------------------------------------------------------------
+    // Private Static Variables
+    //--------------------------------------------------------------------------
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final String AMF_CONTENT_TYPE = "application/x-amf"; // $NON-NLS-1$
+
+    private static final String LOOPBACK_HOST = "127.0.0.1"; // $NON-NLS-1$
+
+    private static final String NULL_RESPONSE_URI = "null"; // $NON-NLS-1$
+
+    private static final String NIL_FLEX_CLIENT_ID = "nil"; // $NON-NLS-1$
+
+    //--------------------------------------------------------------------------
+    // Private Variables
+    //--------------------------------------------------------------------------
+
+    private final int port;
+
+    private final AmfStandInProfile profile;
+
+    /**
+     * The result body, shared by all responses.
+     */
+    private final Object payload;
+
+    private final AtomicInteger randomCount = new AtomicInteger();
+
+    private final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+    	@Override
+    	protected Random initialValue() {
+    		Long seed = profile.getSeed();
+    		return seed == null ? new Random() : new Random(seed.longValue() + randomCount.getAndIncrement());
+    	}
+    };
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong clients = new AtomicLong();
+
+    private HttpServer server = null;
+
+    private ExecutorService executor = null;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * @param port the loopback port to listen on, 0 for any free port.
+     * @param profile the response profile.
+     */
+    public AmfStandInServer(int port, AmfStandInProfile profile) {
+    	this.port = port;
+    	this.profile = profile;
+    	this.payload = profile.createPayload();
+    }
+
+    /**
+     * Start accepting connections.
+     */
+    public synchronized void start() throws IOException {
+    	server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(null), port), 0);
+    	server.createContext("/", new HttpHandler() { // $NON-NLS-1$
+    		public void handle(HttpExchange exchange) throws IOException {
+    			try {
+    				respond(exchange);
+    			} finally {
+    				exchange.close();
+    			}
+    		}
+    	});
+    	executor = Executors.newCachedThreadPool();
+    	server.setExecutor(executor);
+    	server.start();
+    	log.info("AMF stand-in server listening on " + getUrl() + " with profile " + profile);
+    }
+
+    /**
+     * Stop accepting connections, waiting at most the given number of seconds for
+     * exchanges in progress to complete.
+     */
+    public synchronized void stop(int delay) {
+    	if (server != null) {
+    		server.stop(delay);
+    		executor.shutdown();
+    		server = null;
+    		executor = null;
+    	}
+    }
+
+    /**
+     * @return the port the server is listening on.
+     */
+    public synchronized int getPort() {
+    	return server != null ? server.getAddress().getPort() : port;
+    }
+
+    /**
+     * @return the URL of the endpoint.
+     */
+    public String getUrl() {
+    	return "http://" + getHost() + ":" + getPort() + DEFAULT_PATH; // $NON-NLS-1$ $NON-NLS-2$
+    }
+
+    private synchronized String getHost() {
+    	return server != null ? server.getAddress().getAddress().getHostAddress() : LOOPBACK_HOST;
+    }
+
+    public AmfStandInProfile getProfile() {
+    	return profile;
+    }
+
+    /**
+     * @return the number of HTTP requests answered.
+     */
+    public long getRequestCount() {
+    	return requests.get();
+    }
+
+    /**
+     * @return the number of messages answered, including errors.
+     */
+    public long getMessageCount() {
+    	return messages.get();
+    }
+
+    /**
+     * @return the number of messages answered with an ErrorMessage.
+     */
+    public long getErrorCount() {
+    	return errors.get();
+    }
+
+    /**
+     * @return the number of Flex client ids created.
+     */
+    public long getClientCount() {
+    	return clients.get();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+    	byte[] request = readFully(exchange.getRequestBody());
+    	if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) { // $NON-NLS-1$
+    		exchange.sendResponseHeaders(HttpURLConnection.HTTP_BAD_METHOD, -1);
+    		return;
+    	}
+
+    	ActionMessage requestMessage;
+    	try {
+    		requestMessage = AmfMessageHelper.decodeActionMessage(request);
+    	} catch (IOException ex) {
+    		log.warn("Unable to decode AMF request: " + ex);
+    		exchange.sendResponseHeaders(HttpURLConnection.HTTP_BAD_REQUEST, -1);
+    		return;
+    	}
+    	requests.incrementAndGet();
+
+    	Random random = this.random.get();
+    	long delay = profile.getLatency().nextDelay(random);
+    	if (delay > 0) {
+    		try {
+    			TimeUnit.NANOSECONDS.sleep(delay);
+    		} catch (InterruptedException ex) {
+    			Thread.currentThread().interrupt();
+    		}
+    	}
+
+    	ActionMessage responseMessage = new ActionMessage(requestMessage.getVersion());
+    	for (int i = 0; i < requestMessage.getBodyCount(); i++) {
+    		responseMessage.addBody(respond(requestMessage.getBody(i), random));
+    	}
+    	byte[] response = AmfMessageHelper.encodeActionMessage(responseMessage);
+
+    	exchange.getResponseHeaders().set("Content-Type", AMF_CONTENT_TYPE); // $NON-NLS-1$
+    	exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+    	OutputStream out = exchange.getResponseBody();
+    	out.write(response);
+    	out.close();
+    }
+
+    private MessageBody respond(MessageBody body, Random random) {
+    	messages.incrementAndGet();
+    	Object data = body.getData();
+    	if (data instanceof Object[] && ((Object[]) data).length > 0) {
+    		data = ((Object[]) data)[0];
+    	}
+    	if (!(data instanceof Message)) {
+    		errors.incrementAndGet();
+    		ErrorMessage error = new ErrorMessage();
+    		error.setMessageId(nextId(random));
+    		error.setTimestamp(System.currentTimeMillis());
+    		error.faultCode = ERROR_FAULT_CODE;
+    		error.faultString = "Unsupported message body " + (data == null ? "null" : data.getClass().getName()); // $NON-NLS-2$
+    		return new MessageBody(body.getResponseURI() + MessageIOConstants.STATUS_METHOD, NULL_RESPONSE_URI, error);
+    	}
+
+    	Message message = (Message) data;
+    	if (message instanceof RemotingMessage && profile.getErrorRate() > 0
+    			&& random.nextDouble() < profile.getErrorRate()) {
+    		errors.incrementAndGet();
+    		ErrorMessage error = new ErrorMessage();
+    		initialize(error, message, random);
+    		error.faultCode = ERROR_FAULT_CODE;
+    		error.faultString = "Stand-in error for " + message.getDestination() + "." // $NON-NLS-2$
+    			+ ((RemotingMessage) message).getOperation();
+    		return new MessageBody(body.getResponseURI() + MessageIOConstants.STATUS_METHOD, NULL_RESPONSE_URI, error);
+    	}
+
+    	AcknowledgeMessage ack = new AcknowledgeMessage();
+    	initialize(ack, message, random);
+    	if (message instanceof RemotingMessage) {
+    		ack.setBody(payload);
+    	} else if (message instanceof CommandMessage && log.isDebugEnabled()) {
+    		log.debug("Acknowledging command " + ((CommandMessage) message).getOperation()
+    				+ " from " + ack.getHeader(Message.FLEX_CLIENT_ID_HEADER));
+    	}
+    	return new MessageBody(body.getResponseURI() + MessageIOConstants.RESULT_METHOD, NULL_RESPONSE_URI,
+    			profile.isSmallMessages() ? new AcknowledgeMessageExt(ack) : ack);
+    }
+
+    private void initialize(AcknowledgeMessage ack, Message message, Random random) {
+    	ack.setMessageId(nextId(random));
+    	ack.setCorrelationId(message.getMessageId());
+    	ack.setClientId(message.getClientId() != null ? message.getClientId() : nextId(random));
+    	ack.setDestination(message.getDestination());
+    	ack.setTimestamp(System.currentTimeMillis());
+    	Object flexClientId = message.getHeader(Message.FLEX_CLIENT_ID_HEADER);
+    	if (flexClientId == null || NIL_FLEX_CLIENT_ID.equals(flexClientId) || "".equals(flexClientId)) {
+    		clients.incrementAndGet();
+    		flexClientId = nextId(random).toUpperCase();
+    	}
+    	ack.setHeader(Message.FLEX_CLIENT_ID_HEADER, flexClientId);
+    }
+
+    /**
+     * @return a random (version 4) UUID id, as generated by the sampler, drawn from the
+     * given generator rather than the shared SecureRandom used by UUID.randomUUID().
+     */
+    private static String nextId(Random random) {
+    	long mostSigBits = (random.nextLong() & 0xFFFFFFFFFFFF0FFFL) | 0x0000000000004000L;
+    	long leastSigBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+    	return new UUID(mostSigBits, leastSigBits).toString();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+    	try {
+    		ByteArrayOutputStream out = new ByteArrayOutputStream();
+    		byte[] buffer = new byte[8192];
+    		int length;
+    		while ((length = in.read(buffer)) >= 0) {
+    			out.write(buffer, 0, length);
+    		}
+    		return out.toByteArray();
+    	} finally {
+    		in.close();
+    	}
+    }
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java " + AmfStandInServer.class.getName() + " port [name=value...]");
+			System.err.println("  payload=bytes rows=n latency=fixed:ms|uniform:min-max|exponential:mean|normal:mean,stddev");
+			System.err.println("  errors=rate small-messages=true|false seed=n");
+			System.exit(2);
+		}
+		AmfStandInProfile profile;
+		try {
+			profile = AmfStandInProfile.parse(Arrays.asList(args).subList(1, args.length).toArray(new String[0]));
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.exit(2);
+			return;
+		}
+		final AmfStandInServer server = new AmfStandInServer(Integer.parseInt(args[0]), profile);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				server.stop(1);
+				System.out.println("Answered " + server.getRequestCount() + " requests, " + server.getMessageCount()
+						+ " messages, " + server.getErrorCount() + " errors, " + server.getClientCount() + " clients");
+			}
+		});
+		server.start();
+		System.out.println("AMF stand-in server listening on " + server.getUrl() + " with profile " + profile
+				+ ", press Ctrl-C to stop.");
+	}
+
+}
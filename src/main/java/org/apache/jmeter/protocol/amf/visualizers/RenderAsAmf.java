@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.visualizers;
+
+import org.apache.jmeter.protocol.amf.resources.AmfResourceManager;
+import org.apache.jmeter.protocol.amf.sampler.AmfMessageRenderer;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.visualizers.ResultRenderer;
+import org.apache.jmeter.visualizers.SamplerResultTab;
+
+/**
+ * A View Results Tree renderer displaying the AMF request and response of a sample
+ * as XML.  The messages are only deserialized and rendered when a sample is selected.
+ *
+ */
+public class RenderAsAmf extends SamplerResultTab implements ResultRenderer {
+
+	public void renderResult(SampleResult sampleResult) {
+		showAmfResponse(AmfMessageRenderer.render(sampleResult));
+	}
+
+	private void showAmfResponse(String response) {
+		results.setContentType("text/plain"); // $NON-NLS-1$
+		results.setText(response == null ? "" : response); // $NON-NLS-1$
+		results.setCaretPosition(0);
+		resultsScrollPane.setViewportView(results);
+	}
+
+	@Override
+	public String toString() {
+		return AmfResourceManager.getResString("view_results_render_amf"); // $NON-NLS-1$
+	}
+
+}
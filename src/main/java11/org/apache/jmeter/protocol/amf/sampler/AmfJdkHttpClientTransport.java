@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * An AmfTransport sending requests with the JDK java.net.http.HttpClient, available from
+ * Java 11.  This class is only compiled by the virtual-threads build profile, and is
+ * created by AmfTransportFactory by name.
+ * <p>
+ * The HttpClient keeps a pool of connections, and the threads that serve it, so a client
+ * is shared by all the transports with the same connect timeout rather than created for
+ * each thread.  Requests are sent as HTTP/1.1, and the client keeps connections alive
+ * whatever the keep alive setting of the sampler, since it sets the Connection header
+ * itself.  The client does not report when a
+ * connection is opened, so the time to connect is included in the FIRST_BYTE phase.
+ *
+ */
+public class AmfJdkHttpClientTransport extends AmfAbstractTransport {
+
+	/**
+	 * The headers HttpClient sets itself, and refuses to be given.
+	 */
+	private static final String[] RESTRICTED_HEADERS = {
+		HEADER_CONNECTION, HEADER_CONTENT_LENGTH, "Expect", "Host", "Upgrade" // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+	};
+
+	private static final Map<Integer, HttpClient> clients = new ConcurrentHashMap<Integer, HttpClient>();
+
+	private HttpClient client = null;
+
+	private volatile CompletableFuture<HttpResponse<InputStream>> exchange = null;
+
+	private HttpResponse<InputStream> response = null;
+
+	@Override
+	public void setup(AmfSampler sampler) {
+		super.setup(sampler);
+		client = getClient(sampler.getConnectTimeout());
+	}
+
+	public int execute(URL url, byte[] request, AmfSampleResult res) throws IOException {
+		List<String[]> headers = createRequestHeaders(url);
+		HttpRequest.Builder builder;
+		try {
+			builder = HttpRequest.newBuilder(url.toURI());
+		} catch (URISyntaxException ex) {
+			throw new IOException("Invalid URL: " + url, ex);
+		}
+		builder.POST(request == null ? HttpRequest.BodyPublishers.noBody()
+				: HttpRequest.BodyPublishers.ofByteArray(request));
+		if (sampler.getResponseTimeout() > 0) {
+			builder.timeout(Duration.ofMillis(sampler.getResponseTimeout()));
+		}
+		for (String[] header : headers) {
+			if (!isRestricted(header[0])) {
+				builder.setHeader(header[0], header[1]);
+			}
+		}
+
+		long sendStart = System.nanoTime();
+		res.setPhaseNanos(AmfSamplePhase.CONNECT, 0L);
+		CompletableFuture<HttpResponse<InputStream>> future =
+			client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+		exchange = future;
+		try {
+			response = future.get();
+		} catch (InterruptedException ex) {
+			future.cancel(true);
+			throw new InterruptedIOException("Interrupted waiting for the response");
+		} catch (CancellationException ex) {
+			throw new InterruptedIOException("Request aborted");
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+		res.setPhaseNanos(AmfSamplePhase.FIRST_BYTE, System.nanoTime() - sendStart);
+
+		res.setRequestHeaders(formatHeaders(headers));
+		return response.statusCode();
+	}
+
+	public InputStream getResponseBody() throws IOException {
+		return response.body();
+	}
+
+	public long getResponseContentLength() {
+		return response.headers().firstValueAsLong(HEADER_CONTENT_LENGTH).orElse(-1L);
+	}
+
+	public String getResponseHeader(String name) {
+		return response.headers().firstValue(name).orElse(null);
+	}
+
+	public void complete(AmfSampleResult res) throws IOException {
+		// HttpClient does not provide the reason phrase of the status line
+		res.setResponseMessage(""); // $NON-NLS-1$
+
+		StringBuilder headers = new StringBuilder();
+		headers.append("HTTP/1.1 ").append(response.statusCode()).append('\n'); // $NON-NLS-1$
+		for (Map.Entry<String, List<String>> entry : response.headers().map().entrySet()) {
+			for (String value : entry.getValue()) {
+				headers.append(entry.getKey()).append(": ").append(value).append('\n'); // $NON-NLS-1$
+				if (HEADER_SET_COOKIE.equalsIgnoreCase(entry.getKey())) {
+					saveCookie(res.getURL(), value);
+				}
+			}
+		}
+		res.setResponseHeaders(headers.toString());
+	}
+
+	public void release() {
+		HttpResponse<InputStream> current = response;
+		if (current != null) {
+			// Closing a fully read body returns the connection to the pool of the client
+			try {
+				current.body().close();
+			} catch (IOException ex) {
+				// The connection is closed by the client
+			}
+		}
+		response = null;
+		exchange = null;
+	}
+
+	public boolean interrupt() {
+		CompletableFuture<HttpResponse<InputStream>> current = exchange;
+		if (current == null) {
+			return false;
+		}
+		// From Java 16, cancelling the future also aborts the exchange
+		current.cancel(true);
+		return true;
+	}
+
+	public void close() {
+		// Connections are held, and closed, by the shared client
+	}
+
+	private static HttpClient getClient(int connectTimeout) {
+		Integer key = Integer.valueOf(connectTimeout);
+		HttpClient client = clients.get(key);
+		if (client == null) {
+			HttpClient.Builder builder = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.followRedirects(HttpClient.Redirect.NEVER);
+			if (connectTimeout > 0) {
+				builder.connectTimeout(Duration.ofMillis(connectTimeout));
+			}
+			HttpClient created = builder.build();
+			client = clients.putIfAbsent(key, created);
+			if (client == null) {
+				client = created;
+			}
+		}
+		return client;
+	}
+
+	private static boolean isRestricted(String name) {
+		for (String restricted : RESTRICTED_HEADERS) {
+			if (restricted.equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import flex.messaging.io.ArrayCollection;
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.amf.ASObject;
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.MessageBody;
+import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.messages.RemotingMessage;
+
+/**
+ * Compares the output of AmfNativeEncoder with the output of the BlazeDS
+ * AmfMessageSerializer over a corpus of request messages.
+ *
+ */
+public class AmfNativeEncoderTest {
+
+	private static final String FLEX_CLIENT_ID = "8F2C4A2E-6E2B-4C0B-9E0C-53C1B6A1D7E4"; // $NON-NLS-1$
+
+	@Test
+	public void testPing() throws Exception {
+		CommandMessage ping = new CommandMessage(CommandMessage.CLIENT_PING_OPERATION);
+		ping.setMessageId(FLEX_CLIENT_ID);
+		ping.setHeader(CommandMessage.MESSAGING_VERSION, Integer.valueOf(1));
+		ping.setHeader(Message.FLEX_CLIENT_ID_HEADER, "nil"); // $NON-NLS-1$
+		assertEncodesAsBlazeDS(ping);
+	}
+
+	@Test
+	public void testLogin() throws Exception {
+		CommandMessage login = new CommandMessage(CommandMessage.LOGIN_OPERATION);
+		login.setMessageId("0A3D5E7F-1B2C-4D5E-8F90-A1B2C3D4E5F6"); // $NON-NLS-1$
+		login.setBody("dXNlcjpwYXNzd29yZA=="); // $NON-NLS-1$
+		login.setHeader(Message.FLEX_CLIENT_ID_HEADER, FLEX_CLIENT_ID);
+		assertEncodesAsBlazeDS(login);
+	}
+
+	@Test
+	public void testNoParameters() throws Exception {
+		assertEncodesAsBlazeDS(createRemotingMessage("echo", new Object[0])); // $NON-NLS-1$
+	}
+
+	@Test
+	public void testIntegers() throws Exception {
+		assertEncodesAsBlazeDS(createRemotingMessage("integers", new Object[] { // $NON-NLS-1$
+				Integer.valueOf(0), Integer.valueOf(127), Integer.valueOf(128), Integer.valueOf(16383),
+				Integer.valueOf(16384), Integer.valueOf(2097151), Integer.valueOf(2097152),
+				Integer.valueOf(268435455), Integer.valueOf(268435456), Integer.valueOf(-1),
+				Integer.valueOf(-268435456), Integer.valueOf(-268435457),
+				Integer.valueOf(Integer.MAX_VALUE), Integer.valueOf(Integer.MIN_VALUE),
+				Short.valueOf((short) -5), Byte.valueOf((byte) 7) }));
+	}
+
+	@Test
+	public void testNumbers() throws Exception {
+		assertEncodesAsBlazeDS(createRemotingMessage("numbers", new Object[] { // $NON-NLS-1$
+				Double.valueOf(0.5), Double.valueOf(-0.0), Double.valueOf(Double.NaN),
+				Double.valueOf(Double.POSITIVE_INFINITY), Double.valueOf(Double.MAX_VALUE),
+				Float.valueOf(1.25f), Long.valueOf(1L << 40), Boolean.TRUE, Boolean.FALSE, null }));
+	}
+
+	@Test
+	public void testDates() throws Exception {
+		Date date = new Date(1234567890123L);
+		assertEncodesAsBlazeDS(createRemotingMessage("dates", new Object[] { // $NON-NLS-1$
+				date, date, new Date(0L) }));
+	}
+
+	@Test
+	public void testStrings() throws Exception {
+		assertEncodesAsBlazeDS(createRemotingMessage("strings", new Object[] { // $NON-NLS-1$
+				"", "repeat", "repeat", "caf\u00e9", "\u65e5\u672c\u8a9e", "nul\u0000char", // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$ $NON-NLS-4$ $NON-NLS-5$ $NON-NLS-6$
+				Character.valueOf('x'), createString(300), "destination" })); // $NON-NLS-1$
+	}
+
+	@Test
+	public void testArrays() throws Exception {
+		Object[] shared = new Object[] { "a", Integer.valueOf(1) }; // $NON-NLS-1$
+		assertEncodesAsBlazeDS(createRemotingMessage("arrays", new Object[] { // $NON-NLS-1$
+				shared, shared, new Object[] { new Object[] { "nested" }, new Object[0] } })); // $NON-NLS-1$
+	}
+
+	@Test
+	public void testLists() throws Exception {
+		ArrayCollection collection = createCollection();
+		assertEncodesAsBlazeDS(createRemotingMessage("lists", new Object[] { // $NON-NLS-1$
+				collection, collection,
+				new ArrayList<Object>(Arrays.asList(new Object[] { "x", "y" })) })); // $NON-NLS-1$ $NON-NLS-2$
+	}
+
+	@Test
+	public void testMaps() throws Exception {
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("name", "value"); // $NON-NLS-1$ $NON-NLS-2$
+		map.put("count", Integer.valueOf(3)); // $NON-NLS-1$
+		ASObject object = new ASObject();
+		object.put("child", map); // $NON-NLS-1$
+		object.put("list", createCollection()); // $NON-NLS-1$
+		assertEncodesAsBlazeDS(createRemotingMessage("maps", new Object[] { // $NON-NLS-1$
+				map, object, map }));
+	}
+
+	@Test
+	public void testSimpleBodyDataUnsupported() throws Exception {
+		ActionMessage message = new ActionMessage(MessageIOConstants.AMF3);
+		message.addBody(new MessageBody("", "/1", "data")); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+		AmfByteBuffer buffer = new AmfByteBuffer();
+		try {
+			new AmfNativeEncoder(MessageIOConstants.AMF3).writeMessage(buffer, message);
+			fail("Expected UnsupportedTypeException");
+		} catch (AmfNativeEncoder.UnsupportedTypeException ex) {
+			assertEquals(0, buffer.size());
+		}
+	}
+
+	/**
+	 * Wrap a message in an ActionMessage in the same way as AmfMessageHelper.serializeMessage(),
+	 * and check the native encoding of it against AmfMessageSerializer.
+	 */
+	private static void assertEncodesAsBlazeDS(Message message) throws Exception {
+		ActionMessage requestMessage = new ActionMessage(MessageIOConstants.AMF3);
+		requestMessage.addBody(new MessageBody("", "/1", new Object[] { message })); // $NON-NLS-1$ $NON-NLS-2$
+		assertTrue(AmfEncoderVerifier.verify(new AmfNativeEncoder(MessageIOConstants.AMF3), requestMessage));
+	}
+
+	private static RemotingMessage createRemotingMessage(String operation, Object[] body) {
+		RemotingMessage message = new RemotingMessage();
+		message.setMessageId("C0FFEE00-0000-4000-8000-" + createString(12).toUpperCase()); // $NON-NLS-1$
+		message.setDestination("verifier"); // $NON-NLS-1$
+		message.setOperation(operation);
+		message.setBody(body);
+		message.setHeader(Message.FLEX_CLIENT_ID_HEADER, FLEX_CLIENT_ID);
+		message.setHeader(Message.ENDPOINT_HEADER, "my-amf"); // $NON-NLS-1$
+		return message;
+	}
+
+	private static ArrayCollection createCollection() {
+		ArrayCollection collection = new ArrayCollection();
+		collection.add("one"); // $NON-NLS-1$
+		collection.add(Integer.valueOf(2));
+		return collection;
+	}
+
+	private static String createString(int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + (i % 26)));
+		}
+		return sb.toString();
+	}
+
+}
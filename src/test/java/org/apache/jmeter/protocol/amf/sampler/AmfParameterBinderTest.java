@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.apache.jmeter.config.Argument;
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.engine.util.CompoundVariable;
+import org.apache.jmeter.testelement.property.FunctionProperty;
+import org.apache.jmeter.threads.JMeterContext;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import flex.messaging.io.amf.ASObject;
+
+/**
+ * Checks the layout and conversion of the call parameters bound by AmfParameterBinder.
+ *
+ */
+public class AmfParameterBinderTest {
+
+	private JMeterContext context;
+
+	private JMeterVariables variables;
+
+	private Arguments arguments;
+
+	@Before
+	public void setUp() {
+		context = JMeterContextService.getContext();
+		variables = new JMeterVariables();
+		context.setVariables(variables);
+		context.setSamplingStarted(true);
+		arguments = new Arguments();
+	}
+
+	@After
+	public void tearDown() {
+		context.setSamplingStarted(false);
+		context.setVariables(new JMeterVariables());
+	}
+
+	@Test
+	public void testStaticParameters() {
+		arguments.addArgument("string", "text"); // $NON-NLS-1$ $NON-NLS-2$
+		arguments.addArgument("int", "7"); // $NON-NLS-1$ $NON-NLS-2$
+		arguments.addArgument("long", "8"); // $NON-NLS-1$ $NON-NLS-2$
+		arguments.addArgument("object", "{\"a\": [1]}"); // $NON-NLS-1$ $NON-NLS-2$
+		AmfParameterBinder binder = new AmfParameterBinder();
+		// Added out of order, with gaps between the indexes
+		binder.addParameter(5, AmfParameterBinder.ParameterType.OBJECT, "object"); // $NON-NLS-1$
+		binder.addParameter(2, AmfParameterBinder.ParameterType.LONG, "long"); // $NON-NLS-1$
+		binder.addParameter(0, AmfParameterBinder.ParameterType.STRING, "string"); // $NON-NLS-1$
+		binder.addParameter(1, AmfParameterBinder.ParameterType.INT, "int"); // $NON-NLS-1$
+
+		List<Object> parameters = binder.compile(compileArguments().createContext());
+		assertFalse(binder.isDynamic());
+		assertEquals(4, parameters.size());
+		assertEquals("text", parameters.get(0)); // $NON-NLS-1$
+		assertEquals(Integer.valueOf(7), parameters.get(1));
+		assertEquals(Long.valueOf(8), parameters.get(2));
+		Object[] a = (Object[]) ((ASObject) parameters.get(3)).get("a"); // $NON-NLS-1$
+		assertEquals(Integer.valueOf(1), a[0]);
+	}
+
+	@Test
+	public void testReplacedParameter() {
+		arguments.addArgument("first", "1"); // $NON-NLS-1$ $NON-NLS-2$
+		arguments.addArgument("second", "2"); // $NON-NLS-1$ $NON-NLS-2$
+		AmfParameterBinder binder = new AmfParameterBinder();
+		binder.addParameter(0, AmfParameterBinder.ParameterType.INT, "first"); // $NON-NLS-1$
+		binder.addParameter(0, AmfParameterBinder.ParameterType.INT, "second"); // $NON-NLS-1$
+		List<Object> parameters = binder.compile(compileArguments().createContext());
+		assertEquals(1, parameters.size());
+		assertEquals(Integer.valueOf(2), parameters.get(0));
+	}
+
+	@Test
+	public void testVariableReference() {
+		addDynamicArgument("id", "${id}"); // $NON-NLS-1$ $NON-NLS-2$
+		variables.put("id", "41"); // $NON-NLS-1$ $NON-NLS-2$
+		AmfParameterBinder binder = new AmfParameterBinder();
+		binder.addParameter(0, AmfParameterBinder.ParameterType.INT, "id"); // $NON-NLS-1$
+		AmfSamplerConfig config = compileArguments();
+		List<Object> parameters = binder.compile(config.createContext());
+		assertTrue(binder.isDynamic());
+		assertEquals(Integer.valueOf(41), parameters.get(0));
+
+		// An Integer held by the variable is sent without conversion
+		variables.incIteration();
+		Integer id = Integer.valueOf(42);
+		variables.putObject("id", id); // $NON-NLS-1$
+		binder.bind(config.createContext(), parameters);
+		assertSame(id, parameters.get(0));
+
+		// An invalid value is logged and sent as null, rather than failing the test
+		variables.incIteration();
+		variables.put("id", "not a number"); // $NON-NLS-1$ $NON-NLS-2$
+		binder.bind(config.createContext(), parameters);
+		assertNull(parameters.get(0));
+	}
+
+	@Test
+	public void testExpression() {
+		addDynamicArgument("name", "user-${id}"); // $NON-NLS-1$ $NON-NLS-2$
+		variables.put("id", "1"); // $NON-NLS-1$ $NON-NLS-2$
+		AmfParameterBinder binder = new AmfParameterBinder();
+		binder.addParameter(0, AmfParameterBinder.ParameterType.STRING, "name"); // $NON-NLS-1$
+		AmfSamplerConfig config = compileArguments();
+		List<Object> parameters = binder.compile(config.createContext());
+		assertEquals("user-1", parameters.get(0)); // $NON-NLS-1$
+
+		// Functions are evaluated once per iteration of the thread
+		variables.incIteration();
+		variables.put("id", "2"); // $NON-NLS-1$ $NON-NLS-2$
+		binder.bind(config.createContext(), parameters);
+		assertEquals("user-2", parameters.get(0)); // $NON-NLS-1$
+	}
+
+	@Test
+	public void testObjectTemplate() {
+		// The template resolves its own placeholders from the raw value
+		arguments.addArgument("object", "{\"@type\": \"User\", \"id\": \"${id:long}\"}"); // $NON-NLS-1$ $NON-NLS-2$
+		variables.put("id", "5"); // $NON-NLS-1$ $NON-NLS-2$
+		AmfParameterBinder binder = new AmfParameterBinder();
+		binder.addParameter(0, AmfParameterBinder.ParameterType.OBJECT, "object"); // $NON-NLS-1$
+		AmfSamplerConfig config = compileArguments();
+		List<Object> parameters = binder.compile(config.createContext());
+		assertTrue(binder.isDynamic());
+		assertEquals("User", ((ASObject) parameters.get(0)).getType()); // $NON-NLS-1$
+		assertEquals(Long.valueOf(5), ((ASObject) parameters.get(0)).get("id")); // $NON-NLS-1$
+
+		variables.put("id", "6"); // $NON-NLS-1$ $NON-NLS-2$
+		binder.bind(config.createContext(), parameters);
+		assertEquals(Long.valueOf(6), ((ASObject) parameters.get(0)).get("id")); // $NON-NLS-1$
+	}
+
+	@Test
+	public void testInvalidStaticInt() {
+		arguments.addArgument("int", "seven"); // $NON-NLS-1$ $NON-NLS-2$
+		AmfParameterBinder binder = new AmfParameterBinder();
+		binder.addParameter(0, AmfParameterBinder.ParameterType.INT, "int"); // $NON-NLS-1$
+		try {
+			binder.compile(compileArguments().createContext());
+			fail("Expected NumberFormatException"); // $NON-NLS-1$
+		} catch (NumberFormatException ex) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testInvalidTemplate() {
+		arguments.addArgument("object", "{\"a\": "); // $NON-NLS-1$ $NON-NLS-2$
+		AmfParameterBinder binder = new AmfParameterBinder();
+		binder.addParameter(0, AmfParameterBinder.ParameterType.OBJECT, "object"); // $NON-NLS-1$
+		try {
+			binder.compile(compileArguments().createContext());
+			fail("Expected IllegalArgumentException"); // $NON-NLS-1$
+		} catch (IllegalArgumentException ex) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testAddAfterCompile() {
+		AmfParameterBinder binder = new AmfParameterBinder();
+		binder.compile(compileArguments().createContext());
+		try {
+			binder.addParameter(0, AmfParameterBinder.ParameterType.STRING, "late"); // $NON-NLS-1$
+			fail("Expected IllegalStateException"); // $NON-NLS-1$
+		} catch (IllegalStateException ex) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Add an argument as in the running version of a test plan, where a value holding
+	 * functions or variables is replaced by a FunctionProperty.
+	 */
+	private void addDynamicArgument(String name, String value) {
+		Argument argument = new Argument(name, ""); // $NON-NLS-1$
+		argument.setProperty(new FunctionProperty(Argument.VALUE, new CompoundVariable(value)));
+		arguments.addArgument(argument);
+	}
+
+	private AmfSamplerConfig compileArguments() {
+		arguments.setRunningVersion(true);
+		return AmfSamplerConfig.compile(arguments, null);
+	}
+
+}
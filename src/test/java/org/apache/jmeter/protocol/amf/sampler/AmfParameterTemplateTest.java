@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jmeter.threads.JMeterContext;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import flex.messaging.io.ArrayCollection;
+import flex.messaging.io.amf.ASObject;
+
+/**
+ * Checks the parsing of AmfParameterTemplate, the values built from it, its constant
+ * folding and the round trip of an object graph through toTemplate().
+ *
+ */
+public class AmfParameterTemplateTest {
+
+	private static final String TYPE = "com.example.User"; // $NON-NLS-1$
+
+	private JMeterContext context;
+
+	private JMeterVariables variables;
+
+	@Before
+	public void setUp() {
+		context = JMeterContextService.getContext();
+		variables = new JMeterVariables();
+		context.setVariables(variables);
+	}
+
+	@After
+	public void tearDown() {
+		context.setVariables(new JMeterVariables());
+	}
+
+	@Test
+	public void testNumbers() {
+		Object[] values = (Object[]) build("[1, -2, 2147483648, 3L, 1.5, -2e3, 4d]"); // $NON-NLS-1$
+		assertEquals(Arrays.asList(new Object[] { Integer.valueOf(1), Integer.valueOf(-2), Long.valueOf(2147483648L),
+				Long.valueOf(3), Double.valueOf(1.5), Double.valueOf(-2000), Double.valueOf(4) }), Arrays.asList(values));
+	}
+
+	@Test
+	public void testLiterals() {
+		Object[] values = (Object[]) build("[true, false, null, \"a\\\"b\\u0041\\n\", 'single']"); // $NON-NLS-1$
+		assertEquals(Arrays.asList(new Object[] { Boolean.TRUE, Boolean.FALSE, null, "a\"bA\n", "single" }), // $NON-NLS-1$ $NON-NLS-2$
+				Arrays.asList(values));
+	}
+
+	@Test
+	public void testTypedObject() {
+		ASObject user = (ASObject) build("{\"@type\": \"" + TYPE + "\", name: 'bob', \"id\": 7}"); // $NON-NLS-1$ $NON-NLS-2$
+		assertEquals(TYPE, user.getType());
+		assertEquals(2, user.size());
+		assertEquals("bob", user.get("name")); // $NON-NLS-1$ $NON-NLS-2$
+		assertEquals(Integer.valueOf(7), user.get("id")); // $NON-NLS-1$
+	}
+
+	@Test
+	public void testAnonymousObject() {
+		ASObject object = (ASObject) build("{\"a\": {}}"); // $NON-NLS-1$
+		assertNull(object.getType());
+		assertTrue(((ASObject) object.get("a")).isEmpty()); // $NON-NLS-1$
+	}
+
+	@Test
+	public void testCollection() {
+		ArrayCollection collection = (ArrayCollection) build("{\"@collection\": [1, \"a\", [2]]}"); // $NON-NLS-1$
+		assertEquals(3, collection.size());
+		assertEquals(Integer.valueOf(1), collection.get(0));
+		assertEquals("a", collection.get(1)); // $NON-NLS-1$
+		assertTrue(collection.get(2) instanceof Object[]);
+		assertTrue(((ArrayCollection) build("{\"@collection\": []}")).isEmpty()); // $NON-NLS-1$
+	}
+
+	@Test
+	public void testDate() {
+		assertEquals(new Date(1275393600000L), build("{\"@date\": \"2010-06-01T12:00:00Z\"}")); // $NON-NLS-1$
+		assertEquals(new Date(1275393600123L), build("{\"@date\": \"2010-06-01T12:00:00.123Z\"}")); // $NON-NLS-1$
+		assertEquals(new Date(1275393600000L), build("{\"@date\": 1275393600000}")); // $NON-NLS-1$
+		assertEquals(new Date(1275393600000L), build("{\"@date\": \"1275393600000\"}")); // $NON-NLS-1$
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(2010, Calendar.JUNE, 1);
+		assertEquals(calendar.getTime(), build("{\"@date\": \"2010-06-01\"}")); // $NON-NLS-1$
+	}
+
+	@Test
+	public void testConstantFolding() {
+		AmfParameterTemplate constant = AmfParameterTemplate.compile("{\"a\": [1, {\"@collection\": [2]}]}"); // $NON-NLS-1$
+		assertFalse(constant.isDynamic());
+		assertSame(constant.build(variables), constant.build(variables));
+
+		AmfParameterTemplate dynamic = AmfParameterTemplate.compile("{\"fixed\": {\"a\": 1}, \"user\": \"${user}\"}"); // $NON-NLS-1$
+		assertTrue(dynamic.isDynamic());
+		ASObject first = (ASObject) dynamic.build(variables);
+		ASObject second = (ASObject) dynamic.build(variables);
+		assertNotSame(first, second);
+		// The subtree without placeholders is only built once
+		assertSame(first.get("fixed"), second.get("fixed")); // $NON-NLS-1$ $NON-NLS-2$
+	}
+
+	@Test
+	public void testPlaceholders() {
+		AmfParameterTemplate template = AmfParameterTemplate.compile("[${user}, \"${count}\", \"${id:int}\", \"${id:long}\", " // $NON-NLS-1$
+				+ "\"${id:double}\", \"${count:string}\", \"${flag:boolean}\", {\"@date\": \"${when}\"}, \"${missing}\"]"); // $NON-NLS-1$
+		assertTrue(template.isDynamic());
+		Integer count = Integer.valueOf(5);
+		variables.put("user", "bob"); // $NON-NLS-1$ $NON-NLS-2$
+		variables.putObject("count", count); // $NON-NLS-1$
+		variables.put("id", "42"); // $NON-NLS-1$ $NON-NLS-2$
+		variables.put("flag", "true"); // $NON-NLS-1$ $NON-NLS-2$
+		variables.put("when", "2010-06-01T12:00:00Z"); // $NON-NLS-1$ $NON-NLS-2$
+
+		Object[] values = (Object[]) template.build(variables);
+		assertEquals("bob", values[0]); // $NON-NLS-1$
+		// An object held by a variable is sent as it is
+		assertSame(count, values[1]);
+		assertEquals(Integer.valueOf(42), values[2]);
+		assertEquals(Long.valueOf(42), values[3]);
+		assertEquals(Double.valueOf(42), values[4]);
+		assertEquals("5", values[5]); // $NON-NLS-1$
+		assertEquals(Boolean.TRUE, values[6]);
+		assertEquals(new Date(1275393600000L), values[7]);
+		assertNull(values[8]);
+
+		variables.put("id", "not a number"); // $NON-NLS-1$ $NON-NLS-2$
+		variables.put("when", "not a date"); // $NON-NLS-1$ $NON-NLS-2$
+		values = (Object[]) template.build(variables);
+		assertNull(values[2]);
+		assertNull(values[7]);
+	}
+
+	@Test
+	public void testExpression() {
+		AmfParameterTemplate template = AmfParameterTemplate.compile("{\"name\": \"user-${user}\"}"); // $NON-NLS-1$
+		assertTrue(template.isDynamic());
+		variables.put("user", "bob"); // $NON-NLS-1$ $NON-NLS-2$
+		assertEquals("user-bob", ((ASObject) template.build(variables)).get("name")); // $NON-NLS-1$ $NON-NLS-2$
+	}
+
+	@Test
+	public void testRoundTrip() {
+		ASObject user = new ASObject(TYPE);
+		user.put("name", "quote \" backslash \\ newline \n"); // $NON-NLS-1$ $NON-NLS-2$
+		user.put("id", Integer.valueOf(7)); // $NON-NLS-1$
+		user.put("account", Long.valueOf(7)); // $NON-NLS-1$
+		user.put("balance", Double.valueOf(-1.5e-3)); // $NON-NLS-1$
+		user.put("active", Boolean.TRUE); // $NON-NLS-1$
+		user.put("manager", null); // $NON-NLS-1$
+		user.put("created", new Date(1275393600000L)); // $NON-NLS-1$
+		ArrayCollection roles = new ArrayCollection();
+		roles.add("admin"); // $NON-NLS-1$
+		roles.add(new Object[] { Integer.valueOf(1), "reader" }); // $NON-NLS-1$
+		user.put("roles", roles); // $NON-NLS-1$
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put("theme", "dark"); // $NON-NLS-1$ $NON-NLS-2$
+		user.put("settings", settings); // $NON-NLS-1$
+
+		String template = AmfParameterTemplate.toTemplate(user);
+		ASObject built = (ASObject) AmfParameterTemplate.compile(template).build(variables);
+		assertEquals(TYPE, built.getType());
+		assertEquals(user.get("name"), built.get("name")); // $NON-NLS-1$ $NON-NLS-2$
+		assertEquals(Integer.valueOf(7), built.get("id")); // $NON-NLS-1$
+		assertEquals(Long.valueOf(7), built.get("account")); // $NON-NLS-1$
+		assertEquals(Double.valueOf(-1.5e-3), built.get("balance")); // $NON-NLS-1$
+		assertEquals(Boolean.TRUE, built.get("active")); // $NON-NLS-1$
+		assertTrue(built.containsKey("manager")); // $NON-NLS-1$
+		assertNull(built.get("manager")); // $NON-NLS-1$
+		assertEquals(new Date(1275393600000L), built.get("created")); // $NON-NLS-1$
+		assertTrue(built.get("roles") instanceof ArrayCollection); // $NON-NLS-1$
+		assertTrue(built.get("settings") instanceof ASObject); // $NON-NLS-1$
+		assertNull(((ASObject) built.get("settings")).getType()); // $NON-NLS-1$
+		// The order of the members of a map is not kept, compare the templates of the elements
+		assertEquals(AmfParameterTemplate.toTemplate(roles), AmfParameterTemplate.toTemplate(built.get("roles"))); // $NON-NLS-1$
+	}
+
+	@Test
+	public void testToTemplate() {
+		assertEquals("[1, 2L, \"a\", null, {\"@date\": 0}]", AmfParameterTemplate.toTemplate( // $NON-NLS-1$
+				new Object[] { Integer.valueOf(1), Long.valueOf(2), "a", null, new Date(0) })); // $NON-NLS-1$
+		assertEquals("{\"@collection\": []}", AmfParameterTemplate.toTemplate(new ArrayCollection())); // $NON-NLS-1$
+	}
+
+	@Test
+	public void testToTemplateErrors() {
+		assertNotTemplate(Double.valueOf(Double.NaN));
+		assertNotTemplate(Double.valueOf(Double.POSITIVE_INFINITY));
+		assertNotTemplate(new int[] { 1 });
+		ArrayCollection cyclic = new ArrayCollection();
+		cyclic.add(cyclic);
+		assertNotTemplate(cyclic);
+	}
+
+	@Test
+	public void testParseErrors() {
+		assertInvalid(""); // $NON-NLS-1$
+		assertInvalid("nope"); // $NON-NLS-1$
+		assertInvalid("[1, 2"); // $NON-NLS-1$
+		assertInvalid("[1] 2"); // $NON-NLS-1$
+		assertInvalid("{\"a\" 1}"); // $NON-NLS-1$
+		assertInvalid("{\"a\": 1,}"); // $NON-NLS-1$
+		assertInvalid("\"unterminated"); // $NON-NLS-1$
+		assertInvalid("\"\\u12\""); // $NON-NLS-1$
+		assertInvalid("\"\\u12zz\""); // $NON-NLS-1$
+		assertInvalid("${unterminated"); // $NON-NLS-1$
+		assertInvalid("\"${id:unknown}\""); // $NON-NLS-1$
+		assertInvalid("{\"@type\": 1}"); // $NON-NLS-1$
+		assertInvalid("{\"@type\": \"\"}"); // $NON-NLS-1$
+		assertInvalid("{\"@type\": \"${type}\"}"); // $NON-NLS-1$
+		assertInvalid("{\"@collection\": 1}"); // $NON-NLS-1$
+		assertInvalid("{\"@collection\": [1], \"a\": 2}"); // $NON-NLS-1$
+		assertInvalid("{\"@date\": \"yesterday\"}"); // $NON-NLS-1$
+		assertInvalid("{\"@date\": \"2010-13-01\"}"); // $NON-NLS-1$
+		assertInvalid("{\"@date\": 0, \"a\": 2}"); // $NON-NLS-1$
+	}
+
+	private Object build(String template) {
+		AmfParameterTemplate compiled = AmfParameterTemplate.compile(template);
+		assertFalse(compiled.isDynamic());
+		return compiled.build(variables);
+	}
+
+	private static void assertInvalid(String template) {
+		try {
+			AmfParameterTemplate.compile(template);
+			fail("Expected IllegalArgumentException for template: " + template); // $NON-NLS-1$
+		} catch (IllegalArgumentException ex) {
+			// Expected
+		}
+	}
+
+	private static void assertNotTemplate(Object value) {
+		try {
+			AmfParameterTemplate.toTemplate(value);
+			fail("Expected IllegalArgumentException for value: " + value); // $NON-NLS-1$
+		} catch (IllegalArgumentException ex) {
+			// Expected
+		}
+	}
+
+}
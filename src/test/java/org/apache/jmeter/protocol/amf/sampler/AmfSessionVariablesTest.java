@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jmeter.protocol.amf.sampler;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.jmeter.config.Argument;
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.engine.util.CompoundVariable;
+import org.apache.jmeter.testelement.property.FunctionProperty;
+import org.apache.jmeter.threads.JMeterContext;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the virtual sessions of a thread each evaluate the dynamic parameters of
+ * the sampler, with their own variables, at every iteration of the thread.
+ *
+ */
+public class AmfSessionVariablesTest {
+
+	private static final String PARAMETER_NAME = "Parameter"; // $NON-NLS-1$
+
+	private JMeterContext context;
+
+	private JMeterVariables threadVariables;
+
+	@Before
+	public void setUp() {
+		context = JMeterContextService.getContext();
+		threadVariables = new JMeterVariables();
+		context.setVariables(threadVariables);
+		context.setSamplingStarted(true);
+	}
+
+	@After
+	public void tearDown() {
+		context.setSamplingStarted(false);
+		context.setVariables(new JMeterVariables());
+	}
+
+	@Test
+	public void testIterationOfThread() {
+		AmfSessionVariables variables = new AmfSessionVariables(threadVariables);
+		threadVariables.incIteration();
+		assertEquals(threadVariables.getIteration(), variables.getIteration());
+		variables.incIteration();
+		assertEquals(2, threadVariables.getIteration());
+	}
+
+	@Test
+	public void testSessionsOverIterations() {
+		// As the running version of a test plan, where the value is replaced by a FunctionProperty
+		Argument argument = new Argument(PARAMETER_NAME, ""); // $NON-NLS-1$
+		FunctionProperty property = new FunctionProperty(Argument.VALUE,
+				new CompoundVariable("${session}-${row}")); // $NON-NLS-1$
+		argument.setProperty(property);
+		Arguments arguments = new Arguments();
+		arguments.addArgument(argument);
+		arguments.setRunningVersion(true);
+		AmfSamplerConfig config = AmfSamplerConfig.compile(arguments, null);
+
+		AmfSessionVariables first = new AmfSessionVariables(threadVariables);
+		first.put("session", "a"); // $NON-NLS-1$ $NON-NLS-2$
+		AmfSamplerConfig firstConfig = config.forSession();
+		AmfSessionVariables second = new AmfSessionVariables(threadVariables);
+		second.put("session", "b"); // $NON-NLS-1$ $NON-NLS-2$
+		AmfSamplerConfig secondConfig = config.forSession();
+
+		threadVariables.put("row", "1"); // $NON-NLS-1$ $NON-NLS-2$
+		assertEquals("a-1", evaluate(first, firstConfig)); // $NON-NLS-1$
+		assertEquals("b-1", evaluate(second, secondConfig)); // $NON-NLS-1$
+
+		// The next iteration, e.g. with the next line of a CSV Data Set
+		threadVariables.incIteration();
+		threadVariables.put("row", "2"); // $NON-NLS-1$ $NON-NLS-2$
+		assertEquals("a-2", evaluate(first, firstConfig)); // $NON-NLS-1$
+		assertEquals("b-2", evaluate(second, secondConfig)); // $NON-NLS-1$
+	}
+
+	private String evaluate(AmfSessionVariables variables, AmfSamplerConfig config) {
+		context.setVariables(variables);
+		try {
+			return config.createContext().getParameter(PARAMETER_NAME);
+		} finally {
+			context.setVariables(threadVariables);
+		}
+	}
+
+}